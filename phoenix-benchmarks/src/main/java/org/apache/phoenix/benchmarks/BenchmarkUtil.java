@@ -0,0 +1,139 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.phoenix.benchmarks;
+
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.Pair;
+import org.apache.phoenix.expression.Expression;
+import org.apache.phoenix.expression.KeyValueColumnExpression;
+import org.apache.phoenix.jdbc.PhoenixConnection;
+import org.apache.phoenix.jdbc.PhoenixDriver;
+import org.apache.phoenix.schema.PTable;
+import org.apache.phoenix.schema.PTableKey;
+import org.apache.phoenix.schema.tuple.ResultTuple;
+import org.apache.phoenix.schema.tuple.Tuple;
+import org.apache.phoenix.util.PhoenixRuntime;
+
+/**
+ * Fixtures shared by the benchmarks. Everything runs against a connectionless Phoenix
+ * connection, so tables only exist in the client side metadata cache and rows are produced
+ * by reading back the cells of uncommitted upserts.
+ */
+public final class BenchmarkUtil {
+    public static final String CONNECTIONLESS_URL = PhoenixRuntime.JDBC_PROTOCOL
+            + PhoenixRuntime.JDBC_PROTOCOL_SEPARATOR + PhoenixRuntime.CONNECTIONLESS;
+    public static final String TABLE_NAME = "BENCH";
+    public static final String INDEX_NAME = "BENCH_IDX";
+
+    private BenchmarkUtil() {
+    }
+
+    public static PhoenixConnection newConnection() throws SQLException {
+        return PhoenixDriver.INSTANCE.connect(CONNECTIONLESS_URL, new Properties())
+                .unwrap(PhoenixConnection.class);
+    }
+
+    /**
+     * Create the benchmark table, along with a covered index on V1 if withIndex is true
+     * @return the benchmark table
+     */
+    public static PTable createTable(PhoenixConnection conn, boolean withIndex) throws SQLException {
+        conn.createStatement().execute("CREATE TABLE " + TABLE_NAME
+                + " (ID BIGINT NOT NULL PRIMARY KEY, V1 VARCHAR, V2 BIGINT, V3 DOUBLE, V4 DATE, V5 INTEGER)");
+        if (withIndex) {
+            conn.createStatement().execute("CREATE INDEX " + INDEX_NAME + " ON " + TABLE_NAME
+                    + " (V1) INCLUDE (V2, V3)");
+        }
+        return getTable(conn, TABLE_NAME);
+    }
+
+    public static PTable getTable(PhoenixConnection conn, String name) throws SQLException {
+        return conn.getTable(new PTableKey(conn.getTenantId(), name));
+    }
+
+    /**
+     * @return the expression reading the given column of the benchmark table from a row
+     */
+    public static Expression newColumnExpression(PTable table, String columnName) throws SQLException {
+        return new KeyValueColumnExpression(table.getColumnForColumnName(columnName));
+    }
+
+    /**
+     * Generate rows of the benchmark table with random values. V1 has 100 distinct values,
+     * V2 1000 distinct values and is null in every tenth row.
+     * @return the sorted cells of each row
+     */
+    public static List<List<Cell>> newRows(PhoenixConnection conn, int rowCount, long seed)
+            throws SQLException {
+        Random random = new Random(seed);
+        PreparedStatement stmt = conn.prepareStatement("UPSERT INTO " + TABLE_NAME + " VALUES (?,?,?,?,?,?)");
+        for (int i = 0; i < rowCount; i++) {
+            stmt.setLong(1, i);
+            stmt.setString(2, "v" + random.nextInt(100));
+            if (i % 10 == 0) {
+                stmt.setNull(3, Types.BIGINT);
+            } else {
+                stmt.setLong(3, random.nextInt(1000));
+            }
+            stmt.setDouble(4, random.nextDouble());
+            stmt.setDate(5, new Date(random.nextInt(Integer.MAX_VALUE) * 1000L));
+            stmt.setInt(6, random.nextInt());
+            stmt.execute();
+        }
+        List<List<Cell>> rows = new ArrayList<List<Cell>>(rowCount);
+        byte[] tableName = Bytes.toBytes(TABLE_NAME);
+        Iterator<Pair<byte[], List<Cell>>> iterator = PhoenixRuntime.getUncommittedDataIterator(conn);
+        while (iterator.hasNext()) {
+            Pair<byte[], List<Cell>> tableCells = iterator.next();
+            if (!Bytes.equals(tableName, tableCells.getFirst())) {
+                continue;
+            }
+            List<Cell> row = null;
+            for (Cell cell : tableCells.getSecond()) {
+                if (row == null || !CellUtil.matchingRows(row.get(0), cell)) {
+                    row = new ArrayList<Cell>();
+                    rows.add(row);
+                }
+                row.add(cell);
+            }
+        }
+        conn.rollback();
+        return rows;
+    }
+
+    public static List<Tuple> toTuples(List<List<Cell>> rows) {
+        List<Tuple> tuples = new ArrayList<Tuple>(rows.size());
+        for (List<Cell> row : rows) {
+            tuples.add(new ResultTuple(Result.create(row)));
+        }
+        return tuples;
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.phoenix.benchmarks;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.phoenix.hbase.index.ValueGetter;
+import org.apache.phoenix.hbase.index.covered.update.ColumnReference;
+import org.apache.phoenix.hbase.index.util.GenericKeyValueBuilder;
+import org.apache.phoenix.hbase.index.util.ImmutableBytesPtr;
+import org.apache.phoenix.hbase.index.util.KeyValueBuilder;
+import org.apache.phoenix.index.IndexMaintainer;
+import org.apache.phoenix.jdbc.PhoenixConnection;
+import org.apache.phoenix.schema.PTable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Generation of the index row of a covered global index for data table rows through
+ * {@link IndexMaintainer#buildUpdateMutation}, as done for every data table update.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class IndexMaintainerBenchmark {
+    private static final int ROW_COUNT = 1000;
+    private static final KeyValueBuilder KV_BUILDER = GenericKeyValueBuilder.INSTANCE;
+
+    private PhoenixConnection conn;
+    private IndexMaintainer maintainer;
+    private List<ValueGetter> valueGetters;
+    private List<ImmutableBytesWritable> rowKeys;
+
+    private static ValueGetter newValueGetter(final byte[] row, final Map<ColumnReference, ImmutableBytesWritable> values) {
+        return new ValueGetter() {
+            @Override
+            public ImmutableBytesWritable getLatestValue(ColumnReference ref, long ts) {
+                return values.get(ref);
+            }
+
+            @Override
+            public byte[] getRowKey() {
+                return row;
+            }
+        };
+    }
+
+    @Setup
+    public void setup() throws SQLException {
+        conn = BenchmarkUtil.newConnection();
+        PTable table = BenchmarkUtil.createTable(conn, true);
+        PTable index = BenchmarkUtil.getTable(conn, BenchmarkUtil.INDEX_NAME);
+        maintainer = index.getIndexMaintainer(table, conn);
+        List<List<Cell>> rows = BenchmarkUtil.newRows(conn, ROW_COUNT, 0);
+        valueGetters = new ArrayList<ValueGetter>(rows.size());
+        rowKeys = new ArrayList<ImmutableBytesWritable>(rows.size());
+        for (List<Cell> row : rows) {
+            Map<ColumnReference, ImmutableBytesWritable> values = new HashMap<ColumnReference, ImmutableBytesWritable>();
+            for (Cell cell : row) {
+                values.put(new ColumnReference(CellUtil.cloneFamily(cell), CellUtil.cloneQualifier(cell)),
+                        new ImmutableBytesPtr(CellUtil.cloneValue(cell)));
+            }
+            byte[] rowKey = CellUtil.cloneRow(row.get(0));
+            valueGetters.add(newValueGetter(rowKey, values));
+            rowKeys.add(new ImmutableBytesWritable(rowKey));
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        conn.close();
+    }
+
+    @Benchmark
+    public void buildUpdateMutation(Blackhole blackhole) throws IOException {
+        for (int i = 0; i < valueGetters.size(); i++) {
+            blackhole.consume(maintainer.buildUpdateMutation(KV_BUILDER, valueGetters.get(i),
+                    rowKeys.get(i), HConstants.LATEST_TIMESTAMP, null, null));
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.phoenix.benchmarks;
+
+import java.sql.Date;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.phoenix.expression.Expression;
+import org.apache.phoenix.expression.LiteralExpression;
+import org.apache.phoenix.schema.KeyValueSchema;
+import org.apache.phoenix.schema.KeyValueSchema.KeyValueSchemaBuilder;
+import org.apache.phoenix.schema.ValueBitSet;
+import org.apache.phoenix.schema.types.PDate;
+import org.apache.phoenix.schema.types.PDouble;
+import org.apache.phoenix.schema.types.PInteger;
+import org.apache.phoenix.schema.types.PLong;
+import org.apache.phoenix.schema.types.PVarchar;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Serialization of a row of fixed and variable width values with {@link KeyValueSchema#toBytes}
+ * and access to its fields through {@link KeyValueSchema#iterator}, as done for projected
+ * tuples and aggregate values.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class KeyValueSchemaBenchmark {
+    private KeyValueSchema schema;
+    private Expression[] expressions;
+    private ValueBitSet valueSet;
+    private byte[] value;
+    private final ImmutableBytesWritable ptr = new ImmutableBytesWritable();
+
+    @Setup
+    public void setup() throws SQLException {
+        expressions = new Expression[] {
+                LiteralExpression.newConstant(42L, PLong.INSTANCE),
+                LiteralExpression.newConstant("first value", PVarchar.INSTANCE),
+                LiteralExpression.newConstant(3.14, PDouble.INSTANCE),
+                LiteralExpression.newConstant(null, PInteger.INSTANCE),
+                LiteralExpression.newConstant("another somewhat longer value", PVarchar.INSTANCE),
+                LiteralExpression.newConstant(new Date(1000000000000L), PDate.INSTANCE),
+                LiteralExpression.newConstant(7, PInteger.INSTANCE) };
+        // The first two fields are not nullable
+        KeyValueSchemaBuilder builder = new KeyValueSchemaBuilder(2);
+        for (Expression expression : expressions) {
+            builder.addField(expression);
+        }
+        schema = builder.build();
+        valueSet = ValueBitSet.newInstance(schema);
+        value = schema.toBytes(expressions, valueSet, ptr);
+    }
+
+    @Benchmark
+    public byte[] toBytes() {
+        return schema.toBytes(expressions, valueSet, ptr);
+    }
+
+    @Benchmark
+    public int iterateAllFields() {
+        ptr.set(value);
+        valueSet.clear();
+        valueSet.or(ptr);
+        int maxOffset = ptr.getOffset() + ptr.getLength();
+        schema.iterator(ptr);
+        int length = 0;
+        int i = 0;
+        Boolean hasValue;
+        while ((hasValue = schema.next(ptr, i, maxOffset, valueSet)) != null) {
+            if (hasValue) {
+                length += ptr.getLength();
+            }
+            i++;
+        }
+        return length;
+    }
+
+    @Benchmark
+    public int positionOnLastField() {
+        ImmutableBytesWritable src = new ImmutableBytesWritable(value);
+        valueSet.clear();
+        valueSet.or(src);
+        schema.iterator(src, ptr, schema.getFieldCount(), valueSet);
+        return ptr.getLength();
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.phoenix.benchmarks;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.phoenix.expression.OrderByExpression;
+import org.apache.phoenix.iterate.MaterializedResultIterator;
+import org.apache.phoenix.iterate.OrderedResultIterator;
+import org.apache.phoenix.jdbc.PhoenixConnection;
+import org.apache.phoenix.schema.PTable;
+import org.apache.phoenix.schema.tuple.Tuple;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Client side ORDER BY of rows held in memory through {@link OrderedResultIterator}, with and
+ * without a LIMIT.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class OrderedResultIteratorBenchmark {
+    @Param({ "10000" })
+    public int rowCount;
+
+    /**
+     * LIMIT of the query, with 0 meaning no limit
+     */
+    @Param({ "0", "100" })
+    public int limit;
+
+    private PhoenixConnection conn;
+    private List<Tuple> tuples;
+    private List<OrderByExpression> orderBy;
+
+    @Setup
+    public void setup() throws SQLException {
+        conn = BenchmarkUtil.newConnection();
+        PTable table = BenchmarkUtil.createTable(conn, false);
+        tuples = BenchmarkUtil.toTuples(BenchmarkUtil.newRows(conn, rowCount, 0));
+        // ORDER BY V1, V2 DESC
+        orderBy = Arrays.asList(
+                OrderByExpression.createByCheckIfExpressionSortOrderDesc(
+                        BenchmarkUtil.newColumnExpression(table, "V1"), false, true),
+                OrderByExpression.createByCheckIfExpressionSortOrderDesc(
+                        BenchmarkUtil.newColumnExpression(table, "V2"), true, false));
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        conn.close();
+    }
+
+    @Benchmark
+    public void orderBy(Blackhole blackhole) throws SQLException {
+        OrderedResultIterator iterator = new OrderedResultIterator(
+                new MaterializedResultIterator(tuples), orderBy, false, Long.MAX_VALUE,
+                limit == 0 ? null : limit, null);
+        try {
+            Tuple tuple;
+            while ((tuple = iterator.next()) != null) {
+                blackhole.consume(tuple);
+            }
+        } finally {
+            iterator.close();
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.phoenix.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.phoenix.schema.SortOrder;
+import org.apache.phoenix.schema.types.PDataType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Encoding and decoding of a value of each data type in both sort orders.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class PDataTypeBenchmark {
+    private static final int MAX_LENGTH = 16;
+    private static final int ARRAY_LENGTH = 8;
+
+    @Param({ "INTEGER", "UNSIGNED_INT", "BIGINT", "UNSIGNED_LONG", "TINYINT", "UNSIGNED_TINYINT",
+            "SMALLINT", "UNSIGNED_SMALLINT", "FLOAT", "UNSIGNED_FLOAT", "DOUBLE", "UNSIGNED_DOUBLE",
+            "DECIMAL", "BOOLEAN", "TIME", "DATE", "TIMESTAMP", "UNSIGNED_TIME", "UNSIGNED_DATE",
+            "UNSIGNED_TIMESTAMP", "VARCHAR", "CHAR", "BINARY", "VARBINARY", "INTEGER ARRAY",
+            "BIGINT ARRAY", "DOUBLE ARRAY", "VARCHAR ARRAY" })
+    public String typeName;
+
+    private PDataType type;
+    private Object value;
+    private byte[] ascBytes;
+    private byte[] descBytes;
+
+    @Setup
+    public void setup() {
+        type = PDataType.fromSqlTypeName(typeName);
+        value = type.getSampleValue(MAX_LENGTH, ARRAY_LENGTH);
+        ascBytes = type.toBytes(value, SortOrder.ASC);
+        descBytes = type.toBytes(value, SortOrder.DESC);
+    }
+
+    @Benchmark
+    public byte[] encodeAsc() {
+        return type.toBytes(value, SortOrder.ASC);
+    }
+
+    @Benchmark
+    public byte[] encodeDesc() {
+        return type.toBytes(value, SortOrder.DESC);
+    }
+
+    @Benchmark
+    public Object decodeAsc() {
+        return type.toObject(ascBytes, 0, ascBytes.length, type, SortOrder.ASC);
+    }
+
+    @Benchmark
+    public Object decodeDesc() {
+        return type.toObject(descBytes, 0, descBytes.length, type, SortOrder.DESC);
+    }
+}
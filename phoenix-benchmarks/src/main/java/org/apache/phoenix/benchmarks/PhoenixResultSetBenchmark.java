@@ -0,0 +1,123 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.phoenix.benchmarks;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.phoenix.compile.QueryPlan;
+import org.apache.phoenix.iterate.MaterializedResultIterator;
+import org.apache.phoenix.jdbc.PhoenixConnection;
+import org.apache.phoenix.jdbc.PhoenixResultSet;
+import org.apache.phoenix.jdbc.PhoenixStatement;
+import org.apache.phoenix.schema.tuple.Tuple;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Reading every column of rows through the typed and the generic getters of
+ * {@link PhoenixResultSet}, over rows held in memory instead of scanned from a cluster.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class PhoenixResultSetBenchmark {
+    private static final int ROW_COUNT = 1000;
+
+    private PhoenixConnection conn;
+    private List<Tuple> tuples;
+    private QueryPlan plan;
+
+    @Setup
+    public void setup() throws SQLException {
+        conn = BenchmarkUtil.newConnection();
+        BenchmarkUtil.createTable(conn, false);
+        tuples = BenchmarkUtil.toTuples(BenchmarkUtil.newRows(conn, ROW_COUNT, 0));
+        PhoenixStatement stmt = conn.createStatement().unwrap(PhoenixStatement.class);
+        plan = stmt.optimizeQuery("SELECT ID, V1, V2, V3, V4, V5 FROM " + BenchmarkUtil.TABLE_NAME);
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        conn.close();
+    }
+
+    private PhoenixResultSet newResultSet() throws SQLException {
+        return new PhoenixResultSet(new MaterializedResultIterator(tuples), plan.getProjector(),
+                plan.getContext());
+    }
+
+    @Benchmark
+    public void typedGetters(Blackhole blackhole) throws SQLException {
+        PhoenixResultSet rs = newResultSet();
+        try {
+            while (rs.next()) {
+                blackhole.consume(rs.getLong(1));
+                blackhole.consume(rs.getString(2));
+                blackhole.consume(rs.getLong(3));
+                blackhole.consume(rs.getDouble(4));
+                blackhole.consume(rs.getDate(5));
+                blackhole.consume(rs.getInt(6));
+            }
+        } finally {
+            rs.close();
+        }
+    }
+
+    @Benchmark
+    public void getObject(Blackhole blackhole) throws SQLException {
+        PhoenixResultSet rs = newResultSet();
+        try {
+            while (rs.next()) {
+                for (int i = 1; i <= 6; i++) {
+                    blackhole.consume(rs.getObject(i));
+                }
+            }
+        } finally {
+            rs.close();
+        }
+    }
+
+    @Benchmark
+    public void getterByName(Blackhole blackhole) throws SQLException {
+        PhoenixResultSet rs = newResultSet();
+        try {
+            while (rs.next()) {
+                blackhole.consume(rs.getLong("ID"));
+                blackhole.consume(rs.getString("V1"));
+                blackhole.consume(rs.getDouble("V3"));
+            }
+        } finally {
+            rs.close();
+        }
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.phoenix.benchmarks;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.phoenix.expression.Expression;
+import org.apache.phoenix.expression.aggregator.Aggregator;
+import org.apache.phoenix.expression.aggregator.PrimitiveAggregationTable;
+import org.apache.phoenix.expression.aggregator.ServerAggregators;
+import org.apache.phoenix.expression.function.CountAggregateFunction;
+import org.apache.phoenix.expression.function.MaxAggregateFunction;
+import org.apache.phoenix.expression.function.MinAggregateFunction;
+import org.apache.phoenix.expression.function.SingleAggregateFunction;
+import org.apache.phoenix.expression.function.SumAggregateFunction;
+import org.apache.phoenix.hbase.index.util.ImmutableBytesPtr;
+import org.apache.phoenix.jdbc.PhoenixConnection;
+import org.apache.phoenix.schema.PTable;
+import org.apache.phoenix.schema.tuple.Tuple;
+import org.apache.phoenix.util.TupleUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Server side aggregation of COUNT, SUM, MIN and MAX through {@link ServerAggregators#aggregate},
+ * both ungrouped and grouped by V1, and grouped into a {@link PrimitiveAggregationTable}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ServerAggregatorsBenchmark {
+    private static final int ROW_COUNT = 10000;
+
+    private final Configuration conf = new Configuration(false);
+    private PhoenixConnection conn;
+    private List<Tuple> tuples;
+    private List<Expression> groupBy;
+    private ServerAggregators aggregators;
+
+    @Setup
+    public void setup() throws SQLException {
+        conn = BenchmarkUtil.newConnection();
+        PTable table = BenchmarkUtil.createTable(conn, false);
+        tuples = BenchmarkUtil.toTuples(BenchmarkUtil.newRows(conn, ROW_COUNT, 0));
+        Expression v1 = BenchmarkUtil.newColumnExpression(table, "V1");
+        List<Expression> v2 = Collections.singletonList(BenchmarkUtil.newColumnExpression(table, "V2"));
+        List<Expression> v3 = Collections.singletonList(BenchmarkUtil.newColumnExpression(table, "V3"));
+        groupBy = Collections.singletonList(v1);
+        List<SingleAggregateFunction> functions = Arrays.<SingleAggregateFunction>asList(
+                new CountAggregateFunction(v2),
+                new SumAggregateFunction(v2),
+                new MinAggregateFunction(v3),
+                new MaxAggregateFunction(v3));
+        aggregators = ServerAggregators.deserialize(ServerAggregators.serialize(functions, 0), conf, null);
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        conn.close();
+    }
+
+    @Benchmark
+    public byte[] aggregate() {
+        Aggregator[] rowAggregators = aggregators.newAggregators(conf);
+        for (Tuple tuple : tuples) {
+            aggregators.aggregate(rowAggregators, tuple);
+        }
+        return aggregators.toBytes(rowAggregators);
+    }
+
+    @Benchmark
+    public int aggregateGrouped() {
+        Map<ImmutableBytesPtr, Aggregator[]> groups = new HashMap<ImmutableBytesPtr, Aggregator[]>();
+        for (Tuple tuple : tuples) {
+            ImmutableBytesPtr key = TupleUtil.getConcatenatedValue(tuple, groupBy);
+            Aggregator[] rowAggregators = groups.get(key);
+            if (rowAggregators == null) {
+                rowAggregators = aggregators.newAggregators(conf);
+                groups.put(key, rowAggregators);
+            }
+            aggregators.aggregate(rowAggregators, tuple);
+        }
+        int length = 0;
+        for (Aggregator[] rowAggregators : groups.values()) {
+            length += aggregators.toBytes(rowAggregators).length;
+        }
+        return length;
+    }
+
+    @Benchmark
+    public int aggregateGroupedPrimitive() {
+        PrimitiveAggregationTable table = PrimitiveAggregationTable.newInstance(aggregators, 16);
+        for (Tuple tuple : tuples) {
+            ImmutableBytesPtr key = TupleUtil.getConcatenatedValue(tuple, groupBy);
+            table.aggregate(table.getOrAddGroup(key), tuple);
+        }
+        int length = 0;
+        for (int groupId = 0; groupId < table.getGroupCount(); groupId++) {
+            length += table.toBytes(groupId).length;
+        }
+        return length;
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.phoenix.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.filter.Filter.ReturnCode;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.phoenix.filter.SkipScanFilter;
+import org.apache.phoenix.query.KeyRange;
+import org.apache.phoenix.query.QueryConstants;
+import org.apache.phoenix.schema.PDatum;
+import org.apache.phoenix.schema.RowKeySchema;
+import org.apache.phoenix.schema.RowKeySchema.RowKeySchemaBuilder;
+import org.apache.phoenix.schema.SortOrder;
+import org.apache.phoenix.schema.types.PDataType;
+import org.apache.phoenix.schema.types.PInteger;
+import org.apache.phoenix.util.ByteUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Drives {@link SkipScanFilter#filterKeyValue(Cell)} and {@link SkipScanFilter#getNextCellHint(Cell)}
+ * over the rows of a two column INTEGER row key the way a region scanner would, seeking to the
+ * hint whenever the filter asks for it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class SkipScanFilterBenchmark {
+    private static final int KEYS_PER_COLUMN = 100;
+
+    /**
+     * Number of values of the leading row key column selected by the skip scan
+     */
+    @Param({ "5", "50" })
+    public int selectedKeys;
+
+    private Cell[] cells;
+    private SkipScanFilter filter;
+
+    private static final PDatum INTEGER_DATUM = new PDatum() {
+        @Override
+        public boolean isNullable() {
+            return false;
+        }
+
+        @Override
+        public PDataType getDataType() {
+            return PInteger.INSTANCE;
+        }
+
+        @Override
+        public Integer getMaxLength() {
+            return null;
+        }
+
+        @Override
+        public Integer getScale() {
+            return null;
+        }
+
+        @Override
+        public SortOrder getSortOrder() {
+            return SortOrder.getDefault();
+        }
+    };
+
+    @Setup
+    public void setup() {
+        cells = new Cell[KEYS_PER_COLUMN * KEYS_PER_COLUMN];
+        byte[] family = QueryConstants.DEFAULT_COLUMN_FAMILY_BYTES;
+        byte[] qualifier = Bytes.toBytes("V");
+        for (int i = 0; i < KEYS_PER_COLUMN; i++) {
+            for (int j = 0; j < KEYS_PER_COLUMN; j++) {
+                byte[] row = ByteUtil.concat(PInteger.INSTANCE.toBytes(i), PInteger.INSTANCE.toBytes(j));
+                cells[i * KEYS_PER_COLUMN + j] = new KeyValue(row, family, qualifier, row);
+            }
+        }
+        List<KeyRange> leading = new ArrayList<KeyRange>();
+        int step = KEYS_PER_COLUMN / selectedKeys;
+        for (int i = 0; i < selectedKeys; i++) {
+            leading.add(PInteger.INSTANCE.getKeyRange(PInteger.INSTANCE.toBytes(i * step)));
+        }
+        List<KeyRange> trailing = new ArrayList<KeyRange>();
+        for (int j = 3; j < KEYS_PER_COLUMN; j += 20) {
+            trailing.add(PInteger.INSTANCE.getKeyRange(PInteger.INSTANCE.toBytes(j)));
+        }
+        RowKeySchema schema = new RowKeySchemaBuilder(2)
+                .addField(INTEGER_DATUM, false, SortOrder.getDefault())
+                .addField(INTEGER_DATUM, false, SortOrder.getDefault())
+                .build();
+        filter = new SkipScanFilter(Arrays.asList(leading, trailing), schema);
+    }
+
+    /**
+     * @return the position of the first cell at or after the given one
+     */
+    private int seek(Cell hint, int from) {
+        int low = from;
+        int high = cells.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            Cell cell = cells[mid];
+            if (Bytes.compareTo(cell.getRowArray(), cell.getRowOffset(), cell.getRowLength(),
+                    hint.getRowArray(), hint.getRowOffset(), hint.getRowLength()) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    @Benchmark
+    public int filterAndSeek() {
+        SkipScanFilter skipScan = new SkipScanFilter(filter, false);
+        int included = 0;
+        int i = 0;
+        while (i < cells.length && !skipScan.filterAllRemaining()) {
+            ReturnCode code = skipScan.filterKeyValue(cells[i]);
+            if (code == ReturnCode.SEEK_NEXT_USING_HINT) {
+                Cell hint = skipScan.getNextCellHint(cells[i]);
+                if (hint == null) {
+                    break;
+                }
+                i = seek(hint, i + 1);
+            } else {
+                if (code == ReturnCode.INCLUDE || code == ReturnCode.INCLUDE_AND_NEXT_COL) {
+                    included++;
+                }
+                i++;
+            }
+        }
+        return included;
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.phoenix.benchmarks;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.phoenix.execute.TupleProjector;
+import org.apache.phoenix.expression.Expression;
+import org.apache.phoenix.jdbc.PhoenixConnection;
+import org.apache.phoenix.schema.PTable;
+import org.apache.phoenix.schema.tuple.Tuple;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Projection of table rows into a single cell value with {@link TupleProjector#projectResults(Tuple)},
+ * as done on the region server for joins and subqueries.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class TupleProjectorBenchmark {
+    private static final int ROW_COUNT = 1000;
+
+    private PhoenixConnection conn;
+    private List<Tuple> tuples;
+    private TupleProjector projector;
+
+    @Setup
+    public void setup() throws SQLException {
+        conn = BenchmarkUtil.newConnection();
+        PTable table = BenchmarkUtil.createTable(conn, false);
+        tuples = BenchmarkUtil.toTuples(BenchmarkUtil.newRows(conn, ROW_COUNT, 0));
+        projector = new TupleProjector(new Expression[] {
+                BenchmarkUtil.newColumnExpression(table, "V1"),
+                BenchmarkUtil.newColumnExpression(table, "V2"),
+                BenchmarkUtil.newColumnExpression(table, "V3"),
+                BenchmarkUtil.newColumnExpression(table, "V4") });
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        conn.close();
+    }
+
+    @Benchmark
+    public void projectResults(Blackhole blackhole) {
+        for (Tuple tuple : tuples) {
+            blackhole.consume(projector.projectResults(tuple));
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.phoenix.end2end;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import org.apache.phoenix.jdbc.PhoenixAsyncStatement;
+import org.apache.phoenix.jdbc.PhoenixPreparedStatement;
+import org.junit.Test;
+
+public class AsyncStatementIT extends ParallelStatsDisabledIT {
+
+    @Test
+    public void testUpsertCommitAndFetch() throws Exception {
+        String tableName = generateUniqueName();
+        try (Connection conn = DriverManager.getConnection(getUrl())) {
+            conn.createStatement().execute("CREATE TABLE " + tableName + " (K INTEGER PRIMARY KEY, V VARCHAR)");
+            PhoenixPreparedStatement upsert = conn.prepareStatement("UPSERT INTO " + tableName + " VALUES (?, ?)")
+                    .unwrap(PhoenixPreparedStatement.class);
+            for (int i = 0; i < 10; i++) {
+                upsert.setInt(1, i);
+                upsert.setString(2, "v" + i);
+                assertEquals(1, upsert.executeUpdateAsync().get().intValue());
+            }
+            final PhoenixAsyncStatement stmt = conn.createStatement().unwrap(PhoenixAsyncStatement.class);
+            stmt.commitAsync().get();
+
+            ResultSet rs = stmt.executeQueryAsync("SELECT K, V FROM " + tableName).get();
+            List<Object[]> rows = new ArrayList<>();
+            List<Object[]> batch;
+            do {
+                batch = stmt.fetchAsync(rs, 3).get();
+                assertTrue(batch.size() <= 3);
+                rows.addAll(batch);
+            } while (batch.size() == 3);
+            rs.close();
+            assertEquals(10, rows.size());
+            for (int i = 0; i < 10; i++) {
+                assertEquals(i, rows.get(i)[0]);
+                assertEquals("v" + i, rows.get(i)[1]);
+            }
+        }
+    }
+
+    @Test
+    public void testManyQueriesInFlight() throws Exception {
+        String tableName = generateUniqueName();
+        try (Connection conn = DriverManager.getConnection(getUrl())) {
+            conn.createStatement().execute("CREATE TABLE " + tableName + " (K INTEGER PRIMARY KEY, V BIGINT)");
+            PhoenixAsyncStatement upsert = conn.createStatement().unwrap(PhoenixAsyncStatement.class);
+            for (int i = 0; i < 20; i++) {
+                upsert.executeUpdateAsync("UPSERT INTO " + tableName + " VALUES (" + i + ", " + i + ")").get();
+            }
+            upsert.commitAsync().get();
+
+            List<CompletableFuture<List<Object[]>>> futures = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                final PhoenixAsyncStatement stmt = conn.createStatement().unwrap(PhoenixAsyncStatement.class);
+                futures.add(stmt.executeQueryAsync("SELECT V FROM " + tableName + " WHERE K = " + i)
+                        .thenCompose(rs -> stmt.fetchAsync(rs, 10)));
+            }
+            for (int i = 0; i < 20; i++) {
+                List<Object[]> rows = futures.get(i).get();
+                assertEquals(1, rows.size());
+                assertEquals((long)i, rows.get(0)[0]);
+            }
+        }
+    }
+
+    @Test
+    public void testFailureCompletesExceptionally() throws Exception {
+        try (Connection conn = DriverManager.getConnection(getUrl())) {
+            PhoenixAsyncStatement stmt = conn.createStatement().unwrap(PhoenixAsyncStatement.class);
+            try {
+                stmt.executeQueryAsync("SELECT * FROM " + generateUniqueName()).get();
+                fail();
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof SQLException);
+            }
+        }
+    }
+}
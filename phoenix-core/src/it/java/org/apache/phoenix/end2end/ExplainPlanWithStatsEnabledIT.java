@@ -31,13 +31,17 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.Collections;
 import java.util.List;
+import java.util.Properties;
 
 import org.apache.hadoop.hbase.TableName;
 import org.apache.hadoop.hbase.client.Admin;
+import org.apache.hadoop.hbase.client.Scan;
 import org.apache.hadoop.hbase.util.Bytes;
 import org.apache.phoenix.jdbc.PhoenixConnection;
 import org.apache.phoenix.jdbc.PhoenixResultSet;
+import org.apache.phoenix.jdbc.PhoenixStatement;
 import org.apache.phoenix.mapreduce.util.PhoenixConfigurationUtil;
+import org.apache.phoenix.query.QueryServices;
 import org.apache.phoenix.schema.PTable;
 import org.apache.phoenix.schema.PTableKey;
 import org.apache.phoenix.schema.TableNotFoundException;
@@ -1263,4 +1267,49 @@ public class ExplainPlanWithStatsEnabledIT extends ParallelStatsEnabledIT {
                         .getStatsForParallelizationProp(tenantConn.unwrap(PhoenixConnection.class), viewIndex));
     }
 
+    private static int countScans(Connection conn, String sql) throws SQLException {
+        PhoenixStatement stmt = conn.createStatement().unwrap(PhoenixStatement.class);
+        ResultSet rs = stmt.executeQuery(sql);
+        int rows = 0;
+        while (rs.next()) {
+            rows++;
+        }
+        assertEquals(10, rows);
+        int scans = 0;
+        for (List<Scan> scanList : stmt.getQueryPlan().getScans()) {
+            scans += scanList.size();
+        }
+        return scans;
+    }
+
+    @Test
+    public void testAdaptiveScanGrouperMergesSmallChunks() throws Exception {
+        String tableName = generateUniqueName();
+        try (Connection conn = DriverManager.getConnection(getUrl())) {
+            conn.createStatement().execute("CREATE TABLE " + tableName
+                    + " (k INTEGER PRIMARY KEY, v bigint) GUIDE_POSTS_WIDTH=20, USE_STATS_FOR_PARALLELIZATION=true");
+            for (int i = 0; i < 10; i++) {
+                conn.createStatement().execute("UPSERT INTO " + tableName + " VALUES (" + i + ", " + i + ")");
+            }
+            conn.commit();
+            conn.createStatement().execute("UPDATE STATISTICS " + tableName);
+        }
+        String sql = "SELECT * FROM " + tableName;
+        int defaultScans;
+        try (Connection conn = DriverManager.getConnection(getUrl())) {
+            defaultScans = countScans(conn, sql);
+        }
+        assertTrue(defaultScans > 1);
+        Properties props = new Properties();
+        props.setProperty(QueryServices.ADAPTIVE_SCAN_GROUPER_ENABLED_ATTRIB, Boolean.TRUE.toString());
+        props.setProperty(QueryServices.ADAPTIVE_SCAN_GROUPER_MIN_ROWS_PER_SCAN_ATTRIB, "1000");
+        try (Connection conn = DriverManager.getConnection(getUrl(), props)) {
+            assertEquals(1, countScans(conn, sql));
+        }
+        props.setProperty(QueryServices.ADAPTIVE_SCAN_GROUPER_MIN_ROWS_PER_SCAN_ATTRIB, "0");
+        try (Connection conn = DriverManager.getConnection(getUrl(), props)) {
+            assertEquals(defaultScans, countScans(conn, sql));
+        }
+    }
+
 }
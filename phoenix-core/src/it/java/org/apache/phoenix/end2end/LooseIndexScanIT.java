@@ -0,0 +1,194 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.phoenix.end2end;
+
+import static org.apache.phoenix.util.TestUtil.TEST_PROPERTIES;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.phoenix.query.QueryServices;
+import org.apache.phoenix.util.PropertiesUtil;
+import org.apache.phoenix.util.QueryUtil;
+import org.junit.Test;
+
+public class LooseIndexScanIT extends ParallelStatsDisabledIT {
+    private static final String[] DEVICES = new String[] { "a", "ab", "abc", "b", "ba", "c" };
+    private static final long BASE_TIME = 1500000000000L;
+
+    private static Connection getConnection(boolean looseIndexScan) throws SQLException {
+        Properties props = PropertiesUtil.deepCopy(TEST_PROPERTIES);
+        props.setProperty(QueryServices.LOOSE_INDEX_SCAN_ENABLED_ATTRIB, Boolean.toString(looseIndexScan));
+        return DriverManager.getConnection(getUrl(), props);
+    }
+
+    /**
+     * Creates a table with a nullable variable width ASC column after the leading one, where
+     * some groups start with or only have null values of that column
+     */
+    private static String createAscTable(Connection conn) throws SQLException {
+        String tableName = generateUniqueName();
+        conn.createStatement().execute("CREATE TABLE " + tableName + " (g VARCHAR NOT NULL, v VARCHAR, "
+                + "seq INTEGER NOT NULL, r INTEGER CONSTRAINT pk PRIMARY KEY (g, v, seq)) "
+                + "SPLIT ON ('g2', 'g5')");
+        PreparedStatement stmt = conn.prepareStatement("UPSERT INTO " + tableName + " VALUES (?, ?, ?, ?)");
+        for (int g = 0; g < 8; g++) {
+            for (int v = 0; v < 6; v++) {
+                // Groups g3 and g6 only have null values of v
+                if (v > 0 && g % 3 == 0 && g > 0) {
+                    continue;
+                }
+                for (int seq = 0; seq < 4; seq++) {
+                    stmt.setString(1, "g" + g);
+                    stmt.setString(2, v == 0 ? null : "v" + (v + g) % 6);
+                    stmt.setInt(3, seq);
+                    // Null values of r on the first rows of some groups
+                    if ((g + v + seq) % 5 == 0) {
+                        stmt.setNull(4, Types.INTEGER);
+                    } else {
+                        stmt.setInt(4, g * 100 + v * 10 + seq);
+                    }
+                    stmt.executeUpdate();
+                }
+            }
+        }
+        conn.commit();
+        return tableName;
+    }
+
+    /**
+     * Creates a table with a variable width DESC leading column, whose values are prefixes of
+     * each other, and a fixed width DESC column after it
+     */
+    private static String createDescTable(Connection conn) throws SQLException {
+        String tableName = generateUniqueName();
+        conn.createStatement().execute("CREATE TABLE " + tableName + " (device VARCHAR NOT NULL, "
+                + "ts DATE NOT NULL, seq INTEGER NOT NULL, reading INTEGER, status VARCHAR "
+                + "CONSTRAINT pk PRIMARY KEY (device DESC, ts DESC, seq))");
+        PreparedStatement stmt = conn.prepareStatement("UPSERT INTO " + tableName + " VALUES (?, ?, ?, ?, ?)");
+        for (int d = 0; d < DEVICES.length; d++) {
+            for (int t = 0; t < 10; t++) {
+                for (int seq = 0; seq < 3; seq++) {
+                    stmt.setString(1, DEVICES[d]);
+                    stmt.setDate(2, new Date(BASE_TIME + (t * 7 + d) % 10 * 1000L));
+                    stmt.setInt(3, seq);
+                    // The latest readings of some devices are null
+                    if ((d + t) % 4 == 0) {
+                        stmt.setNull(4, Types.INTEGER);
+                    } else {
+                        stmt.setInt(4, d * 100 + t * 10 + seq);
+                    }
+                    stmt.setString(5, (t + seq) % 3 == 0 ? "ok" : "ko");
+                    stmt.executeUpdate();
+                }
+            }
+        }
+        conn.commit();
+        return tableName;
+    }
+
+    private static List<List<Object>> getRows(Connection conn, String query) throws SQLException {
+        List<List<Object>> rows = new ArrayList<List<Object>>();
+        ResultSet rs = conn.createStatement().executeQuery(query);
+        int columnCount = rs.getMetaData().getColumnCount();
+        while (rs.next()) {
+            List<Object> row = new ArrayList<Object>(columnCount);
+            for (int i = 1; i <= columnCount; i++) {
+                row.add(rs.getObject(i));
+            }
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    private static void assertSameResults(String query, boolean isLooseIndexScan) throws SQLException {
+        try (Connection conn = getConnection(true); Connection plainConn = getConnection(false)) {
+            String plan = QueryUtil.getExplainPlan(conn.createStatement().executeQuery("EXPLAIN " + query));
+            assertEquals(query + "\n" + plan, isLooseIndexScan, plan.contains("LOOSE INDEX SCAN"));
+            plan = QueryUtil.getExplainPlan(plainConn.createStatement().executeQuery("EXPLAIN " + query));
+            assertFalse(query + "\n" + plan, plan.contains("LOOSE INDEX SCAN"));
+
+            List<List<Object>> expected = getRows(plainConn, query);
+            assertFalse(query, expected.isEmpty());
+            assertEquals(query, expected, getRows(conn, query));
+        }
+    }
+
+    @Test
+    public void testAscColumns() throws Exception {
+        String tableName;
+        try (Connection conn = getConnection(false)) {
+            tableName = createAscTable(conn);
+        }
+        // MIN of an ASC column, skipping over the null values each group starts with
+        assertSameResults("SELECT g, MIN(v) FROM " + tableName + " GROUP BY g ORDER BY g", true);
+        // Decided by the first row with a non null v, whose value of r may be null
+        assertSameResults("SELECT g, FIRST_VALUE(r) WITHIN GROUP (ORDER BY v ASC) FROM " + tableName
+                + " GROUP BY g ORDER BY g", true);
+        // Where clause on a non primary key column
+        assertSameResults("SELECT g, MIN(v) FROM " + tableName + " WHERE r > 250 GROUP BY g ORDER BY g", true);
+        assertSameResults("SELECT g, MIN(v), FIRST_VALUE(r) WITHIN GROUP (ORDER BY v ASC) FROM " + tableName
+                + " WHERE r IS NULL OR r > 400 GROUP BY g ORDER BY g", true);
+        // The last prefix column is a nullable variable width column
+        assertSameResults("SELECT g, v, MIN(seq), FIRST_VALUE(r) WITHIN GROUP (ORDER BY seq ASC) FROM "
+                + tableName + " GROUP BY g, v ORDER BY g, v", true);
+        // Not decided by the first row of a group
+        assertSameResults("SELECT g, MAX(v) FROM " + tableName + " GROUP BY g ORDER BY g", false);
+        assertSameResults("SELECT g, MIN(v), MIN(r) FROM " + tableName + " GROUP BY g ORDER BY g", false);
+    }
+
+    @Test
+    public void testDescColumns() throws Exception {
+        String tableName;
+        try (Connection conn = getConnection(false)) {
+            tableName = createDescTable(conn);
+        }
+        // MAX of a DESC column, with a variable width DESC last prefix column
+        assertSameResults("SELECT device, MAX(ts) FROM " + tableName + " GROUP BY device ORDER BY device DESC", true);
+        // Decided by the latest row, whose reading may be null
+        assertSameResults("SELECT device, LAST_VALUE(reading) WITHIN GROUP (ORDER BY ts ASC) FROM " + tableName
+                + " GROUP BY device ORDER BY device DESC", true);
+        assertSameResults("SELECT device, MAX(ts), LAST_VALUE(status) WITHIN GROUP (ORDER BY ts ASC) FROM "
+                + tableName + " GROUP BY device ORDER BY device DESC", true);
+        // Where clause on non primary key columns
+        assertSameResults("SELECT device, MAX(ts) FROM " + tableName + " WHERE reading > 150 "
+                + "GROUP BY device ORDER BY device DESC", true);
+        assertSameResults("SELECT device, MAX(ts), LAST_VALUE(reading) WITHIN GROUP (ORDER BY ts ASC) FROM "
+                + tableName + " WHERE status = 'ok' GROUP BY device ORDER BY device DESC", true);
+        // Fixed width DESC last prefix column
+        assertSameResults("SELECT device, ts, MIN(seq) FROM " + tableName + " GROUP BY device, ts "
+                + "ORDER BY device DESC, ts DESC", true);
+        assertSameResults("SELECT device, ts, FIRST_VALUE(reading) WITHIN GROUP (ORDER BY seq ASC) FROM "
+                + tableName + " WHERE reading IS NOT NULL GROUP BY device, ts ORDER BY device DESC, ts DESC", true);
+        // Not decided by the first row of a group
+        assertSameResults("SELECT device, MIN(ts) FROM " + tableName + " GROUP BY device ORDER BY device DESC", false);
+        assertSameResults("SELECT device, FIRST_VALUE(reading) WITHIN GROUP (ORDER BY ts ASC) FROM " + tableName
+                + " GROUP BY device ORDER BY device DESC", false);
+    }
+}
@@ -353,6 +353,38 @@ public class MutationStateIT extends ParallelStatsDisabledIT {
         }
     }
 
+    @Test
+    public void testPipelinedCommitAcrossTables() throws Exception {
+        Properties connectionProperties = new Properties();
+        connectionProperties.setProperty(QueryServices.MUTATE_PIPELINED_COMMIT_ENABLED_ATTRIB, "true");
+        connectionProperties.setProperty(QueryServices.MUTATE_PIPELINED_COMMIT_MAX_IN_FLIGHT_ATTRIB, "2");
+        connectionProperties.setProperty(QueryServices.MUTATE_BATCH_SIZE_ATTRIB, "100");
+        String[] tableNames = new String[3];
+        try (Connection conn = DriverManager.getConnection(getUrl(), connectionProperties)) {
+            for (int i = 0; i < tableNames.length; i++) {
+                tableNames[i] = generateUniqueName();
+                conn.createStatement().execute("CREATE TABLE " + tableNames[i] + DDL);
+                conn.createStatement().execute("CREATE INDEX " + generateUniqueName() + " ON "
+                        + tableNames[i] + " (score) INCLUDE (tags)");
+            }
+            conn.setAutoCommit(false);
+            for (String tableName : tableNames) {
+                upsertRows(conn.unwrap(PhoenixConnection.class), tableName);
+            }
+            conn.commit();
+            for (String tableName : tableNames) {
+                ResultSet rs = conn.createStatement().executeQuery(
+                        "SELECT /*+ NO_INDEX */ count(*) FROM " + tableName);
+                assertTrue(rs.next());
+                assertEquals(10000, rs.getInt(1));
+                rs = conn.createStatement().executeQuery(
+                        "SELECT count(*) FROM " + tableName + " WHERE score = 1");
+                assertTrue(rs.next());
+                assertEquals(10000, rs.getInt(1));
+            }
+        }
+    }
+
     @Test
     public void testUpsertMaxMutationSize() throws Exception {
         Properties connectionProperties = new Properties();
@@ -0,0 +1,137 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.phoenix.end2end;
+
+import static org.apache.phoenix.util.TestUtil.TEST_PROPERTIES;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.phoenix.query.QueryServices;
+import org.apache.phoenix.util.PropertiesUtil;
+import org.apache.phoenix.util.QueryUtil;
+import org.junit.Test;
+
+public class ParallelGroupedAggregationIT extends ParallelStatsDisabledIT {
+    private static final int N_ROWS = 5000;
+
+    private static Connection getConnection(int mergeThreads) throws SQLException {
+        Properties props = PropertiesUtil.deepCopy(TEST_PROPERTIES);
+        props.setProperty(QueryServices.CLIENT_AGGREGATE_MERGE_THREADS_ATTRIB, Integer.toString(mergeThreads));
+        return DriverManager.getConnection(getUrl(), props);
+    }
+
+    /**
+     * Creates a table split into several regions, grouped by columns that are not in row key order
+     */
+    private static String createTable(Connection conn) throws SQLException {
+        String tableName = generateUniqueName();
+        conn.createStatement().execute("CREATE TABLE " + tableName + " (k INTEGER NOT NULL PRIMARY KEY, "
+                + "g VARCHAR, h INTEGER, a BIGINT, b VARCHAR) SPLIT ON (1000, 2000, 3000, 4000)");
+        PreparedStatement stmt = conn.prepareStatement("UPSERT INTO " + tableName + " VALUES (?, ?, ?, ?, ?)");
+        for (int k = 0; k < N_ROWS; k++) {
+            stmt.setInt(1, k);
+            // Groups spread over every region, and a group of null keys
+            if (k % 101 == 0) {
+                stmt.setNull(2, Types.VARCHAR);
+            } else {
+                stmt.setString(2, "g" + (k * 7 % 301));
+            }
+            stmt.setInt(3, k % 3);
+            if (k % 11 == 0) {
+                stmt.setNull(4, Types.BIGINT);
+            } else {
+                stmt.setLong(4, k - N_ROWS / 2);
+            }
+            stmt.setString(5, "b" + (k % 17));
+            stmt.executeUpdate();
+            if (k % 1000 == 0) {
+                conn.commit();
+            }
+        }
+        conn.commit();
+        return tableName;
+    }
+
+    private static List<String> getRows(Connection conn, String query) throws SQLException {
+        List<String> rows = new ArrayList<String>();
+        ResultSet rs = conn.createStatement().executeQuery(query);
+        int columnCount = rs.getMetaData().getColumnCount();
+        while (rs.next()) {
+            StringBuilder row = new StringBuilder();
+            for (int i = 1; i <= columnCount; i++) {
+                row.append(rs.getObject(i)).append(',');
+            }
+            rows.add(row.toString());
+        }
+        // The parallel merge returns the groups in no particular order
+        Collections.sort(rows);
+        return rows;
+    }
+
+    private static void assertSameResults(String query) throws SQLException {
+        try (Connection conn = getConnection(4); Connection mergeSortConn = getConnection(1)) {
+            String plan = QueryUtil.getExplainPlan(conn.createStatement().executeQuery("EXPLAIN " + query));
+            assertTrue(plan, plan.contains("CLIENT PARALLEL MERGE INTO 4 PARTITIONS"));
+            plan = QueryUtil.getExplainPlan(mergeSortConn.createStatement().executeQuery("EXPLAIN " + query));
+            assertFalse(plan, plan.contains("CLIENT PARALLEL MERGE"));
+
+            List<String> expected = getRows(mergeSortConn, query);
+            assertFalse(expected.isEmpty());
+            assertEquals(expected, getRows(conn, query));
+        }
+    }
+
+    @Test
+    public void testSameResultsAsMergeSort() throws Exception {
+        String tableName;
+        try (Connection conn = getConnection(1)) {
+            tableName = createTable(conn);
+        }
+        assertSameResults("SELECT g, COUNT(*), COUNT(a), SUM(a), MIN(b), MAX(a) FROM " + tableName
+                + " GROUP BY g");
+        assertSameResults("SELECT g, h, COUNT(DISTINCT b), SUM(a) FROM " + tableName + " GROUP BY g, h");
+        assertSameResults("SELECT g, COUNT(*), SUM(a) FROM " + tableName
+                + " GROUP BY g HAVING COUNT(*) > 16 AND SUM(a) > 0");
+        assertSameResults("SELECT h, AVG(a), COUNT(DISTINCT g) FROM " + tableName + " WHERE k > 500 GROUP BY h");
+    }
+
+    @Test
+    public void testGroupByInSubPlan() throws Exception {
+        String tableName;
+        try (Connection conn = getConnection(1)) {
+            tableName = createTable(conn);
+        }
+        // The grouped sub-plan runs on a thread of the executor of the scans
+        String query = "SELECT t.k, s.c, s.total FROM " + tableName + " t JOIN "
+                + "(SELECT g, COUNT(*) c, SUM(a) total FROM " + tableName + " GROUP BY g) s "
+                + "ON t.g = s.g WHERE t.k < 100";
+        assertSameResults(query);
+    }
+}
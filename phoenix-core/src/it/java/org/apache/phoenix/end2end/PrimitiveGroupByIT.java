@@ -0,0 +1,146 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.phoenix.end2end;
+
+import static org.apache.phoenix.util.TestUtil.TEST_PROPERTIES;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Map;
+
+import org.apache.phoenix.query.QueryServices;
+import org.apache.phoenix.util.PropertiesUtil;
+import org.apache.phoenix.util.QueryUtil;
+import org.apache.phoenix.util.ReadOnlyProps;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import org.apache.phoenix.thirdparty.com.google.common.collect.Maps;
+
+/*
+ * Run in own cluster since it enables primitive aggregation and lowers
+ * QueryServices.MAX_MEMORY_SIZE_ATTRIB, which we wouldn't want for other
+ * tests sharing the same cluster.
+ */
+public class PrimitiveGroupByIT extends BaseOwnClusterIT {
+
+    // Every aggregate can be held in a primitive accumulator, over both sort orders
+    private static final String GROUP_BY = "SELECT g, COUNT(*), COUNT(a), SUM(a), SUM(b), SUM(i), "
+            + "MIN(a), MAX(a), MIN(b), MAX(b), MIN(i), MAX(i), MIN(d), MAX(d) FROM %s "
+            + "GROUP BY g ORDER BY g";
+
+    @BeforeClass
+    public static synchronized void doSetup() throws Exception {
+        Map<String, String> props = Maps.newHashMapWithExpectedSize(6);
+        props.put(QueryServices.GROUPBY_PRIMITIVE_AGGREGATION_ENABLED_ATTRIB, Boolean.toString(true));
+        props.put(QueryServices.GROUPBY_SPILLABLE_ATTRIB, Boolean.toString(true));
+        // Start small so that the table grows, and is handed over once it does not fit anymore
+        props.put(QueryServices.GROUPBY_ESTIMATED_DISTINCT_VALUES_ATTRIB, Integer.toString(100));
+        props.put(QueryServices.MAX_MEMORY_SIZE_ATTRIB, Integer.toString(100000));
+        props.put(QueryServices.STATS_COLLECTION_ENABLED, Boolean.toString(false));
+        // Must update config before starting server
+        setUpTestDriver(new ReadOnlyProps(props.entrySet().iterator()));
+    }
+
+    /**
+     * Creates a table aggregated through the group by cache, as g is not a leading row key
+     * column, and one with the same rows aggregated in row key order without it.
+     */
+    private static String[] createTables(Connection conn, int nRows, int nGroups) throws SQLException {
+        String unordered = generateUniqueName();
+        String ordered = generateUniqueName();
+        conn.createStatement().execute("CREATE TABLE " + unordered + " (id INTEGER NOT NULL, "
+                + "d INTEGER NOT NULL, g INTEGER, a BIGINT, b DOUBLE, i INTEGER "
+                + "CONSTRAINT pk PRIMARY KEY (id, d DESC))");
+        conn.createStatement().execute("CREATE TABLE " + ordered + " (g INTEGER NOT NULL, "
+                + "id INTEGER NOT NULL, d INTEGER NOT NULL, a BIGINT, b DOUBLE, i INTEGER "
+                + "CONSTRAINT pk PRIMARY KEY (g, id, d DESC))");
+        for (String tableName : new String[] { unordered, ordered }) {
+            PreparedStatement stmt = conn.prepareStatement("UPSERT INTO " + tableName
+                    + " (id, d, g, a, b, i) VALUES (?, ?, ?, ?, ?, ?)");
+            for (int id = 0; id < nRows; id++) {
+                int g = id % nGroups;
+                stmt.setInt(1, id);
+                stmt.setInt(2, nRows - id);
+                stmt.setInt(3, g);
+                // The last group has no values for a, so its SUM, MIN and MAX are null
+                if (g == nGroups - 1 || id % 7 == 0) {
+                    stmt.setNull(4, Types.BIGINT);
+                } else {
+                    stmt.setLong(4, id - nRows / 2);
+                }
+                // Exact in binary, so that the sums do not depend on the order of the rows
+                stmt.setDouble(5, (id - nRows / 3) / 4.0);
+                stmt.setInt(6, id * 31 % 101 - 50);
+                stmt.executeUpdate();
+                if (id % 1000 == 0) {
+                    conn.commit();
+                }
+            }
+            conn.commit();
+        }
+        return new String[] { unordered, ordered };
+    }
+
+    private static void assertSameResults(int nRows, int nGroups) throws SQLException {
+        try (Connection conn = DriverManager.getConnection(getUrl(),
+                PropertiesUtil.deepCopy(TEST_PROPERTIES))) {
+            conn.setAutoCommit(false);
+            String[] tableNames = createTables(conn, nRows, nGroups);
+            String query = String.format(GROUP_BY, tableNames[0]);
+            String expectedQuery = String.format(GROUP_BY, tableNames[1]);
+            assertTrue(QueryUtil.getExplainPlan(conn.createStatement().executeQuery("EXPLAIN " + query))
+                    .contains("SERVER AGGREGATE INTO DISTINCT ROWS BY"));
+            assertTrue(QueryUtil.getExplainPlan(conn.createStatement().executeQuery("EXPLAIN " + expectedQuery))
+                    .contains("SERVER AGGREGATE INTO ORDERED DISTINCT ROWS BY"));
+
+            ResultSet rs = conn.createStatement().executeQuery(query);
+            ResultSet expected = conn.createStatement().executeQuery(expectedQuery);
+            int columnCount = rs.getMetaData().getColumnCount();
+            int count = 0;
+            while (expected.next()) {
+                assertTrue(rs.next());
+                for (int i = 1; i <= columnCount; i++) {
+                    assertEquals("Column " + i + " of group " + expected.getInt(1),
+                            expected.getObject(i), rs.getObject(i));
+                }
+                count++;
+            }
+            assertFalse(rs.next());
+            assertEquals(nGroups, count);
+        }
+    }
+
+    @Test
+    public void testSameResultsAsAggregators() throws Exception {
+        assertSameResults(1000, 20);
+    }
+
+    @Test
+    public void testSameResultsAfterHandOver() throws Exception {
+        // More groups than fit in memory, so they are moved to the spillable cache
+        assertSameResults(9000, 3000);
+    }
+}
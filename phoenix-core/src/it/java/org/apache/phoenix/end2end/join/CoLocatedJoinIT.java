@@ -0,0 +1,152 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.phoenix.end2end.join;
+
+import static org.apache.phoenix.util.TestUtil.TEST_PROPERTIES;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.phoenix.end2end.ParallelStatsDisabledIT;
+import org.apache.phoenix.query.QueryServices;
+import org.apache.phoenix.util.PropertiesUtil;
+import org.apache.phoenix.util.QueryUtil;
+import org.junit.Test;
+
+public class CoLocatedJoinIT extends ParallelStatsDisabledIT {
+    private static final String[] ORGS = new String[] { "A00", "B00", "B50", "C00", "D00", "E00" };
+    private static final int ORDERS_PER_ORG = 30;
+
+    private static Connection getConnection(boolean coLocatedJoin) throws SQLException {
+        Properties props = PropertiesUtil.deepCopy(TEST_PROPERTIES);
+        props.setProperty(QueryServices.CO_LOCATED_JOIN_ENABLED_ATTRIB, Boolean.toString(coLocatedJoin));
+        return DriverManager.getConnection(getUrl(), props);
+    }
+
+    /**
+     * Creates an orders and a lines table sharing their leading row key columns, split into
+     * regions at different keys
+     */
+    private static String[] createTables(Connection conn) throws SQLException {
+        String orders = generateUniqueName();
+        String lines = generateUniqueName();
+        conn.createStatement().execute("CREATE TABLE " + orders + " (org_id CHAR(3) NOT NULL, "
+                + "order_id VARCHAR NOT NULL, amount INTEGER "
+                + "CONSTRAINT pk PRIMARY KEY (org_id, order_id)) SPLIT ON ('B00', 'D00')");
+        conn.createStatement().execute("CREATE TABLE " + lines + " (org_id CHAR(3) NOT NULL, "
+                + "order_id VARCHAR NOT NULL, line_id INTEGER NOT NULL, quantity INTEGER "
+                + "CONSTRAINT pk PRIMARY KEY (org_id, order_id, line_id)) "
+                + "SPLIT ON ('A00', 'B50', 'C00o1', 'C00o2', 'E00')");
+        PreparedStatement orderStmt = conn.prepareStatement("UPSERT INTO " + orders + " VALUES (?, ?, ?)");
+        PreparedStatement lineStmt = conn.prepareStatement("UPSERT INTO " + lines + " VALUES (?, ?, ?, ?)");
+        for (int org = 0; org < ORGS.length; org++) {
+            for (int order = 0; order < ORDERS_PER_ORG; order++) {
+                // Orders of an org share a prefix with each other, e.g. o1, o10, o11
+                String orderId = "o" + order;
+                orderStmt.setString(1, ORGS[org]);
+                orderStmt.setString(2, orderId);
+                orderStmt.setInt(3, order % 4);
+                orderStmt.executeUpdate();
+                // Some orders have no lines, and the lines of the last org have no order
+                for (int line = 0; line < order % 4; line++) {
+                    lineStmt.setString(1, ORGS[org]);
+                    lineStmt.setString(2, orderId);
+                    lineStmt.setInt(3, line);
+                    lineStmt.setInt(4, org * 100 + order * 10 + line);
+                    lineStmt.executeUpdate();
+                }
+            }
+            conn.commit();
+        }
+        for (int line = 0; line < 5; line++) {
+            lineStmt.setString(1, "F00");
+            lineStmt.setString(2, "o" + line);
+            lineStmt.setInt(3, line);
+            lineStmt.setInt(4, line);
+            lineStmt.executeUpdate();
+        }
+        conn.commit();
+        return new String[] { orders, lines };
+    }
+
+    private static List<List<Object>> getRows(Connection conn, String query) throws SQLException {
+        List<List<Object>> rows = new ArrayList<List<Object>>();
+        ResultSet rs = conn.createStatement().executeQuery(query);
+        int columnCount = rs.getMetaData().getColumnCount();
+        while (rs.next()) {
+            List<Object> row = new ArrayList<Object>(columnCount);
+            for (int i = 1; i <= columnCount; i++) {
+                row.add(rs.getObject(i));
+            }
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    private static void assertSameResults(String query, String keyColumns, boolean isEmpty) throws SQLException {
+        try (Connection conn = getConnection(true); Connection hashConn = getConnection(false)) {
+            String plan = QueryUtil.getExplainPlan(conn.createStatement().executeQuery("EXPLAIN " + query));
+            assertTrue(plan, plan.contains("CO-LOCATED") && plan.contains(keyColumns));
+            plan = QueryUtil.getExplainPlan(hashConn.createStatement().executeQuery("EXPLAIN " + query));
+            assertFalse(plan, plan.contains("CO-LOCATED"));
+
+            List<List<Object>> expected = getRows(hashConn, query);
+            assertEquals(isEmpty, expected.isEmpty());
+            assertEquals(expected, getRows(conn, query));
+        }
+    }
+
+    @Test
+    public void testJoinAcrossRegions() throws Exception {
+        String[] tableNames;
+        try (Connection conn = getConnection(false)) {
+            tableNames = createTables(conn);
+        }
+        String orders = tableNames[0];
+        String lines = tableNames[1];
+
+        assertSameResults("SELECT o.org_id, o.order_id, l.line_id, l.quantity FROM " + orders + " o "
+                + "JOIN " + lines + " l ON o.org_id = l.org_id AND o.order_id = l.order_id "
+                + "ORDER BY o.org_id, o.order_id, l.line_id", "ON 2 KEY COLUMNS", false);
+        assertSameResults("SELECT o.org_id, o.order_id, l.line_id, l.quantity FROM " + orders + " o "
+                + "LEFT JOIN " + lines + " l ON o.org_id = l.org_id AND o.order_id = l.order_id "
+                + "ORDER BY o.org_id, o.order_id, l.line_id", "ON 2 KEY COLUMNS", false);
+        // Many right-hand rows per left-hand row prefix, filtered by the other join key
+        assertSameResults("SELECT o.org_id, o.order_id, l.order_id, l.line_id FROM " + orders + " o "
+                + "JOIN " + lines + " l ON o.org_id = l.org_id AND o.amount = l.line_id "
+                + "ORDER BY o.org_id, o.order_id, l.order_id, l.line_id", "ON 1 KEY COLUMN", false);
+        // Right-hand where clause
+        assertSameResults("SELECT o.org_id, o.order_id, l.quantity FROM " + orders + " o "
+                + "JOIN " + lines + " l ON o.org_id = l.org_id AND o.order_id = l.order_id "
+                + "WHERE l.quantity > 250 AND l.org_id <= 'D00' "
+                + "ORDER BY o.org_id, o.order_id, l.quantity", "ON 2 KEY COLUMNS", false);
+        // No right-hand rows within the key range of the left-hand rows
+        assertSameResults("SELECT o.org_id, o.order_id FROM " + orders + " o "
+                + "JOIN " + lines + " l ON o.org_id = l.org_id AND o.order_id = l.order_id "
+                + "WHERE l.quantity < 0", "ON 2 KEY COLUMNS", true);
+    }
+}
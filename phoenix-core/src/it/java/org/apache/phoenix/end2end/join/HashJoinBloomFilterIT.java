@@ -0,0 +1,182 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.phoenix.end2end.join;
+
+import static org.apache.phoenix.util.TestUtil.TEST_PROPERTIES;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.hadoop.hbase.filter.Filter;
+import org.apache.hadoop.hbase.filter.FilterList;
+import org.apache.phoenix.end2end.ParallelStatsDisabledIT;
+import org.apache.phoenix.filter.HashJoinBloomFilter;
+import org.apache.phoenix.jdbc.PhoenixResultSet;
+import org.apache.phoenix.query.QueryServices;
+import org.apache.phoenix.util.PropertiesUtil;
+import org.junit.Test;
+
+public class HashJoinBloomFilterIT extends ParallelStatsDisabledIT {
+    private static final int PROBE_ROWS = 3000;
+    private static final int BUILD_ROWS = 40;
+
+    private static Connection getConnection(boolean useBloomFilter, int maxKeys) throws SQLException {
+        Properties props = PropertiesUtil.deepCopy(TEST_PROPERTIES);
+        props.setProperty(QueryServices.HASH_JOIN_BLOOM_FILTER_ENABLED_ATTRIB, Boolean.toString(useBloomFilter));
+        props.setProperty(QueryServices.HASH_JOIN_BLOOM_FILTER_MAX_KEYS_ATTRIB, Integer.toString(maxKeys));
+        return DriverManager.getConnection(getUrl(), props);
+    }
+
+    /**
+     * Creates a probe table joined on non primary key columns to a much smaller build table,
+     * so that most probe rows have no match and a few pass the Bloom filter as false positives
+     */
+    private static String[] createTables(Connection conn) throws SQLException {
+        String probe = generateUniqueName();
+        String build = generateUniqueName();
+        conn.createStatement().execute("CREATE TABLE " + probe + " (id INTEGER NOT NULL PRIMARY KEY, "
+                + "k VARCHAR, n BIGINT, v INTEGER) SPLIT ON (1000, 2000)");
+        conn.createStatement().execute("CREATE TABLE " + build + " (id INTEGER NOT NULL PRIMARY KEY, "
+                + "k VARCHAR, n BIGINT, w INTEGER)");
+        PreparedStatement probeStmt = conn.prepareStatement("UPSERT INTO " + probe + " VALUES (?, ?, ?, ?)");
+        for (int i = 0; i < PROBE_ROWS; i++) {
+            probeStmt.setInt(1, i);
+            // Some probe rows have null key values
+            if (i % 13 == 0) {
+                probeStmt.setNull(2, Types.VARCHAR);
+            } else {
+                probeStmt.setString(2, "k" + i % 500);
+            }
+            if (i % 17 == 0) {
+                probeStmt.setNull(3, Types.BIGINT);
+            } else {
+                probeStmt.setLong(3, i % 300);
+            }
+            probeStmt.setInt(4, i);
+            probeStmt.executeUpdate();
+        }
+        conn.commit();
+        PreparedStatement buildStmt = conn.prepareStatement("UPSERT INTO " + build + " VALUES (?, ?, ?, ?)");
+        for (int i = 0; i < BUILD_ROWS; i++) {
+            buildStmt.setInt(1, i);
+            buildStmt.setString(2, "k" + i * 7);
+            if (i % 10 == 0) {
+                buildStmt.setNull(3, Types.BIGINT);
+            } else {
+                buildStmt.setLong(3, i * 7 % 300);
+            }
+            buildStmt.setInt(4, i);
+            buildStmt.executeUpdate();
+        }
+        conn.commit();
+        return new String[] { probe, build };
+    }
+
+    private static boolean hasBloomFilter(Filter filter) {
+        if (filter instanceof HashJoinBloomFilter) {
+            return true;
+        }
+        if (filter instanceof FilterList) {
+            for (Filter f : ((FilterList) filter).getFilters()) {
+                if (hasBloomFilter(f)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static List<List<Object>> getRows(Connection conn, String query, boolean hasBloomFilter)
+            throws SQLException {
+        List<List<Object>> rows = new ArrayList<List<Object>>();
+        ResultSet rs = conn.createStatement().executeQuery(query);
+        int columnCount = rs.getMetaData().getColumnCount();
+        while (rs.next()) {
+            List<Object> row = new ArrayList<Object>(columnCount);
+            for (int i = 1; i <= columnCount; i++) {
+                row.add(rs.getObject(i));
+            }
+            rows.add(row);
+        }
+        assertEquals(query, hasBloomFilter,
+                hasBloomFilter(rs.unwrap(PhoenixResultSet.class).getContext().getScan().getFilter()));
+        return rows;
+    }
+
+    private static void assertSameResults(String query, boolean hasBloomFilter, int maxKeys) throws SQLException {
+        try (Connection conn = getConnection(true, maxKeys); Connection plainConn = getConnection(false, maxKeys)) {
+            List<List<Object>> expected = getRows(plainConn, query, false);
+            assertFalse(query, expected.isEmpty());
+            // Run twice, as the filter of the first execution is replaced by the second one
+            assertEquals(query, expected, getRows(conn, query, hasBloomFilter));
+            assertEquals(query, expected, getRows(conn, query, hasBloomFilter));
+        }
+    }
+
+    @Test
+    public void testSameResultsWithBloomFilter() throws Exception {
+        String[] tableNames;
+        try (Connection conn = getConnection(false, 0)) {
+            tableNames = createTables(conn);
+        }
+        String probe = tableNames[0];
+        String build = tableNames[1];
+
+        // Variable width key, with null values on the probe side
+        assertSameResults("SELECT p.id, p.k, b.w FROM " + probe + " p JOIN " + build + " b ON p.k = b.k "
+                + "ORDER BY p.id, b.w", true, 1000);
+        // Variable and fixed width key, with null values on both sides
+        assertSameResults("SELECT p.id, p.k, p.n, b.w FROM " + probe + " p JOIN " + build + " b "
+                + "ON p.k = b.k AND p.n = b.n ORDER BY p.id, b.w", true, 1000);
+        // Key evaluated from probe side columns, with a where clause on both sides
+        assertSameResults("SELECT p.id, b.w FROM " + probe + " p JOIN " + build + " b "
+                + "ON p.n + 1 = b.n + 1 WHERE p.v > 100 AND b.w < 30 ORDER BY p.id, b.w", true, 1000);
+        // Semi join
+        assertSameResults("SELECT id, k FROM " + probe + " WHERE k IN (SELECT k FROM " + build + ") "
+                + "ORDER BY id", true, 1000);
+        // Rows without a match are kept by outer and anti joins
+        assertSameResults("SELECT p.id, b.w FROM " + probe + " p LEFT JOIN " + build + " b ON p.k = b.k "
+                + "ORDER BY p.id, b.w", false, 1000);
+        assertSameResults("SELECT id, k FROM " + probe + " WHERE k NOT IN (SELECT k FROM " + build + " "
+                + "WHERE k IS NOT NULL) ORDER BY id", false, 1000);
+        // More build side keys than a Bloom filter is built for
+        assertSameResults("SELECT p.id, p.k, b.w FROM " + probe + " p JOIN " + build + " b ON p.k = b.k "
+                + "ORDER BY p.id, b.w", false, BUILD_ROWS / 2);
+    }
+
+    @Test
+    public void testEmptyBuildSide() throws Exception {
+        try (Connection conn = getConnection(false, 0); Connection bloomConn = getConnection(true, 1000)) {
+            String[] tableNames = createTables(conn);
+            String query = "SELECT p.id FROM " + tableNames[0] + " p JOIN " + tableNames[1] + " b "
+                    + "ON p.k = b.k WHERE b.w < 0";
+            assertTrue(getRows(conn, query, false).isEmpty());
+            assertTrue(getRows(bloomConn, query, true).isEmpty());
+        }
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.phoenix.end2end.join;
+
+import static org.apache.phoenix.util.TestUtil.TEST_PROPERTIES;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.phoenix.end2end.ParallelStatsDisabledIT;
+import org.apache.phoenix.query.QueryServices;
+import org.apache.phoenix.util.PropertiesUtil;
+import org.apache.phoenix.util.QueryUtil;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SortMergeJoinExistenceProbeIT extends ParallelStatsDisabledIT {
+    private static final String[] ORGS = new String[] { "A00", "B00", "C00", "D00", "E00" };
+    private static final int N_ORDERS = 200;
+
+    private String orders;
+    private String lines;
+
+    private static Connection getConnection(boolean existenceProbe) throws SQLException {
+        Properties props = PropertiesUtil.deepCopy(TEST_PROPERTIES);
+        props.setProperty(QueryServices.SORT_MERGE_JOIN_EXISTENCE_PROBE_ENABLED_ATTRIB,
+                Boolean.toString(existenceProbe));
+        // Several batches of left-hand rows
+        props.setProperty(QueryServices.SORT_MERGE_JOIN_EXISTENCE_PROBE_BATCH_SIZE_ATTRIB, Integer.toString(7));
+        return DriverManager.getConnection(getUrl(), props);
+    }
+
+    /**
+     * Creates an orders table whose join columns are nullable, and a lines table keyed on the
+     * same columns, split into several regions
+     */
+    @Before
+    public void createTables() throws SQLException {
+        orders = generateUniqueName();
+        lines = generateUniqueName();
+        try (Connection conn = getConnection(false)) {
+            conn.createStatement().execute("CREATE TABLE " + orders + " (id INTEGER NOT NULL PRIMARY KEY, "
+                    + "org_id CHAR(3), order_id VARCHAR, line_id INTEGER, short_org_id CHAR(3))");
+            conn.createStatement().execute("CREATE TABLE " + lines + " (org_id CHAR(3) NOT NULL, "
+                    + "order_id VARCHAR NOT NULL, line_id INTEGER NOT NULL, quantity INTEGER "
+                    + "CONSTRAINT pk PRIMARY KEY (org_id, order_id, line_id)) SPLIT ON ('B00', 'C00o1', 'D00')");
+            PreparedStatement orderStmt = conn.prepareStatement("UPSERT INTO " + orders + " VALUES (?, ?, ?, ?, ?)");
+            for (int id = 0; id < N_ORDERS; id++) {
+                orderStmt.setInt(1, id);
+                // Null left-hand keys, and orgs without any line
+                if (id % 13 == 0) {
+                    orderStmt.setNull(2, Types.CHAR);
+                } else {
+                    orderStmt.setString(2, id % 17 == 0 ? "F00" : ORGS[id % ORGS.length]);
+                }
+                if (id % 11 == 0) {
+                    orderStmt.setNull(3, Types.VARCHAR);
+                } else {
+                    // Order ids sharing a prefix with each other, e.g. o1 and o10
+                    orderStmt.setString(3, "o" + (id % 23));
+                }
+                orderStmt.setInt(4, id % 4);
+                // Values shorter than the fixed width of the column, which are padded
+                orderStmt.setString(5, id % 3 == 0 ? ORGS[id % ORGS.length].substring(0, 2) : ORGS[id % ORGS.length]);
+                orderStmt.executeUpdate();
+            }
+            PreparedStatement lineStmt = conn.prepareStatement("UPSERT INTO " + lines + " VALUES (?, ?, ?, ?)");
+            for (int org = 0; org < ORGS.length; org++) {
+                // Every other order of an org has lines, and only some of the line ids
+                for (int order = org % 2; order < 23; order += 2) {
+                    for (int line = 0; line < order % 3 + 1; line++) {
+                        lineStmt.setString(1, ORGS[org]);
+                        lineStmt.setString(2, "o" + order);
+                        lineStmt.setInt(3, line);
+                        lineStmt.setInt(4, org * 10 + line);
+                        lineStmt.executeUpdate();
+                    }
+                }
+            }
+            conn.commit();
+        }
+    }
+
+    private static List<String> getRows(Connection conn, String query) throws SQLException {
+        List<String> rows = new ArrayList<String>();
+        ResultSet rs = conn.createStatement().executeQuery(query);
+        int columnCount = rs.getMetaData().getColumnCount();
+        while (rs.next()) {
+            StringBuilder row = new StringBuilder();
+            for (int i = 1; i <= columnCount; i++) {
+                row.append(rs.getObject(i)).append(',');
+            }
+            rows.add(row.toString());
+        }
+        Collections.sort(rows);
+        return rows;
+    }
+
+    private void assertSameResults(String where, String keyColumns) throws SQLException {
+        String query = "SELECT /*+ USE_SORT_MERGE_JOIN */ o.id, o.org_id, o.order_id FROM " + orders + " o WHERE "
+                + String.format(where, lines);
+        try (Connection conn = getConnection(true); Connection mergeConn = getConnection(false)) {
+            String plan = QueryUtil.getExplainPlan(conn.createStatement().executeQuery("EXPLAIN " + query));
+            assertTrue(plan, plan.contains("EXISTENCE PROBE OVER " + lines + " ON " + keyColumns));
+            plan = QueryUtil.getExplainPlan(mergeConn.createStatement().executeQuery("EXPLAIN " + query));
+            assertFalse(plan, plan.contains("EXISTENCE PROBE"));
+
+            List<String> expected = getRows(mergeConn, query);
+            assertFalse(expected.isEmpty());
+            assertEquals(expected, getRows(conn, query));
+        }
+    }
+
+    @Test
+    public void testFixedWidthKey() throws Exception {
+        assertSameResults("o.org_id IN (SELECT org_id FROM %s)", "1 KEY COLUMN");
+        assertSameResults("o.org_id NOT IN (SELECT org_id FROM %s)", "1 KEY COLUMN");
+    }
+
+    @Test
+    public void testVarWidthKeyPrefix() throws Exception {
+        assertSameResults("(o.org_id, o.order_id) IN (SELECT org_id, order_id FROM %s)", "2 KEY COLUMNS");
+        assertSameResults("(o.org_id, o.order_id) NOT IN (SELECT org_id, order_id FROM %s)", "2 KEY COLUMNS");
+        // In another order than the row key columns
+        assertSameResults("(o.order_id, o.org_id) IN (SELECT order_id, org_id FROM %s)", "2 KEY COLUMNS");
+    }
+
+    @Test
+    public void testFullRowKey() throws Exception {
+        assertSameResults("(o.org_id, o.order_id, o.line_id) IN (SELECT org_id, order_id, line_id FROM %s)",
+                "3 KEY COLUMNS");
+        assertSameResults("(o.org_id, o.order_id, o.line_id) NOT IN (SELECT org_id, order_id, line_id FROM %s)",
+                "3 KEY COLUMNS");
+    }
+
+    @Test
+    public void testRightHandWhere() throws Exception {
+        // On a non key column
+        assertSameResults("(o.org_id, o.order_id) IN (SELECT org_id, order_id FROM %s WHERE quantity > 20)",
+                "2 KEY COLUMNS");
+        // On the row key, turned into a skip scan of the right-hand table
+        assertSameResults("(o.org_id, o.order_id) IN (SELECT org_id, order_id FROM %s "
+                + "WHERE org_id IN ('A00', 'C00', 'E00') AND line_id > 0)", "2 KEY COLUMNS");
+        assertSameResults("o.org_id NOT IN (SELECT org_id FROM %s WHERE org_id >= 'C00' AND quantity > 1)",
+                "1 KEY COLUMN");
+    }
+
+    @Test
+    public void testPaddedFixedWidthKey() throws Exception {
+        assertSameResults("o.short_org_id IN (SELECT org_id FROM %s)", "1 KEY COLUMN");
+        assertSameResults("o.short_org_id NOT IN (SELECT org_id FROM %s)", "1 KEY COLUMN");
+    }
+}
@@ -21,9 +21,13 @@ package org.apache.phoenix.cache.aggcache;
 import static org.apache.phoenix.query.QueryConstants.AGG_TIMESTAMP;
 import static org.apache.phoenix.query.QueryConstants.SINGLE_COLUMN;
 import static org.apache.phoenix.query.QueryConstants.SINGLE_COLUMN_FAMILY;
+import static org.apache.phoenix.query.QueryServices.GROUPBY_ADAPTIVE_SPILL_ENABLED_ATTRIB;
 import static org.apache.phoenix.query.QueryServices.GROUPBY_MAX_CACHE_SIZE_ATTRIB;
+import static org.apache.phoenix.query.QueryServices.GROUPBY_MAX_SPILL_FILES_ATTRIB;
 import static org.apache.phoenix.query.QueryServices.GROUPBY_SPILL_FILES_ATTRIB;
+import static org.apache.phoenix.query.QueryServicesOptions.DEFAULT_GROUPBY_ADAPTIVE_SPILL_ENABLED;
 import static org.apache.phoenix.query.QueryServicesOptions.DEFAULT_GROUPBY_MAX_CACHE_MAX;
+import static org.apache.phoenix.query.QueryServicesOptions.DEFAULT_GROUPBY_MAX_SPILL_FILES;
 import static org.apache.phoenix.query.QueryServicesOptions.DEFAULT_GROUPBY_SPILL_FILES;
 
 import java.io.IOException;
@@ -32,6 +36,8 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hbase.Cell;
@@ -40,7 +46,6 @@ import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
 import org.apache.hadoop.hbase.regionserver.RegionScanner;
 import org.apache.hadoop.hbase.util.Bytes;
 import org.apache.phoenix.cache.GlobalCache;
-import org.apache.phoenix.cache.TenantCache;
 import org.apache.phoenix.cache.aggcache.SpillManager.CacheEntry;
 import org.apache.phoenix.coprocessor.BaseRegionScanner;
 import org.apache.phoenix.coprocessor.GroupByCache;
@@ -49,12 +54,17 @@ import org.apache.phoenix.expression.aggregator.Aggregator;
 import org.apache.phoenix.expression.aggregator.ServerAggregators;
 import org.apache.phoenix.hbase.index.util.ImmutableBytesPtr;
 import org.apache.phoenix.memory.InsufficientMemoryException;
+import org.apache.phoenix.memory.MemoryManager;
 import org.apache.phoenix.memory.MemoryManager.MemoryChunk;
+import org.apache.phoenix.schema.tuple.Tuple;
 import org.apache.phoenix.util.Closeables;
 import org.apache.phoenix.util.PhoenixKeyValueUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import org.apache.phoenix.thirdparty.com.google.common.annotations.VisibleForTesting;
+import org.apache.phoenix.thirdparty.com.google.common.collect.MapMaker;
+
 
 /**
  * The main entry point is in GroupedAggregateRegionObserver. It instantiates a SpillableGroupByCache and invokes a
@@ -89,6 +99,10 @@ import org.slf4j.LoggerFactory;
  * bloomFilter to prevent page-in operations in case an element has never been spilled before. The deserialization is
  * only triggered when a key a loaded back into the LRU cache. The aggregators are returned from the LRU cache and the
  * next value is computed. In case the key is not found on any page, the Loader create new aggregators for it.
+ * When adaptive spilling is enabled, the LRU cache is bounded by its fair share of the memory available to all
+ * concurrent spillable group by caches of the same tenant instead of growing until memory runs out, and the number
+ * of spill partitions is chosen when spilling starts from the number of groups seen so far, so that high cardinality
+ * aggregations spread their spilled groups over more spill files with fewer page faults each.
  */
 
 public class SpillableGroupByCache implements GroupByCache {
@@ -98,6 +112,14 @@ public class SpillableGroupByCache implements GroupByCache {
     // Min size of 1st level main memory cache in bytes --> lower bound
     private static final int SPGBY_CACHE_MIN_SIZE = 4096; // 4K
 
+    // Bytes of spilled groups per spill partition targeted by adaptive spilling
+    private static final long SPILL_PARTITION_SIZE = 64L * 1024L * 1024L; // 64M
+
+    // Number of adaptive spillable group by caches currently open per memory manager, i.e. per tenant,
+    // as the memory each cache takes its share of is the memory available to its tenant
+    private static final ConcurrentMap<MemoryManager, AtomicInteger> ACTIVE_ADAPTIVE_CACHES =
+            new MapMaker().weakKeys().makeMap();
+
     // TODO Generally better to use Collection API with generics instead of
     // array types
     private final LinkedHashMap<ImmutableBytesWritable, Aggregator[]> cache;
@@ -106,6 +128,11 @@ public class SpillableGroupByCache implements GroupByCache {
     private final ServerAggregators aggregators;
     private final RegionCoprocessorEnvironment env;
     private final MemoryChunk chunk;
+    private final MemoryManager memoryManager;
+    private final boolean adaptiveSpill;
+    private final AtomicInteger activeAdaptiveCaches;
+    private final int estSizeNum;
+    private boolean closed = false;
 
     /*
      * inner class that makes cache queryable for other classes that should not get the full instance. Queryable view of
@@ -127,32 +154,50 @@ public class SpillableGroupByCache implements GroupByCache {
      */
     public SpillableGroupByCache(final RegionCoprocessorEnvironment env, ImmutableBytesPtr tenantId,
             ServerAggregators aggs, final int estSizeNum) {
+        this(env, GlobalCache.getTenantCache(env, tenantId).getMemoryManager(), aggs, estSizeNum);
+    }
+
+    @VisibleForTesting
+    SpillableGroupByCache(final RegionCoprocessorEnvironment env, MemoryManager memoryManager,
+            ServerAggregators aggs, final int estSizeNum) {
         totalNumElements = 0;
         this.aggregators = aggs;
         this.env = env;
+        this.estSizeNum = estSizeNum;
 
         final int estValueSize = aggregators.getEstimatedByteSize();
-        final TenantCache tenantCache = GlobalCache.getTenantCache(env, tenantId);
 
         // Compute Map initial map
         final Configuration conf = env.getConfiguration();
         final long maxCacheSizeConf = conf.getLong(GROUPBY_MAX_CACHE_SIZE_ATTRIB, DEFAULT_GROUPBY_MAX_CACHE_MAX);
         final int numSpillFilesConf = conf.getInt(GROUPBY_SPILL_FILES_ATTRIB, DEFAULT_GROUPBY_SPILL_FILES);
-
-        final int maxSizeNum = (int)(maxCacheSizeConf / estValueSize);
+        final int maxSpillFilesConf = conf.getInt(GROUPBY_MAX_SPILL_FILES_ATTRIB, DEFAULT_GROUPBY_MAX_SPILL_FILES);
+        this.adaptiveSpill = conf.getBoolean(GROUPBY_ADAPTIVE_SPILL_ENABLED_ATTRIB, DEFAULT_GROUPBY_ADAPTIVE_SPILL_ENABLED);
+        this.memoryManager = memoryManager;
+        this.activeAdaptiveCaches = adaptiveSpill ? getActiveAdaptiveCaches(memoryManager) : null;
+
+        // Leave room for the other caches aggregating concurrently, including this one
+        final long maxSizeBytes = adaptiveSpill
+                ? Math.min(maxCacheSizeConf,
+                        getFairShare(memoryManager.getAvailableMemory(), activeAdaptiveCaches.get() + 1))
+                : maxCacheSizeConf;
+        final int maxSizeNum = (int)(maxSizeBytes / estValueSize);
         final int minSizeNum = (SPGBY_CACHE_MIN_SIZE / estValueSize);
 
         // use upper and lower bounds for the cache size
         final int maxCacheSize = Math.max(minSizeNum, Math.min(maxSizeNum, estSizeNum));
         final long estSize = GroupedAggregateRegionObserver.sizeOfUnorderedGroupByMap(maxCacheSize, estValueSize);
         try {
-            this.chunk = tenantCache.getMemoryManager().allocate(estSize);
+            this.chunk = memoryManager.allocate(estSize);
         } catch (InsufficientMemoryException ime) {
             LOGGER.error("Requested Map size exceeds memory limit, " +
                     "please decrease max size via config paramter: "
                     + GROUPBY_MAX_CACHE_SIZE_ATTRIB);
             throw ime;
         }
+        if (adaptiveSpill) {
+            activeAdaptiveCaches.incrementAndGet();
+        }
 
         if (LOGGER.isDebugEnabled()) {
             LOGGER.debug("Instantiating LRU groupby cache of element size: " + maxCacheSize);
@@ -166,13 +211,20 @@ public class SpillableGroupByCache implements GroupByCache {
             @Override
             protected boolean removeEldestEntry(Map.Entry<ImmutableBytesWritable, Aggregator[]> eldest) {
                 if (!spill && size() > cacheSize) { // increase allocation
-                    cacheSize *= 1.5f;
-                    long estSize = GroupedAggregateRegionObserver.sizeOfUnorderedGroupByMap(cacheSize, estValueSize);
-                    try {
-                        chunk.resize(estSize);
-                    } catch (InsufficientMemoryException im) {
-                        // Cannot extend Map anymore, start spilling
+                    int newCacheSize = (int)(cacheSize * 1.5f);
+                    long estSize = GroupedAggregateRegionObserver.sizeOfUnorderedGroupByMap(newCacheSize, estValueSize);
+                    if (adaptiveSpill && estSize > getFairShare(chunk.getSize() + memoryManager.getAvailableMemory(),
+                            activeAdaptiveCaches.get())) {
+                        // Growing further would starve the other aggregations, start spilling
                         spill = true;
+                    } else {
+                        try {
+                            chunk.resize(estSize);
+                            cacheSize = newCacheSize;
+                        } catch (InsufficientMemoryException im) {
+                            // Cannot extend Map anymore, start spilling
+                            spill = true;
+                        }
                     }
                 }
 
@@ -184,7 +236,15 @@ public class SpillableGroupByCache implements GroupByCache {
                             //
                             // Only create spill data structs if LRU
                             // cache is too small
-                            spillManager = new SpillManager(numSpillFilesConf, aggregators, env.getConfiguration(),
+                            int numSpillFiles = adaptiveSpill
+                                    ? getSpillPartitionCount(getExpectedSpilledBytes(cacheSize, estValueSize),
+                                            numSpillFilesConf, maxSpillFilesConf)
+                                    : numSpillFilesConf;
+                            if (LOGGER.isDebugEnabled()) {
+                                LOGGER.debug("Spilling groupby cache of element size " + cacheSize
+                                        + " into " + numSpillFiles + " spill files");
+                            }
+                            spillManager = new SpillManager(numSpillFiles, aggregators, env.getConfiguration(),
                                     new QueryCache());
                         }
                         spillManager.spill(eldest.getKey(), eldest.getValue());
@@ -204,6 +264,53 @@ public class SpillableGroupByCache implements GroupByCache {
         };
     }
 
+    /**
+     * Counter of the adaptive caches open on the given memory manager
+     */
+    @VisibleForTesting
+    static AtomicInteger getActiveAdaptiveCaches(MemoryManager memoryManager) {
+        AtomicInteger count = ACTIVE_ADAPTIVE_CACHES.get(memoryManager);
+        if (count == null) {
+            AtomicInteger newCount = new AtomicInteger();
+            count = ACTIVE_ADAPTIVE_CACHES.putIfAbsent(memoryManager, newCount);
+            if (count == null) {
+                count = newCount;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Share of the given memory available to each of the given number of concurrent caches
+     */
+    static long getFairShare(long availableBytes, int numCaches) {
+        return availableBytes / Math.max(1, numCaches);
+    }
+
+    /**
+     * Estimates the bytes of the groups that will be spilled once spilling starts. At least as many
+     * groups as have been seen so far are expected to follow, more if the estimated number of
+     * distinct groups is larger still.
+     */
+    private long getExpectedSpilledBytes(int cacheSize, int estValueSize) {
+        long expectedSpilled = Math.max((long)estSizeNum - cacheSize, totalNumElements);
+        return expectedSpilled * estValueSize;
+    }
+
+    /**
+     * Number of spill partitions to spread the given number of spilled bytes over, between the
+     * configured number of spill files and the maximum
+     */
+    static int getSpillPartitionCount(long expectedSpilledBytes, int minSpillFiles, int maxSpillFiles) {
+        long count = (expectedSpilledBytes + SPILL_PARTITION_SIZE - 1) / SPILL_PARTITION_SIZE;
+        return (int)Math.max(minSpillFiles, Math.min(maxSpillFiles, count));
+    }
+
+    @VisibleForTesting
+    boolean isSpilling() {
+        return spillManager != null;
+    }
+
     /**
      * Size function returns the current number of cached elements
      */
@@ -253,6 +360,11 @@ public class SpillableGroupByCache implements GroupByCache {
         return rowAggregators;
     }
 
+    @Override
+    public void aggregate(ImmutableBytesPtr key, Tuple result) {
+        aggregators.aggregate(cache(key), result);
+    }
+
     /**
      * Iterator over the cache and the spilled data structures by returning CacheEntries. CacheEntries are either
      * extracted from the LRU cache or from the spillable data structures.The key/value tuples are returned in
@@ -330,6 +442,13 @@ public class SpillableGroupByCache implements GroupByCache {
      */
     @Override
     public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (adaptiveSpill) {
+            activeAdaptiveCaches.decrementAndGet();
+        }
         // Close spillable resources
         Closeables.closeQuietly(spillManager);
         Closeables.closeQuietly(chunk);
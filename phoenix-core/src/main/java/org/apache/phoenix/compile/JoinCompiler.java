@@ -23,6 +23,7 @@ import static org.apache.phoenix.schema.PTable.QualifierEncodingScheme.NON_ENCOD
 
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
@@ -32,6 +33,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 
 import org.apache.phoenix.thirdparty.com.google.common.collect.ImmutableList;
@@ -44,6 +46,8 @@ import org.apache.phoenix.expression.AndExpression;
 import org.apache.phoenix.expression.CoerceExpression;
 import org.apache.phoenix.expression.Expression;
 import org.apache.phoenix.expression.LiteralExpression;
+import org.apache.phoenix.expression.ProjectedColumnExpression;
+import org.apache.phoenix.expression.RowKeyColumnExpression;
 import org.apache.phoenix.expression.function.MinAggregateFunction;
 import org.apache.phoenix.jdbc.PhoenixConnection;
 import org.apache.phoenix.jdbc.PhoenixStatement;
@@ -1424,6 +1428,103 @@ public class JoinCompiler {
         return AndExpression.create(expressions);
     }
 
+    /**
+     * Returns the number of leading row key columns on which the given join conditions equate
+     * the rows of the two tables, or 0 if there are none. The rows of the right-hand table joining
+     * a row of the left-hand table then share its row key prefix, so both tables can be merged
+     * as they are scanned in row key order. Only unsalted, non multi-tenant tables are supported,
+     * as the salt byte is computed over the whole row key.
+     * @param lhsExpressions the join expressions of the left-hand table
+     * @param rhsExpressions the join expressions of the right-hand table
+     */
+    public static int getCoLocatedKeyPrefixLength(PTable lhsTable, PTable rhsTable,
+            List<Expression> lhsExpressions, List<Expression> rhsExpressions) {
+        if (!isCoLocatable(lhsTable) || !isCoLocatable(rhsTable)) {
+            return 0;
+        }
+        List<PColumn> lhsPKColumns = lhsTable.getPKColumns();
+        List<PColumn> rhsPKColumns = rhsTable.getPKColumns();
+        boolean[] joined = new boolean[Math.min(lhsPKColumns.size(), rhsPKColumns.size())];
+        for (int i = 0; i < lhsExpressions.size(); i++) {
+            int position = getPKSlotPosition(lhsExpressions.get(i), lhsTable);
+            if (position >= 0 && position < joined.length
+                    && position == getPKSlotPosition(rhsExpressions.get(i), rhsTable)) {
+                joined[position] = true;
+            }
+        }
+        int length = 0;
+        while (length < joined.length && joined[length]) {
+            PColumn lhsColumn = lhsPKColumns.get(length);
+            PColumn rhsColumn = rhsPKColumns.get(length);
+            if (lhsColumn.getDataType() != rhsColumn.getDataType()
+                    || lhsColumn.getSortOrder() != rhsColumn.getSortOrder()
+                    || !Objects.equals(lhsColumn.getMaxLength(), rhsColumn.getMaxLength())
+                    || !Objects.equals(lhsColumn.getScale(), rhsColumn.getScale())) {
+                break;
+            }
+            length++;
+        }
+        return length;
+    }
+
+    /**
+     * Returns, for each of the leading row key columns of the right-hand table of a semi or anti
+     * join, the index of the join key it is equated on, or null if the right-hand join keys are
+     * not exactly these row key columns, or if the left-hand keys are not encoded the same way.
+     * The left-hand keys can then be looked up as row key prefixes of the right-hand table.
+     */
+    public static int[] getExistenceProbeKeyOrder(PTable rhsTable, List<Expression> lhsExpressions,
+            List<Expression> rhsExpressions) {
+        List<PColumn> pkColumns = rhsTable.getPKColumns();
+        if (!isCoLocatable(rhsTable) || rhsExpressions.size() > pkColumns.size()) {
+            return null;
+        }
+        int[] keyOrder = new int[rhsExpressions.size()];
+        Arrays.fill(keyOrder, -1);
+        for (int i = 0; i < rhsExpressions.size(); i++) {
+            int position = getPKSlotPosition(rhsExpressions.get(i), rhsTable);
+            if (position < 0 || position >= keyOrder.length || keyOrder[position] >= 0) {
+                return null;
+            }
+            PColumn column = pkColumns.get(position);
+            Expression lhsExpression = lhsExpressions.get(i);
+            if (column.getSortOrder() != SortOrder.ASC
+                    || lhsExpression.getSortOrder() != SortOrder.ASC
+                    || lhsExpression.getDataType() != column.getDataType()
+                    || (column.getDataType().isFixedWidth()
+                            && !Objects.equals(lhsExpression.getMaxLength(), column.getMaxLength()))) {
+                return null;
+            }
+            keyOrder[position] = i;
+        }
+        return keyOrder;
+    }
+
+    private static boolean isCoLocatable(PTable table) {
+        return table.getType() == PTableType.TABLE
+                && table.getBucketNum() == null
+                && !table.isMultiTenant()
+                && !table.isTransactional()
+                && table.rowKeyOrderOptimizable();
+    }
+
+    private static int getPKSlotPosition(Expression expression, PTable table) {
+        if (expression instanceof RowKeyColumnExpression) {
+            return ((RowKeyColumnExpression) expression).getPosition();
+        }
+        if (expression instanceof ProjectedColumnExpression) {
+            PColumn column = ((ProjectedColumnExpression) expression).getColumn();
+            if (column instanceof ProjectedColumn) {
+                ColumnRef sourceColumnRef = ((ProjectedColumn) column).getSourceColumnRef();
+                if (sourceColumnRef != null && SchemaUtil.isPKColumn(sourceColumnRef.getColumn())
+                        && sourceColumnRef.getTable().getName().equals(table.getName())) {
+                    return sourceColumnRef.getPKSlotPosition();
+                }
+            }
+        }
+        return -1;
+    }
+
     public static PTable joinProjectedTables(PTable left, PTable right, JoinType type) throws SQLException {
         Preconditions.checkArgument(left.getType() == PTableType.PROJECTED);
         Preconditions.checkArgument(right.getType() == PTableType.PROJECTED);
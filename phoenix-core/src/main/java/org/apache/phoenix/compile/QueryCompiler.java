@@ -45,7 +45,9 @@ import org.apache.phoenix.execute.BaseQueryPlan;
 import org.apache.phoenix.execute.ClientAggregatePlan;
 import org.apache.phoenix.execute.ClientScanPlan;
 import org.apache.phoenix.execute.HashJoinPlan;
+import org.apache.phoenix.execute.HashJoinPlan.CoLocatedMergeSubPlan;
 import org.apache.phoenix.execute.HashJoinPlan.HashSubPlan;
+import org.apache.phoenix.execute.HashJoinPlan.SubPlan;
 import org.apache.phoenix.execute.HashJoinPlan.WhereClauseSubPlan;
 import org.apache.phoenix.execute.LiteralResultIterationPlan;
 import org.apache.phoenix.execute.ScanPlan;
@@ -63,9 +65,11 @@ import org.apache.phoenix.jdbc.PhoenixStatement;
 import org.apache.phoenix.join.HashJoinInfo;
 import org.apache.phoenix.optimize.Cost;
 import org.apache.phoenix.parse.AliasedNode;
+import org.apache.phoenix.parse.ColumnParseNode;
 import org.apache.phoenix.parse.EqualParseNode;
 import org.apache.phoenix.parse.HintNode.Hint;
 import org.apache.phoenix.parse.JoinTableNode.JoinType;
+import org.apache.phoenix.parse.NamedTableNode;
 import org.apache.phoenix.parse.OrderByNode;
 import org.apache.phoenix.parse.ParseNode;
 import org.apache.phoenix.parse.ParseNodeFactory;
@@ -115,6 +119,8 @@ public class QueryCompiler {
     private final boolean optimizeSubquery;
     private final Map<TableRef, QueryPlan> dataPlans;
     private final boolean costBased;
+    private final boolean coLocatedJoin;
+    private final boolean existenceProbe;
 
     public QueryCompiler(PhoenixStatement statement, SelectStatement select, ColumnResolver resolver, boolean projectTuples, boolean optimizeSubquery, Map<TableRef, QueryPlan> dataPlans) throws SQLException {
         this(statement, select, resolver, Collections.<PDatum>emptyList(), null, new SequenceManager(statement), projectTuples, optimizeSubquery, dataPlans);
@@ -142,6 +148,8 @@ public class QueryCompiler {
         this.usePersistentCache = select.getHint().hasHint(Hint.USE_PERSISTENT_CACHE);
         ConnectionQueryServices services = statement.getConnection().getQueryServices();
         this.costBased = services.getProps().getBoolean(QueryServices.COST_BASED_OPTIMIZER_ENABLED, QueryServicesOptions.DEFAULT_COST_BASED_OPTIMIZER_ENABLED);
+        this.coLocatedJoin = services.getProps().getBoolean(QueryServices.CO_LOCATED_JOIN_ENABLED_ATTRIB, QueryServicesOptions.DEFAULT_CO_LOCATED_JOIN_ENABLED);
+        this.existenceProbe = services.getProps().getBoolean(QueryServices.SORT_MERGE_JOIN_EXISTENCE_PROBE_ENABLED_ATTRIB, QueryServicesOptions.DEFAULT_SORT_MERGE_JOIN_EXISTENCE_PROBE_ENABLED);
         scan.setLoadColumnFamiliesOnDemand(true);
         if (select.getHint().hasHint(Hint.NO_CACHE)) {
             scan.setCacheBlocks(false);
@@ -361,7 +369,8 @@ public class QueryCompiler {
                 int[] fieldPositions = new int[count];
                 StatementContext[] subContexts = new StatementContext[count];
                 QueryPlan[] subPlans = new QueryPlan[count];
-                HashSubPlan[] hashPlans = new HashSubPlan[count];
+                List<Expression>[] rhsExpressions = new List[count];
+                SubPlan[] hashPlans = new SubPlan[count];
                 fieldPositions[0] = projectedTable.getColumns().size() - projectedTable.getPKColumns().size();
                 for (int i = 0; i < count; i++) {
                     JoinSpec joinSpec = joinSpecs.get(i);
@@ -397,7 +406,8 @@ public class QueryCompiler {
                     if (i < count - 1) {
                         fieldPositions[i + 1] = fieldPositions[i] + (tables[i] == null ? 0 : (tables[i].getColumns().size() - tables[i].getPKColumns().size()));
                     }
-                    hashPlans[i] = new HashSubPlan(i, subPlans[i], optimized ? null : hashExpressions, joinSpec.isSingleValueOnly(), usePersistentCache, keyRangeLhsExpression, keyRangeRhsExpression);
+                    rhsExpressions[i] = optimized ? null : hashExpressions;
+                    hashPlans[i] = new HashSubPlan(i, subPlans[i], rhsExpressions[i], joinSpec.isSingleValueOnly(), usePersistentCache, keyRangeLhsExpression, keyRangeRhsExpression);
                 }
                 TupleProjector.serializeProjectorIntoScan(context.getScan(), tupleProjector,
                         wildcardIncludesDynamicCols);
@@ -408,6 +418,16 @@ public class QueryCompiler {
                         asSubquery,
                         !asSubquery && joinTable.isAllLeftJoin(),
                         null, true, false);
+                // The rows of the left-hand table must be scanned in row key order to be merged
+                if (coLocatedJoin && !table.isSubselect() && plan.getOrderBy() != OrderBy.REV_ROW_KEY_ORDER_BY) {
+                    for (int i = 0; i < count; i++) {
+                        JoinSpec joinSpec = joinSpecs.get(i);
+                        int keyPrefixLength = getCoLocatedKeyPrefixLength(tableRef, joinSpec, subPlans[i], joinExpressions[i], rhsExpressions[i]);
+                        if (keyPrefixLength > 0) {
+                            hashPlans[i] = new CoLocatedMergeSubPlan(i, subPlans[i], rhsExpressions[i], joinSpec.isSingleValueOnly(), keyPrefixLength);
+                        }
+                    }
+                }
                 Expression postJoinFilterExpression = joinTable.compilePostFilterExpression(context);
                 Integer limit = null;
                 Integer offset = null;
@@ -518,6 +538,10 @@ public class QueryCompiler {
                 Pair<List<Expression>, List<Expression>> joinConditions = lastJoinSpec.compileJoinConditions(type == JoinType.Right ? rhsCtx : lhsCtx, type == JoinType.Right ? lhsCtx : rhsCtx, strategy);
                 List<Expression> lhsKeyExpressions = type == JoinType.Right ? joinConditions.getSecond() : joinConditions.getFirst();
                 List<Expression> rhsKeyExpressions = type == JoinType.Right ? joinConditions.getFirst() : joinConditions.getSecond();
+                Pair<QueryPlan, int[]> existenceProbePlan = null;
+                if (existenceProbe && (type == JoinType.Semi || type == JoinType.Anti)) {
+                    existenceProbePlan = compileExistenceProbe(lastJoinSpec, lhsKeyExpressions);
+                }
 
                 boolean needsMerge = rhsJoin.hasPostReference();
                 int fieldPosition = needsMerge ? lhsProjTable.getColumns().size() - lhsProjTable.getPKColumns().size() : 0;
@@ -541,7 +565,8 @@ public class QueryCompiler {
                         needsMerge ? rhsProjTable : null,
                         fieldPosition,
                         lastJoinSpec.isSingleValueOnly(),
-                        new Pair<List<OrderByNode>,List<OrderByNode>>(lhsOrderBy, rhsOrderBy));
+                        new Pair<List<OrderByNode>,List<OrderByNode>>(lhsOrderBy, rhsOrderBy),
+                        existenceProbePlan);
                 context.setCurrentTable(tableRef);
                 context.setResolver(resolver);
                 TableNode from = NODE_FACTORY.namedTable(tableRef.getTableAlias(), NODE_FACTORY.table(tableRef.getTable().getSchemaName().getString(), tableRef.getTable().getTableName().getString()));
@@ -568,6 +593,75 @@ public class QueryCompiler {
         }
     }
 
+    /**
+     * Compiles the scan of the right-hand table of a semi or anti join that the left-hand keys can
+     * be probed against, in place of merging with all the right-hand rows, along with the index
+     * of the join key of each of its leading row key columns. Returns null if the right-hand side
+     * is not a filtered scan of a table, ignoring DISTINCT, or if the join is not on the leading
+     * row key columns of the table.
+     * @see JoinCompiler#getExistenceProbeKeyOrder(PTable, List, List)
+     */
+    private Pair<QueryPlan, int[]> compileExistenceProbe(JoinSpec joinSpec, List<Expression> lhsKeyExpressions) throws SQLException {
+        JoinTable rhsJoinTable = joinSpec.getRhsJoinTable();
+        if (!rhsJoinTable.getJoinSpecs().isEmpty()) {
+            return null;
+        }
+        SelectStatement subquery = rhsJoinTable.getLeftTable().getAsSubquery(null);
+        if (subquery.isJoin()
+                || subquery.isUnion()
+                || subquery.isAggregate()
+                || !(subquery.getFrom() instanceof NamedTableNode)
+                || subquery.getLimit() != null
+                || subquery.getOffset() != null) {
+            return null;
+        }
+        // Duplicate right-hand rows do not change the result of a semi or anti join
+        if (subquery.isDistinct()) {
+            subquery = NODE_FACTORY.select(subquery, false, subquery.getSelect());
+        }
+        QueryPlan plan = compileSubquery(subquery, false);
+        if (!(plan instanceof ScanPlan) || plan.getLimit() != null || plan.getOffset() != null) {
+            return null;
+        }
+        List<Expression> rhsKeyExpressions = Lists.newArrayListWithExpectedSize(joinSpec.getOnConditions().size());
+        for (EqualParseNode condition : joinSpec.getOnConditions()) {
+            if (!(condition.getRHS() instanceof ColumnParseNode)) {
+                return null;
+            }
+            try {
+                int index = plan.getProjector().getColumnIndex(((ColumnParseNode) condition.getRHS()).getName());
+                rhsKeyExpressions.add(plan.getProjector().getColumnProjector(index).getExpression());
+            } catch (ColumnNotFoundException e) {
+                return null;
+            }
+        }
+        int[] keyOrder = JoinCompiler.getExistenceProbeKeyOrder(plan.getTableRef().getTable(), lhsKeyExpressions, rhsKeyExpressions);
+        return keyOrder == null ? null : new Pair<QueryPlan, int[]>(plan, keyOrder);
+    }
+
+    /**
+     * Returns the number of leading row key columns the right-hand table of the join can be
+     * merged with the left-hand table on, region by region, or 0 if the right-hand side is not
+     * a plain scan of a table or the join is not on its leading row key columns.
+     * @see JoinCompiler#getCoLocatedKeyPrefixLength(PTable, PTable, List, List)
+     */
+    private static int getCoLocatedKeyPrefixLength(TableRef lhsTableRef, JoinSpec joinSpec, QueryPlan rhsPlan,
+            List<Expression> lhsExpressions, List<Expression> rhsExpressions) {
+        JoinTable rhsJoinTable = joinSpec.getRhsJoinTable();
+        if (rhsExpressions == null
+                || !rhsJoinTable.getJoinSpecs().isEmpty()
+                || rhsJoinTable.getLeftTable().isSubselect()
+                || !(rhsPlan instanceof ScanPlan)
+                || rhsPlan.getLimit() != null
+                || rhsPlan.getOffset() != null
+                || (rhsPlan.getOrderBy() != OrderBy.EMPTY_ORDER_BY && rhsPlan.getOrderBy() != OrderBy.FWD_ROW_KEY_ORDER_BY)
+                || rhsPlan.getContext().getScanRanges() == ScanRanges.NOTHING) {
+            return 0;
+        }
+        return JoinCompiler.getCoLocatedKeyPrefixLength(lhsTableRef.getTable(), rhsPlan.getTableRef().getTable(),
+                lhsExpressions, rhsExpressions);
+    }
+
     private boolean getKeyExpressionCombinations(Pair<Expression, Expression> combination, StatementContext context, SelectStatement select, TableRef table, JoinType type, final List<Expression> joinExpressions, final List<Expression> hashExpressions) throws SQLException {
         if ((type != JoinType.Inner && type != JoinType.Semi) || this.noChildParentJoinOptimization)
             return false;
@@ -17,6 +17,8 @@
  */
 package org.apache.phoenix.compile;
 
+import static org.apache.phoenix.execute.MutationState.RowTimestampColInfo.NULL_ROWTIMESTAMP_INFO;
+import static org.apache.phoenix.execute.MutationState.RowTimestampColInfo.SERVER_ROWTIMESTAMP_INFO;
 import static org.apache.phoenix.thirdparty.com.google.common.base.Preconditions.checkArgument;
 import static org.apache.phoenix.thirdparty.com.google.common.collect.Lists.newArrayListWithCapacity;
 
@@ -29,7 +31,6 @@ import java.util.BitSet;
 import java.util.Collections;
 import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 
 import org.apache.phoenix.schema.MaxPhoenixColumnSizeExceededException;
@@ -54,6 +55,7 @@ import org.apache.phoenix.execute.MutationState;
 import org.apache.phoenix.execute.MutationState.MultiRowMutationState;
 import org.apache.phoenix.execute.MutationState.RowMutationState;
 import org.apache.phoenix.execute.MutationState.RowTimestampColInfo;
+import org.apache.phoenix.execute.PackedColumnValues;
 import org.apache.phoenix.expression.Determinism;
 import org.apache.phoenix.expression.Expression;
 import org.apache.phoenix.expression.LiteralExpression;
@@ -116,7 +118,6 @@ import org.apache.phoenix.util.ScanUtil;
 import org.apache.phoenix.util.SchemaUtil;
 
 import org.apache.phoenix.thirdparty.com.google.common.collect.Lists;
-import org.apache.phoenix.thirdparty.com.google.common.collect.Maps;
 import org.apache.phoenix.thirdparty.com.google.common.collect.Sets;
 
 public class UpsertCompiler {
@@ -125,8 +126,7 @@ public class UpsertCompiler {
             PTable table, MultiRowMutationState mutation, PhoenixStatement statement, boolean useServerTimestamp,
             IndexMaintainer maintainer, byte[][] viewConstants, byte[] onDupKeyBytes, int numSplColumns,
             int maxHBaseClientKeyValueSize) throws SQLException {
-        long columnValueSize = 0;
-        Map<PColumn,byte[]> columnValues = Maps.newHashMapWithExpectedSize(columnIndexes.length);
+        PackedColumnValues columnValues = new PackedColumnValues(columnIndexes.length);
         byte[][] pkValues = new byte[table.getPKColumns().size()][];
         // If the table uses salting, the first byte is the salting byte, set to an empty array
         // here and we will fill in the byte later in PRowImpl.
@@ -137,7 +137,7 @@ public class UpsertCompiler {
             pkValues[i + (table.getBucketNum() != null ? 1 : 0)] = values[i];
         }
         Long rowTimestamp = null; // case when the table doesn't have a row timestamp column
-        RowTimestampColInfo rowTsColInfo = new RowTimestampColInfo(useServerTimestamp, rowTimestamp);
+        RowTimestampColInfo rowTsColInfo = useServerTimestamp ? SERVER_ROWTIMESTAMP_INFO : NULL_ROWTIMESTAMP_INFO;
         for (int i = 0, j = numSplColumns; j < values.length; j++, i++) {
             byte[] value = values[j];
             PColumn column = table.getColumns().get(columnIndexes[i]);
@@ -162,9 +162,9 @@ public class UpsertCompiler {
                 }
             } else {
                 columnValues.put(column, value);
-                columnValueSize += (column.getEstimatedSize() + value.length);
             }
         }
+        columnValues.trimToSize();
         ImmutableBytesPtr ptr = new ImmutableBytesPtr();
         table.newKey(ptr, pkValues);
         if (table.getIndexType() == IndexType.LOCAL && maintainer != null) {
@@ -181,7 +181,7 @@ public class UpsertCompiler {
                     regionPrefix.length));
             }
         } 
-        mutation.put(ptr, new RowMutationState(columnValues, columnValueSize, statement.getConnection().getStatementExecutionCounter(), rowTsColInfo, onDupKeyBytes));
+        mutation.put(ptr, new RowMutationState(columnValues, columnValues.getEstimatedSize(), statement.getConnection().getStatementExecutionCounter(), rowTsColInfo, onDupKeyBytes));
     }
 
     public static String getExceedMaxHBaseClientKeyValueAllowanceRowkeyAndColumnInfo(
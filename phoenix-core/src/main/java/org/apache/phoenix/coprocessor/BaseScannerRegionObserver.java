@@ -48,6 +48,8 @@ import org.apache.phoenix.hbase.index.covered.update.ColumnReference;
 import org.apache.phoenix.index.IndexMaintainer;
 import org.apache.phoenix.iterate.NonAggregateRegionScannerFactory;
 import org.apache.phoenix.iterate.RegionScannerFactory;
+import org.apache.phoenix.query.QueryServices;
+import org.apache.phoenix.query.QueryServicesOptions;
 import org.apache.phoenix.schema.StaleRegionBoundaryCacheException;
 import org.apache.phoenix.schema.types.PUnsignedTinyint;
 import org.apache.phoenix.util.ScanUtil;
@@ -123,6 +125,8 @@ abstract public class BaseScannerRegionObserver extends CompatBaseScannerRegionO
     public static final String EMPTY_COLUMN_FAMILY_NAME = "_EmptyCFName";
     public static final String EMPTY_COLUMN_QUALIFIER_NAME = "_EmptyCQName";
     public static final String INDEX_ROW_KEY = "_IndexRowKey";
+    public static final String VECTORIZED_FILTER = "_VectorizedFilter";
+    public static final String LOOSE_INDEX_SCAN = "_LooseIndexScan";
     
     public final static byte[] REPLAY_TABLE_AND_INDEX_WRITES = PUnsignedTinyint.INSTANCE.toBytes(1);
     public final static byte[] REPLAY_ONLY_INDEX_WRITES = PUnsignedTinyint.INSTANCE.toBytes(2);
@@ -209,6 +213,16 @@ abstract public class BaseScannerRegionObserver extends CompatBaseScannerRegionO
     abstract protected boolean isRegionObserverFor(Scan scan);
     abstract protected RegionScanner doPostScannerOpen(ObserverContext<RegionCoprocessorEnvironment> c, final Scan scan, final RegionScanner s) throws Throwable;
 
+    /**
+     * Whether the where clause of the scan may be evaluated in batches by a
+     * {@link VectorizedFilterRegionScanner} placed under the scanner doPostScannerOpen returns.
+     * Only safe when doPostScannerOpen processes the rows the where clause lets through the same
+     * way regardless of how they were filtered.
+     */
+    protected boolean isVectorizedFilterSupported(Scan scan) {
+        return false;
+    }
+
     protected boolean skipRegionBoundaryCheck(Scan scan) {
         byte[] skipCheckBytes = scan.getAttribute(SKIP_REGION_BOUNDARY_CHECK);
         return skipCheckBytes != null && Bytes.toBoolean(skipCheckBytes);
@@ -233,6 +247,13 @@ abstract public class BaseScannerRegionObserver extends CompatBaseScannerRegionO
             // last possible moment. You need to swap the start/stop and make the
             // start exclusive and the stop inclusive.
             ScanUtil.setupReverseScan(scan);
+            if (isVectorizedFilterSupported(scan) && !ScanUtil.isLocalIndex(scan)
+                    && scan.getAttribute(TX_STATE) == null && scan.getAttribute(CHECK_VERIFY_COLUMN) == null
+                    && c.getEnvironment().getConfiguration().getBoolean(
+                            QueryServices.VECTORIZED_FILTER_ENABLED_ATTRIB,
+                            QueryServicesOptions.DEFAULT_VECTORIZED_FILTER_ENABLED)) {
+                VectorizedFilterRegionScanner.pushIntoScan(scan);
+            }
         }
     }
 
@@ -261,7 +282,11 @@ abstract public class BaseScannerRegionObserver extends CompatBaseScannerRegionO
                 final Span savedSpan = Trace.currentSpan();
                 final Span child = Trace.startSpan(SCANNER_OPENED_TRACE_INFO, savedSpan).getSpan();
                 try {
-                    RegionScanner scanner = doPostScannerOpen(c, scan, delegate);
+                    int vectorizedFilterBatchSize = c.getEnvironment().getConfiguration().getInt(
+                            QueryServices.VECTORIZED_FILTER_BATCH_SIZE_ATTRIB,
+                            QueryServicesOptions.DEFAULT_VECTORIZED_FILTER_BATCH_SIZE);
+                    RegionScanner scanner = doPostScannerOpen(c, scan,
+                            VectorizedFilterRegionScanner.wrap(scan, delegate, vectorizedFilterBatchSize));
                     scanner = new DelegateRegionScanner(scanner) {
                         // This isn't very obvious but close() could be called in a thread
                         // that is different from the thread that created the scanner.
@@ -0,0 +1,343 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.phoenix.coprocessor;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.KeyValueUtil;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.client.Table;
+import org.apache.hadoop.hbase.coprocessor.RegionCoprocessorEnvironment;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.regionserver.HRegion;
+import org.apache.hadoop.hbase.regionserver.OnlineRegions;
+import org.apache.hadoop.hbase.regionserver.Region;
+import org.apache.hadoop.hbase.regionserver.RegionCoprocessorHost;
+import org.apache.hadoop.hbase.regionserver.RegionScanner;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.phoenix.cache.HashCache;
+import org.apache.phoenix.cache.TenantCache;
+import org.apache.phoenix.exception.SQLExceptionCode;
+import org.apache.phoenix.exception.SQLExceptionInfo;
+import org.apache.phoenix.hbase.index.util.ImmutableBytesPtr;
+import org.apache.phoenix.join.CoLocatedJoinInfo;
+import org.apache.phoenix.memory.MemoryManager.MemoryChunk;
+import org.apache.phoenix.schema.RowKeySchema;
+import org.apache.phoenix.schema.ValueSchema.Field;
+import org.apache.phoenix.schema.tuple.ResultTuple;
+import org.apache.phoenix.schema.tuple.Tuple;
+import org.apache.phoenix.util.PhoenixKeyValueUtil;
+import org.apache.phoenix.util.ScanUtil;
+import org.apache.phoenix.util.SchemaUtil;
+import org.apache.phoenix.util.ServerUtil;
+import org.apache.phoenix.util.ServerUtil.ConnectionType;
+import org.apache.phoenix.util.TupleUtil;
+
+import org.apache.phoenix.thirdparty.com.google.common.annotations.VisibleForTesting;
+
+/**
+ * The right-hand side of a co-located join, read along with the rows of the left-hand table
+ * instead of being sent over by the client. The right-hand table is scanned in row key order,
+ * starting at the row key prefix of the first left-hand row looked up, and only the rows
+ * sharing the row key prefix of the current left-hand row are kept in memory, hashed on the
+ * join key the same way as in a hash cache. The left-hand rows must be looked up in row key
+ * order.
+ *
+ * The right-hand rows are read through a {@link RegionScanner} over the right-hand regions
+ * hosted by the same region server, opened through the coprocessor hooks of these regions so
+ * that the rows are filtered and projected as for a client scan, without going through an RPC
+ * handler. HBase does not keep the regions of two tables on the same servers, nor split them
+ * at the same keys, so a key range of the right-hand table the left-hand region covers may be
+ * hosted elsewhere. Such a range is read through a client scan bounded to it, which ties up
+ * the handler of the left-hand scan while it waits on another server; this only happens while
+ * the regions of the two tables are not aligned, e.g. after a split or a move.
+ *
+ * @see CoLocatedJoinInfo
+ */
+class CoLocatedMergeJoinCache implements HashCache {
+    private final RegionCoprocessorEnvironment env;
+    private final OnlineRegions onlineRegions;
+    private final CoLocatedJoinInfo joinInfo;
+    private final TableName tableName;
+    private final MemoryChunk memoryChunk;
+    private final Map<ImmutableBytesPtr, List<Tuple>> rows = new HashMap<ImmutableBytesPtr, List<Tuple>>();
+    private final ImmutableBytesWritable ptr = new ImmutableBytesWritable();
+    // Opened on the first right-hand key range that is not hosted locally
+    private Table table;
+    private Region region;
+    private RegionScanner regionScanner;
+    private boolean hasMore;
+    private ResultScanner scanner;
+    private boolean started;
+    // Where the current scanner stops, or null if it reads to the end of the right-hand scan
+    private byte[] scannerStopRow;
+    private Result next;
+    private byte[] nextPrefix;
+    private byte[] prefix;
+    private long size;
+
+    CoLocatedMergeJoinCache(RegionCoprocessorEnvironment env, TenantCache tenantCache,
+            CoLocatedJoinInfo joinInfo) {
+        this(env, env.getOnlineRegions(), null, tenantCache.getMemoryManager().allocate(0), joinInfo);
+    }
+
+    @VisibleForTesting
+    CoLocatedMergeJoinCache(OnlineRegions onlineRegions, Table table, MemoryChunk memoryChunk,
+            CoLocatedJoinInfo joinInfo) {
+        this(null, onlineRegions, table, memoryChunk, joinInfo);
+    }
+
+    private CoLocatedMergeJoinCache(RegionCoprocessorEnvironment env, OnlineRegions onlineRegions,
+            Table table, MemoryChunk memoryChunk, CoLocatedJoinInfo joinInfo) {
+        this.env = env;
+        this.onlineRegions = onlineRegions;
+        this.table = table;
+        this.memoryChunk = memoryChunk;
+        this.joinInfo = joinInfo;
+        this.tableName = TableName.valueOf(joinInfo.getPhysicalTableName());
+    }
+
+    /**
+     * Position the cache on the right-hand rows sharing the row key prefix of the given
+     * left-hand row
+     */
+    void seek(Tuple lhs) throws IOException {
+        lhs.getKey(ptr);
+        byte[] lhsPrefix = getKeyPrefix(ptr, joinInfo.getLhsRowKeySchema());
+        if (prefix != null && Bytes.equals(prefix, lhsPrefix)) {
+            return;
+        }
+        prefix = lhsPrefix;
+        rows.clear();
+        size = 0;
+        if (!started) {
+            started = true;
+            // A row may end right after a variable length value, without the separator
+            openScanner(isFixedWidthPrefix() ? prefix : Arrays.copyOf(prefix, prefix.length - 1));
+            advance();
+        }
+        // The rows between two left-hand prefixes are read past, as in any merge
+        while (next != null && Bytes.compareTo(nextPrefix, prefix) < 0) {
+            advance();
+        }
+        while (next != null && Bytes.equals(nextPrefix, prefix)) {
+            add(next);
+            advance();
+        }
+        // Only the rows of the current prefix are held
+        memoryChunk.resize(size);
+    }
+
+    /**
+     * Open a scanner on the right-hand rows from the given row, up to the end of the right-hand
+     * region hosting it if it is hosted locally, or else up to the next right-hand region that is.
+     */
+    private void openScanner(byte[] startRow) throws IOException {
+        closeScanner();
+        Scan scan = new Scan(joinInfo.getScan());
+        byte[] stopRow = scan.getStopRow();
+        if (Bytes.compareTo(startRow, scan.getStartRow()) > 0) {
+            if (stopRow.length > 0 && Bytes.compareTo(startRow, stopRow) >= 0) {
+                return;
+            }
+            scan.withStartRow(startRow);
+        }
+        startRow = scan.getStartRow();
+        Region localRegion = null;
+        byte[] localStartRow = null;
+        for (Region onlineRegion : onlineRegions.getRegions(tableName)) {
+            byte[] regionStartRow = onlineRegion.getRegionInfo().getStartKey();
+            if (onlineRegion.getRegionInfo().containsRow(startRow)) {
+                localRegion = onlineRegion;
+                break;
+            }
+            if (Bytes.compareTo(regionStartRow, startRow) > 0
+                    && (localStartRow == null || Bytes.compareTo(regionStartRow, localStartRow) < 0)) {
+                localStartRow = regionStartRow;
+            }
+        }
+        byte[] scanStopRow = localRegion == null ? localStartRow : localRegion.getRegionInfo().getEndKey();
+        if (scanStopRow != null && scanStopRow.length > 0
+                && (stopRow.length == 0 || Bytes.compareTo(scanStopRow, stopRow) < 0)) {
+            scan.withStopRow(scanStopRow);
+            scannerStopRow = scanStopRow;
+        }
+        if (localRegion == null) {
+            scanner = getTable().getScanner(scan);
+            return;
+        }
+        region = localRegion;
+        // Go through the same hooks as a client scan of the region
+        RegionCoprocessorHost coprocessorHost = region instanceof HRegion
+                ? ((HRegion) region).getCoprocessorHost() : null;
+        if (coprocessorHost != null) {
+            coprocessorHost.preScannerOpen(scan);
+        }
+        regionScanner = region.getScanner(scan);
+        hasMore = true;
+        if (coprocessorHost != null) {
+            regionScanner = coprocessorHost.postScannerOpen(scan, regionScanner);
+        }
+    }
+
+    private Table getTable() throws IOException {
+        if (table == null) {
+            table = ServerUtil.ConnectionFactory.getConnection(ConnectionType.DEFAULT_SERVER_CONNECTION, env)
+                    .getTable(tableName);
+        }
+        return table;
+    }
+
+    private void advance() throws IOException {
+        next = nextResult();
+        while (next == null && scannerStopRow != null) {
+            // Carry on in the next right-hand region
+            openScanner(scannerStopRow);
+            next = nextResult();
+        }
+        if (next != null) {
+            ImmutableBytesWritable rowKey = new ImmutableBytesWritable(next.getRow());
+            nextPrefix = getKeyPrefix(rowKey, joinInfo.getRhsRowKeySchema());
+        }
+    }
+
+    private Result nextResult() throws IOException {
+        if (scanner != null) {
+            return scanner.next();
+        }
+        if (regionScanner == null) {
+            return null;
+        }
+        List<Cell> results = new ArrayList<Cell>();
+        while (results.isEmpty() && hasMore) {
+            region.startRegionOperation();
+            try {
+                synchronized (regionScanner) {
+                    hasMore = regionScanner.nextRaw(results);
+                }
+            } finally {
+                region.closeRegionOperation();
+            }
+        }
+        if (results.isEmpty()) {
+            return null;
+        }
+        // The cells are held past the next call, which may release the blocks they were read from
+        List<Cell> cells = new ArrayList<Cell>(results.size());
+        for (Cell cell : results) {
+            cells.add(PhoenixKeyValueUtil.maybeCopyCell(cell));
+        }
+        return Result.create(cells);
+    }
+
+    private void closeScanner() throws IOException {
+        scannerStopRow = null;
+        try {
+            if (scanner != null) {
+                scanner.close();
+            }
+        } finally {
+            scanner = null;
+            if (regionScanner != null) {
+                try {
+                    regionScanner.close();
+                } finally {
+                    regionScanner = null;
+                    region = null;
+                }
+            }
+        }
+    }
+
+    private void add(Result result) {
+        for (Cell cell : result.rawCells()) {
+            size += KeyValueUtil.getSerializedSize(cell, true);
+        }
+        if (size > memoryChunk.getSize()) {
+            memoryChunk.resize(Math.max(size, 2 * memoryChunk.getSize()));
+        }
+        Tuple tuple = new ResultTuple(result);
+        ImmutableBytesPtr key = TupleUtil.getConcatenatedValue(tuple, joinInfo.getKeyExpressions());
+        List<Tuple> tuples = rows.get(key);
+        if (tuples == null) {
+            tuples = new ArrayList<Tuple>(1);
+            rows.put(key, tuples);
+        }
+        tuples.add(tuple);
+    }
+
+    private boolean isFixedWidthPrefix() {
+        return joinInfo.getLhsRowKeySchema().getField(joinInfo.getKeyPrefixLength() - 1).getDataType().isFixedWidth();
+    }
+
+    /**
+     * The leading row key columns the join is on, encoded the way they are in a row key with
+     * more columns following, so that the prefixes of both tables compare the same way.
+     */
+    private byte[] getKeyPrefix(ImmutableBytesWritable rowKey, RowKeySchema schema) {
+        int prefixLength = joinInfo.getKeyPrefixLength();
+        ImmutableBytesWritable field = new ImmutableBytesWritable();
+        schema.iterator(rowKey.get(), rowKey.getOffset(), rowKey.getLength(), field, prefixLength);
+        int length = field.getOffset() + field.getLength() - rowKey.getOffset();
+        Field lastField = schema.getField(prefixLength - 1);
+        if (lastField.getDataType().isFixedWidth()) {
+            return Bytes.copy(rowKey.get(), rowKey.getOffset(), length);
+        }
+        byte[] keyPrefix = new byte[length + 1];
+        System.arraycopy(rowKey.get(), rowKey.getOffset(), keyPrefix, 0, length);
+        keyPrefix[length] = SchemaUtil.getSeparatorByte(schema.rowKeyOrderOptimizable(), field.getLength() == 0, lastField);
+        return keyPrefix;
+    }
+
+    @Override
+    public List<Tuple> get(ImmutableBytesPtr hashKey) throws IOException {
+        List<Tuple> tuples = rows.get(hashKey);
+        if (tuples != null && joinInfo.isSingleValueOnly() && tuples.size() > 1) {
+            SQLException ex = new SQLExceptionInfo.Builder(SQLExceptionCode.SINGLE_ROW_SUBQUERY_RETURNS_MULTIPLE_ROWS).build().buildException();
+            ServerUtil.throwIOException(ex.getMessage(), ex);
+        }
+        return tuples;
+    }
+
+    @Override
+    public int getClientVersion() {
+        return ScanUtil.getClientVersion(joinInfo.getScan());
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            closeScanner();
+            if (table != null) {
+                table.close();
+            }
+        } finally {
+            memoryChunk.close();
+        }
+    }
+}
@@ -22,6 +22,7 @@ import java.io.Closeable;
 import org.apache.hadoop.hbase.regionserver.RegionScanner;
 import org.apache.phoenix.expression.aggregator.Aggregator;
 import org.apache.phoenix.hbase.index.util.ImmutableBytesPtr;
+import org.apache.phoenix.schema.tuple.Tuple;
 
 /**
  * 
@@ -34,5 +35,10 @@ import org.apache.phoenix.hbase.index.util.ImmutableBytesPtr;
 public interface GroupByCache extends Closeable {
     long size();
     Aggregator[] cache(ImmutableBytesPtr key);
+    /**
+     * Aggregate a row into the group of the given key, adding the group if
+     * it is not cached yet
+     */
+    void aggregate(ImmutableBytesPtr key, Tuple result);
     RegionScanner getScanner(RegionScanner s);
 }
@@ -21,8 +21,10 @@ import static org.apache.phoenix.query.QueryConstants.AGG_TIMESTAMP;
 import static org.apache.phoenix.query.QueryConstants.SINGLE_COLUMN;
 import static org.apache.phoenix.query.QueryConstants.SINGLE_COLUMN_FAMILY;
 import static org.apache.phoenix.query.QueryServices.GROUPBY_ESTIMATED_DISTINCT_VALUES_ATTRIB;
+import static org.apache.phoenix.query.QueryServices.GROUPBY_PRIMITIVE_AGGREGATION_ENABLED_ATTRIB;
 import static org.apache.phoenix.query.QueryServices.GROUPBY_SPILLABLE_ATTRIB;
 import static org.apache.phoenix.query.QueryServicesOptions.DEFAULT_GROUPBY_ESTIMATED_DISTINCT_VALUES;
+import static org.apache.phoenix.query.QueryServicesOptions.DEFAULT_GROUPBY_PRIMITIVE_AGGREGATION_ENABLED;
 import static org.apache.phoenix.query.QueryServicesOptions.DEFAULT_GROUPBY_SPILLABLE;
 
 import java.io.ByteArrayInputStream;
@@ -178,7 +180,9 @@ public class GroupedAggregateRegionObserver extends BaseScannerRegionObserver im
             }
             if (keyOrdered) { // Optimize by taking advantage that the rows are
                               // already in the required group by key order
-                return scanOrdered(c, scan, innerScanner, expressions, aggregators, limit);
+                // Seeking ahead is only possible on the rows of the region itself
+                LooseIndexScan looseIndexScan = innerScanner == s ? LooseIndexScan.deserializeFromScan(scan) : null;
+                return scanOrdered(c, scan, innerScanner, expressions, aggregators, limit, looseIndexScan);
             } else { // Otherwse, collect them all up in an in memory map
                 return scanUnordered(c, scan, innerScanner, expressions, aggregators, limit);
             }
@@ -304,6 +308,11 @@ public class GroupedAggregateRegionObserver extends BaseScannerRegionObserver im
             return rowAggregators;
         }
 
+        @Override
+        public void aggregate(ImmutableBytesPtr key, Tuple result) {
+            aggregators.aggregate(cache(key), result);
+        }
+
         @Override
         public RegionScanner getScanner(final RegionScanner s) {
             // Compute final allocation
@@ -370,10 +379,32 @@ public class GroupedAggregateRegionObserver extends BaseScannerRegionObserver im
         private GroupByCacheFactory() {
         }
 
-        GroupByCache newCache(RegionCoprocessorEnvironment env, ImmutableBytesPtr tenantId, byte[] customAnnotations, ServerAggregators aggregators, int estDistVals) {
+        GroupByCache newCache(final RegionCoprocessorEnvironment env, final ImmutableBytesPtr tenantId,
+                final byte[] customAnnotations, final ServerAggregators aggregators, int estDistVals) {
             Configuration conf = env.getConfiguration();
-            boolean spillableEnabled =
+            final boolean spillableEnabled =
                     conf.getBoolean(GROUPBY_SPILLABLE_ATTRIB, DEFAULT_GROUPBY_SPILLABLE);
+            if (conf.getBoolean(GROUPBY_PRIMITIVE_AGGREGATION_ENABLED_ATTRIB,
+                    DEFAULT_GROUPBY_PRIMITIVE_AGGREGATION_ENABLED)) {
+                GroupByCache cache = PrimitiveGroupByCache.newInstance(env, tenantId, customAnnotations,
+                        aggregators, estDistVals, new PrimitiveGroupByCache.AggregatorCacheFactory() {
+                            @Override
+                            public GroupByCache newCache(int estDistVals) {
+                                return newAggregatorCache(env, tenantId, customAnnotations, aggregators,
+                                        estDistVals, spillableEnabled);
+                            }
+                        }, spillableEnabled);
+                if (cache != null) {
+                    return cache;
+                }
+            }
+            return newAggregatorCache(env, tenantId, customAnnotations, aggregators, estDistVals,
+                    spillableEnabled);
+        }
+
+        private GroupByCache newAggregatorCache(RegionCoprocessorEnvironment env, ImmutableBytesPtr tenantId,
+                byte[] customAnnotations, ServerAggregators aggregators, int estDistVals,
+                boolean spillableEnabled) {
             if (spillableEnabled) {
                 return new SpillableGroupByCache(env, tenantId, aggregators, estDistVals);
             }
@@ -443,9 +474,8 @@ public class GroupedAggregateRegionObserver extends BaseScannerRegionObserver im
                             result.setKeyValues(results);
                             ImmutableBytesPtr key =
                                 TupleUtil.getConcatenatedValue(result, expressions);
-                            Aggregator[] rowAggregators = groupByCache.cache(key);
                             // Aggregate values here
-                            aggregators.aggregate(rowAggregators, result);
+                            groupByCache.aggregate(key, result);
                         }
                     } while (hasMore && groupByCache.size() < limit);
                 }
@@ -472,11 +502,14 @@ public class GroupedAggregateRegionObserver extends BaseScannerRegionObserver im
      * Used for an aggregate query in which the key order match the group by key order. In this
      * case, we can do the aggregation as we scan, by detecting when the group by key changes.
      * @param limit TODO
+     * @param looseIndexScan seeks past the rest of the rows of a group once its aggregates
+     * are decided, or null to aggregate every row
      * @throws IOException
      */
     private RegionScanner scanOrdered(final ObserverContext<RegionCoprocessorEnvironment> c,
             final Scan scan, final RegionScanner scanner, final List<Expression> expressions,
-            final ServerAggregators aggregators, final long limit) throws IOException {
+            final ServerAggregators aggregators, final long limit, final LooseIndexScan looseIndexScan)
+            throws IOException {
 
         if (LOGGER.isDebugEnabled()) {
             LOGGER.debug(LogUtil.addCustomAnnotations(
@@ -490,6 +523,8 @@ public class GroupedAggregateRegionObserver extends BaseScannerRegionObserver im
         return new BaseRegionScanner(scanner) {
             private long rowCount = 0;
             private ImmutableBytesPtr currentKey = null;
+            // First row of the current group, aggregated at the end of the previous call
+            private Tuple pendingRow = null;
 
             @Override
             public boolean next(List<Cell> results) throws IOException {
@@ -508,6 +543,10 @@ public class GroupedAggregateRegionObserver extends BaseScannerRegionObserver im
                     region.startRegionOperation();
                     acquiredLock = true;
                     synchronized (scanner) {
+                        if (pendingRow != null) {
+                            looseIndexScan.skipAhead(pendingRow, scanner);
+                            pendingRow = null;
+                        }
                         do {
                             List<Cell> kvs = useQualifierAsIndex ? new EncodedColumnQualiferCellsList(minMaxQualifiers.getFirst(), minMaxQualifiers.getSecond(), encodingScheme) : new ArrayList<Cell>();
                             // Results are potentially returned even when the return
@@ -530,6 +569,9 @@ public class GroupedAggregateRegionObserver extends BaseScannerRegionObserver im
                                             ScanUtil.getCustomAnnotations(scan)));
                                     }
                                     currentKey = key;
+                                    if (looseIndexScan != null && hasMore) {
+                                        looseIndexScan.skipAhead(result, scanner);
+                                    }
                                 }
                             }
                             atLimit = rowCount + countOffset >= limit;
@@ -556,6 +598,9 @@ public class GroupedAggregateRegionObserver extends BaseScannerRegionObserver im
                         aggregators.reset(rowAggregators);
                         aggregators.aggregate(rowAggregators, result);
                         currentKey = key;
+                        if (looseIndexScan != null && hasMore) {
+                            pendingRow = result;
+                        }
                         rowCount++;
                         atLimit |= rowCount >= limit;
                     }
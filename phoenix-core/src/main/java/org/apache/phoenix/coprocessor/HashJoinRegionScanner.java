@@ -42,6 +42,7 @@ import org.apache.phoenix.expression.Expression;
 import org.apache.phoenix.expression.KeyValueColumnExpression;
 import org.apache.phoenix.iterate.RegionScannerFactory;
 import org.apache.phoenix.hbase.index.util.ImmutableBytesPtr;
+import org.apache.phoenix.join.CoLocatedJoinInfo;
 import org.apache.phoenix.join.HashJoinInfo;
 import org.apache.phoenix.parse.JoinTableNode.JoinType;
 import org.apache.phoenix.schema.IllegalDataException;
@@ -120,7 +121,10 @@ public class HashJoinRegionScanner implements RegionScanner {
                 tempTuples[i] = null;
                 continue;
             }
-            HashCache hashCache = (HashCache)cache.getServerCache(joinId);
+            CoLocatedJoinInfo coLocatedJoin = joinInfo.getCoLocatedJoins()[i];
+            HashCache hashCache = coLocatedJoin != null
+                    ? new CoLocatedMergeJoinCache(env, cache, coLocatedJoin)
+                    : (HashCache)cache.getServerCache(joinId);
             if (hashCache == null) {
                 Exception cause = new HashJoinCacheNotFoundException(Bytes.toLong(joinId.get()));
                 throw new DoNotRetryIOException(cause.getMessage(), cause);
@@ -162,7 +166,7 @@ public class HashJoinRegionScanner implements RegionScanner {
             if (!(joinInfo.earlyEvaluation()[i]) || hashCaches[i] == null)
                 continue;
             ImmutableBytesPtr key = TupleUtil.getConcatenatedValue(tuple, joinInfo.getJoinExpressions()[i]);
-            tempTuples[i] = hashCaches[i].get(key);
+            tempTuples[i] = getJoinedTuples(i, tuple, key);
             JoinType type = joinInfo.getJoinTypes()[i];
             if (((type == JoinType.Inner || type == JoinType.Semi) && tempTuples[i] == null)
                     || (type == JoinType.Anti && tempTuples[i] != null)) {
@@ -196,7 +200,7 @@ public class HashJoinRegionScanner implements RegionScanner {
                         Tuple lhs = resultQueue.poll();
                         if (!earlyEvaluation) {
                             ImmutableBytesPtr key = TupleUtil.getConcatenatedValue(lhs, joinInfo.getJoinExpressions()[i]);
-                            tempTuples[i] = hashCaches[i].get(key);
+                            tempTuples[i] = getJoinedTuples(i, lhs, key);
                             if (tempTuples[i] == null) {
                                 if (type == JoinType.Inner || type == JoinType.Semi) {
                                     continue;
@@ -251,6 +255,13 @@ public class HashJoinRegionScanner implements RegionScanner {
         }
     }
 
+    private List<Tuple> getJoinedTuples(int index, Tuple lhs, ImmutableBytesPtr key) throws IOException {
+        if (hashCaches[index] instanceof CoLocatedMergeJoinCache) {
+            ((CoLocatedMergeJoinCache) hashCaches[index]).seek(lhs);
+        }
+        return hashCaches[index].get(key);
+    }
+
     private boolean shouldAdvance() {
         if (!resultQueue.isEmpty())
             return false;
@@ -314,7 +325,16 @@ public class HashJoinRegionScanner implements RegionScanner {
 
     @Override
     public void close() throws IOException {
-        scanner.close();
+        try {
+            scanner.close();
+        } finally {
+            // Hash caches are owned by the tenant cache, the co-located ones by this scanner
+            for (HashCache hashCache : hashCaches) {
+                if (hashCache instanceof CoLocatedMergeJoinCache) {
+                    hashCache.close();
+                }
+            }
+        }
     }
 
     @Override
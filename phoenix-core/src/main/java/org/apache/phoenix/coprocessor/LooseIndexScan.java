@@ -0,0 +1,245 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.phoenix.coprocessor;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.regionserver.RegionScanner;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.phoenix.expression.Expression;
+import org.apache.phoenix.expression.ExpressionType;
+import org.apache.phoenix.expression.LiteralExpression;
+import org.apache.phoenix.expression.RowKeyColumnExpression;
+import org.apache.phoenix.expression.aggregator.Aggregators;
+import org.apache.phoenix.expression.function.FirstValueFunction;
+import org.apache.phoenix.expression.function.LastValueFunction;
+import org.apache.phoenix.expression.function.MaxAggregateFunction;
+import org.apache.phoenix.expression.function.MinAggregateFunction;
+import org.apache.phoenix.expression.function.SingleAggregateFunction;
+import org.apache.phoenix.query.QueryConstants;
+import org.apache.phoenix.schema.RowKeySchema;
+import org.apache.phoenix.schema.SortOrder;
+import org.apache.phoenix.schema.ValueSchema.Field;
+import org.apache.phoenix.schema.tuple.Tuple;
+import org.apache.phoenix.util.ByteUtil;
+import org.apache.phoenix.util.SchemaUtil;
+
+/**
+ * Seeks past the rest of the rows sharing the leading row key columns of an ordered group by
+ * once the aggregates of the group can no longer change. This holds when every aggregate is a
+ * MIN, MAX, FIRST_VALUE or LAST_VALUE whose value is decided by the first row of the row key
+ * prefix in scan order, either because it is over one of the prefix columns or because it is
+ * ordered by the row key column right after the prefix in the direction that column is stored.
+ * The rows of a prefix are read until that first deciding row is found, so rows filtered out
+ * by the where clause or having null values are skipped over correctly.
+ */
+public class LooseIndexScan {
+    private final RowKeySchema schema;
+    private final int prefixLength;
+    // Expressions that must evaluate to a non null value on the row deciding the aggregates
+    private final List<Expression> keyExpressions;
+    // Expressions that must evaluate on the row deciding the aggregates
+    private final List<Expression> valueExpressions;
+    private final ImmutableBytesWritable ptr = new ImmutableBytesWritable();
+
+    private LooseIndexScan(RowKeySchema schema, int prefixLength, List<Expression> keyExpressions,
+            List<Expression> valueExpressions) {
+        this.schema = schema;
+        this.prefixLength = prefixLength;
+        this.keyExpressions = keyExpressions;
+        this.valueExpressions = valueExpressions;
+    }
+
+    /**
+     * Gets the expressions that decide the aggregates of a group by on the first prefixLength
+     * row key columns of a table.
+     * @return a pair of lists, the expressions that must evaluate to a non null value first
+     * and the expressions that must evaluate second, or null if some aggregate may change
+     * after the first row of a row key prefix
+     */
+    public static List<List<Expression>> getDecidingExpressions(RowKeySchema schema, int prefixLength,
+            Aggregators aggregators) {
+        List<Expression> keyExpressions = new ArrayList<Expression>();
+        List<Expression> valueExpressions = new ArrayList<Expression>();
+        SingleAggregateFunction[] functions = aggregators.getFunctions();
+        if (functions.length == 0) {
+            return null;
+        }
+        for (SingleAggregateFunction function : functions) {
+            Class<? extends SingleAggregateFunction> functionClass = function.getClass();
+            if (functionClass == MinAggregateFunction.class || functionClass == MaxAggregateFunction.class) {
+                Expression child = function.getAggregatorExpression();
+                SortOrder sortOrder = functionClass == MinAggregateFunction.class ? SortOrder.ASC : SortOrder.DESC;
+                if (!isDecidedByFirstRow(schema, prefixLength, child, sortOrder)) {
+                    return null;
+                }
+                // The value is the same for every row of a prefix when over a prefix column
+                if (((RowKeyColumnExpression)child).getPosition() == prefixLength) {
+                    keyExpressions.add(child);
+                }
+            } else if (functionClass == FirstValueFunction.class || functionClass == LastValueFunction.class) {
+                List<Expression> children = function.getChildren();
+                Expression orderBy = children.get(0);
+                boolean isAscending = Boolean.TRUE.equals(((LiteralExpression)children.get(1)).getValue());
+                if (functionClass == LastValueFunction.class) {
+                    isAscending = !isAscending;
+                }
+                if (!isDecidedByFirstRow(schema, prefixLength, orderBy, isAscending ? SortOrder.ASC : SortOrder.DESC)) {
+                    return null;
+                }
+                keyExpressions.add(orderBy);
+                valueExpressions.add(children.get(2));
+            } else {
+                return null;
+            }
+        }
+        List<List<Expression>> expressions = new ArrayList<List<Expression>>(2);
+        expressions.add(keyExpressions);
+        expressions.add(valueExpressions);
+        return expressions;
+    }
+
+    private static boolean isDecidedByFirstRow(RowKeySchema schema, int prefixLength, Expression expression,
+            SortOrder sortOrder) {
+        if (!(expression instanceof RowKeyColumnExpression)) {
+            return false;
+        }
+        int position = ((RowKeyColumnExpression)expression).getPosition();
+        if (position < prefixLength) {
+            return true;
+        }
+        return position == prefixLength && schema.getField(position).getSortOrder() == sortOrder;
+    }
+
+    public static void serializeIntoScan(Scan scan, RowKeySchema schema, int prefixLength,
+            List<List<Expression>> decidingExpressions) throws IOException {
+        try (ByteArrayOutputStream stream = new ByteArrayOutputStream()) {
+            DataOutputStream output = new DataOutputStream(stream);
+            WritableUtils.writeVInt(output, prefixLength);
+            schema.write(output);
+            writeExpressions(output, decidingExpressions.get(0));
+            writeExpressions(output, decidingExpressions.get(1));
+            scan.setAttribute(BaseScannerRegionObserver.LOOSE_INDEX_SCAN, stream.toByteArray());
+        }
+    }
+
+    public static LooseIndexScan deserializeFromScan(Scan scan) throws IOException {
+        byte[] looseIndexScan = scan.getAttribute(BaseScannerRegionObserver.LOOSE_INDEX_SCAN);
+        if (looseIndexScan == null) {
+            return null;
+        }
+        try (ByteArrayInputStream stream = new ByteArrayInputStream(looseIndexScan)) {
+            DataInputStream input = new DataInputStream(stream);
+            int prefixLength = WritableUtils.readVInt(input);
+            RowKeySchema schema = new RowKeySchema();
+            schema.readFields(input);
+            List<Expression> keyExpressions = readExpressions(input);
+            List<Expression> valueExpressions = readExpressions(input);
+            return new LooseIndexScan(schema, prefixLength, keyExpressions, valueExpressions);
+        }
+    }
+
+    private static void writeExpressions(DataOutput output, List<Expression> expressions) throws IOException {
+        WritableUtils.writeVInt(output, expressions.size());
+        for (Expression expression : expressions) {
+            WritableUtils.writeVInt(output, ExpressionType.valueOf(expression).ordinal());
+            expression.write(output);
+        }
+    }
+
+    private static List<Expression> readExpressions(DataInput input) throws IOException {
+        int count = WritableUtils.readVInt(input);
+        if (count == 0) {
+            return Collections.emptyList();
+        }
+        List<Expression> expressions = new ArrayList<Expression>(count);
+        for (int i = 0; i < count; i++) {
+            Expression expression = ExpressionType.values()[WritableUtils.readVInt(input)].newInstance();
+            expression.readFields(input);
+            expressions.add(expression);
+        }
+        return expressions;
+    }
+
+    public int getPrefixLength() {
+        return prefixLength;
+    }
+
+    /**
+     * Reseeks the scanner to the first row after the row key prefix of the given row, provided
+     * the row decides the aggregates of its prefix.
+     * @return true if the scanner was reseeked
+     */
+    public boolean skipAhead(Tuple row, RegionScanner scanner) throws IOException {
+        for (Expression expression : keyExpressions) {
+            if (!expression.evaluate(row, ptr) || ptr.getLength() == 0) {
+                return false;
+            }
+        }
+        for (Expression expression : valueExpressions) {
+            if (!expression.evaluate(row, ptr)) {
+                return false;
+            }
+        }
+        byte[] nextPrefix = getNextPrefix(row);
+        if (nextPrefix == null) {
+            return false;
+        }
+        return scanner.reseek(nextPrefix);
+    }
+
+    /**
+     * Gets the smallest row key greater than every row key sharing the row key prefix of the
+     * given row, or null if there is none.
+     */
+    private byte[] getNextPrefix(Tuple row) {
+        ImmutableBytesWritable rowKey = new ImmutableBytesWritable();
+        row.getKey(rowKey);
+        schema.iterator(rowKey.get(), rowKey.getOffset(), rowKey.getLength(), ptr, prefixLength);
+        int length = ptr.getOffset() + ptr.getLength() - rowKey.getOffset();
+        Field lastField = schema.getField(prefixLength - 1);
+        byte[] nextPrefix;
+        if (lastField.getDataType().isFixedWidth()) {
+            nextPrefix = new byte[length];
+        } else {
+            byte separator = SchemaUtil.getSeparatorByte(schema.rowKeyOrderOptimizable(), ptr.getLength() == 0, lastField);
+            // Variable length values never contain the descending separator, so the prefix
+            // itself is incremented when it would overflow
+            nextPrefix = new byte[separator == QueryConstants.DESC_SEPARATOR_BYTE ? length : length + 1];
+            if (nextPrefix.length > length) {
+                nextPrefix[length] = separator;
+            }
+        }
+        System.arraycopy(rowKey.get(), rowKey.getOffset(), nextPrefix, 0, length);
+        if (!ByteUtil.nextKey(nextPrefix, nextPrefix.length)) {
+            return null;
+        }
+        return nextPrefix;
+    }
+}
@@ -122,6 +122,15 @@ public abstract class MetaDataProtocol extends MetaDataService {
     public static final int MIN_4_x_DISABLE_SERVER_SPOOL_THRESHOLD =
             VersionUtil.encodeVersion("4", "15", "0");
 
+    // Version at and after which region servers read hash caches compressed in blocks
+    public static final int MIN_BLOCK_COMPRESSED_HASH_CACHE_VERSION =
+            VersionUtil.encodeVersion("5", "1", "0");
+
+    // Version at and after which region servers drop probe side rows through the Bloom filter
+    // of a hash join build side
+    public static final int MIN_HASH_JOIN_BLOOM_FILTER_VERSION =
+            VersionUtil.encodeVersion("5", "1", "0");
+
     // ALWAYS update this map whenever rolling out a new release (major, minor or patch release). 
     // Key is the SYSTEM.CATALOG timestamp for the version and value is the version string.
     private static final NavigableMap<Long, String> TIMESTAMP_VERSION_MAP = new TreeMap<>();
@@ -0,0 +1,231 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.phoenix.coprocessor;
+
+import static org.apache.phoenix.query.QueryConstants.AGG_TIMESTAMP;
+import static org.apache.phoenix.query.QueryConstants.SINGLE_COLUMN;
+import static org.apache.phoenix.query.QueryConstants.SINGLE_COLUMN_FAMILY;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.coprocessor.RegionCoprocessorEnvironment;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.regionserver.RegionScanner;
+import org.apache.phoenix.cache.GlobalCache;
+import org.apache.phoenix.cache.TenantCache;
+import org.apache.phoenix.expression.aggregator.Aggregator;
+import org.apache.phoenix.expression.aggregator.PrimitiveAggregationTable;
+import org.apache.phoenix.expression.aggregator.ServerAggregators;
+import org.apache.phoenix.hbase.index.util.ImmutableBytesPtr;
+import org.apache.phoenix.memory.InsufficientMemoryException;
+import org.apache.phoenix.memory.MemoryManager.MemoryChunk;
+import org.apache.phoenix.schema.tuple.Tuple;
+import org.apache.phoenix.util.Closeables;
+import org.apache.phoenix.util.LogUtil;
+import org.apache.phoenix.util.PhoenixKeyValueUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Group by cache that aggregates into a {@link PrimitiveAggregationTable} instead of keeping
+ * an {@link Aggregator} array per distinct group. Only usable when every aggregate can be
+ * held in a primitive accumulator, see {@link #newInstance}.
+ *
+ * Memory is accounted for the same way as the other caches. The groups aggregated so far are
+ * handed over to a cache holding them in aggregators, which then takes care of the rest of the
+ * scan, when the aggregators of a group are asked for through {@link #cache} or, if spilling
+ * is enabled, when the table outgrows the memory available.
+ *
+ * @since 5.1.0
+ */
+public class PrimitiveGroupByCache implements GroupByCache {
+    private static final Logger LOGGER = LoggerFactory.getLogger(PrimitiveGroupByCache.class);
+
+    /**
+     * Creates the cache holding groups in aggregators that the groups are handed over to
+     */
+    public interface AggregatorCacheFactory {
+        GroupByCache newCache(int estDistVals);
+    }
+
+    private final RegionCoprocessorEnvironment env;
+    private final byte[] customAnnotations;
+    private final AggregatorCacheFactory aggregatorCacheFactory;
+    private final boolean spillableEnabled;
+    private PrimitiveAggregationTable table;
+    private MemoryChunk chunk;
+    private GroupByCache aggregatorCache;
+
+    private PrimitiveGroupByCache(RegionCoprocessorEnvironment env, byte[] customAnnotations,
+            PrimitiveAggregationTable table, MemoryChunk chunk,
+            AggregatorCacheFactory aggregatorCacheFactory, boolean spillableEnabled) {
+        this.env = env;
+        this.customAnnotations = customAnnotations;
+        this.table = table;
+        this.chunk = chunk;
+        this.aggregatorCacheFactory = aggregatorCacheFactory;
+        this.spillableEnabled = spillableEnabled;
+    }
+
+    /**
+     * @param aggregatorCacheFactory creates the cache the groups are handed over to, which
+     * must be spillable if spillableEnabled is true
+     * @param spillableEnabled whether to hand the groups over instead of failing when the
+     * table outgrows the memory available
+     * @return a cache aggregating into primitive accumulators, or null if any of the
+     * aggregators cannot be represented by one, or if spilling is enabled and the memory
+     * for the estimated number of groups is not available
+     */
+    public static PrimitiveGroupByCache newInstance(RegionCoprocessorEnvironment env,
+            ImmutableBytesPtr tenantId, byte[] customAnnotations, ServerAggregators aggregators,
+            int estDistVals, AggregatorCacheFactory aggregatorCacheFactory, boolean spillableEnabled) {
+        PrimitiveAggregationTable table = PrimitiveAggregationTable.newInstance(aggregators, estDistVals);
+        if (table == null) {
+            return null;
+        }
+        TenantCache tenantCache = GlobalCache.getTenantCache(env, tenantId);
+        MemoryChunk chunk;
+        try {
+            chunk = tenantCache.getMemoryManager().allocate(table.getEstimatedByteSize());
+        } catch (InsufficientMemoryException e) {
+            if (!spillableEnabled) {
+                throw e;
+            }
+            return null;
+        }
+        return new PrimitiveGroupByCache(env, customAnnotations, table, chunk,
+                aggregatorCacheFactory, spillableEnabled);
+    }
+
+    @Override
+    public long size() {
+        return aggregatorCache != null ? aggregatorCache.size() : table.getGroupCount();
+    }
+
+    @Override
+    public Aggregator[] cache(ImmutableBytesPtr key) {
+        if (aggregatorCache == null) {
+            // The table cannot hand out aggregators that stay in sync with it
+            handOver();
+        }
+        return aggregatorCache.cache(key);
+    }
+
+    @Override
+    public void aggregate(ImmutableBytesPtr key, Tuple result) {
+        if (aggregatorCache == null) {
+            int groupCount = table.getGroupCount();
+            int groupId = table.getOrAddGroup(key);
+            if (table.getGroupCount() == groupCount || ensureCapacity()) {
+                table.aggregate(groupId, result);
+                return;
+            }
+        }
+        aggregatorCache.aggregate(key, result);
+    }
+
+    /**
+     * Grow the memory allocation to the size of the table.
+     * @return false if the groups were handed over to a spillable cache instead
+     */
+    private boolean ensureCapacity() {
+        long estSize = table.getEstimatedByteSize();
+        if (estSize <= chunk.getSize()) {
+            return true;
+        }
+        try {
+            // Leave room to grow, as the arrays of the table double in size
+            chunk.resize(Math.max(estSize, (long) (chunk.getSize() * 1.5f)));
+            return true;
+        } catch (InsufficientMemoryException e) {
+            if (!spillableEnabled) {
+                throw e;
+            }
+        }
+        handOver();
+        return false;
+    }
+
+    /**
+     * Move the groups aggregated so far to a cache holding them in aggregators
+     */
+    private void handOver() {
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug(LogUtil.addCustomAnnotations("Moving " + table.getGroupCount()
+                    + " groups to a group by cache holding aggregators", customAnnotations));
+        }
+        // The memory is accounted for by the other cache from now on
+        chunk.close();
+        GroupByCache cache = aggregatorCacheFactory.newCache(table.getGroupCount());
+        ImmutableBytesWritable key = new ImmutableBytesWritable();
+        for (int groupId = 0; groupId < table.getGroupCount(); groupId++) {
+            table.getKey(groupId, key);
+            Aggregator[] rowAggregators = cache.cache(new ImmutableBytesPtr(key.copyBytes()));
+            Aggregator[] groupAggregators = table.newAggregators(groupId, env.getConfiguration());
+            System.arraycopy(groupAggregators, 0, rowAggregators, 0, groupAggregators.length);
+        }
+        aggregatorCache = cache;
+        table = null;
+    }
+
+    @Override
+    public RegionScanner getScanner(final RegionScanner s) {
+        if (aggregatorCache != null) {
+            return aggregatorCache.getScanner(s);
+        }
+        // Compute final allocation
+        chunk.resize(table.getEstimatedByteSize());
+        return new BaseRegionScanner(s) {
+            private final ImmutableBytesWritable key = new ImmutableBytesWritable();
+            private int groupId = 0;
+
+            @Override
+            public void close() throws IOException {
+                try {
+                    s.close();
+                } finally {
+                    Closeables.closeQuietly(PrimitiveGroupByCache.this);
+                }
+            }
+
+            @Override
+            public boolean next(List<Cell> results) throws IOException {
+                if (groupId >= table.getGroupCount()) {
+                    return false;
+                }
+                table.getKey(groupId, key);
+                byte[] value = table.toBytes(groupId);
+                groupId++;
+                results.add(PhoenixKeyValueUtil.newKeyValue(key.get(), key.getOffset(), key.getLength(),
+                        SINGLE_COLUMN_FAMILY, SINGLE_COLUMN, AGG_TIMESTAMP, value, 0, value.length));
+                return groupId < table.getGroupCount();
+            }
+        };
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (aggregatorCache != null) {
+            aggregatorCache.close();
+        } else {
+            chunk.close();
+        }
+    }
+}
@@ -194,6 +194,11 @@ public class ScanRegionObserver extends BaseScannerRegionObserver implements Reg
         return nonAggregateROUtil.getRegionScanner(scan, s);
     }
 
+    @Override
+    protected boolean isVectorizedFilterSupported(Scan scan) {
+        return true;
+    }
+
     @Override
     protected boolean skipRegionBoundaryCheck(Scan scan) {
         return super.skipRegionBoundaryCheck(scan) || ScanUtil.isSimpleScan(scan);
@@ -74,6 +74,7 @@ import org.apache.hadoop.hbase.filter.FirstKeyOnlyFilter;
 import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
 import org.apache.hadoop.hbase.ipc.RpcControllerFactory;
 import org.apache.hadoop.hbase.ipc.controller.InterRegionServerIndexRpcControllerFactory;
+import org.apache.hadoop.hbase.regionserver.FlushLifeCycleTracker;
 import org.apache.hadoop.hbase.regionserver.InternalScanner;
 import org.apache.hadoop.hbase.regionserver.Region;
 import org.apache.hadoop.hbase.regionserver.RegionScanner;
@@ -131,6 +132,7 @@ import org.apache.phoenix.schema.SortOrder;
 import org.apache.phoenix.schema.TableNotFoundException;
 import org.apache.phoenix.schema.TableRef;
 import org.apache.phoenix.schema.ValueSchema.Field;
+import org.apache.phoenix.schema.stats.IncrementalStatisticsScanner;
 import org.apache.phoenix.schema.stats.NoOpStatisticsCollector;
 import org.apache.phoenix.schema.stats.StatisticsCollectionRunTracker;
 import org.apache.phoenix.schema.stats.StatisticsCollector;
@@ -1102,6 +1104,23 @@ public class UngroupedAggregateRegionObserver extends BaseScannerRegionObserver
         return scanner;
     }
 
+    @Override
+    public InternalScanner preFlush(ObserverContext<RegionCoprocessorEnvironment> c, Store store,
+                           InternalScanner scanner, FlushLifeCycleTracker tracker) throws IOException {
+        if (!c.getEnvironment().getConfiguration().getBoolean(
+                QueryServices.STATS_COLLECT_ON_FLUSH_ENABLED_ATTRIB,
+                QueryServicesOptions.DEFAULT_STATS_COLLECT_ON_FLUSH_ENABLED)) {
+            return scanner;
+        }
+        // Only the flushed cells are summarized here. The SYSTEM tables are read after the flush,
+        // when the summary is merged into the existing guideposts of the region.
+        DelegateRegionCoprocessorEnvironment flushConfEnv =
+                new DelegateRegionCoprocessorEnvironment(c.getEnvironment(), ConnectionType.COMPACTION_CONNECTION);
+        return new IncrementalStatisticsScanner(flushConfEnv,
+                c.getEnvironment().getRegion().getRegionInfo().getTable().getNameAsString(), scanner,
+                new ImmutableBytesPtr(store.getColumnFamilyDescriptor().getName()));
+    }
+
     private static PTable deserializeTable(byte[] b) {
         try {
             PTableProtos.PTable ptableProto = PTableProtos.PTable.parseFrom(b);
@@ -1408,6 +1427,19 @@ public class UngroupedAggregateRegionObserver extends BaseScannerRegionObserver
         return scan.getAttribute(BaseScannerRegionObserver.UNGROUPED_AGG) != null;
     }
 
+    @Override
+    protected boolean isVectorizedFilterSupported(Scan scan) {
+        // Only plain aggregations, not the scans that write back or collect statistics
+        return !ScanUtil.isAnalyzeTable(scan) && !ScanUtil.isIndexRebuild(scan)
+                && scan.getAttribute(BaseScannerRegionObserver.UPSERT_SELECT_TABLE) == null
+                && scan.getAttribute(BaseScannerRegionObserver.DELETE_AGG) == null
+                && scan.getAttribute(BaseScannerRegionObserver.DELETE_CF) == null
+                && scan.getAttribute(BaseScannerRegionObserver.EMPTY_CF) == null
+                && scan.getAttribute(BaseScannerRegionObserver.UPGRADE_DESC_ROW_KEY) == null
+                && scan.getAttribute(BaseScannerRegionObserver.LOCAL_INDEX_BUILD) == null
+                && scan.getAttribute(BaseScannerRegionObserver.LOCAL_INDEX_BUILD_PROTO) == null;
+    }
+
     @Override
     public void preCompactScannerOpen(final ObserverContext<RegionCoprocessorEnvironment> c, final Store store,
                                       ScanType scanType, ScanOptions options, CompactionLifeCycleTracker tracker,
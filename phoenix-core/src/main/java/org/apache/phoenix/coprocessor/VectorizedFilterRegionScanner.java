@@ -0,0 +1,196 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.phoenix.coprocessor;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.filter.Filter;
+import org.apache.hadoop.hbase.filter.FilterList;
+import org.apache.hadoop.hbase.regionserver.RegionScanner;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.phoenix.expression.Expression;
+import org.apache.phoenix.expression.ExpressionType;
+import org.apache.phoenix.expression.vector.VectorizedBatch;
+import org.apache.phoenix.expression.vector.VectorizedExpressionCompiler;
+import org.apache.phoenix.expression.vector.VectorizedPredicate;
+import org.apache.phoenix.filter.BooleanExpressionFilter;
+import org.apache.phoenix.filter.SkipScanFilter;
+import org.apache.phoenix.util.PhoenixKeyValueUtil;
+import org.apache.phoenix.util.ServerUtil;
+
+/**
+ * Region scanner that evaluates the WHERE clause of a scan a batch of rows at a time instead
+ * of through a {@link BooleanExpressionFilter} applied to one row at a time. Rows are read
+ * from the underlying scanner into a {@link VectorizedBatch}, the {@link VectorizedPredicate}
+ * compiled from the filter expression narrows a selection vector over the whole batch, and
+ * the selected rows are then returned one by one. The selected rows are copied unless their
+ * cells are already on heap, as they are buffered across calls.
+ *
+ * The filter is moved out of the scan by {@link #pushIntoScan(Scan)} before the region
+ * scanner is opened, and only when the scan has no filter other than the where clause and a
+ * skip scan, as any other filter could depend on the rows the where clause drops.
+ *
+ * @since 5.1.0
+ */
+public class VectorizedFilterRegionScanner extends DelegateRegionScanner {
+    private final VectorizedPredicate predicate;
+    private final VectorizedBatch batch;
+    private final int[] selection;
+    private int selected;
+    private int position;
+    private boolean hasMore = true;
+
+    public VectorizedFilterRegionScanner(RegionScanner scanner, VectorizedPredicate predicate, int batchSize) {
+        super(scanner);
+        this.predicate = predicate;
+        this.batch = new VectorizedBatch(batchSize);
+        this.selection = new int[batchSize];
+    }
+
+    /**
+     * Replaces the where clause filter of the scan with a scan attribute holding its
+     * expression if the expression can be evaluated in batches
+     * @return true if the filter was replaced
+     */
+    public static boolean pushIntoScan(Scan scan) throws IOException {
+        Filter filter = scan.getFilter();
+        Filter remainingFilter = null;
+        BooleanExpressionFilter whereFilter = null;
+        if (filter instanceof BooleanExpressionFilter) {
+            whereFilter = (BooleanExpressionFilter) filter;
+        } else if (filter instanceof FilterList
+                && ((FilterList) filter).getOperator() == FilterList.Operator.MUST_PASS_ALL) {
+            for (Filter f : ((FilterList) filter).getFilters()) {
+                if (f instanceof BooleanExpressionFilter && whereFilter == null) {
+                    whereFilter = (BooleanExpressionFilter) f;
+                } else if (f instanceof SkipScanFilter && remainingFilter == null) {
+                    remainingFilter = f;
+                } else {
+                    return false;
+                }
+            }
+        }
+        if (whereFilter == null) {
+            return false;
+        }
+        Expression expression = whereFilter.getExpression();
+        if (VectorizedExpressionCompiler.compile(expression) == null) {
+            return false;
+        }
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        try {
+            DataOutputStream output = new DataOutputStream(stream);
+            WritableUtils.writeVInt(output, ExpressionType.valueOf(expression).ordinal());
+            expression.write(output);
+            output.flush();
+        } finally {
+            stream.close();
+        }
+        scan.setFilter(remainingFilter);
+        scan.setAttribute(BaseScannerRegionObserver.VECTORIZED_FILTER, stream.toByteArray());
+        return true;
+    }
+
+    /**
+     * @return the scanner evaluating the where clause pushed into the scan attributes by
+     * {@link #pushIntoScan(Scan)}, or the given scanner if there is none
+     */
+    public static RegionScanner wrap(Scan scan, RegionScanner scanner, int batchSize) throws IOException {
+        byte[] expressionBytes = scan.getAttribute(BaseScannerRegionObserver.VECTORIZED_FILTER);
+        if (expressionBytes == null) {
+            return scanner;
+        }
+        Expression expression = null;
+        try {
+            DataInputStream input = new DataInputStream(new ByteArrayInputStream(expressionBytes));
+            expression = ExpressionType.values()[WritableUtils.readVInt(input)].newInstance();
+            expression.readFields(input);
+        } catch (Throwable t) { // Catches incompatibilities during reading and doesn't retry
+            ServerUtil.throwIOException("VectorizedFilterRegionScanner failed during reading", t);
+        }
+        return new VectorizedFilterRegionScanner(scanner, VectorizedExpressionCompiler.compile(expression), batchSize);
+    }
+
+    private void nextBatch(boolean raw) throws IOException {
+        batch.clear();
+        selected = 0;
+        position = 0;
+        while (hasMore && !batch.isFull()) {
+            List<Cell> row = batch.newRow();
+            hasMore = raw ? delegate.nextRaw(row) : delegate.next(row);
+            if (!row.isEmpty()) {
+                batch.addRow();
+            }
+        }
+        int size = batch.size();
+        for (int i = 0; i < size; i++) {
+            selection[i] = i;
+        }
+        selected = size == 0 ? 0 : predicate.select(batch, selection, size);
+        // The selected rows are returned across calls, after the blocks their cells may be backed
+        // by are released, so they are copied. The other rows are only read by the predicate above.
+        for (int i = 0; i < selected; i++) {
+            List<Cell> row = batch.getRow(selection[i]);
+            for (int j = 0; j < row.size(); j++) {
+                row.set(j, PhoenixKeyValueUtil.maybeCopyCell(row.get(j)));
+            }
+        }
+    }
+
+    private boolean next(List<Cell> result, boolean raw) throws IOException {
+        while (position == selected && hasMore) {
+            nextBatch(raw);
+        }
+        if (position < selected) {
+            result.addAll(batch.getRow(selection[position++]));
+        }
+        return position < selected || hasMore;
+    }
+
+    @Override
+    public boolean nextRaw(List<Cell> result) throws IOException {
+        return next(result, true);
+    }
+
+    @Override
+    public boolean next(List<Cell> result) throws IOException {
+        return next(result, false);
+    }
+
+    @Override
+    public boolean reseek(byte[] row) throws IOException {
+        // Rows buffered past the new position must not be returned
+        batch.clear();
+        selected = 0;
+        position = 0;
+        hasMore = true;
+        return delegate.reseek(row);
+    }
+
+    @Override
+    public boolean isFilterDone() throws IOException {
+        return position == selected && delegate.isFilterDone();
+    }
+}
@@ -53,6 +53,7 @@ import org.apache.phoenix.iterate.MergeSortRowKeyResultIterator;
 import org.apache.phoenix.iterate.OffsetResultIterator;
 import org.apache.phoenix.iterate.OrderedAggregatingResultIterator;
 import org.apache.phoenix.iterate.OrderedResultIterator;
+import org.apache.phoenix.iterate.ParallelGroupedAggregatingResultIterator;
 import org.apache.phoenix.iterate.ParallelIteratorFactory;
 import org.apache.phoenix.iterate.ParallelIterators;
 import org.apache.phoenix.iterate.ParallelScanGrouper;
@@ -115,7 +116,9 @@ public class AggregatePlan extends BaseQueryPlan {
             LOGGER.warn("This query cannot be executed serially. Ignoring the hint");
         }
         this.isSerial = hasSerialHint && canBeExecutedSerially;
-        this.actualOutputOrderBy = convertActualOutputOrderBy(orderBy, groupBy, context);
+        // Groups merged in parallel are not returned in group by order
+        this.actualOutputOrderBy = isParallelMerge() ? OrderBy.EMPTY_ORDER_BY
+                : convertActualOutputOrderBy(orderBy, groupBy, context);
     }
 
     public Expression getHaving() {
@@ -227,6 +230,29 @@ public class AggregatePlan extends BaseQueryPlan {
         }
     }
 
+    /**
+     * Whether the partial groups returned by the regions are merged on several threads instead
+     * of being merge sorted. The groups are then returned in no particular order, so this is
+     * only done when they need not be returned in row key order.
+     */
+    private boolean isParallelMerge() {
+        if (groupBy.isEmpty() || groupBy.isUngroupedAggregate()
+                || orderBy == OrderBy.FWD_ROW_KEY_ORDER_BY || orderBy == OrderBy.REV_ROW_KEY_ORDER_BY) {
+            return false;
+        }
+        if (groupBy.isOrderPreserving() && !(this.getTableRef().getTable().getBucketNum() != null
+                || this.getTableRef().getTable().getIndexType() == IndexType.LOCAL)) {
+            return false;
+        }
+        return getClientMergeThreads() > 1;
+    }
+
+    private int getClientMergeThreads() {
+        return context.getConnection().getQueryServices().getProps().getInt(
+                QueryServices.CLIENT_AGGREGATE_MERGE_THREADS_ATTRIB,
+                QueryServicesOptions.DEFAULT_CLIENT_AGGREGATE_MERGE_THREADS);
+    }
+
     private ParallelIteratorFactory wrapParallelIteratorFactory () {
         ParallelIteratorFactory innerFactory;
         QueryServices services = context.getConnection().getQueryServices();
@@ -236,6 +262,9 @@ public class AggregatePlan extends BaseQueryPlan {
             } else {
                 innerFactory = new SpoolingResultIterator.SpoolingResultIteratorFactory(services);
             }
+        } else if (isParallelMerge()) {
+            // Partial groups are hash partitioned, so need not be sorted by region
+            innerFactory = new SpoolingResultIterator.SpoolingResultIteratorFactory(services);
         } else {
             innerFactory = new OrderingResultIteratorFactory(services,this.getOrderBy());
         }
@@ -298,6 +327,9 @@ public class AggregatePlan extends BaseQueryPlan {
         // If salted or local index we still need a merge sort as we'll potentially have multiple group by keys that aren't contiguous.
         } else if (groupBy.isOrderPreserving() && !(this.getTableRef().getTable().getBucketNum() != null || this.getTableRef().getTable().getIndexType() == IndexType.LOCAL)) {
             aggResultIterator = new RowKeyOrderedAggregateResultIterator(iterators, aggregators);
+        } else if (isParallelMerge()) {
+            aggResultIterator = new ParallelGroupedAggregatingResultIterator(context,
+                    new ConcatResultIterator(iterators), aggregators, getClientMergeThreads());
         } else {
             aggResultIterator = new GroupedAggregatingResultIterator(
                     new MergeSortRowKeyResultIterator(iterators, 0, this.getOrderBy() == OrderBy.REV_ROW_KEY_ORDER_BY),aggregators);
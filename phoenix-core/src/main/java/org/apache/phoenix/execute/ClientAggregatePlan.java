@@ -156,6 +156,14 @@ public class ClientAggregatePlan extends ClientProcessingPlan {
                         context.getConnection().getQueryServices().getProps().getBoolean(
                             QueryServices.CLIENT_ORDERBY_SPOOLING_ENABLED_ATTRIB,
                             QueryServicesOptions.DEFAULT_CLIENT_ORDERBY_SPOOLING_ENABLED);
+                boolean externalSortEnabled =
+                        context.getConnection().getQueryServices().getProps().getBoolean(
+                            QueryServices.CLIENT_ORDERBY_EXTERNAL_SORT_ENABLED_ATTRIB,
+                            QueryServicesOptions.DEFAULT_CLIENT_ORDERBY_EXTERNAL_SORT_ENABLED);
+                int mergeFactor =
+                        context.getConnection().getQueryServices().getProps().getInt(
+                            QueryServices.CLIENT_ORDERBY_MERGE_FACTOR_ATTRIB,
+                            QueryServicesOptions.DEFAULT_CLIENT_ORDERBY_MERGE_FACTOR);
                 List<OrderByExpression> keyExpressionOrderBy = Lists.newArrayListWithExpectedSize(keyExpressions.size());
                 for (Expression keyExpression : keyExpressions) {
                     /**
@@ -173,7 +181,9 @@ public class ClientAggregatePlan extends ClientProcessingPlan {
                     iterator =
                             new OrderedResultIterator(iterator, keyExpressionOrderBy,
                                     spoolingEnabled, thresholdBytes, null, null,
-                                    projector.getEstimatedRowByteSize());
+                                    projector.getEstimatedRowByteSize(),
+                                    externalSortEnabled ? context.getConnection().getQueryServices().getSortExecutor() : null,
+                                    mergeFactor);
                     aggResultIterator = new ClientGroupedAggregatingResultIterator(LookAheadResultIterator.wrap(iterator), serverAggregators, keyExpressions);
                 }
             }
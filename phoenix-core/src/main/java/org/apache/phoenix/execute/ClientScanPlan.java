@@ -99,10 +99,20 @@ public class ClientScanPlan extends ClientProcessingPlan {
                     context.getConnection().getQueryServices().getProps().getBoolean(
                         QueryServices.CLIENT_ORDERBY_SPOOLING_ENABLED_ATTRIB,
                         QueryServicesOptions.DEFAULT_CLIENT_ORDERBY_SPOOLING_ENABLED);
+            boolean externalSortEnabled =
+                    context.getConnection().getQueryServices().getProps().getBoolean(
+                        QueryServices.CLIENT_ORDERBY_EXTERNAL_SORT_ENABLED_ATTRIB,
+                        QueryServicesOptions.DEFAULT_CLIENT_ORDERBY_EXTERNAL_SORT_ENABLED);
+            int mergeFactor =
+                    context.getConnection().getQueryServices().getProps().getInt(
+                        QueryServices.CLIENT_ORDERBY_MERGE_FACTOR_ATTRIB,
+                        QueryServicesOptions.DEFAULT_CLIENT_ORDERBY_MERGE_FACTOR);
             iterator =
                     new OrderedResultIterator(iterator, orderBy.getOrderByExpressions(),
                             spoolingEnabled, thresholdBytes, limit, offset,
-                            projector.getEstimatedRowByteSize());
+                            projector.getEstimatedRowByteSize(),
+                            externalSortEnabled ? context.getConnection().getQueryServices().getSortExecutor() : null,
+                            mergeFactor);
         } else {
             if (offset != null) {
                 iterator = new OffsetResultIterator(iterator, offset);
@@ -27,6 +27,7 @@ import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.sql.SQLException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
@@ -35,19 +36,26 @@ import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.phoenix.thirdparty.com.google.common.base.Optional;
 import org.apache.commons.codec.binary.Hex;
+import org.apache.hadoop.hbase.HConstants;
 import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.filter.Filter;
+import org.apache.hadoop.hbase.filter.FilterList;
 import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.io.TimeRange;
 import org.apache.hadoop.hbase.util.Bytes;
 import org.apache.phoenix.cache.ServerCacheClient.ServerCache;
 import org.apache.phoenix.compile.ColumnProjector;
 import org.apache.phoenix.compile.ExplainPlan;
 import org.apache.phoenix.compile.FromCompiler;
+import org.apache.phoenix.compile.JoinCompiler;
 import org.apache.phoenix.compile.QueryPlan;
 import org.apache.phoenix.compile.RowProjector;
 import org.apache.phoenix.compile.ScanRanges;
 import org.apache.phoenix.compile.StatementContext;
 import org.apache.phoenix.compile.WhereCompiler;
+import org.apache.phoenix.coprocessor.BaseScannerRegionObserver;
 import org.apache.phoenix.coprocessor.HashJoinCacheNotFoundException;
+import org.apache.phoenix.coprocessor.MetaDataProtocol;
 import org.apache.phoenix.exception.SQLExceptionCode;
 import org.apache.phoenix.exception.SQLExceptionInfo;
 import org.apache.phoenix.execute.visitor.AvgRowWidthVisitor;
@@ -58,15 +66,18 @@ import org.apache.phoenix.expression.Expression;
 import org.apache.phoenix.expression.InListExpression;
 import org.apache.phoenix.expression.LiteralExpression;
 import org.apache.phoenix.expression.RowValueConstructorExpression;
+import org.apache.phoenix.filter.HashJoinBloomFilter;
 import org.apache.phoenix.hbase.index.util.ImmutableBytesPtr;
 import org.apache.phoenix.iterate.*;
 import org.apache.phoenix.jdbc.PhoenixConnection;
 import org.apache.phoenix.job.JobManager.JobCallable;
+import org.apache.phoenix.join.CoLocatedJoinInfo;
 import org.apache.phoenix.join.HashCacheClient;
 import org.apache.phoenix.join.HashJoinInfo;
 import org.apache.phoenix.monitoring.TaskExecutionMetricsHolder;
 import org.apache.phoenix.optimize.Cost;
 import org.apache.phoenix.parse.FilterableStatement;
+import org.apache.phoenix.parse.JoinTableNode.JoinType;
 import org.apache.phoenix.parse.ParseNode;
 import org.apache.phoenix.parse.SQLParser;
 import org.apache.phoenix.parse.SelectStatement;
@@ -82,7 +93,10 @@ import org.apache.phoenix.schema.types.PDataType;
 import org.apache.phoenix.schema.types.PVarbinary;
 import org.apache.phoenix.util.CostUtil;
 import org.apache.phoenix.util.EnvironmentEdgeManager;
+import org.apache.phoenix.util.KeyBloomFilter;
+import org.apache.phoenix.util.LogUtil;
 import org.apache.phoenix.util.SQLCloseables;
+import org.apache.phoenix.util.ScanUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -102,10 +116,13 @@ public class HashJoinPlan extends DelegateQueryPlan {
     private final Set<TableRef> tableRefs;
     private final int maxServerCacheTimeToLive;
     private final long serverCacheLimit;
+    private final boolean useBloomFilter;
+    private final int bloomFilterMaxKeys;
     private final Map<ImmutableBytesPtr,ServerCache> dependencies = Maps.newHashMap();
     private HashCacheClient hashClient;
     private AtomicLong firstJobEndTime;
     private List<Expression> keyRangeExpressions;
+    private Map<Integer, KeyBloomFilter> bloomFilters;
     private Long estimatedRows;
     private Long estimatedBytes;
     private Long estimateInfoTs;
@@ -152,6 +169,13 @@ public class HashJoinPlan extends DelegateQueryPlan {
                 QueryServices.MAX_SERVER_CACHE_TIME_TO_LIVE_MS_ATTRIB, QueryServicesOptions.DEFAULT_MAX_SERVER_CACHE_TIME_TO_LIVE_MS);
         this.serverCacheLimit = services.getProps().getLong(
                 QueryServices.MAX_SERVER_CACHE_SIZE_ATTRIB, QueryServicesOptions.DEFAULT_MAX_SERVER_CACHE_SIZE);
+        // Region servers that do not know the filter would fail the probe side scan
+        this.useBloomFilter = services.getProps().getBoolean(
+                QueryServices.HASH_JOIN_BLOOM_FILTER_ENABLED_ATTRIB, QueryServicesOptions.DEFAULT_HASH_JOIN_BLOOM_FILTER_ENABLED)
+                && plan.getContext().getConnection().getQueryServices().getLowestClusterPhoenixVersion()
+                        >= MetaDataProtocol.MIN_HASH_JOIN_BLOOM_FILTER_VERSION;
+        this.bloomFilterMaxKeys = services.getProps().getInt(
+                QueryServices.HASH_JOIN_BLOOM_FILTER_MAX_KEYS_ATTRIB, QueryServicesOptions.DEFAULT_HASH_JOIN_BLOOM_FILTER_MAX_KEYS);
     }
     
     @Override
@@ -176,6 +200,7 @@ public class HashJoinPlan extends DelegateQueryPlan {
                   : new HashCacheClient(delegate.getContext().getConnection());
             firstJobEndTime = new AtomicLong(0);
             keyRangeExpressions = new CopyOnWriteArrayList<Expression>();
+            bloomFilters = new ConcurrentHashMap<Integer, KeyBloomFilter>();
         }
         
         for (int i = 0; i < count; i++) {
@@ -245,6 +270,7 @@ public class HashJoinPlan extends DelegateQueryPlan {
 
         if (joinInfo != null) {
             HashJoinInfo.serializeHashJoinIntoScan(scan, joinInfo);
+            pushBloomFilters(scan);
         }
         
         ResultIterator iterator = joinInfo == null ? delegate.iterator(scanGrouper, scan) : ((BaseQueryPlan) delegate).iterator(dependencies, scanGrouper, scan);
@@ -467,6 +493,20 @@ public class HashJoinPlan extends DelegateQueryPlan {
             }
         }
 
+        /**
+         * A probe side row can only be dropped early when the join would discard it anyway
+         * for lack of a match. Persistent caches are reused by later queries without the
+         * build side being scanned again, so they never get a Bloom filter.
+         */
+        private boolean useBloomFilter(HashJoinPlan parent) {
+            if (!parent.useBloomFilter || usePersistentCache || parent.joinInfo == null
+                    || !parent.joinInfo.earlyEvaluation()[index]) {
+                return false;
+            }
+            JoinType type = parent.joinInfo.getJoinTypes()[index];
+            return type == JoinType.Inner || type == JoinType.Semi;
+        }
+
         @Override
         public void postProcess(ServerCache result, HashJoinPlan parent) throws SQLException {
         }
@@ -497,7 +537,63 @@ public class HashJoinPlan extends DelegateQueryPlan {
         }
     }
     
+    /**
+     * Push the Bloom filters built from the build sides of this join into the probe side
+     * scan. A Bloom filter left on the scan by a previous execution is always removed, as
+     * it describes a build side that may since have changed.
+     */
+    private void pushBloomFilters(Scan scan) {
+        removeBloomFilter(scan);
+        // The join keys are compiled against the row the region scanner projects before probing
+        // the hash caches. Local index scans are excluded, as the data columns of their rows are
+        // only joined in afterwards.
+        if (bloomFilters.isEmpty() || !joinInfo.forceProjection() || ScanUtil.isLocalIndex(scan)) {
+            return;
+        }
+        TupleProjector projector = TupleProjector.deserializeProjectorFromScan(scan);
+        if (projector == null) {
+            return;
+        }
+        List<List<Expression>> keyExpressions = Lists.newArrayListWithExpectedSize(bloomFilters.size());
+        List<KeyBloomFilter> filters = Lists.newArrayListWithExpectedSize(bloomFilters.size());
+        for (Map.Entry<Integer, KeyBloomFilter> entry : new TreeMap<Integer, KeyBloomFilter>(bloomFilters).entrySet()) {
+            List<Expression> expressions = HashJoinBloomFilter.getKeyExpressions(projector,
+                    joinInfo.getJoinExpressions()[entry.getKey()]);
+            if (expressions != null) {
+                keyExpressions.add(expressions);
+                filters.add(entry.getValue());
+            }
+        }
+        if (filters.isEmpty()) {
+            return;
+        }
+        @SuppressWarnings("unchecked")
+        List<Expression>[] keyExpressionArray = keyExpressions.toArray(new List[filters.size()]);
+        ScanUtil.andFilterAtEnd(scan, new HashJoinBloomFilter(keyExpressionArray,
+                filters.toArray(new KeyBloomFilter[filters.size()])));
+    }
+
+    private static void removeBloomFilter(Scan scan) {
+        Filter filter = scan.getFilter();
+        if (filter instanceof HashJoinBloomFilter) {
+            scan.setFilter(null);
+        } else if (filter instanceof FilterList && ((FilterList) filter).getOperator() == FilterList.Operator.MUST_PASS_ALL) {
+            List<Filter> filters = Lists.newArrayList();
+            for (Filter f : ((FilterList) filter).getFilters()) {
+                if (!(f instanceof HashJoinBloomFilter)) {
+                    filters.add(f);
+                }
+            }
+            if (filters.size() != ((FilterList) filter).getFilters().size()) {
+                scan.setFilter(filters.isEmpty() ? null : filters.size() == 1 ? filters.get(0)
+                        : new FilterList(FilterList.Operator.MUST_PASS_ALL, filters));
+            }
+        }
+    }
+
     public static class HashSubPlan implements SubPlan {        
+        private static final double BLOOM_FILTER_FPP = 0.01;
+
         private final int index;
         private final QueryPlan plan;
         private final List<Expression> hashExpressions;
@@ -557,10 +653,19 @@ public class HashJoinPlan extends DelegateQueryPlan {
                             " for " + queryString);
                     if (cache == null) {
                         LOGGER.debug("Making RPC to add cache " + Hex.encodeHexString(cacheId));
+                        KeyBloomFilter.Builder bloomFilterBuilder = useBloomFilter(parent)
+                                ? new KeyBloomFilter.Builder(parent.bloomFilterMaxKeys, BLOOM_FILTER_FPP)
+                                : null;
                         cache = parent.hashClient.addHashCache(ranges, cacheId, iterator,
                                 plan.getEstimatedSize(), hashExpressions, singleValueOnly, usePersistentCache,
                                 parent.delegate.getTableRef().getTable(), keyRangeRhsExpression,
-                                keyRangeRhsValues);
+                                keyRangeRhsValues, bloomFilterBuilder);
+                        if (bloomFilterBuilder != null) {
+                            KeyBloomFilter bloomFilter = bloomFilterBuilder.build();
+                            if (bloomFilter != null) {
+                                parent.bloomFilters.put(index, bloomFilter);
+                            }
+                        }
                         long endTime = EnvironmentEdgeManager.currentTimeMillis();
                         boolean isSet = parent.firstJobEndTime.compareAndSet(0, endTime);
                         if (!isSet && (endTime
@@ -643,6 +748,104 @@ public class HashJoinPlan extends DelegateQueryPlan {
         }
     }
 
+    /**
+     * Sub plan of a join on the leading row key columns of both tables. Rather than being
+     * run on the client and sent to the region servers as a hash cache, the scan of the
+     * right-hand table is pushed along with the scan of the left-hand table, and each region
+     * merges the rows of both tables as it scans them in row key order, so that only the
+     * joined rows are returned.
+     * @see JoinCompiler#getCoLocatedKeyPrefixLength(PTable, PTable, List, List)
+     */
+    public static class CoLocatedMergeSubPlan implements SubPlan {
+        private final int index;
+        private final QueryPlan plan;
+        private final List<Expression> hashExpressions;
+        private final boolean singleValueOnly;
+        private final int keyPrefixLength;
+
+        public CoLocatedMergeSubPlan(int index, QueryPlan subPlan,
+                List<Expression> hashExpressions,
+                boolean singleValueOnly,
+                int keyPrefixLength) {
+            this.index = index;
+            this.plan = subPlan;
+            this.hashExpressions = hashExpressions;
+            this.singleValueOnly = singleValueOnly;
+            this.keyPrefixLength = keyPrefixLength;
+        }
+
+        @Override
+        public ServerCache execute(HashJoinPlan parent) throws SQLException {
+            StatementContext context = plan.getContext();
+            PhoenixConnection connection = context.getConnection();
+            PTable table = plan.getTableRef().getTable();
+            // Set the scan attributes the plan would set when run on the client
+            Scan scan = ScanUtil.newScan(context.getScan());
+            BaseResultIterators.initializeScan(plan, null, null, scan);
+            ScanUtil.setClientVersion(scan, MetaDataProtocol.PHOENIX_VERSION);
+            scan.setConsistency(connection.getConsistency());
+            Long scn = connection.getSCN();
+            try {
+                TimeRange timeRange = ScanUtil.intersectTimeRange(context.getScanRanges().getRowTimestampRange(),
+                        scan.getTimeRange(), scn == null ? HConstants.LATEST_TIMESTAMP : scn);
+                if (timeRange == null) {
+                    // No version of the right-hand rows can be read
+                    scan.setTimeRange(0, 0);
+                } else {
+                    scan.setTimeRange(timeRange.getMin(), timeRange.getMax());
+                }
+            } catch (IOException e) {
+                throw ServerUtil.parseServerException(e);
+            }
+            ScanUtil.setTenantId(scan, connection.getTenantId() == null ? null : connection.getTenantId().getBytes());
+            String customAnnotations = LogUtil.customAnnotationsToString(connection);
+            ScanUtil.setCustomAnnotations(scan, customAnnotations == null ? null : customAnnotations.getBytes());
+            // The scan is run from each region of the left-hand table, across the regions of this one
+            scan.setAttribute(BaseScannerRegionObserver.SKIP_REGION_BOUNDARY_CHECK, Bytes.toBytes(true));
+            PTable lhsTable = parent.delegate.getTableRef().getTable();
+            parent.joinInfo.getCoLocatedJoins()[index] = new CoLocatedJoinInfo(table.getPhysicalName().getBytes(),
+                    scan, hashExpressions, singleValueOnly, lhsTable.getRowKeySchema(), table.getRowKeySchema(),
+                    keyPrefixLength);
+            return null;
+        }
+
+        @Override
+        public void postProcess(ServerCache result, HashJoinPlan parent)
+                throws SQLException {
+            // No cache is looked up by this id, but a server unaware of co-located joins
+            // fails on it rather than skipping the join as it does for an empty id
+            parent.joinInfo.getJoinIds()[index].set(Bytes.toBytes(RANDOM.nextLong()));
+        }
+
+        @Override
+        public List<String> getPreSteps(HashJoinPlan parent) throws SQLException {
+            List<String> steps = Lists.newArrayList();
+            boolean earlyEvaluation = parent.joinInfo.earlyEvaluation()[index];
+            steps.add("    CO-LOCATED " + parent.joinInfo.getJoinTypes()[index].toString().toUpperCase()
+                    + "-JOIN TABLE " + index + (earlyEvaluation ? "" : "(DELAYED EVALUATION)")
+                    + " ON " + keyPrefixLength + " KEY COLUMN" + (keyPrefixLength > 1 ? "S" : ""));
+            for (String step : plan.getExplainPlan().getPlanSteps()) {
+                steps.add("        " + step);
+            }
+            return steps;
+        }
+
+        @Override
+        public List<String> getPostSteps(HashJoinPlan parent) throws SQLException {
+            return Collections.<String> emptyList();
+        }
+
+        @Override
+        public QueryPlan getInnerPlan() {
+            return plan;
+        }
+
+        @Override
+        public boolean hasKeyRangeExpression() {
+            return false;
+        }
+    }
+
     @Override
     public Long getEstimatedRowsToScan() throws SQLException {
         if (!getEstimatesCalled) {
@@ -38,6 +38,13 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.annotation.Nonnull;
 import javax.annotation.concurrent.Immutable;
@@ -106,6 +113,7 @@ import org.apache.phoenix.util.EnvironmentEdgeManager;
 import org.apache.phoenix.util.IndexUtil;
 import org.apache.phoenix.util.LogUtil;
 import org.apache.phoenix.util.PhoenixKeyValueUtil;
+import org.apache.phoenix.util.ReadOnlyProps;
 import org.apache.phoenix.util.SQLCloseable;
 import org.apache.phoenix.util.SchemaUtil;
 import org.apache.phoenix.util.ServerUtil;
@@ -651,8 +659,19 @@ public class MutationState implements SQLCloseable {
                 // The DeleteCompiler already generates the deletes for indexes, so no need to do it again
                 rowMutationsPertainingToIndex = Collections.emptyList();
             } else {
-                for (Map.Entry<PColumn, byte[]> valueEntry : rowEntry.getValue().getColumnValues().entrySet()) {
-                    row.setValue(valueEntry.getKey(), valueEntry.getValue());
+                Map<PColumn, byte[]> columnValues = rowEntry.getValue().getColumnValues();
+                if (columnValues instanceof PackedColumnValues) {
+                    // Set the values straight from the packed values, without a copy per column
+                    PackedColumnValues packedValues = (PackedColumnValues)columnValues;
+                    ImmutableBytesWritable valuePtr = new ImmutableBytesWritable();
+                    for (int i = 0; i < packedValues.size(); i++) {
+                        packedValues.getValue(i, valuePtr);
+                        row.setValue(packedValues.getColumn(i), valuePtr);
+                    }
+                } else {
+                    for (Map.Entry<PColumn, byte[]> valueEntry : columnValues.entrySet()) {
+                        row.setValue(valueEntry.getKey(), valueEntry.getValue());
+                    }
                 }
                 if (wildcardIncludesDynamicCols && row.setAttributesForDynamicColumnsIfReqd()) {
                     row.setAttributeToProcessDynamicColumnsMetadata();
@@ -988,14 +1007,14 @@ public class MutationState implements SQLCloseable {
                     verifiedOrDeletedIndexMutations);
 
             // Phase 1: Send index mutations with the empty column value = "unverified"
-            sendMutations(unverifiedIndexMutations.entrySet().iterator(), span, indexMetaDataPtr, false);
+            sendMutations(unverifiedIndexMutations, span, indexMetaDataPtr, false);
 
             // Phase 2: Send data table and other indexes
-            sendMutations(physicalTableMutationMap.entrySet().iterator(), span, indexMetaDataPtr, false);
+            sendMutations(physicalTableMutationMap, span, indexMetaDataPtr, false);
 
             // Phase 3: Send put index mutations with the empty column value = "verified" and/or delete index mutations
             try {
-                sendMutations(verifiedOrDeletedIndexMutations.entrySet().iterator(), span, indexMetaDataPtr, true);
+                sendMutations(verifiedOrDeletedIndexMutations, span, indexMetaDataPtr, true);
             } catch (SQLException ex) {
                 LOGGER.warn(
                         "Ignoring exception that happened during setting index verified value to verified=TRUE ",
@@ -1004,223 +1023,349 @@ public class MutationState implements SQLCloseable {
         }
     }
 
+    /**
+     * Send the mutations of one phase of a commit. When pipelined commits are enabled and the
+     * mutations go to more than one physical table, the tables are written concurrently, with
+     * at most {@link QueryServices#MUTATE_PIPELINED_COMMIT_MAX_IN_FLIGHT_ATTRIB} tables being
+     * written at a time on the {@link QueryServices#getCommitExecutor() commit executor}. The
+     * mutations for the same physical table are always sent in order by a single thread. Every
+     * table being written is waited for before the first failure, if any, is thrown.
+     * Transactional commits are always sent one table at a time, as the transaction context
+     * isn't thread safe.
+     */
+    private void sendMutations(Map<TableInfo, List<Mutation>> mutationMap, final Span span,
+            ImmutableBytesWritable indexMetaDataPtr, final boolean isVerifiedPhase) throws SQLException {
+        ReadOnlyProps props = connection.getQueryServices().getProps();
+        int maxInFlight = props.getBoolean(QueryServices.MUTATE_PIPELINED_COMMIT_ENABLED_ATTRIB,
+                QueryServicesOptions.DEFAULT_MUTATE_PIPELINED_COMMIT_ENABLED)
+                ? props.getInt(QueryServices.MUTATE_PIPELINED_COMMIT_MAX_IN_FLIGHT_ATTRIB,
+                        QueryServicesOptions.DEFAULT_MUTATE_PIPELINED_COMMIT_MAX_IN_FLIGHT)
+                : 1;
+        Map<PName, List<Entry<TableInfo, List<Mutation>>>> physicalTableMutations = Maps.newLinkedHashMap();
+        for (Entry<TableInfo, List<Mutation>> entry : mutationMap.entrySet()) {
+            if (entry.getKey().getPTable().isTransactional()) {
+                maxInFlight = 1;
+            }
+            List<Entry<TableInfo, List<Mutation>>> entries = physicalTableMutations.get(entry.getKey().getHTableName());
+            if (entries == null) {
+                entries = Lists.newArrayListWithExpectedSize(1);
+                physicalTableMutations.put(entry.getKey().getHTableName(), entries);
+            }
+            entries.add(entry);
+        }
+        if (maxInFlight <= 1 || physicalTableMutations.size() <= 1) {
+            sendMutations(mutationMap.entrySet().iterator(), span, indexMetaDataPtr, isVerifiedPhase);
+            return;
+        }
+
+        // The tables are written on a dedicated executor, as writing a table submits tasks
+        // to the query services executor and waits for them to complete
+        ExecutorCompletionService<Void> completionService =
+                new ExecutorCompletionService<Void>(connection.getQueryServices().getCommitExecutor());
+        Iterator<List<Entry<TableInfo, List<Mutation>>>> tableIterator = physicalTableMutations.values().iterator();
+        List<Future<Void>> futures = Lists.newArrayListWithExpectedSize(physicalTableMutations.size());
+        final AtomicBoolean failed = new AtomicBoolean();
+        boolean interrupted = false;
+        int inFlight = 0;
+        // Only wait for the tables being written here, the outcome of each is collected once
+        // they are all done
+        while (inFlight > 0 || (!failed.get() && tableIterator.hasNext())) {
+            if (!failed.get() && inFlight < maxInFlight && tableIterator.hasNext()) {
+                final List<Entry<TableInfo, List<Mutation>>> entries = tableIterator.next();
+                Callable<Void> task = new Callable<Void>() {
+                    @Override
+                    public Void call() throws SQLException {
+                        try {
+                            // Each table gets its own pointer, as the index metadata is serialized into it
+                            sendMutations(entries.iterator(), span, new ImmutableBytesWritable(), isVerifiedPhase);
+                            return null;
+                        } catch (SQLException | RuntimeException e) {
+                            failed.set(true);
+                            throw e;
+                        }
+                    }
+                };
+                try {
+                    futures.add(completionService.submit(task));
+                    inFlight++;
+                } catch (RejectedExecutionException e) {
+                    // Write the table from this thread when every commit thread is busy
+                    FutureTask<Void> future = new FutureTask<Void>(task);
+                    future.run();
+                    futures.add(future);
+                }
+                continue;
+            }
+            try {
+                completionService.take();
+                inFlight--;
+            } catch (InterruptedException e) {
+                // The tables being written can't be abandoned, as they update the state of
+                // this commit, so keep waiting for them and fail the commit afterwards
+                interrupted = true;
+            }
+        }
+
+        SQLException sqlE = null;
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+            sqlE = new SQLExceptionInfo.Builder(SQLExceptionCode.INTERRUPTED_EXCEPTION)
+                    .build().buildException();
+        }
+        for (Future<Void> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                // Not reached, as every future is done
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                SQLException cause = e.getCause() instanceof SQLException ? (SQLException)e.getCause()
+                        : ServerUtil.parseServerException(e.getCause());
+                if (cause instanceof CommitException) {
+                    // The statements not committed are only known once every table is done
+                    CommitException commitE = (CommitException)cause;
+                    cause = new CommitException((Exception)commitE.getCause(),
+                            getUncommittedStatementIndexes(), commitE.getServerTimestamp());
+                }
+                if (sqlE == null) {
+                    sqlE = cause;
+                } else {
+                    sqlE.setNextException(cause);
+                }
+            }
+        }
+        if (sqlE != null) {
+            throw sqlE;
+        }
+    }
+
     private void sendMutations(Iterator<Entry<TableInfo, List<Mutation>>> mutationsIterator, Span span, ImmutableBytesWritable indexMetaDataPtr, boolean isVerifiedPhase)
             throws SQLException {
         while (mutationsIterator.hasNext()) {
             Entry<TableInfo, List<Mutation>> pair = mutationsIterator.next();
-            TableInfo tableInfo = pair.getKey();
-            byte[] htableName = tableInfo.getHTableName().getBytes();
-            List<Mutation> mutationList = pair.getValue();
-            List<List<Mutation>> mutationBatchList =
-                    getMutationBatchList(batchSize, batchSizeBytes, mutationList);
-
-            // create a span per target table
-            // TODO maybe we can be smarter about the table name to string here?
-            Span child = Tracing.child(span, "Writing mutation batch for table: " + Bytes.toString(htableName));
-
-            int retryCount = 0;
-            boolean shouldRetry = false;
-            long numMutations = 0;
-            long mutationSizeBytes = 0;
-            long mutationCommitTime = 0;
-            long numFailedMutations = 0;
-            long numFailedPhase3Mutations = 0;
-
-            long startTime = 0;
-            boolean shouldRetryIndexedMutation = false;
-            IndexWriteException iwe = null;
-            do {
-                TableRef origTableRef = tableInfo.getOrigTableRef();
-                PTable table = origTableRef.getTable();
-                table.getIndexMaintainers(indexMetaDataPtr, connection);
-                final ServerCache cache = tableInfo.isDataTable() ?
-                        IndexMetaDataCacheClient.setMetaDataOnMutations(connection, table,
-                                mutationList, indexMetaDataPtr) : null;
-                // If we haven't retried yet, retry for this case only, as it's possible that
-                // a split will occur after we send the index metadata cache to all known
-                // region servers.
-                shouldRetry = cache != null;
-                SQLException sqlE = null;
-                Table hTable = connection.getQueryServices().getTable(htableName);
-                try {
-                    if (table.isTransactional()) {
-                        // Track tables to which we've sent uncommitted data
-                        if (tableInfo.isDataTable()) {
-                            uncommittedPhysicalNames.add(table.getPhysicalName().getString());
-                            phoenixTransactionContext.markDMLFence(table);
-                        }
-                        // Only pass true for last argument if the index is being written to on it's own (i.e. initial
-                        // index population), not if it's being written to for normal maintenance due to writes to
-                        // the data table. This case is different because the initial index population does not need
-                        // to be done transactionally since the index is only made active after all writes have
-                        // occurred successfully.
-                        hTable = phoenixTransactionContext.getTransactionalTableWriter(connection, table, hTable, tableInfo.isDataTable() && table.getType() == PTableType.INDEX);
+            sendMutations(pair.getKey(), pair.getValue(), span, indexMetaDataPtr, isVerifiedPhase);
+        }
+    }
+
+    private void sendMutations(TableInfo tableInfo, List<Mutation> mutationList, Span span, ImmutableBytesWritable indexMetaDataPtr, boolean isVerifiedPhase)
+            throws SQLException {
+        byte[] htableName = tableInfo.getHTableName().getBytes();
+        List<List<Mutation>> mutationBatchList =
+                getMutationBatchList(batchSize, batchSizeBytes, mutationList);
+
+        // create a span per target table
+        // TODO maybe we can be smarter about the table name to string here?
+        Span child = Tracing.child(span, "Writing mutation batch for table: " + Bytes.toString(htableName));
+
+        int retryCount = 0;
+        boolean shouldRetry = false;
+        long numMutations = 0;
+        long mutationSizeBytes = 0;
+        long mutationCommitTime = 0;
+        long numFailedMutations = 0;
+        long numFailedPhase3Mutations = 0;
+
+        long startTime = 0;
+        boolean shouldRetryIndexedMutation = false;
+        IndexWriteException iwe = null;
+        do {
+            TableRef origTableRef = tableInfo.getOrigTableRef();
+            PTable table = origTableRef.getTable();
+            table.getIndexMaintainers(indexMetaDataPtr, connection);
+            final ServerCache cache = tableInfo.isDataTable() ?
+                    IndexMetaDataCacheClient.setMetaDataOnMutations(connection, table,
+                            mutationList, indexMetaDataPtr) : null;
+            // If we haven't retried yet, retry for this case only, as it's possible that
+            // a split will occur after we send the index metadata cache to all known
+            // region servers.
+            shouldRetry = cache != null;
+            SQLException sqlE = null;
+            Table hTable = connection.getQueryServices().getTable(htableName);
+            try {
+                if (table.isTransactional()) {
+                    // Track tables to which we've sent uncommitted data
+                    if (tableInfo.isDataTable()) {
+                        uncommittedPhysicalNames.add(table.getPhysicalName().getString());
+                        phoenixTransactionContext.markDMLFence(table);
                     }
-                    numMutations = mutationList.size();
-                    GLOBAL_MUTATION_BATCH_SIZE.update(numMutations);
-                    mutationSizeBytes = calculateMutationSize(mutationList);
-
-                    startTime = EnvironmentEdgeManager.currentTimeMillis();
-                    child.addTimelineAnnotation("Attempt " + retryCount);
-                    Iterator<List<Mutation>> itrListMutation = mutationBatchList.iterator();
-                    while (itrListMutation.hasNext()) {
-                        final List<Mutation> mutationBatch = itrListMutation.next();
-                        if (shouldRetryIndexedMutation) {
-                            // if there was an index write failure, retry the mutation in a loop
-                            final Table finalHTable = hTable;
-                            final ImmutableBytesWritable finalindexMetaDataPtr =
-                                    indexMetaDataPtr;
-                            final PTable finalPTable = table;
-                            PhoenixIndexFailurePolicy.doBatchWithRetries(new MutateCommand() {
-                                @Override
-                                public void doMutation() throws IOException {
-                                    try {
-                                        finalHTable.batch(mutationBatch, null);
-                                    } catch (InterruptedException e) {
-                                        Thread.currentThread().interrupt();
-                                        throw new IOException(e);
-                                    } catch (IOException e) {
-                                        e = updateTableRegionCacheIfNecessary(e);
-                                        throw e;
-                                    }
+                    // Only pass true for last argument if the index is being written to on it's own (i.e. initial
+                    // index population), not if it's being written to for normal maintenance due to writes to
+                    // the data table. This case is different because the initial index population does not need
+                    // to be done transactionally since the index is only made active after all writes have
+                    // occurred successfully.
+                    hTable = phoenixTransactionContext.getTransactionalTableWriter(connection, table, hTable, tableInfo.isDataTable() && table.getType() == PTableType.INDEX);
+                }
+                numMutations = mutationList.size();
+                GLOBAL_MUTATION_BATCH_SIZE.update(numMutations);
+                mutationSizeBytes = calculateMutationSize(mutationList);
+
+                startTime = EnvironmentEdgeManager.currentTimeMillis();
+                child.addTimelineAnnotation("Attempt " + retryCount);
+                Iterator<List<Mutation>> itrListMutation = mutationBatchList.iterator();
+                while (itrListMutation.hasNext()) {
+                    final List<Mutation> mutationBatch = itrListMutation.next();
+                    if (shouldRetryIndexedMutation) {
+                        // if there was an index write failure, retry the mutation in a loop
+                        final Table finalHTable = hTable;
+                        final ImmutableBytesWritable finalindexMetaDataPtr =
+                                indexMetaDataPtr;
+                        final PTable finalPTable = table;
+                        PhoenixIndexFailurePolicy.doBatchWithRetries(new MutateCommand() {
+                            @Override
+                            public void doMutation() throws IOException {
+                                try {
+                                    finalHTable.batch(mutationBatch, null);
+                                } catch (InterruptedException e) {
+                                    Thread.currentThread().interrupt();
+                                    throw new IOException(e);
+                                } catch (IOException e) {
+                                    e = updateTableRegionCacheIfNecessary(e);
+                                    throw e;
                                 }
+                            }
 
-                                @Override
-                                public List<Mutation> getMutationList() {
-                                    return mutationBatch;
-                                }
+                            @Override
+                            public List<Mutation> getMutationList() {
+                                return mutationBatch;
+                            }
 
-                                private IOException
-                                updateTableRegionCacheIfNecessary(IOException ioe) {
-                                    SQLException sqlE =
-                                            ServerUtil.parseLocalOrRemoteServerException(ioe);
-                                    if (sqlE != null
-                                            && sqlE.getErrorCode() == SQLExceptionCode.INDEX_METADATA_NOT_FOUND
-                                            .getErrorCode()) {
-                                        try {
-                                            connection.getQueryServices().clearTableRegionCache(
-                                                    finalHTable.getName());
-                                            IndexMetaDataCacheClient.setMetaDataOnMutations(
-                                                    connection, finalPTable, mutationBatch,
-                                                    finalindexMetaDataPtr);
-                                        } catch (SQLException e) {
-                                            return ServerUtil.createIOException(
-                                                    "Exception during updating index meta data cache",
-                                                    ioe);
-                                        }
+                            private IOException
+                            updateTableRegionCacheIfNecessary(IOException ioe) {
+                                SQLException sqlE =
+                                        ServerUtil.parseLocalOrRemoteServerException(ioe);
+                                if (sqlE != null
+                                        && sqlE.getErrorCode() == SQLExceptionCode.INDEX_METADATA_NOT_FOUND
+                                        .getErrorCode()) {
+                                    try {
+                                        connection.getQueryServices().clearTableRegionCache(
+                                                finalHTable.getName());
+                                        IndexMetaDataCacheClient.setMetaDataOnMutations(
+                                                connection, finalPTable, mutationBatch,
+                                                finalindexMetaDataPtr);
+                                    } catch (SQLException e) {
+                                        return ServerUtil.createIOException(
+                                                "Exception during updating index meta data cache",
+                                                ioe);
                                     }
-                                    return ioe;
                                 }
-                            }, iwe, connection, connection.getQueryServices().getProps());
-                            shouldRetryIndexedMutation = false;
-                        } else {
-                            hTable.batch(mutationBatch, null);
-                        }
-                        // remove each batch from the list once it gets applied
-                        // so when failures happens for any batch we only start
-                        // from that batch only instead of doing duplicate reply of already
-                        // applied batches from entire list, also we can set
-                        // REPLAY_ONLY_INDEX_WRITES for first batch
-                        // only in case of 1121 SQLException
-                        itrListMutation.remove();
-
+                                return ioe;
+                            }
+                        }, iwe, connection, connection.getQueryServices().getProps());
+                        shouldRetryIndexedMutation = false;
+                    } else {
+                        hTable.batch(mutationBatch, null);
+                    }
+                    // remove each batch from the list once it gets applied
+                    // so when failures happens for any batch we only start
+                    // from that batch only instead of doing duplicate reply of already
+                    // applied batches from entire list, also we can set
+                    // REPLAY_ONLY_INDEX_WRITES for first batch
+                    // only in case of 1121 SQLException
+                    itrListMutation.remove();
+
+                    synchronized (this) {
                         batchCount++;
-                        if (LOGGER.isDebugEnabled())
-                            LOGGER.debug("Sent batch of " + mutationBatch.size() + " for "
-                                    + Bytes.toString(htableName));
                     }
-                    child.stop();
-                    child.stop();
-                    shouldRetry = false;
-                    mutationCommitTime = EnvironmentEdgeManager.currentTimeMillis() - startTime;
-                    GLOBAL_MUTATION_COMMIT_TIME.update(mutationCommitTime);
-                    numFailedMutations = 0;
-
-                    // Remove batches as we process them
+                    if (LOGGER.isDebugEnabled())
+                        LOGGER.debug("Sent batch of " + mutationBatch.size() + " for "
+                                + Bytes.toString(htableName));
+                }
+                child.stop();
+                child.stop();
+                shouldRetry = false;
+                mutationCommitTime = EnvironmentEdgeManager.currentTimeMillis() - startTime;
+                GLOBAL_MUTATION_COMMIT_TIME.update(mutationCommitTime);
+                numFailedMutations = 0;
+
+                // Remove batches as we process them. Synchronized as tables may be
+                // sent concurrently by a pipelined commit
+                synchronized (this) {
                     mutations.remove(origTableRef);
                     if (tableInfo.isDataTable()) {
                         numRows -= numMutations;
                         // recalculate the estimated size
                         estimatedSize = PhoenixKeyValueUtil.getEstimatedRowMutationSize(mutations);
                     }
-                } catch (Exception e) {
-                    mutationCommitTime = EnvironmentEdgeManager.currentTimeMillis() - startTime;
-                    long serverTimestamp = ServerUtil.parseServerTimestamp(e);
-                    SQLException inferredE = ServerUtil.parseServerExceptionOrNull(e);
-                    if (inferredE != null) {
-                        if (shouldRetry
-                                && retryCount == 0
-                                && inferredE.getErrorCode() == SQLExceptionCode.INDEX_METADATA_NOT_FOUND
-                                .getErrorCode()) {
-                            // Swallow this exception once, as it's possible that we split after sending the index
-                            // metadata
-                            // and one of the region servers doesn't have it. This will cause it to have it the next
-                            // go around.
-                            // If it fails again, we don't retry.
-                            String msg = "Swallowing exception and retrying after clearing meta cache on connection. "
-                                    + inferredE;
-                            LOGGER.warn(LogUtil.addCustomAnnotations(msg, connection));
-                            connection.getQueryServices().clearTableRegionCache(TableName.valueOf(htableName));
-
-                            // add a new child span as this one failed
-                            child.addTimelineAnnotation(msg);
-                            child.stop();
-                            child = Tracing.child(span, "Failed batch, attempting retry");
+                }
+            } catch (Exception e) {
+                mutationCommitTime = EnvironmentEdgeManager.currentTimeMillis() - startTime;
+                long serverTimestamp = ServerUtil.parseServerTimestamp(e);
+                SQLException inferredE = ServerUtil.parseServerExceptionOrNull(e);
+                if (inferredE != null) {
+                    if (shouldRetry
+                            && retryCount == 0
+                            && inferredE.getErrorCode() == SQLExceptionCode.INDEX_METADATA_NOT_FOUND
+                            .getErrorCode()) {
+                        // Swallow this exception once, as it's possible that we split after sending the index
+                        // metadata
+                        // and one of the region servers doesn't have it. This will cause it to have it the next
+                        // go around.
+                        // If it fails again, we don't retry.
+                        String msg = "Swallowing exception and retrying after clearing meta cache on connection. "
+                                + inferredE;
+                        LOGGER.warn(LogUtil.addCustomAnnotations(msg, connection));
+                        connection.getQueryServices().clearTableRegionCache(TableName.valueOf(htableName));
+
+                        // add a new child span as this one failed
+                        child.addTimelineAnnotation(msg);
+                        child.stop();
+                        child = Tracing.child(span, "Failed batch, attempting retry");
 
-                            continue;
-                        } else if (inferredE.getErrorCode() == SQLExceptionCode.INDEX_WRITE_FAILURE.getErrorCode()) {
-                            iwe = PhoenixIndexFailurePolicy.getIndexWriteException(inferredE);
-                            if (iwe != null && !shouldRetryIndexedMutation) {
-                                // For an index write failure, the data table write succeeded,
-                                // so when we retry we need to set REPLAY_WRITES
-                                // for first batch in list only.
-                                for (Mutation m : mutationBatchList.get(0)) {
-                                    if (!PhoenixIndexMetaData.isIndexRebuild(
-                                            m.getAttributesMap())){
-                                        m.setAttribute(BaseScannerRegionObserver.REPLAY_WRITES,
-                                                BaseScannerRegionObserver.REPLAY_ONLY_INDEX_WRITES
-                                        );
-                                    }
-                                    PhoenixKeyValueUtil.setTimestamp(m, serverTimestamp);
+                        continue;
+                    } else if (inferredE.getErrorCode() == SQLExceptionCode.INDEX_WRITE_FAILURE.getErrorCode()) {
+                        iwe = PhoenixIndexFailurePolicy.getIndexWriteException(inferredE);
+                        if (iwe != null && !shouldRetryIndexedMutation) {
+                            // For an index write failure, the data table write succeeded,
+                            // so when we retry we need to set REPLAY_WRITES
+                            // for first batch in list only.
+                            for (Mutation m : mutationBatchList.get(0)) {
+                                if (!PhoenixIndexMetaData.isIndexRebuild(
+                                        m.getAttributesMap())){
+                                    m.setAttribute(BaseScannerRegionObserver.REPLAY_WRITES,
+                                            BaseScannerRegionObserver.REPLAY_ONLY_INDEX_WRITES
+                                    );
                                 }
-                                shouldRetry = true;
-                                shouldRetryIndexedMutation = true;
-                                continue;
+                                PhoenixKeyValueUtil.setTimestamp(m, serverTimestamp);
                             }
+                            shouldRetry = true;
+                            shouldRetryIndexedMutation = true;
+                            continue;
                         }
-                        e = inferredE;
                     }
-                    // Throw to client an exception that indicates the statements that
-                    // were not committed successfully.
-                    int[] uncommittedStatementIndexes = getUncommittedStatementIndexes();
-                    sqlE = new CommitException(e, uncommittedStatementIndexes, serverTimestamp);
-                    numFailedMutations = uncommittedStatementIndexes.length;
-                    GLOBAL_MUTATION_BATCH_FAILED_COUNT.update(numFailedMutations);
-                    if (isVerifiedPhase) {
-                        numFailedPhase3Mutations = numFailedMutations;
-                        GLOBAL_MUTATION_INDEX_COMMIT_FAILURE_COUNT.update(numFailedPhase3Mutations);
-                    }
-                } finally {
-                    MutationMetric mutationsMetric = new MutationMetric(numMutations, mutationSizeBytes,
-                            mutationCommitTime, numFailedMutations, numFailedPhase3Mutations);
+                    e = inferredE;
+                }
+                // Throw to client an exception that indicates the statements that
+                // were not committed successfully.
+                int[] uncommittedStatementIndexes = getUncommittedStatementIndexes();
+                sqlE = new CommitException(e, uncommittedStatementIndexes, serverTimestamp);
+                numFailedMutations = uncommittedStatementIndexes.length;
+                GLOBAL_MUTATION_BATCH_FAILED_COUNT.update(numFailedMutations);
+                if (isVerifiedPhase) {
+                    numFailedPhase3Mutations = numFailedMutations;
+                    GLOBAL_MUTATION_INDEX_COMMIT_FAILURE_COUNT.update(numFailedPhase3Mutations);
+                }
+            } finally {
+                MutationMetric mutationsMetric = new MutationMetric(numMutations, mutationSizeBytes,
+                        mutationCommitTime, numFailedMutations, numFailedPhase3Mutations);
+                synchronized (this) {
                     mutationMetricQueue.addMetricsForTable(Bytes.toString(htableName), mutationsMetric);
+                }
+                try {
+                    if (cache != null) cache.close();
+                } finally {
                     try {
-                        if (cache != null) cache.close();
-                    } finally {
-                        try {
-                            hTable.close();
-                        } catch (IOException e) {
-                            if (sqlE != null) {
-                                sqlE.setNextException(ServerUtil.parseServerException(e));
-                            } else {
-                                sqlE = ServerUtil.parseServerException(e);
-                            }
+                        hTable.close();
+                    } catch (IOException e) {
+                        if (sqlE != null) {
+                            sqlE.setNextException(ServerUtil.parseServerException(e));
+                        } else {
+                            sqlE = ServerUtil.parseServerException(e);
                         }
-                        if (sqlE != null) { throw sqlE; }
                     }
+                    if (sqlE != null) { throw sqlE; }
                 }
-            } while (shouldRetry && retryCount++ < 1);
-        }
+            }
+        } while (shouldRetry && retryCount++ < 1);
     }
 
     private void filterIndexCheckerMutations(Map<TableInfo, List<Mutation>> mutationMap,
@@ -1354,7 +1499,8 @@ public class MutationState implements SQLCloseable {
         }
     }
 
-    private int[] getUncommittedStatementIndexes() {
+    // Synchronized as tables may be removed from the mutations concurrently by a pipelined commit
+    private synchronized int[] getUncommittedStatementIndexes() {
         for (MultiRowMutationState rowMutationMap : mutations.values()) {
             addUncommittedStatementIndexes(rowMutationMap.values());
         }
@@ -1604,6 +1750,7 @@ public class MutationState implements SQLCloseable {
         private final Long rowTimestamp;
 
         public static final RowTimestampColInfo NULL_ROWTIMESTAMP_INFO = new RowTimestampColInfo(false, null);
+        public static final RowTimestampColInfo SERVER_ROWTIMESTAMP_INFO = new RowTimestampColInfo(true, null);
 
         public RowTimestampColInfo(boolean autoGenerate, Long value) {
             this.useServerTimestamp = autoGenerate;
@@ -1700,7 +1847,24 @@ public class MutationState implements SQLCloseable {
         void join(RowMutationState newRow) {
             // If we already have a row and the new row has an ON DUPLICATE KEY clause
             // ignore the new values (as that's what the server will do).
-            if (newRow.onDupKeyBytes == null) {
+            if (newRow.onDupKeyBytes == null && columnValues instanceof PackedColumnValues) {
+                PackedColumnValues packedValues = (PackedColumnValues)columnValues;
+                if (newRow.columnValues instanceof PackedColumnValues) {
+                    PackedColumnValues newValues = (PackedColumnValues)newRow.columnValues;
+                    ImmutableBytesWritable valuePtr = new ImmutableBytesWritable();
+                    for (int i = 0; i < newValues.size(); i++) {
+                        newValues.getValue(i, valuePtr);
+                        packedValues.set(newValues.getColumn(i), valuePtr.get(), valuePtr.getOffset(),
+                                valuePtr.getLength());
+                    }
+                } else {
+                    for (Map.Entry<PColumn, byte[]> entry : newRow.columnValues.entrySet()) {
+                        packedValues.set(entry.getKey(), entry.getValue(), 0, entry.getValue().length);
+                    }
+                }
+                packedValues.trimToSize();
+                colValuesSize = packedValues.getEstimatedSize();
+            } else if (newRow.onDupKeyBytes == null) {
                 // increment the column value size by the new row column value size
                 colValuesSize += newRow.colValuesSize;
                 for (Map.Entry<PColumn, byte[]> entry : newRow.columnValues.entrySet()) {
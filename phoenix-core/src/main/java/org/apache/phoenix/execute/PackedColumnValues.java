@@ -0,0 +1,271 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.phoenix.execute;
+
+import static org.apache.phoenix.thirdparty.com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.phoenix.schema.PColumn;
+import org.apache.phoenix.util.ByteUtil;
+import org.apache.phoenix.util.SizedUtil;
+
+/**
+ * Column values of an uncommitted row, packed one after the other into a single byte array
+ * with the columns and the offsets of their values in arrays alongside it. This holds the
+ * values of a row in four objects however many columns are set, instead of a hash map entry
+ * and a byte array per column, which dominates the client heap used by large batches of
+ * upserts. Lookups are a linear scan of the columns, as a row sets few columns and its values
+ * are mostly iterated through when the row is turned into mutations.
+ *
+ * Values are copied in when put. They are read without a copy through {@link #getColumn(int)}
+ * and {@link #getValue(int, ImmutableBytesWritable)}, which point into the packed values, as
+ * when the row is turned into mutations. Reads through the {@link Map} interface copy the value
+ * out, though iterating over the entries only does so for the values asked for. Replacing a
+ * value, which only happens when the same row is upserted again before a commit, rewrites the
+ * packed values. Null values are not supported, as a null column value is represented by an
+ * empty one.
+ */
+public class PackedColumnValues extends AbstractMap<PColumn, byte[]> {
+    private static final int FIXED_SIZE = SizedUtil.OBJECT_SIZE + 3 * SizedUtil.POINTER_SIZE
+            + SizedUtil.INT_SIZE + 3 * SizedUtil.ARRAY_SIZE;
+    private static final int COLUMN_SIZE = SizedUtil.POINTER_SIZE + SizedUtil.INT_SIZE;
+
+    private PColumn[] columns;
+    // offsets[i] is where the value of columns[i] starts and offsets[size] where the last one ends
+    private int[] offsets;
+    private byte[] values;
+    private int size;
+
+    public PackedColumnValues(int expectedSize) {
+        this.columns = new PColumn[Math.max(1, expectedSize)];
+        this.offsets = new int[columns.length + 1];
+        this.values = ByteUtil.EMPTY_BYTE_ARRAY;
+    }
+
+    /**
+     * @return the estimated heap size of the packed values, charging the estimated size of
+     * each column to the row as the mutation size limits always have
+     */
+    public long getEstimatedSize() {
+        long size = FIXED_SIZE + (long)columns.length * COLUMN_SIZE + values.length;
+        for (int i = 0; i < this.size; i++) {
+            size += columns[i].getEstimatedSize();
+        }
+        return size;
+    }
+
+    /**
+     * Release the space reserved for more columns and values than have been put
+     */
+    public void trimToSize() {
+        if (columns.length > size) {
+            columns = Arrays.copyOf(columns, size);
+            offsets = Arrays.copyOf(offsets, size + 1);
+        }
+        if (values.length > offsets[size]) {
+            values = Arrays.copyOf(values, offsets[size]);
+        }
+    }
+
+    private int indexOf(Object column) {
+        for (int i = 0; i < size; i++) {
+            if (columns[i].equals(column)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private byte[] getValue(int index) {
+        return Arrays.copyOfRange(values, offsets[index], offsets[index + 1]);
+    }
+
+    /**
+     * @return the column at the given index, in the order the columns were first put
+     */
+    public PColumn getColumn(int index) {
+        return columns[index];
+    }
+
+    /**
+     * Point ptr at the value of the column at the given index, without copying it. The value
+     * must not be modified, and ptr is only valid until a value is put.
+     */
+    public void getValue(int index, ImmutableBytesWritable ptr) {
+        ptr.set(values, offsets[index], offsets[index + 1] - offsets[index]);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean containsKey(Object column) {
+        return indexOf(column) >= 0;
+    }
+
+    @Override
+    public byte[] get(Object column) {
+        int index = indexOf(column);
+        return index < 0 ? null : getValue(index);
+    }
+
+    @Override
+    public byte[] put(PColumn column, byte[] value) {
+        checkNotNull(value);
+        int index = indexOf(column);
+        byte[] oldValue = index < 0 ? null : getValue(index);
+        set(column, value, 0, value.length);
+        return oldValue;
+    }
+
+    /**
+     * Put the value of a column, like {@link #put(PColumn, byte[])} but without copying out
+     * the value it replaces
+     */
+    public void set(PColumn column, byte[] value, int offset, int length) {
+        checkNotNull(column);
+        checkNotNull(value);
+        int index = indexOf(column);
+        if (index < 0) {
+            append(column, value, offset, length);
+            return;
+        }
+        int delta = length - (offsets[index + 1] - offsets[index]);
+        if (delta != 0) {
+            int end = offsets[size];
+            byte[] newValues = delta > 0 && end + delta > values.length ? new byte[end + delta] : values;
+            if (newValues != values) {
+                System.arraycopy(values, 0, newValues, 0, offsets[index]);
+            }
+            System.arraycopy(values, offsets[index + 1], newValues, offsets[index + 1] + delta,
+                    end - offsets[index + 1]);
+            values = newValues;
+            for (int i = index + 1; i <= size; i++) {
+                offsets[i] += delta;
+            }
+        }
+        System.arraycopy(value, offset, values, offsets[index], length);
+    }
+
+    private void append(PColumn column, byte[] value, int offset, int length) {
+        if (size == columns.length) {
+            int capacity = Math.max(1, size * 2);
+            columns = Arrays.copyOf(columns, capacity);
+            offsets = Arrays.copyOf(offsets, capacity + 1);
+        }
+        int end = offsets[size];
+        if (end + length > values.length) {
+            values = Arrays.copyOf(values, Math.max(end + length, values.length * 2));
+        }
+        System.arraycopy(value, offset, values, end, length);
+        columns[size] = column;
+        offsets[++size] = end + length;
+    }
+
+    @Override
+    public Set<Map.Entry<PColumn, byte[]>> entrySet() {
+        return new AbstractSet<Map.Entry<PColumn, byte[]>>() {
+            @Override
+            public int size() {
+                return size;
+            }
+
+            @Override
+            public Iterator<Map.Entry<PColumn, byte[]>> iterator() {
+                return new Iterator<Map.Entry<PColumn, byte[]>>() {
+                    private int index;
+
+                    @Override
+                    public boolean hasNext() {
+                        return index < size;
+                    }
+
+                    @Override
+                    public Map.Entry<PColumn, byte[]> next() {
+                        if (index >= size) {
+                            throw new NoSuchElementException();
+                        }
+                        return new ValueEntry(index++);
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * Entry that only copies its value out when asked for it, so that iterating over the
+     * columns does not copy the values
+     */
+    private class ValueEntry implements Map.Entry<PColumn, byte[]> {
+        private final int index;
+
+        private ValueEntry(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public PColumn getKey() {
+            return columns[index];
+        }
+
+        @Override
+        public byte[] getValue() {
+            return PackedColumnValues.this.getValue(index);
+        }
+
+        @Override
+        public byte[] setValue(byte[] value) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Map.Entry)) {
+                return false;
+            }
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>)o;
+            return getKey().equals(e.getKey()) && e.getValue() instanceof byte[]
+                    && Arrays.equals(getValue(), (byte[])e.getValue());
+        }
+
+        @Override
+        public int hashCode() {
+            return getKey().hashCode() ^ Arrays.hashCode(getValue());
+        }
+
+        @Override
+        public String toString() {
+            return getKey() + "=" + Arrays.toString(getValue());
+        }
+    }
+}
@@ -28,14 +28,25 @@ import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
 import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.client.Table;
+import org.apache.hadoop.hbase.filter.Filter;
+import org.apache.hadoop.hbase.filter.FilterList;
+import org.apache.hadoop.hbase.filter.FirstKeyOnlyFilter;
 import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.io.TimeRange;
+import org.apache.hadoop.hbase.util.Bytes;
 import org.apache.hadoop.hbase.util.Pair;
 import org.apache.phoenix.compile.ColumnResolver;
 import org.apache.phoenix.compile.ExplainPlan;
@@ -44,6 +55,7 @@ import org.apache.phoenix.compile.OrderByCompiler.OrderBy;
 import org.apache.phoenix.compile.QueryCompiler;
 import org.apache.phoenix.compile.QueryPlan;
 import org.apache.phoenix.compile.RowProjector;
+import org.apache.phoenix.compile.ScanRanges;
 import org.apache.phoenix.compile.StatelessExpressionCompiler;
 import org.apache.phoenix.compile.StatementContext;
 import org.apache.phoenix.exception.PhoenixIOException;
@@ -54,11 +66,13 @@ import org.apache.phoenix.execute.visitor.ByteCountVisitor;
 import org.apache.phoenix.execute.visitor.QueryPlanVisitor;
 import org.apache.phoenix.expression.Expression;
 import org.apache.phoenix.expression.OrderByExpression;
+import org.apache.phoenix.hbase.index.util.ImmutableBytesPtr;
 import org.apache.phoenix.iterate.DefaultParallelScanGrouper;
 import org.apache.phoenix.iterate.ParallelScanGrouper;
 import org.apache.phoenix.iterate.PhoenixQueues;
 import org.apache.phoenix.iterate.ResultIterator;
 import org.apache.phoenix.iterate.SizeAwareQueue;
+import org.apache.phoenix.jdbc.PhoenixConnection;
 import org.apache.phoenix.jdbc.PhoenixParameterMetaData;
 import org.apache.phoenix.jdbc.PhoenixStatement.Operation;
 import org.apache.phoenix.optimize.Cost;
@@ -74,11 +88,16 @@ import org.apache.phoenix.schema.KeyValueSchema;
 import org.apache.phoenix.schema.KeyValueSchema.KeyValueSchemaBuilder;
 import org.apache.phoenix.schema.PColumn;
 import org.apache.phoenix.schema.PTable;
+import org.apache.phoenix.schema.RowKeySchema;
 import org.apache.phoenix.schema.TableNotFoundException;
 import org.apache.phoenix.schema.TableRef;
 import org.apache.phoenix.schema.ValueBitSet;
+import org.apache.phoenix.schema.ValueSchema.Field;
 import org.apache.phoenix.schema.tuple.Tuple;
+import org.apache.phoenix.util.ScanUtil;
 import org.apache.phoenix.util.SchemaUtil;
+import org.apache.phoenix.util.ServerUtil;
+import org.apache.phoenix.util.TrustedByteArrayOutputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -110,6 +129,13 @@ public class SortMergeJoinPlan implements QueryPlan {
     private final Set<TableRef> tableRefs;
     private final long thresholdBytes;
     private final boolean spoolingEnabled;
+    /**
+     * The scan of the right-hand table a semi or anti join probes for the left-hand keys,
+     * or null if the join merges with all the right-hand rows.
+     */
+    private final QueryPlan existenceProbePlan;
+    private final int[] existenceProbeKeyOrder;
+    private final int existenceProbeBatchSize;
     private Long estimatedBytes;
     private Long estimatedRows;
     private Long estimateInfoTs;
@@ -131,6 +157,26 @@ public class SortMergeJoinPlan implements QueryPlan {
             int rhsFieldPosition,
             boolean isSingleValueOnly,
             Pair<List<OrderByNode>,List<OrderByNode>> lhsAndRhsOrderByNodes) throws SQLException {
+        this(context, statement, table, type, lhsPlan, rhsPlan, lhsAndRhsKeyExpressions, rhsKeyExpressions,
+                joinedTable, lhsTable, rhsTable, rhsFieldPosition, isSingleValueOnly, lhsAndRhsOrderByNodes, null);
+    }
+
+    public SortMergeJoinPlan(
+            StatementContext context,
+            FilterableStatement statement,
+            TableRef table,
+            JoinType type,
+            QueryPlan lhsPlan,
+            QueryPlan rhsPlan,
+            Pair<List<Expression>,List<Expression>> lhsAndRhsKeyExpressions,
+            List<Expression> rhsKeyExpressions,
+            PTable joinedTable,
+            PTable lhsTable,
+            PTable rhsTable,
+            int rhsFieldPosition,
+            boolean isSingleValueOnly,
+            Pair<List<OrderByNode>,List<OrderByNode>> lhsAndRhsOrderByNodes,
+            Pair<QueryPlan, int[]> existenceProbePlan) throws SQLException {
         if (type == JoinType.Right) throw new IllegalArgumentException("JoinType should not be " + type);
         this.context = context;
         this.statement = statement;
@@ -156,6 +202,15 @@ public class SortMergeJoinPlan implements QueryPlan {
                 context.getConnection().getQueryServices().getProps().getBoolean(
                     QueryServices.CLIENT_JOIN_SPOOLING_ENABLED_ATTRIB,
                     QueryServicesOptions.DEFAULT_CLIENT_JOIN_SPOOLING_ENABLED);
+        if (existenceProbePlan != null && (type != JoinType.Semi && type != JoinType.Anti)) {
+            throw new IllegalArgumentException("Type " + type + " cannot be run as an existence probe");
+        }
+        this.existenceProbePlan = existenceProbePlan == null ? null : existenceProbePlan.getFirst();
+        this.existenceProbeKeyOrder = existenceProbePlan == null ? null : existenceProbePlan.getSecond();
+        this.existenceProbeBatchSize =
+                context.getConnection().getQueryServices().getProps().getInt(
+                    QueryServices.SORT_MERGE_JOIN_EXISTENCE_PROBE_BATCH_SIZE_ATTRIB,
+                    QueryServicesOptions.DEFAULT_SORT_MERGE_JOIN_EXISTENCE_PROBE_BATCH_SIZE);
         this.actualOutputOrderBys = convertActualOutputOrderBy(lhsAndRhsOrderByNodes.getFirst(), lhsAndRhsOrderByNodes.getSecond(), context);
     }
 
@@ -183,6 +238,9 @@ public class SortMergeJoinPlan implements QueryPlan {
 
     @Override
     public ResultIterator iterator(ParallelScanGrouper scanGrouper, Scan scan) throws SQLException {        
+        if (existenceProbePlan != null) {
+            return new ExistenceProbeJoinIterator(lhsPlan.iterator(scanGrouper));
+        }
         return joinType == JoinType.Semi || joinType == JoinType.Anti ?
                 new SemiAntiJoinIterator(lhsPlan.iterator(scanGrouper), rhsPlan.iterator(scanGrouper)) :
                 new BasicJoinIterator(lhsPlan.iterator(scanGrouper), rhsPlan.iterator(scanGrouper));
@@ -200,7 +258,13 @@ public class SortMergeJoinPlan implements QueryPlan {
         for (String step : lhsPlan.getExplainPlan().getPlanSteps()) {
             steps.add("    " + step);            
         }
-        steps.add("AND" + (rhsSchema.getFieldCount() == 0 ? " (SKIP MERGE)" : ""));
+        if (existenceProbePlan != null) {
+            int keyCount = existenceProbeKeyOrder.length;
+            steps.add("AND (EXISTENCE PROBE OVER " + existenceProbePlan.getTableRef().getTable().getPhysicalName().getString()
+                    + " ON " + keyCount + " KEY COLUMN" + (keyCount > 1 ? "S" : "") + ")");
+        } else {
+            steps.add("AND" + (rhsSchema.getFieldCount() == 0 ? " (SKIP MERGE)" : ""));
+        }
         for (String step : rhsPlan.getExplainPlan().getPlanSteps()) {
             steps.add("    " + step);            
         }
@@ -765,6 +829,180 @@ public class SortMergeJoinPlan implements QueryPlan {
         }
     }
     
+    /**
+     * Semi or anti join iterator that, instead of merging with the right-hand rows, reads the
+     * left-hand rows in batches and looks up their keys as row key prefixes of the right-hand
+     * table with a single skip scan per batch, so that only the right-hand rows sharing a key
+     * with a left-hand row are read. Like the SQL equality, a left-hand key with a null value
+     * matches no right-hand row.
+     */
+    private class ExistenceProbeJoinIterator implements ResultIterator {
+        private final ResultIterator lhsIterator;
+        private final boolean isSemi;
+        private final RowKeySchema schema;
+        private final List<Tuple> tuples;
+        private final List<byte[]> keys;
+        private final Set<ImmutableBytesPtr> existingKeys = Sets.newHashSet();
+        private final ImmutableBytesWritable ptr = new ImmutableBytesWritable();
+        private Table table;
+        private int index;
+        private boolean end;
+
+        public ExistenceProbeJoinIterator(ResultIterator lhsIterator) {
+            this.lhsIterator = lhsIterator;
+            this.isSemi = joinType == JoinType.Semi;
+            this.schema = existenceProbePlan.getTableRef().getTable().getRowKeySchema();
+            this.tuples = Lists.newArrayListWithExpectedSize(existenceProbeBatchSize);
+            this.keys = Lists.newArrayListWithExpectedSize(existenceProbeBatchSize);
+        }
+
+        @Override
+        public Tuple next() throws SQLException {
+            while (true) {
+                while (index < tuples.size()) {
+                    Tuple tuple = tuples.get(index);
+                    byte[] key = keys.get(index++);
+                    boolean exists = key != null && existingKeys.contains(new ImmutableBytesPtr(key));
+                    if (exists == isSemi) {
+                        return tuple;
+                    }
+                }
+                if (end) {
+                    return null;
+                }
+                nextBatch();
+            }
+        }
+
+        private void nextBatch() throws SQLException {
+            tuples.clear();
+            keys.clear();
+            existingKeys.clear();
+            index = 0;
+            SortedSet<byte[]> probedKeys = new TreeSet<byte[]>(Bytes.BYTES_COMPARATOR);
+            while (tuples.size() < existenceProbeBatchSize) {
+                Tuple tuple = lhsIterator.next();
+                if (tuple == null) {
+                    end = true;
+                    break;
+                }
+                byte[] key = getKey(tuple);
+                tuples.add(tuple);
+                keys.add(key);
+                if (key != null) {
+                    probedKeys.add(key);
+                }
+            }
+            if (!probedKeys.isEmpty()) {
+                probe(probedKeys);
+            }
+        }
+
+        /**
+         * Returns the left-hand key of the tuple encoded as a row key prefix of the right-hand
+         * table, or null if no right-hand row can have it.
+         */
+        private byte[] getKey(Tuple tuple) throws SQLException {
+            TrustedByteArrayOutputStream output = new TrustedByteArrayOutputStream(schema.getEstimatedValueLength());
+            try {
+                for (int i = 0; i < existenceProbeKeyOrder.length; i++) {
+                    Field field = schema.getField(i);
+                    Expression expression = lhsKeyExpressions.get(existenceProbeKeyOrder[i]);
+                    if (!expression.evaluate(tuple, ptr) || ptr.getLength() == 0) {
+                        return null;
+                    }
+                    if (field.getDataType().isFixedWidth() && ptr.getLength() != field.getByteSize()) {
+                        return null;
+                    }
+                    if (i > 0 && !schema.getField(i - 1).getDataType().isFixedWidth()) {
+                        output.write(SchemaUtil.getSeparatorByte(schema.rowKeyOrderOptimizable(), false, schema.getField(i - 1)));
+                    }
+                    output.write(ptr.get(), ptr.getOffset(), ptr.getLength());
+                }
+                return output.toByteArray();
+            } finally {
+                try {
+                    output.close();
+                } catch (IOException e) {
+                    throw new SQLException(e);
+                }
+            }
+        }
+
+        private void probe(SortedSet<byte[]> probedKeys) throws SQLException {
+            List<KeyRange> ranges = Lists.newArrayListWithExpectedSize(probedKeys.size());
+            for (byte[] key : probedKeys) {
+                ranges.add(KeyRange.getKeyRange(key));
+            }
+            int keyCount = existenceProbeKeyOrder.length;
+            ScanRanges probeRanges = ScanRanges.create(schema, Collections.singletonList(ranges),
+                    new int[] {keyCount - 1}, null, true, -1);
+            StatementContext probeContext = existenceProbePlan.getContext();
+            Scan probeScan = probeContext.getScan();
+            Scan scan = new Scan();
+            probeRanges.initializeScan(scan);
+            // Also apply the row key ranges of the right-hand filter
+            KeyRange scanRange = KeyRange.getKeyRange(scan.getStartRow(), scan.getStopRow())
+                    .intersect(KeyRange.getKeyRange(probeScan.getStartRow(), probeScan.getStopRow()));
+            if (scanRange == KeyRange.EMPTY_RANGE) {
+                return;
+            }
+            scan.withStartRow(scanRange.getLowerRange());
+            scan.withStopRow(scanRange.getUpperRange());
+            List<Filter> filters = Lists.newArrayListWithExpectedSize(2);
+            if (probeRanges.useSkipScanFilter()) {
+                filters.add(probeRanges.getSkipScanFilter());
+            }
+            // The filter of the right-hand scan already includes its skip scan filter, if any
+            filters.add(probeScan.getFilter() == null ? new FirstKeyOnlyFilter() : probeScan.getFilter());
+            scan.setFilter(filters.size() == 1 ? filters.get(0) : new FilterList(FilterList.Operator.MUST_PASS_ALL, filters));
+            PhoenixConnection connection = probeContext.getConnection();
+            scan.setConsistency(connection.getConsistency());
+            Long scn = connection.getSCN();
+            try {
+                TimeRange timeRange = ScanUtil.intersectTimeRange(probeContext.getScanRanges().getRowTimestampRange(),
+                        probeScan.getTimeRange(), scn == null ? HConstants.LATEST_TIMESTAMP : scn);
+                if (timeRange == null) {
+                    // No version of the right-hand rows can be read
+                    return;
+                }
+                scan.setTimeRange(timeRange.getMin(), timeRange.getMax());
+                if (table == null) {
+                    table = connection.getQueryServices().getTable(
+                            existenceProbePlan.getTableRef().getTable().getPhysicalName().getBytes());
+                }
+                try (ResultScanner scanner = table.getScanner(scan)) {
+                    for (Result result = scanner.next(); result != null; result = scanner.next()) {
+                        byte[] row = result.getRow();
+                        schema.iterator(row, 0, row.length, ptr, keyCount);
+                        existingKeys.add(new ImmutableBytesPtr(row, 0, ptr.getOffset() + ptr.getLength()));
+                    }
+                }
+            } catch (IOException e) {
+                throw ServerUtil.parseServerException(e);
+            }
+        }
+
+        @Override
+        public void close() throws SQLException {
+            try {
+                lhsIterator.close();
+            } finally {
+                if (table != null) {
+                    try {
+                        table.close();
+                    } catch (IOException e) {
+                        throw ServerUtil.parseServerException(e);
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void explain(List<String> planSteps) {
+        }
+    }
+
     private static class JoinKey implements Comparable<JoinKey> {
         private final List<Expression> expressions;
         private final List<ImmutableBytesWritable> keys;
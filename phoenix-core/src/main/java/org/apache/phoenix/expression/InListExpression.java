@@ -309,6 +309,14 @@ public class InListExpression extends BaseSingleExpression {
         return keyExpressions;
     }
 
+    /**
+     * @return true if the given non null value of the child expression is one of the values
+     * of the IN list
+     */
+    public boolean containsValue(ImmutableBytesWritable value) {
+        return values.contains(value);
+    }
+
     public ImmutableBytesWritable getMinKey() {
         return minValue;
     }
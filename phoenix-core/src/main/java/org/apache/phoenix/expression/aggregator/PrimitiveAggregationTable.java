@@ -0,0 +1,492 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.phoenix.expression.aggregator;
+
+import java.util.Arrays;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.phoenix.expression.BaseTerminalExpression;
+import org.apache.phoenix.expression.Expression;
+import org.apache.phoenix.expression.function.SingleAggregateFunction;
+import org.apache.phoenix.expression.visitor.ExpressionVisitor;
+import org.apache.phoenix.schema.SortOrder;
+import org.apache.phoenix.schema.ValueBitSet;
+import org.apache.phoenix.schema.tuple.Tuple;
+import org.apache.phoenix.schema.types.PDataType;
+import org.apache.phoenix.schema.types.PDate;
+import org.apache.phoenix.schema.types.PDouble;
+import org.apache.phoenix.schema.types.PInteger;
+import org.apache.phoenix.schema.types.PLong;
+import org.apache.phoenix.util.ByteUtil;
+import org.apache.phoenix.util.SizedUtil;
+
+/**
+ * Grouped aggregation state for {@link ServerAggregators} made up only of COUNT, SUM, MIN and
+ * MAX over values that fit in a long or a double. Instead of an {@link Aggregator} array per
+ * distinct group, the table keeps a dictionary from group key to an int group id, and one
+ * long[] or double[] accumulator column per aggregate indexed by that id, along with a bitmap
+ * of the groups for which an aggregate has seen a value.
+ *
+ * The serialized value of a group is identical to the one {@link Aggregators#toBytes(Aggregator[])}
+ * produces for the aggregators it replaces, so the client cannot tell which one was used.
+ *
+ * Not thread safe.
+ *
+ * @since 5.1.0
+ */
+public class PrimitiveAggregationTable {
+    public static final int NOT_FOUND = -1;
+
+    private static final float LOAD_FACTOR = 0.75f;
+    private static final int MIN_CAPACITY = 16;
+
+    private enum Kind {
+        COUNT, LONG_SUM, DOUBLE_SUM, LONG_MIN, LONG_MAX, DOUBLE_MIN, DOUBLE_MAX;
+
+        boolean isDouble() {
+            return this == DOUBLE_SUM || this == DOUBLE_MIN || this == DOUBLE_MAX;
+        }
+    }
+
+    private final ServerAggregators aggregators;
+    private final Kind[] kinds;
+    private final PDataType[] inputTypes;
+    private final SortOrder[] sortOrders;
+    // Whether the aggregate is null for a group that has seen no value, as opposed to zero
+    private final boolean[] nullIfEmpty;
+    private final ImmutableBytesWritable ptr = new ImmutableBytesWritable();
+
+    // Accumulator columns, one per aggregate, indexed by group id
+    private final long[][] longColumns;
+    private final double[][] doubleColumns;
+    private final long[][] isSet;
+
+    // Per group key state
+    private int[] keyHashes;
+    private int[] keyOffsets;
+    private int[] keyLengths;
+    private int nGroups;
+    private byte[] keyArena;
+    private int keyArenaSize;
+
+    // Open addressing slots holding a group id, or NOT_FOUND when empty
+    private int[] slots;
+    private int mask;
+
+    // Used to serialize the value of a group through the value schema of the aggregators
+    private final GroupValue[] values;
+    private final ValueBitSet valueSet;
+
+    private PrimitiveAggregationTable(ServerAggregators aggregators, Kind[] kinds, PDataType[] inputTypes,
+            SortOrder[] sortOrders, boolean[] nullIfEmpty, int expectedGroups) {
+        this.aggregators = aggregators;
+        this.kinds = kinds;
+        this.inputTypes = inputTypes;
+        this.sortOrders = sortOrders;
+        this.nullIfEmpty = nullIfEmpty;
+        int groupCapacity = Math.max(expectedGroups, 1);
+        this.longColumns = new long[kinds.length][];
+        this.doubleColumns = new double[kinds.length][];
+        this.isSet = new long[kinds.length][];
+        this.values = new GroupValue[kinds.length];
+        Aggregator[] prototypes = aggregators.getAggregators();
+        for (int i = 0; i < kinds.length; i++) {
+            if (kinds[i].isDouble()) {
+                doubleColumns[i] = new double[groupCapacity];
+            } else {
+                longColumns[i] = new long[groupCapacity];
+            }
+            isSet[i] = new long[bitmapLength(groupCapacity)];
+            values[i] = new GroupValue(prototypes[i].getDataType());
+        }
+        this.valueSet = ValueBitSet.newInstance(aggregators.getValueSchema());
+        this.keyHashes = new int[groupCapacity];
+        this.keyOffsets = new int[groupCapacity];
+        this.keyLengths = new int[groupCapacity];
+        this.keyArena = new byte[Math.max(groupCapacity * Bytes.SIZEOF_LONG, MIN_CAPACITY)];
+        int capacity = tableSizeFor(groupCapacity);
+        this.slots = new int[capacity];
+        Arrays.fill(this.slots, NOT_FOUND);
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * @param aggregators the server aggregators of the query
+     * @param expectedGroups the expected number of distinct groups, used to presize the table
+     * @return a table computing the aggregates, or null if any of them cannot be represented
+     * by a primitive accumulator
+     */
+    public static PrimitiveAggregationTable newInstance(ServerAggregators aggregators, int expectedGroups) {
+        Aggregator[] prototypes = aggregators.getAggregators();
+        if (prototypes.length == 0) {
+            return null;
+        }
+        Kind[] kinds = new Kind[prototypes.length];
+        PDataType[] inputTypes = new PDataType[prototypes.length];
+        SortOrder[] sortOrders = new SortOrder[prototypes.length];
+        boolean[] nullIfEmpty = new boolean[prototypes.length];
+        for (int i = 0; i < prototypes.length; i++) {
+            Aggregator aggregator = prototypes[i];
+            if (aggregator.getClass() == CountAggregator.class) {
+                kinds[i] = Kind.COUNT;
+            } else if (aggregator instanceof NumberSumAggregator) {
+                kinds[i] = Kind.LONG_SUM;
+                inputTypes[i] = ((NumberSumAggregator) aggregator).getInputDataType();
+            } else if (aggregator instanceof DoubleSumAggregator) {
+                kinds[i] = Kind.DOUBLE_SUM;
+                inputTypes[i] = ((DoubleSumAggregator) aggregator).getInputDataType();
+            } else if (aggregator instanceof MinAggregator) {
+                // MaxAggregator extends MinAggregator
+                boolean isMax = aggregator instanceof MaxAggregator;
+                PDataType type = aggregator.getDataType();
+                if (type == PLong.INSTANCE || type == PInteger.INSTANCE || type == PDate.INSTANCE) {
+                    kinds[i] = isMax ? Kind.LONG_MAX : Kind.LONG_MIN;
+                } else if (type == PDouble.INSTANCE) {
+                    kinds[i] = isMax ? Kind.DOUBLE_MAX : Kind.DOUBLE_MIN;
+                } else {
+                    return null;
+                }
+                inputTypes[i] = type;
+            } else {
+                return null;
+            }
+            if (kinds[i] != Kind.COUNT && inputTypes[i].getCodec() == null) {
+                return null;
+            }
+            // Values are decoded and, for MIN and MAX, encoded again in the sort order of
+            // the input expression the aggregator was created with
+            sortOrders[i] = ((BaseAggregator) aggregator).sortOrder;
+            // A SUM that is not nullable evaluates to zero without values, like COUNT, while
+            // MIN and MAX always evaluate to null
+            nullIfEmpty[i] = kinds[i] != Kind.COUNT
+                    && (aggregator instanceof MinAggregator || aggregator.isNullable());
+        }
+        return new PrimitiveAggregationTable(aggregators, kinds, inputTypes, sortOrders, nullIfEmpty,
+                expectedGroups);
+    }
+
+    private static int bitmapLength(int groupCapacity) {
+        return (groupCapacity + Long.SIZE - 1) / Long.SIZE;
+    }
+
+    private static int tableSizeFor(int nGroups) {
+        int capacity = MIN_CAPACITY;
+        while (capacity * LOAD_FACTOR < nGroups) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private static int hash(byte[] b, int offset, int length) {
+        int h = Bytes.hashCode(b, offset, length);
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Look up the group of a key, adding a new group with no aggregated values if the key
+     * has not been seen before. The key bytes are copied.
+     * @return the id of the group
+     */
+    public int getOrAddGroup(ImmutableBytesWritable key) {
+        byte[] b = key.get();
+        int offset = key.getOffset();
+        int length = key.getLength();
+        int h = hash(b, offset, length);
+        int groupId = findGroup(b, offset, length, h);
+        return groupId == NOT_FOUND ? addGroup(b, offset, length, h) : groupId;
+    }
+
+    /**
+     * @return the id of the group of the key, or {@link #NOT_FOUND} if the key is not present
+     */
+    public int find(ImmutableBytesWritable key) {
+        byte[] b = key.get();
+        int offset = key.getOffset();
+        int length = key.getLength();
+        return findGroup(b, offset, length, hash(b, offset, length));
+    }
+
+    private int findGroup(byte[] b, int offset, int length, int h) {
+        int slot = h & mask;
+        int groupId;
+        while ((groupId = slots[slot]) != NOT_FOUND) {
+            if (keyHashes[groupId] == h && Bytes.equals(keyArena, keyOffsets[groupId],
+                    keyLengths[groupId], b, offset, length)) {
+                return groupId;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return NOT_FOUND;
+    }
+
+    private int addGroup(byte[] b, int offset, int length, int h) {
+        if (nGroups == keyHashes.length) {
+            grow(keyHashes.length * 2);
+        }
+        if (keyArenaSize + length > keyArena.length) {
+            keyArena = Arrays.copyOf(keyArena, Math.max(keyArena.length * 2, keyArenaSize + length));
+        }
+        System.arraycopy(b, offset, keyArena, keyArenaSize, length);
+        int groupId = nGroups++;
+        keyHashes[groupId] = h;
+        keyOffsets[groupId] = keyArenaSize;
+        keyLengths[groupId] = length;
+        keyArenaSize += length;
+        if (nGroups > slots.length * LOAD_FACTOR) {
+            rehash(slots.length * 2);
+        } else {
+            insertSlot(groupId);
+        }
+        return groupId;
+    }
+
+    private void grow(int groupCapacity) {
+        keyHashes = Arrays.copyOf(keyHashes, groupCapacity);
+        keyOffsets = Arrays.copyOf(keyOffsets, groupCapacity);
+        keyLengths = Arrays.copyOf(keyLengths, groupCapacity);
+        for (int i = 0; i < kinds.length; i++) {
+            if (kinds[i].isDouble()) {
+                doubleColumns[i] = Arrays.copyOf(doubleColumns[i], groupCapacity);
+            } else {
+                longColumns[i] = Arrays.copyOf(longColumns[i], groupCapacity);
+            }
+            isSet[i] = Arrays.copyOf(isSet[i], bitmapLength(groupCapacity));
+        }
+    }
+
+    private void insertSlot(int groupId) {
+        int slot = keyHashes[groupId] & mask;
+        while (slots[slot] != NOT_FOUND) {
+            slot = (slot + 1) & mask;
+        }
+        slots[slot] = groupId;
+    }
+
+    private void rehash(int capacity) {
+        slots = new int[capacity];
+        Arrays.fill(slots, NOT_FOUND);
+        mask = capacity - 1;
+        for (int i = 0; i < nGroups; i++) {
+            insertSlot(i);
+        }
+    }
+
+    private boolean isSet(int aggregate, int groupId) {
+        return (isSet[aggregate][groupId >>> 6] & (1L << groupId)) != 0;
+    }
+
+    private void set(int aggregate, int groupId) {
+        isSet[aggregate][groupId >>> 6] |= 1L << groupId;
+    }
+
+    /**
+     * Aggregate a row into a group. Like {@link NonSizeTrackingServerAggregators#aggregate(Aggregator[], Tuple)},
+     * null values are not aggregated.
+     */
+    public void aggregate(int groupId, Tuple result) {
+        Expression[] expressions = aggregators.expressions;
+        for (int i = 0; i < expressions.length; i++) {
+            if (expressions[i].evaluate(result, ptr) && ptr.getLength() != 0) {
+                aggregate(i, groupId);
+            }
+            expressions[i].reset();
+        }
+    }
+
+    private void aggregate(int i, int groupId) {
+        boolean isFirst = !isSet(i, groupId);
+        switch (kinds[i]) {
+        case COUNT:
+            longColumns[i][groupId]++;
+            break;
+        case LONG_SUM:
+            longColumns[i][groupId] += inputTypes[i].getCodec().decodeLong(ptr, sortOrders[i]);
+            break;
+        case DOUBLE_SUM:
+            doubleColumns[i][groupId] += inputTypes[i].getCodec().decodeDouble(ptr, sortOrders[i]);
+            break;
+        case LONG_MIN: {
+            long value = inputTypes[i].getCodec().decodeLong(ptr, sortOrders[i]);
+            if (isFirst || value < longColumns[i][groupId]) {
+                longColumns[i][groupId] = value;
+            }
+            break;
+        }
+        case LONG_MAX: {
+            long value = inputTypes[i].getCodec().decodeLong(ptr, sortOrders[i]);
+            if (isFirst || value > longColumns[i][groupId]) {
+                longColumns[i][groupId] = value;
+            }
+            break;
+        }
+        case DOUBLE_MIN: {
+            double value = inputTypes[i].getCodec().decodeDouble(ptr, sortOrders[i]);
+            // Same ordering as PDouble#compareTo used by MinAggregator
+            if (isFirst || Double.compare(value, doubleColumns[i][groupId]) < 0) {
+                doubleColumns[i][groupId] = value;
+            }
+            break;
+        }
+        case DOUBLE_MAX: {
+            double value = inputTypes[i].getCodec().decodeDouble(ptr, sortOrders[i]);
+            if (isFirst || Double.compare(value, doubleColumns[i][groupId]) >= 0) {
+                doubleColumns[i][groupId] = value;
+            }
+            break;
+        }
+        }
+        if (isFirst) {
+            set(i, groupId);
+        }
+    }
+
+    /**
+     * Point ptr at the value the aggregate would have for the group, or at an empty value
+     * if the aggregate is null for the group. The value may be a view of a buffer reused
+     * by the next call.
+     */
+    private void evaluate(int i, int groupId, ImmutableBytesWritable ptr) {
+        GroupValue value = values[i];
+        byte[] buffer = value.buffer;
+        Kind kind = kinds[i];
+        if (nullIfEmpty[i] && !isSet(i, groupId)) {
+            ptr.set(ByteUtil.EMPTY_BYTE_ARRAY);
+            return;
+        }
+        switch (kind) {
+        case COUNT:
+        case LONG_SUM:
+            PLong.INSTANCE.getCodec().encodeLong(longColumns[i][groupId], buffer, 0);
+            break;
+        case DOUBLE_SUM:
+            PDouble.INSTANCE.getCodec().encodeDouble(doubleColumns[i][groupId], buffer, 0);
+            break;
+        case LONG_MIN:
+        case LONG_MAX:
+            // MIN and MAX keep the value as it was stored, in the sort order of their input
+            if (inputTypes[i] == PInteger.INSTANCE) {
+                inputTypes[i].getCodec().encodeInt((int) longColumns[i][groupId], buffer, 0);
+            } else {
+                inputTypes[i].getCodec().encodeLong(longColumns[i][groupId], buffer, 0);
+            }
+            break;
+        case DOUBLE_MIN:
+        case DOUBLE_MAX:
+            inputTypes[i].getCodec().encodeDouble(doubleColumns[i][groupId], buffer, 0);
+            break;
+        }
+        if ((kind == Kind.LONG_MIN || kind == Kind.LONG_MAX || kind == Kind.DOUBLE_MIN
+                || kind == Kind.DOUBLE_MAX) && sortOrders[i] == SortOrder.DESC) {
+            SortOrder.invert(buffer, 0, buffer, 0, buffer.length);
+        }
+        ptr.set(buffer);
+    }
+
+    /**
+     * @return the serialized value of the aggregates of the group, in the format of
+     * {@link Aggregators#toBytes(Aggregator[])}
+     */
+    public byte[] toBytes(int groupId) {
+        for (int i = 0; i < values.length; i++) {
+            evaluate(i, groupId, values[i].value);
+        }
+        return aggregators.getValueSchema().toBytes(values, valueSet, ptr);
+    }
+
+    /**
+     * Create the aggregators holding the aggregated values of a group, the same way spilled
+     * groups are read back by the spillable group by cache.
+     */
+    public Aggregator[] newAggregators(int groupId, Configuration conf) {
+        SingleAggregateFunction[] functions = aggregators.getFunctions();
+        Aggregator[] groupAggregators = new Aggregator[functions.length];
+        ImmutableBytesWritable value = new ImmutableBytesWritable();
+        for (int i = 0; i < functions.length; i++) {
+            evaluate(i, groupId, value);
+            if (value.getLength() == 0) {
+                groupAggregators[i] = functions[i].newServerAggregator(conf);
+            } else {
+                // MIN and MAX reference the bytes they are given
+                groupAggregators[i] = functions[i].newServerAggregator(conf,
+                        new ImmutableBytesWritable(value.copyBytes()));
+            }
+        }
+        return groupAggregators;
+    }
+
+    /**
+     * Point ptr at the bytes of the key of the group without copying.
+     */
+    public void getKey(int groupId, ImmutableBytesWritable ptr) {
+        ptr.set(keyArena, keyOffsets[groupId], keyLengths[groupId]);
+    }
+
+    public int getGroupCount() {
+        return nGroups;
+    }
+
+    /**
+     * @return the estimated number of bytes held by this table
+     */
+    public long getEstimatedByteSize() {
+        long size = SizedUtil.OBJECT_SIZE + 5L * SizedUtil.ARRAY_SIZE
+                + (long) keyHashes.length * 3 * SizedUtil.INT_SIZE
+                + (long) slots.length * SizedUtil.INT_SIZE
+                + keyArena.length;
+        for (int i = 0; i < kinds.length; i++) {
+            size += 2L * SizedUtil.ARRAY_SIZE + (long) keyHashes.length * SizedUtil.LONG_SIZE
+                    + (long) isSet[i].length * SizedUtil.LONG_SIZE;
+        }
+        return size;
+    }
+
+    /**
+     * Holds the value of an aggregate for the group being serialized
+     */
+    private static class GroupValue extends BaseTerminalExpression {
+        private final PDataType type;
+        private final byte[] buffer;
+        private final ImmutableBytesWritable value = new ImmutableBytesWritable();
+
+        GroupValue(PDataType type) {
+            this.type = type;
+            this.buffer = new byte[type.getByteSize()];
+        }
+
+        @Override
+        public boolean evaluate(Tuple tuple, ImmutableBytesWritable ptr) {
+            if (value.getLength() == 0) {
+                return false;
+            }
+            ptr.set(value.get(), value.getOffset(), value.getLength());
+            return true;
+        }
+
+        @Override
+        public PDataType getDataType() {
+            return type;
+        }
+
+        @Override
+        public <T> T accept(ExpressionVisitor<T> visitor) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.phoenix.expression.vector;
+
+/**
+ * Values of one expression over a {@link VectorizedBatch}, held in primitive arrays indexed
+ * by the position of the row in the batch. Only the positions of the rows that were selected
+ * when the vector was evaluated hold valid values. A repeating vector holds a single value,
+ * at position 0, that applies to every row of the batch.
+ *
+ * @since 5.1.0
+ */
+public class ColumnVector {
+    public enum Kind {
+        LONG, DOUBLE, BYTES
+    }
+
+    final Kind kind;
+    final boolean[] isNull;
+    final long[] longs;
+    final double[] doubles;
+    final byte[][] bytes;
+    final int[] offsets;
+    final int[] lengths;
+    boolean isRepeating;
+
+    public ColumnVector(Kind kind, int capacity) {
+        this.kind = kind;
+        this.isNull = new boolean[capacity];
+        this.longs = kind == Kind.LONG ? new long[capacity] : null;
+        this.doubles = kind == Kind.DOUBLE ? new double[capacity] : null;
+        if (kind == Kind.BYTES) {
+            this.bytes = new byte[capacity][];
+            this.offsets = new int[capacity];
+            this.lengths = new int[capacity];
+        } else {
+            this.bytes = null;
+            this.offsets = null;
+            this.lengths = null;
+        }
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public int getCapacity() {
+        return isNull.length;
+    }
+
+    public boolean isRepeating() {
+        return isRepeating;
+    }
+
+    public boolean isNull(int i) {
+        return isNull[isRepeating ? 0 : i];
+    }
+
+    public long getLong(int i) {
+        return longs[isRepeating ? 0 : i];
+    }
+
+    /**
+     * @return the value at the given position as a double, widening long values
+     */
+    public double getDouble(int i) {
+        int index = isRepeating ? 0 : i;
+        return kind == Kind.LONG ? longs[index] : doubles[index];
+    }
+}
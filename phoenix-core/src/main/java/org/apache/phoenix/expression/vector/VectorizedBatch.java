@@ -0,0 +1,89 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.phoenix.expression.vector;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.hbase.Cell;
+import org.apache.phoenix.schema.tuple.MultiKeyValueTuple;
+import org.apache.phoenix.schema.tuple.Tuple;
+
+/**
+ * Block of rows evaluated together by a {@link VectorizedPredicate}. The cell lists and
+ * tuples are allocated once and reused for every block read into the batch.
+ *
+ * @since 5.1.0
+ */
+public class VectorizedBatch {
+    private final List<Cell>[] rows;
+    private final MultiKeyValueTuple[] tuples;
+    private int size;
+
+    @SuppressWarnings("unchecked")
+    public VectorizedBatch(int capacity) {
+        this.rows = new List[capacity];
+        this.tuples = new MultiKeyValueTuple[capacity];
+        for (int i = 0; i < capacity; i++) {
+            rows[i] = new ArrayList<Cell>();
+            tuples[i] = new MultiKeyValueTuple();
+        }
+    }
+
+    public int getCapacity() {
+        return rows.length;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isFull() {
+        return size == rows.length;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * @return the cleared cell list the next row of the batch is to be read into. The row
+     * only becomes part of the batch once {@link #addRow()} is called.
+     */
+    public List<Cell> newRow() {
+        List<Cell> row = rows[size];
+        row.clear();
+        return row;
+    }
+
+    /**
+     * Adds the row read into the list returned by {@link #newRow()} to the batch
+     */
+    public void addRow() {
+        tuples[size].setKeyValues(rows[size]);
+        size++;
+    }
+
+    public List<Cell> getRow(int i) {
+        return rows[i];
+    }
+
+    public Tuple getTuple(int i) {
+        return tuples[i];
+    }
+}
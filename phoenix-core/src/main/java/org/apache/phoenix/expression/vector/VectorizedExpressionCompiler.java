@@ -0,0 +1,229 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.phoenix.expression.vector;
+
+import java.util.Date;
+import java.util.List;
+
+import org.apache.phoenix.expression.AndExpression;
+import org.apache.phoenix.expression.CoerceExpression;
+import org.apache.phoenix.expression.ComparisonExpression;
+import org.apache.phoenix.expression.DoubleAddExpression;
+import org.apache.phoenix.expression.DoubleMultiplyExpression;
+import org.apache.phoenix.expression.DoubleSubtractExpression;
+import org.apache.phoenix.expression.Expression;
+import org.apache.phoenix.expression.InListExpression;
+import org.apache.phoenix.expression.KeyValueColumnExpression;
+import org.apache.phoenix.expression.LiteralExpression;
+import org.apache.phoenix.expression.LongAddExpression;
+import org.apache.phoenix.expression.LongMultiplyExpression;
+import org.apache.phoenix.expression.LongSubtractExpression;
+import org.apache.phoenix.expression.OrExpression;
+import org.apache.phoenix.expression.RowKeyColumnExpression;
+import org.apache.phoenix.expression.vector.ColumnVector.Kind;
+import org.apache.phoenix.expression.vector.VectorizedValue.ArithmeticOp;
+import org.apache.phoenix.schema.SortOrder;
+import org.apache.phoenix.schema.types.PDataType;
+import org.apache.phoenix.schema.types.PDate;
+import org.apache.phoenix.schema.types.PDouble;
+import org.apache.phoenix.schema.types.PInteger;
+import org.apache.phoenix.schema.types.PLong;
+import org.apache.phoenix.schema.types.PVarchar;
+
+/**
+ * Compiles a boolean filter expression into a {@link VectorizedPredicate}. Supports AND, OR,
+ * comparisons, IN lists and long/double addition, subtraction and multiplication over
+ * columns and literals of type BIGINT, INTEGER, DOUBLE, VARCHAR and DATE. Any other
+ * expression makes the whole expression unsupported, in which case it has to be evaluated
+ * row by row.
+ *
+ * @since 5.1.0
+ */
+public class VectorizedExpressionCompiler {
+
+    private VectorizedExpressionCompiler() {
+    }
+
+    /**
+     * @return the vectorized form of the expression, or null if the expression is not
+     * supported
+     */
+    public static VectorizedPredicate compile(Expression expression) {
+        if (expression instanceof AndExpression || expression instanceof OrExpression) {
+            List<Expression> children = expression.getChildren();
+            VectorizedPredicate[] predicates = new VectorizedPredicate[children.size()];
+            for (int i = 0; i < predicates.length; i++) {
+                predicates[i] = compile(children.get(i));
+                if (predicates[i] == null) {
+                    return null;
+                }
+            }
+            return expression instanceof AndExpression
+                    ? new VectorizedPredicate.And(predicates)
+                    : new VectorizedPredicate.Or(predicates);
+        }
+        if (expression instanceof ComparisonExpression) {
+            return compileComparison((ComparisonExpression) expression);
+        }
+        if (expression instanceof InListExpression) {
+            InListExpression inList = (InListExpression) expression;
+            Expression child = inList.getChild();
+            if (!isColumn(child) || !isSupportedType(child.getDataType())) {
+                return null;
+            }
+            // The values of the IN list are already coerced to the type and sort order of the
+            // child, so its raw bytes are looked up whatever its type
+            return new VectorizedPredicate.InList(new VectorizedValue.Column(child, Kind.BYTES), inList);
+        }
+        return null;
+    }
+
+    private static VectorizedPredicate compileComparison(ComparisonExpression comparison) {
+        VectorizedValue lhs = compileValue(comparison.getChildren().get(0));
+        VectorizedValue rhs = compileValue(comparison.getChildren().get(1));
+        if (lhs == null || rhs == null) {
+            return null;
+        }
+        Kind kind;
+        if (lhs.getKind() == Kind.BYTES || rhs.getKind() == Kind.BYTES) {
+            if (lhs.getKind() != rhs.getKind()) {
+                return null;
+            }
+            kind = Kind.BYTES;
+        } else if (isDate(lhs.getDataType()) != isDate(rhs.getDataType())) {
+            return null;
+        } else if (lhs.getKind() == Kind.LONG && rhs.getKind() == Kind.LONG) {
+            kind = Kind.LONG;
+        } else {
+            kind = Kind.DOUBLE;
+        }
+        return new VectorizedPredicate.Compare(comparison.getFilterOp(), lhs, rhs, kind);
+    }
+
+    private static VectorizedValue compileValue(Expression expression) {
+        PDataType type = expression.getDataType();
+        if (isColumn(expression)) {
+            if (type == PVarchar.INSTANCE) {
+                // Variable length values are only compared bytewise when in ascending order
+                return expression.getSortOrder() == SortOrder.ASC
+                        ? new VectorizedValue.Column(expression, Kind.BYTES) : null;
+            }
+            Kind kind = getNumericKind(type);
+            return kind == null ? null : new VectorizedValue.Column(expression, kind);
+        }
+        if (expression instanceof LiteralExpression) {
+            return compileLiteral((LiteralExpression) expression);
+        }
+        if (expression instanceof CoerceExpression) {
+            // Widening an integral value to BIGINT or a numeric value to DOUBLE does not
+            // change the value, and comparisons already compare mixed numeric values as doubles
+            Expression child = ((CoerceExpression) expression).getChild();
+            Kind childKind = getNumericKind(child.getDataType());
+            if (childKind == null || isDate(child.getDataType())
+                    || !(type == PDouble.INSTANCE || (type == PLong.INSTANCE && childKind == Kind.LONG))) {
+                return null;
+            }
+            return compileValue(child);
+        }
+        if (expression instanceof LongAddExpression) {
+            return compileArithmetic(expression, ArithmeticOp.ADD, true);
+        }
+        if (expression instanceof LongSubtractExpression) {
+            return compileArithmetic(expression, ArithmeticOp.SUBTRACT, true);
+        }
+        if (expression instanceof LongMultiplyExpression) {
+            return compileArithmetic(expression, ArithmeticOp.MULTIPLY, true);
+        }
+        if (expression instanceof DoubleAddExpression) {
+            return compileArithmetic(expression, ArithmeticOp.ADD, false);
+        }
+        if (expression instanceof DoubleSubtractExpression) {
+            return compileArithmetic(expression, ArithmeticOp.SUBTRACT, false);
+        }
+        if (expression instanceof DoubleMultiplyExpression) {
+            return compileArithmetic(expression, ArithmeticOp.MULTIPLY, false);
+        }
+        return null;
+    }
+
+    private static VectorizedValue compileArithmetic(Expression expression, ArithmeticOp op, boolean isLong) {
+        List<Expression> children = expression.getChildren();
+        VectorizedValue[] values = new VectorizedValue[children.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = compileValue(children.get(i));
+            // Date arithmetic has its own semantics and is left to the row by row evaluation
+            if (values[i] == null || values[i].getKind() == Kind.BYTES || isDate(values[i].getDataType())
+                    || (isLong && values[i].getKind() != Kind.LONG)) {
+                return null;
+            }
+        }
+        return isLong
+                ? new VectorizedValue.LongArithmetic(expression.getDataType(), op, values)
+                : new VectorizedValue.DoubleArithmetic(expression.getDataType(), op, values);
+    }
+
+    private static VectorizedValue compileLiteral(LiteralExpression literal) {
+        PDataType type = literal.getDataType();
+        Object value = literal.getValue();
+        if (type == PVarchar.INSTANCE) {
+            if (value == null) {
+                return VectorizedValue.Literal.newNull(type, Kind.BYTES);
+            }
+            return literal.getSortOrder() == SortOrder.ASC
+                    ? VectorizedValue.Literal.newBytes(type, literal.getBytes()) : null;
+        }
+        Kind kind = getNumericKind(type);
+        if (kind == null) {
+            return null;
+        }
+        if (value == null) {
+            return VectorizedValue.Literal.newNull(type, kind);
+        }
+        if (isDate(type)) {
+            return VectorizedValue.Literal.newLong(type, ((Date) value).getTime());
+        }
+        return kind == Kind.LONG
+                ? VectorizedValue.Literal.newLong(type, ((Number) value).longValue())
+                : VectorizedValue.Literal.newDouble(type, ((Number) value).doubleValue());
+    }
+
+    private static boolean isColumn(Expression expression) {
+        // Subclasses of KeyValueColumnExpression, such as the one reading columns stored in a
+        // single cell, are not read the same way
+        return expression.getClass() == KeyValueColumnExpression.class
+                || expression instanceof RowKeyColumnExpression;
+    }
+
+    private static boolean isSupportedType(PDataType type) {
+        return type == PVarchar.INSTANCE || getNumericKind(type) != null;
+    }
+
+    private static Kind getNumericKind(PDataType type) {
+        if (type == PLong.INSTANCE || type == PInteger.INSTANCE || type == PDate.INSTANCE) {
+            return Kind.LONG;
+        }
+        if (type == PDouble.INSTANCE) {
+            return Kind.DOUBLE;
+        }
+        return null;
+    }
+
+    private static boolean isDate(PDataType type) {
+        return type == PDate.INSTANCE;
+    }
+}
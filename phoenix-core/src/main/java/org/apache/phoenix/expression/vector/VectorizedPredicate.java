@@ -0,0 +1,232 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.phoenix.expression.vector;
+
+import java.util.Arrays;
+
+import org.apache.hadoop.hbase.filter.CompareFilter.CompareOp;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.phoenix.expression.InListExpression;
+import org.apache.phoenix.expression.vector.ColumnVector.Kind;
+import org.apache.phoenix.util.ByteUtil;
+
+/**
+ * Boolean node of a vectorized expression tree. Rather than producing a value per row, a
+ * predicate narrows a selection vector, the positions in the batch of the rows that are
+ * still candidates, down to the rows for which it evaluates to true. As with
+ * BooleanExpressionFilter, a row for which the predicate is null is filtered out.
+ *
+ * Build with {@link VectorizedExpressionCompiler#compile(org.apache.phoenix.expression.Expression)}.
+ *
+ * @since 5.1.0
+ */
+public abstract class VectorizedPredicate {
+
+    /**
+     * Narrows the selection to the rows of the batch for which the predicate is true
+     * @param selection the positions of the selected rows in increasing order, overwritten
+     * with the positions of the rows that pass
+     * @param selected the number of positions in selection
+     * @return the number of rows left in the selection
+     */
+    public abstract int select(VectorizedBatch batch, int[] selection, int selected);
+
+    /**
+     * Conjunction, evaluated by narrowing the selection with each child in turn so that later
+     * children are only evaluated for the rows that passed the earlier ones.
+     */
+    static class And extends VectorizedPredicate {
+        private final VectorizedPredicate[] children;
+
+        And(VectorizedPredicate[] children) {
+            this.children = children;
+        }
+
+        @Override
+        public int select(VectorizedBatch batch, int[] selection, int selected) {
+            for (int c = 0; c < children.length && selected > 0; c++) {
+                selected = children[c].select(batch, selection, selected);
+            }
+            return selected;
+        }
+
+        @Override
+        public String toString() {
+            return "AND" + Arrays.toString(children);
+        }
+    }
+
+    /**
+     * Disjunction, evaluated by running each child over the rows none of the earlier children
+     * selected.
+     */
+    static class Or extends VectorizedPredicate {
+        private final VectorizedPredicate[] children;
+        private boolean[] passed;
+        private int[] remaining;
+        private int[] scratch;
+
+        Or(VectorizedPredicate[] children) {
+            this.children = children;
+        }
+
+        @Override
+        public int select(VectorizedBatch batch, int[] selection, int selected) {
+            int capacity = batch.getCapacity();
+            if (passed == null || passed.length < capacity) {
+                passed = new boolean[capacity];
+                remaining = new int[capacity];
+                scratch = new int[capacity];
+            }
+            System.arraycopy(selection, 0, remaining, 0, selected);
+            int nRemaining = selected;
+            for (int c = 0; c < children.length && nRemaining > 0; c++) {
+                System.arraycopy(remaining, 0, scratch, 0, nRemaining);
+                int nPassed = children[c].select(batch, scratch, nRemaining);
+                for (int j = 0; j < nPassed; j++) {
+                    passed[scratch[j]] = true;
+                }
+                int n = 0;
+                for (int j = 0; j < nRemaining; j++) {
+                    if (!passed[remaining[j]]) {
+                        remaining[n++] = remaining[j];
+                    }
+                }
+                nRemaining = n;
+            }
+            int n = 0;
+            for (int j = 0; j < selected; j++) {
+                int i = selection[j];
+                if (passed[i]) {
+                    passed[i] = false;
+                    selection[n++] = i;
+                }
+            }
+            return n;
+        }
+
+        @Override
+        public String toString() {
+            return "OR" + Arrays.toString(children);
+        }
+    }
+
+    /**
+     * Comparison of two values, both long, both numeric (compared as doubles) or both
+     * variable length byte arrays in ascending sort order (compared bytewise)
+     */
+    static class Compare extends VectorizedPredicate {
+        private final CompareOp op;
+        private final VectorizedValue lhs;
+        private final VectorizedValue rhs;
+        private final Kind kind;
+
+        Compare(CompareOp op, VectorizedValue lhs, VectorizedValue rhs, Kind kind) {
+            this.op = op;
+            this.lhs = lhs;
+            this.rhs = rhs;
+            this.kind = kind;
+        }
+
+        @Override
+        public int select(VectorizedBatch batch, int[] selection, int selected) {
+            ColumnVector l = lhs.evaluate(batch, selection, selected);
+            ColumnVector r = rhs.evaluate(batch, selection, selected);
+            int n = 0;
+            switch (kind) {
+            case LONG:
+                for (int j = 0; j < selected; j++) {
+                    int i = selection[j];
+                    if (!l.isNull(i) && !r.isNull(i)
+                            && ByteUtil.compare(op, Long.compare(l.getLong(i), r.getLong(i)))) {
+                        selection[n++] = i;
+                    }
+                }
+                break;
+            case DOUBLE:
+                for (int j = 0; j < selected; j++) {
+                    int i = selection[j];
+                    if (!l.isNull(i) && !r.isNull(i)
+                            && ByteUtil.compare(op, Double.compare(l.getDouble(i), r.getDouble(i)))) {
+                        selection[n++] = i;
+                    }
+                }
+                break;
+            default:
+                for (int j = 0; j < selected; j++) {
+                    int i = selection[j];
+                    if (l.isNull(i) || r.isNull(i)) {
+                        continue;
+                    }
+                    int li = l.isRepeating ? 0 : i;
+                    int ri = r.isRepeating ? 0 : i;
+                    int result = Bytes.compareTo(l.bytes[li], l.offsets[li], l.lengths[li],
+                            r.bytes[ri], r.offsets[ri], r.lengths[ri]);
+                    if (ByteUtil.compare(op, result)) {
+                        selection[n++] = i;
+                    }
+                }
+                break;
+            }
+            return n;
+        }
+
+        @Override
+        public String toString() {
+            return lhs + " " + op + " " + rhs;
+        }
+    }
+
+    /**
+     * IN list membership, probing the serialized values of the IN list with the raw bytes of
+     * the child value exactly as InListExpression does.
+     */
+    static class InList extends VectorizedPredicate {
+        private final VectorizedValue child;
+        private final InListExpression inList;
+        private final ImmutableBytesWritable ptr = new ImmutableBytesWritable();
+
+        InList(VectorizedValue child, InListExpression inList) {
+            this.child = child;
+            this.inList = inList;
+        }
+
+        @Override
+        public int select(VectorizedBatch batch, int[] selection, int selected) {
+            ColumnVector values = child.evaluate(batch, selection, selected);
+            int n = 0;
+            for (int j = 0; j < selected; j++) {
+                int i = selection[j];
+                if (values.isNull[i]) {
+                    continue;
+                }
+                ptr.set(values.bytes[i], values.offsets[i], values.lengths[i]);
+                if (inList.containsValue(ptr)) {
+                    selection[n++] = i;
+                }
+            }
+            return n;
+        }
+
+        @Override
+        public String toString() {
+            return inList.toString();
+        }
+    }
+}
@@ -0,0 +1,337 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.phoenix.expression.vector;
+
+import java.util.Arrays;
+
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.phoenix.expression.Expression;
+import org.apache.phoenix.expression.vector.ColumnVector.Kind;
+import org.apache.phoenix.schema.SortOrder;
+import org.apache.phoenix.schema.types.PDataType;
+import org.apache.phoenix.schema.types.PDataType.PDataCodec;
+
+/**
+ * Value producing node of a vectorized expression tree. Each node evaluates its expression
+ * for all the selected rows of a batch at once into a {@link ColumnVector} it owns and
+ * reuses across batches. A null result, or any result for which the row by row
+ * {@link Expression#evaluate} would return false, is represented as a null entry.
+ *
+ * @since 5.1.0
+ */
+public abstract class VectorizedValue {
+    private final PDataType dataType;
+    private ColumnVector output;
+
+    protected VectorizedValue(PDataType dataType) {
+        this.dataType = dataType;
+    }
+
+    public PDataType getDataType() {
+        return dataType;
+    }
+
+    public abstract Kind getKind();
+
+    /**
+     * Evaluates the value for the rows of the batch at the given positions
+     * @param selection the positions of the rows to evaluate
+     * @param selected the number of positions in selection
+     * @return a vector holding the value of each of the selected rows
+     */
+    public abstract ColumnVector evaluate(VectorizedBatch batch, int[] selection, int selected);
+
+    protected ColumnVector getOutput(VectorizedBatch batch) {
+        if (output == null || output.getCapacity() < batch.getCapacity()) {
+            output = new ColumnVector(getKind(), batch.getCapacity());
+        }
+        return output;
+    }
+
+    /**
+     * Leaf reading a column of each row. The column expression is still evaluated row by row,
+     * but its value is decoded straight into a primitive array.
+     */
+    static class Column extends VectorizedValue {
+        private final Expression expression;
+        private final Kind kind;
+        private final PDataCodec codec;
+        private final SortOrder sortOrder;
+        private final ImmutableBytesWritable ptr = new ImmutableBytesWritable();
+
+        Column(Expression expression, Kind kind) {
+            super(expression.getDataType());
+            this.expression = expression;
+            this.kind = kind;
+            this.codec = expression.getDataType().getCodec();
+            this.sortOrder = expression.getSortOrder();
+        }
+
+        @Override
+        public Kind getKind() {
+            return kind;
+        }
+
+        @Override
+        public ColumnVector evaluate(VectorizedBatch batch, int[] selection, int selected) {
+            ColumnVector output = getOutput(batch);
+            output.isRepeating = false;
+            boolean[] isNull = output.isNull;
+            switch (kind) {
+            case LONG:
+                long[] longs = output.longs;
+                for (int j = 0; j < selected; j++) {
+                    int i = selection[j];
+                    isNull[i] = !expression.evaluate(batch.getTuple(i), ptr) || ptr.getLength() == 0;
+                    if (!isNull[i]) {
+                        longs[i] = codec.decodeLong(ptr, sortOrder);
+                    }
+                }
+                break;
+            case DOUBLE:
+                double[] doubles = output.doubles;
+                for (int j = 0; j < selected; j++) {
+                    int i = selection[j];
+                    isNull[i] = !expression.evaluate(batch.getTuple(i), ptr) || ptr.getLength() == 0;
+                    if (!isNull[i]) {
+                        doubles[i] = codec.decodeDouble(ptr, sortOrder);
+                    }
+                }
+                break;
+            default:
+                for (int j = 0; j < selected; j++) {
+                    int i = selection[j];
+                    isNull[i] = !expression.evaluate(batch.getTuple(i), ptr) || ptr.getLength() == 0;
+                    if (!isNull[i]) {
+                        output.bytes[i] = ptr.get();
+                        output.offsets[i] = ptr.getOffset();
+                        output.lengths[i] = ptr.getLength();
+                    }
+                }
+                break;
+            }
+            return output;
+        }
+
+        @Override
+        public String toString() {
+            return expression.toString();
+        }
+    }
+
+    /**
+     * Constant, evaluated into a repeating vector
+     */
+    static class Literal extends VectorizedValue {
+        private final Kind kind;
+        private final boolean isNull;
+        private final long longValue;
+        private final double doubleValue;
+        private final byte[] bytesValue;
+
+        private Literal(PDataType dataType, Kind kind, boolean isNull, long longValue, double doubleValue, byte[] bytesValue) {
+            super(dataType);
+            this.kind = kind;
+            this.isNull = isNull;
+            this.longValue = longValue;
+            this.doubleValue = doubleValue;
+            this.bytesValue = bytesValue;
+        }
+
+        static Literal newNull(PDataType dataType, Kind kind) {
+            return new Literal(dataType, kind, true, 0, 0, null);
+        }
+
+        static Literal newLong(PDataType dataType, long value) {
+            return new Literal(dataType, Kind.LONG, false, value, 0, null);
+        }
+
+        static Literal newDouble(PDataType dataType, double value) {
+            return new Literal(dataType, Kind.DOUBLE, false, 0, value, null);
+        }
+
+        static Literal newBytes(PDataType dataType, byte[] value) {
+            return new Literal(dataType, Kind.BYTES, false, 0, 0, value);
+        }
+
+        @Override
+        public Kind getKind() {
+            return kind;
+        }
+
+        @Override
+        public ColumnVector evaluate(VectorizedBatch batch, int[] selection, int selected) {
+            ColumnVector output = getOutput(batch);
+            output.isRepeating = true;
+            output.isNull[0] = isNull;
+            switch (kind) {
+            case LONG:
+                output.longs[0] = longValue;
+                break;
+            case DOUBLE:
+                output.doubles[0] = doubleValue;
+                break;
+            default:
+                output.bytes[0] = bytesValue;
+                output.offsets[0] = 0;
+                output.lengths[0] = isNull ? 0 : bytesValue.length;
+                break;
+            }
+            return output;
+        }
+
+        @Override
+        public String toString() {
+            return isNull ? "null" : kind == Kind.LONG ? Long.toString(longValue)
+                    : kind == Kind.DOUBLE ? Double.toString(doubleValue) : "'" + Bytes.toString(bytesValue) + "'";
+        }
+    }
+
+    enum ArithmeticOp {
+        ADD, SUBTRACT, MULTIPLY
+    }
+
+    /**
+     * Long arithmetic over long children, with the semantics of LongAddExpression,
+     * LongSubtractExpression and LongMultiplyExpression: a null operand makes the result null
+     * and overflow wraps around.
+     */
+    static class LongArithmetic extends VectorizedValue {
+        private final ArithmeticOp op;
+        private final VectorizedValue[] children;
+
+        LongArithmetic(PDataType dataType, ArithmeticOp op, VectorizedValue[] children) {
+            super(dataType);
+            this.op = op;
+            this.children = children;
+        }
+
+        @Override
+        public Kind getKind() {
+            return Kind.LONG;
+        }
+
+        @Override
+        public ColumnVector evaluate(VectorizedBatch batch, int[] selection, int selected) {
+            ColumnVector output = getOutput(batch);
+            output.isRepeating = false;
+            boolean[] isNull = output.isNull;
+            long[] longs = output.longs;
+            ColumnVector first = children[0].evaluate(batch, selection, selected);
+            for (int j = 0; j < selected; j++) {
+                int i = selection[j];
+                isNull[i] = first.isNull(i);
+                longs[i] = first.getLong(i);
+            }
+            for (int c = 1; c < children.length; c++) {
+                ColumnVector child = children[c].evaluate(batch, selection, selected);
+                for (int j = 0; j < selected; j++) {
+                    int i = selection[j];
+                    isNull[i] |= child.isNull(i);
+                }
+                switch (op) {
+                case ADD:
+                    for (int j = 0; j < selected; j++) {
+                        int i = selection[j];
+                        longs[i] += child.getLong(i);
+                    }
+                    break;
+                case SUBTRACT:
+                    for (int j = 0; j < selected; j++) {
+                        int i = selection[j];
+                        longs[i] -= child.getLong(i);
+                    }
+                    break;
+                default:
+                    for (int j = 0; j < selected; j++) {
+                        int i = selection[j];
+                        longs[i] *= child.getLong(i);
+                    }
+                    break;
+                }
+            }
+            return output;
+        }
+
+        @Override
+        public String toString() {
+            return op + Arrays.toString(children);
+        }
+    }
+
+    /**
+     * Double arithmetic over numeric children, with the semantics of DoubleAddExpression,
+     * DoubleSubtractExpression and DoubleMultiplyExpression: a null operand, or an operand
+     * that is NaN or infinite, makes the result null.
+     */
+    static class DoubleArithmetic extends VectorizedValue {
+        private final ArithmeticOp op;
+        private final VectorizedValue[] children;
+
+        DoubleArithmetic(PDataType dataType, ArithmeticOp op, VectorizedValue[] children) {
+            super(dataType);
+            this.op = op;
+            this.children = children;
+        }
+
+        @Override
+        public Kind getKind() {
+            return Kind.DOUBLE;
+        }
+
+        @Override
+        public ColumnVector evaluate(VectorizedBatch batch, int[] selection, int selected) {
+            ColumnVector output = getOutput(batch);
+            output.isRepeating = false;
+            boolean[] isNull = output.isNull;
+            double[] doubles = output.doubles;
+            for (int c = 0; c < children.length; c++) {
+                ColumnVector child = children[c].evaluate(batch, selection, selected);
+                for (int j = 0; j < selected; j++) {
+                    int i = selection[j];
+                    double value = child.getDouble(i);
+                    boolean invalid = child.isNull(i) || Double.isNaN(value) || Double.isInfinite(value);
+                    if (c == 0) {
+                        isNull[i] = invalid;
+                        doubles[i] = value;
+                    } else {
+                        isNull[i] |= invalid;
+                        switch (op) {
+                        case ADD:
+                            doubles[i] += value;
+                            break;
+                        case SUBTRACT:
+                            doubles[i] -= value;
+                            break;
+                        default:
+                            doubles[i] *= value;
+                            break;
+                        }
+                    }
+                }
+            }
+            return output;
+        }
+
+        @Override
+        public String toString() {
+            return op + Arrays.toString(children);
+        }
+    }
+}
@@ -0,0 +1,261 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.phoenix.filter;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.exceptions.DeserializationException;
+import org.apache.hadoop.hbase.filter.FilterBase;
+import org.apache.hadoop.hbase.util.Writables;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.phoenix.execute.TupleProjector;
+import org.apache.phoenix.expression.Expression;
+import org.apache.phoenix.expression.ExpressionType;
+import org.apache.phoenix.expression.ProjectedColumnExpression;
+import org.apache.phoenix.expression.visitor.CloneExpressionVisitor;
+import org.apache.phoenix.hbase.index.util.ImmutableBytesPtr;
+import org.apache.phoenix.query.QueryConstants;
+import org.apache.phoenix.schema.tuple.ResultTuple;
+import org.apache.phoenix.schema.tuple.Tuple;
+import org.apache.phoenix.util.KeyBloomFilter;
+import org.apache.phoenix.util.SchemaUtil;
+import org.apache.phoenix.util.ServerUtil;
+import org.apache.phoenix.util.TrustedByteArrayOutputStream;
+import org.apache.phoenix.util.TupleUtil;
+
+/**
+ * Filter pushed into the probe side scan of a hash join that drops rows whose join key
+ * is definitely not present on the build side, as summarized by a {@link KeyBloomFilter}
+ * per join built while the build side was being broadcast. Rows are dropped inside the
+ * region scanner, before any projection, join or aggregation work is done on them.
+ *
+ * The join key expressions are compiled against the projected row. They are rewritten by
+ * {@link #getKeyExpressions(TupleProjector, List)} to evaluate the projected columns they
+ * reference directly against the scanned row, so that rows are projected once, by
+ * HashJoinRegionScanner, and only for the rows this filter lets through. Only joins that
+ * would discard a probe row without a match (early evaluated inner and semi joins) may
+ * carry a Bloom filter.
+ *
+ * @since 5.1.0
+ */
+public class HashJoinBloomFilter extends FilterBase implements Writable {
+    private static final byte VERSION = 1;
+
+    private List<Expression>[] keyExpressions;
+    private KeyBloomFilter[] bloomFilters;
+
+    private boolean filterRow;
+
+    public HashJoinBloomFilter() {
+    }
+
+    /**
+     * @param keyExpressions the probe side key expressions of each join with a Bloom filter,
+     * as returned by {@link #getKeyExpressions(TupleProjector, List)}
+     * @param bloomFilters the Bloom filter of the build side keys of each join
+     */
+    public HashJoinBloomFilter(List<Expression>[] keyExpressions, KeyBloomFilter[] bloomFilters) {
+        this.keyExpressions = keyExpressions;
+        this.bloomFilters = bloomFilters;
+    }
+
+    /**
+     * Rewrites join key expressions compiled against the rows projected by the given projector
+     * into expressions evaluating to the same value against the rows before projection.
+     * @return the rewritten expressions, or null if they reference a column the projector
+     * does not project
+     */
+    public static List<Expression> getKeyExpressions(TupleProjector projector,
+            List<Expression> joinExpressions) {
+        final Expression[] projectedExpressions = projector.getExpressions();
+        CloneExpressionVisitor visitor = new CloneExpressionVisitor() {
+            @Override
+            public boolean isCloneNode(Expression node, List<Expression> children) {
+                return !children.equals(node.getChildren());
+            }
+
+            @Override
+            public Expression visit(ProjectedColumnExpression node) {
+                // Columns of the build sides are only merged into the row after the probe
+                return node.getPosition() < projectedExpressions.length
+                        ? projectedExpressions[node.getPosition()] : node;
+            }
+        };
+        Expression[] keyExpressions = new Expression[joinExpressions.size()];
+        for (int i = 0; i < keyExpressions.length; i++) {
+            keyExpressions[i] = joinExpressions.get(i).accept(visitor);
+            // Left as is by the visitor when not projected, or when the visitor cannot rebuild
+            // the expression referencing it
+            if (hasProjectedColumn(keyExpressions[i])) {
+                return null;
+            }
+        }
+        return Arrays.asList(keyExpressions);
+    }
+
+    private static boolean hasProjectedColumn(Expression expression) {
+        if (expression instanceof ProjectedColumnExpression) {
+            return true;
+        }
+        for (Expression child : expression.getChildren()) {
+            if (hasProjectedColumn(child)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean hasFilterRow() {
+        return true;
+    }
+
+    @Override
+    public void filterRowCells(List<Cell> cells) throws IOException {
+        if (cells.isEmpty()) {
+            return;
+        }
+        Tuple tuple = new ResultTuple(Result.create(cells));
+        for (int i = 0; i < bloomFilters.length; i++) {
+            ImmutableBytesPtr key = getKey(tuple, keyExpressions[i]);
+            if (key != null && !bloomFilters[i].mightContain(key)) {
+                filterRow = true;
+                cells.clear();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Concatenates the values of the key expressions the same way
+     * {@link TupleUtil#getConcatenatedValue(Tuple, List)} does against the projected row.
+     * @return the key, or null if any of its values is null, as a null evaluates to false
+     * against the scanned row but to an empty value against the projected row, which the
+     * concatenation does not treat alike. Such rows are always let through.
+     */
+    private ImmutableBytesPtr getKey(Tuple tuple, List<Expression> expressions) throws IOException {
+        ImmutableBytesPtr value = new ImmutableBytesPtr();
+        Expression expression = expressions.get(0);
+        if (!expression.evaluate(tuple, value) || value.getLength() == 0) {
+            return null;
+        }
+        if (expressions.size() == 1) {
+            return value;
+        }
+        TrustedByteArrayOutputStream output = new TrustedByteArrayOutputStream(value.getLength() * expressions.size());
+        try {
+            output.write(value.get(), value.getOffset(), value.getLength());
+            for (int i = 1; i < expressions.size(); i++) {
+                if (!expression.getDataType().isFixedWidth()) {
+                    output.write(SchemaUtil.getSeparatorByte(true, false, expression));
+                }
+                expression = expressions.get(i);
+                if (!expression.evaluate(tuple, value) || value.getLength() == 0) {
+                    return null;
+                }
+                output.write(value.get(), value.getOffset(), value.getLength());
+            }
+            if (!expression.getDataType().isFixedWidth()
+                    && SchemaUtil.getSeparatorByte(true, false, expression) == QueryConstants.DESC_SEPARATOR_BYTE) {
+                output.write(QueryConstants.DESC_SEPARATOR_BYTE);
+            }
+            value.set(output.getBuffer(), 0, output.size());
+            return value;
+        } finally {
+            output.close();
+        }
+    }
+
+    @Override
+    public boolean filterRow() {
+        return filterRow;
+    }
+
+    @Override
+    public void reset() {
+        filterRow = false;
+    }
+
+    @Override
+    public void write(DataOutput output) throws IOException {
+        try {
+            output.writeByte(VERSION);
+            WritableUtils.writeVInt(output, bloomFilters.length);
+            for (int i = 0; i < bloomFilters.length; i++) {
+                WritableUtils.writeVInt(output, keyExpressions[i].size());
+                for (Expression expression : keyExpressions[i]) {
+                    WritableUtils.writeVInt(output, ExpressionType.valueOf(expression).ordinal());
+                    expression.write(output);
+                }
+                bloomFilters[i].write(output);
+            }
+        } catch (Throwable t) { // Catches incompatibilities during reading/writing and doesn't retry
+            ServerUtil.throwIOException("HashJoinBloomFilter failed during writing", t);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public void readFields(DataInput input) throws IOException {
+        try {
+            input.readByte(); // ignore
+            int count = WritableUtils.readVInt(input);
+            keyExpressions = new List[count];
+            bloomFilters = new KeyBloomFilter[count];
+            for (int i = 0; i < count; i++) {
+                Expression[] expressions = new Expression[WritableUtils.readVInt(input)];
+                for (int j = 0; j < expressions.length; j++) {
+                    expressions[j] = ExpressionType.values()[WritableUtils.readVInt(input)].newInstance();
+                    expressions[j].readFields(input);
+                }
+                keyExpressions[i] = Arrays.asList(expressions);
+                bloomFilters[i] = new KeyBloomFilter();
+                bloomFilters[i].readFields(input);
+            }
+        } catch (Throwable t) { // Catches incompatibilities during reading/writing and doesn't retry
+            ServerUtil.throwIOException("HashJoinBloomFilter failed during reading", t);
+        }
+    }
+
+    @Override
+    public byte[] toByteArray() throws IOException {
+        return Writables.getBytes(this);
+    }
+
+    public static HashJoinBloomFilter parseFrom(final byte[] pbBytes)
+            throws DeserializationException {
+        try {
+            return (HashJoinBloomFilter) Writables.getWritable(pbBytes,
+                    new HashJoinBloomFilter());
+        } catch (IOException e) {
+            throw new DeserializationException(e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "HashJoinBloomFilter " + Arrays.toString(keyExpressions);
+    }
+}
@@ -81,6 +81,7 @@ import org.apache.phoenix.hbase.index.metrics.MetricsIndexerSourceFactory;
 import org.apache.phoenix.hbase.index.table.HTableInterfaceReference;
 import org.apache.phoenix.hbase.index.util.GenericKeyValueBuilder;
 import org.apache.phoenix.hbase.index.util.ImmutableBytesPtr;
+import org.apache.phoenix.hbase.index.write.AsyncIndexCommitter;
 import org.apache.phoenix.hbase.index.write.IndexWriter;
 import org.apache.phoenix.hbase.index.write.LazyParallelWriterIndexCommitter;
 import org.apache.phoenix.index.IndexMaintainer;
@@ -204,6 +205,11 @@ public class IndexRegionObserver implements RegionObserver, RegionCoprocessor {
       // The latches of the threads waiting for this batch to complete
       private List<CountDownLatch> waitList = null;
       private Map<ImmutableBytesPtr, MultiMutation> multiMutationMap;
+      // The verified index puts of the post phase grouped by their data rows, when these puts are coalesced with the
+      // updates of the following concurrent batches
+      private HashMap<ImmutableBytesPtr, List<Pair<HTableInterfaceReference, Mutation>>> verifiedIndexPuts;
+      // Whether the index mutations of the first phase have been applied to the index tables
+      private boolean preIndexUpdatesApplied = false;
 
       private BatchMutateContext(int clientVersion) {
           this.clientVersion = clientVersion;
@@ -250,11 +256,34 @@ public class IndexRegionObserver implements RegionObserver, RegionCoprocessor {
   public static final String INDEX_LAZY_POST_BATCH_WRITE = "org.apache.hadoop.hbase.index.lazy.post_batch.write";
   private static final boolean INDEX_LAZY_POST_BATCH_WRITE_DEFAULT = false;
 
+  /**
+   * Configuration key for writing the post phase index updates in the background through an
+   * {@link AsyncIndexCommitter}, see there for the configuration of the queue
+   */
+  public static final String INDEX_ASYNC_POST_BATCH_WRITE = "phoenix.index.async.post.batch.write.enabled";
+  private static final boolean INDEX_ASYNC_POST_BATCH_WRITE_DEFAULT = false;
+
   private static final String INDEXER_INDEX_WRITE_SLOW_THRESHOLD_KEY = "phoenix.indexer.slow.post.batch.mutate.threshold";
   private static final long INDEXER_INDEX_WRITE_SLOW_THRESHOLD_DEFAULT = 3_000;
   private static final String INDEXER_PRE_INCREMENT_SLOW_THRESHOLD_KEY = "phoenix.indexer.slow.pre.increment";
   private static final long INDEXER_PRE_INCREMENT_SLOW_THRESHOLD_DEFAULT = 3_000;
 
+  /**
+   * Configuration key for locking the rows of batches through a {@link StripedLockManager},
+   * acquiring the locks of a batch in a consistent order
+   */
+  public static final String STRIPED_ROW_LOCKS_ENABLED = "phoenix.index.stripedRowLocks.enabled";
+  private static final boolean STRIPED_ROW_LOCKS_ENABLED_DEFAULT = false;
+  public static final String STRIPED_ROW_LOCKS_STRIPES = "phoenix.index.stripedRowLocks.stripes";
+  private static final int STRIPED_ROW_LOCKS_STRIPES_DEFAULT = 4096;
+
+  /**
+   * Configuration key for coalescing the index updates of concurrent batches on the same rows, such that a batch
+   * skips verifying the index rows of a data row that a following batch has already taken over
+   */
+  public static final String COALESCE_CONCURRENT_INDEX_UPDATES = "phoenix.index.coalesceConcurrentUpdates.enabled";
+  private static final boolean COALESCE_CONCURRENT_INDEX_UPDATES_DEFAULT = false;
+
   // Index writers get invoked before and after data table updates
   protected IndexWriter preWriter;
   protected IndexWriter postWriter;
@@ -273,6 +302,7 @@ public class IndexRegionObserver implements RegionObserver, RegionCoprocessor {
   private long slowPreIncrementThreshold;
   private int rowLockWaitDuration;
   private int concurrentMutationWaitDuration;
+  private boolean coalesceConcurrentIndexUpdates;
   private String dataTableName;
 
   private static final int DEFAULT_ROWLOCK_WAIT_DURATION = 30000;
@@ -301,7 +331,10 @@ public class IndexRegionObserver implements RegionObserver, RegionCoprocessor {
         DelegateRegionCoprocessorEnvironment indexWriterEnv = new DelegateRegionCoprocessorEnvironment(env, ConnectionType.INDEX_WRITER_CONNECTION);
         // setup the actual index preWriter
         this.preWriter = new IndexWriter(indexWriterEnv, serverName + "-index-preWriter", false);
-        if (env.getConfiguration().getBoolean(INDEX_LAZY_POST_BATCH_WRITE, INDEX_LAZY_POST_BATCH_WRITE_DEFAULT)) {
+        if (env.getConfiguration().getBoolean(INDEX_ASYNC_POST_BATCH_WRITE, INDEX_ASYNC_POST_BATCH_WRITE_DEFAULT)) {
+            this.postWriter = new IndexWriter(indexWriterEnv, new AsyncIndexCommitter(), serverName + "-index-postWriter", false);
+        }
+        else if (env.getConfiguration().getBoolean(INDEX_LAZY_POST_BATCH_WRITE, INDEX_LAZY_POST_BATCH_WRITE_DEFAULT)) {
             this.postWriter = new IndexWriter(indexWriterEnv, new LazyParallelWriterIndexCommitter(), serverName + "-index-postWriter", false);
         }
         else {
@@ -310,9 +343,16 @@ public class IndexRegionObserver implements RegionObserver, RegionCoprocessor {
 
         this.rowLockWaitDuration = env.getConfiguration().getInt("hbase.rowlock.wait.duration",
                 DEFAULT_ROWLOCK_WAIT_DURATION);
-          this.lockManager = new LockManager();
+          if (env.getConfiguration().getBoolean(STRIPED_ROW_LOCKS_ENABLED, STRIPED_ROW_LOCKS_ENABLED_DEFAULT)) {
+              this.lockManager = new StripedLockManager(env.getConfiguration().getInt(STRIPED_ROW_LOCKS_STRIPES,
+                      STRIPED_ROW_LOCKS_STRIPES_DEFAULT));
+          } else {
+              this.lockManager = new LockManager();
+          }
           this.concurrentMutationWaitDuration = env.getConfiguration().getInt("phoenix.index.concurrent.wait.duration.ms",
                   DEFAULT_CONCURRENT_MUTATION_WAIT_DURATION_IN_MS);
+          this.coalesceConcurrentIndexUpdates = env.getConfiguration().getBoolean(COALESCE_CONCURRENT_INDEX_UPDATES,
+                  COALESCE_CONCURRENT_INDEX_UPDATES_DEFAULT);
           // Metrics impl for the Indexer -- avoiding unnecessary indirection for hadoop-1/2 compat
           this.metricSource = MetricsIndexerSourceFactory.getInstance().getIndexerSource();
           setSlowThresholds(e.getConfiguration());
@@ -456,9 +496,9 @@ public class IndexRegionObserver implements RegionObserver, RegionCoprocessor {
   }
 
   private void lockRows(BatchMutateContext context) throws IOException {
-      for (ImmutableBytesPtr rowKey : context.rowsToLock) {
-          context.rowLocks.add(lockManager.lockRow(rowKey, rowLockWaitDuration));
-      }
+      long start = EnvironmentEdgeManager.currentTimeMillis();
+      context.rowLocks.addAll(lockManager.lockRows(context.rowsToLock, rowLockWaitDuration));
+      metricSource.updateRowLockWaitTime(dataTableName, EnvironmentEdgeManager.currentTimeMillis() - start);
   }
 
     private void unlockRows(BatchMutateContext context) throws IOException {
@@ -847,6 +887,9 @@ public class IndexRegionObserver implements RegionObserver, RegionCoprocessor {
                                            long now,
                                            PhoenixIndexMetaData indexMetaData) {
         context.postIndexUpdates = ArrayListMultimap.<HTableInterfaceReference, Mutation>create();
+        if (coalesceConcurrentIndexUpdates) {
+            context.verifiedIndexPuts = new HashMap<>(context.rowsToLock.size());
+        }
         List<IndexMaintainer> maintainers = indexMetaData.getIndexMaintainers();
         for (IndexMaintainer indexMaintainer : maintainers) {
             byte[] emptyCF = indexMaintainer.getEmptyKeyValueFamily().copyBytesIfNecessary();
@@ -860,7 +903,19 @@ public class IndexRegionObserver implements RegionObserver, RegionCoprocessor {
                     Put verifiedPut = new Put(m.getRow());
                     // Set the status of the index row to "verified"
                     verifiedPut.addColumn(emptyCF, emptyCQ, now, VERIFIED_BYTES);
-                    context.postIndexUpdates.put(hTableInterfaceReference, verifiedPut);
+                    if (context.verifiedIndexPuts != null) {
+                        // Whether this put is needed is decided after the data table update, see
+                        // addVerifiedIndexPuts()
+                        ImmutableBytesPtr rowKeyPtr = new ImmutableBytesPtr(update.getSecond());
+                        List<Pair<HTableInterfaceReference, Mutation>> puts = context.verifiedIndexPuts.get(rowKeyPtr);
+                        if (puts == null) {
+                            puts = new ArrayList<>(maintainers.size());
+                            context.verifiedIndexPuts.put(rowKeyPtr, puts);
+                        }
+                        puts.add(new Pair<HTableInterfaceReference, Mutation>(hTableInterfaceReference, verifiedPut));
+                    } else {
+                        context.postIndexUpdates.put(hTableInterfaceReference, verifiedPut);
+                    }
                 } else {
                     context.postIndexUpdates.put(hTableInterfaceReference, m);
                 }
@@ -870,6 +925,49 @@ public class IndexRegionObserver implements RegionObserver, RegionCoprocessor {
         context.indexUpdates.clear();
     }
 
+    /**
+     * Returns true if the index rows of the given data row for the given index table do not need to be verified by
+     * this batch. This is the case when the last batch pending on the data row prepared its current row state from the
+     * next row state of this batch, and has already applied its first phase index mutations. These mutations set the
+     * index rows of both its current and next row states to "unverified" at a later timestamp than the verified puts
+     * of this batch (see the sleep in preBatchMutateWithExceptions()), so the verified puts of this batch would be
+     * masked by them whether or not the following batch succeeds. The index rows of the data row are then verified
+     * once for the whole group of concurrent batches, by the last batch of the group.
+     * This method is called with the row locks of this batch held, which also serializes the access to the context
+     * of the following batch.
+     */
+    private boolean isSupersededByConcurrentBatch(BatchMutateContext context, ImmutableBytesPtr rowKeyPtr,
+                                                  HTableInterfaceReference hTableInterfaceReference) {
+        PendingRow pendingRow = pendingRows.get(rowKeyPtr);
+        if (pendingRow == null) {
+            return false;
+        }
+        BatchMutateContext lastContext = pendingRow.getLastContext();
+        return lastContext != context
+                && lastContext.preIndexUpdatesApplied
+                && lastContext.lastConcurrentBatchContext != null
+                && lastContext.lastConcurrentBatchContext.get(rowKeyPtr) == context
+                && lastContext.preIndexUpdates.containsKey(hTableInterfaceReference);
+    }
+
+    /**
+     * Adds the verified index puts that are not superseded by a following concurrent batch to the post index updates
+     */
+    private void addVerifiedIndexPuts(BatchMutateContext context) {
+        if (context.verifiedIndexPuts == null) {
+            return;
+        }
+        for (Map.Entry<ImmutableBytesPtr, List<Pair<HTableInterfaceReference, Mutation>>> entry :
+                context.verifiedIndexPuts.entrySet()) {
+            for (Pair<HTableInterfaceReference, Mutation> put : entry.getValue()) {
+                if (!isSupersededByConcurrentBatch(context, entry.getKey(), put.getFirst())) {
+                    context.postIndexUpdates.put(put.getFirst(), put.getSecond());
+                }
+            }
+        }
+        context.verifiedIndexPuts = null;
+    }
+
 
     private static boolean hasGlobalIndex(PhoenixIndexMetaData indexMetaData) {
         for (IndexMaintainer indexMaintainer : indexMetaData.getIndexMaintainers()) {
@@ -976,6 +1074,7 @@ public class IndexRegionObserver implements RegionObserver, RegionCoprocessor {
             doPre(c, context, miniBatchOp);
             // Acquire the locks again before letting the region proceed with data table updates
             lockRows(context);
+            context.preIndexUpdatesApplied = true;
             if (context.lastConcurrentBatchContext != null) {
                 waitForPreviousConcurrentBatch(table, context);
             }
@@ -1015,6 +1114,8 @@ public class IndexRegionObserver implements RegionObserver, RegionCoprocessor {
       }
       try {
           if (success) {
+              // The row locks are still held here, so the batches pending on the rows of this batch can be inspected
+              addVerifiedIndexPuts(context);
               context.currentPhase = BatchMutatePhase.POST;
           } else {
               context.currentPhase = BatchMutatePhase.FAILED;
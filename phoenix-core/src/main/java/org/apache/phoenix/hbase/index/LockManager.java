@@ -19,6 +19,9 @@ package org.apache.phoenix.hbase.index;
 
 import java.io.IOException;
 import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -119,6 +122,31 @@ public class LockManager {
         return lockRow(rowKey, waitDuration);
     }
 
+    /**
+     * Lock the rows of a batch, in the order they are iterated over
+     * @param rowKeys the row keys
+     * @return RowLocks used to eventually release the locks
+     * @throws IOException if a lock could not be acquired, in which case the locks
+     * already acquired are released
+     */
+    public List<RowLock> lockRows(Collection<ImmutableBytesPtr> rowKeys, int waitDuration) throws IOException {
+        List<RowLock> rowLocks = new ArrayList<RowLock>(rowKeys.size());
+        boolean success = false;
+        try {
+            for (ImmutableBytesPtr rowKey : rowKeys) {
+                rowLocks.add(lockRow(rowKey, waitDuration));
+            }
+            success = true;
+            return rowLocks;
+        } finally {
+            if (!success) {
+                for (RowLock rowLock : rowLocks) {
+                    rowLock.release();
+                }
+            }
+        }
+    }
+
     /**
      * Unlock the row. We need this stateless way of unlocking because
      * we have no means of passing the RowLock instances between
@@ -0,0 +1,147 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.phoenix.hbase.index;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.hadoop.hbase.exceptions.TimeoutIOException;
+import org.apache.phoenix.hbase.index.util.ImmutableBytesPtr;
+import org.apache.phoenix.thirdparty.com.google.common.collect.Lists;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Lock manager that maps row keys onto a fixed set of non fair reentrant locks, instead of
+ * creating a lock context per locked row in a shared map. Locking a row doesn't allocate
+ * anything but the returned {@link RowLock}, and an uncontended lock is acquired with a single
+ * compare and swap. Rows that hash to the same stripe exclude each other, which only costs
+ * concurrency when the number of rows locked at once approaches the number of stripes.
+ *
+ * {@link #lockRows(Collection, int)} acquires the stripes of a batch in stripe order, so that
+ * batches with overlapping rows can't deadlock on each other until their wait times out.
+ */
+public class StripedLockManager extends LockManager {
+    private static final Logger LOGGER = LoggerFactory.getLogger(StripedLockManager.class);
+
+    private final ReentrantLock[] stripes;
+    private final int mask;
+
+    public StripedLockManager(int stripeCount) {
+        int size = Integer.highestOneBit(Math.max(1, stripeCount - 1)) << 1;
+        this.stripes = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            stripes[i] = new ReentrantLock(false);
+        }
+        this.mask = size - 1;
+    }
+
+    int getStripeIndex(ImmutableBytesPtr rowKey) {
+        int h = rowKey.hashCode();
+        // spread the high bits of the hash, as in HashMap
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    @Override
+    public RowLock lockRow(ImmutableBytesPtr rowKey, int waitDuration) throws IOException {
+        ReentrantLock lock = stripes[getStripeIndex(rowKey)];
+        try {
+            if (!lock.tryLock(waitDuration, TimeUnit.MILLISECONDS)) {
+                throw new TimeoutIOException("Timed out waiting for lock for row: " + rowKey);
+            }
+        } catch (InterruptedException ie) {
+            LOGGER.warn("Thread interrupted waiting for lock on row: " + rowKey);
+            InterruptedIOException iie = new InterruptedIOException();
+            iie.initCause(ie);
+            Thread.currentThread().interrupt();
+            throw iie;
+        }
+        return new StripedRowLock(rowKey, lock);
+    }
+
+    @Override
+    public List<RowLock> lockRows(Collection<ImmutableBytesPtr> rowKeys, int waitDuration) throws IOException {
+        ImmutableBytesPtr[] sortedRowKeys = rowKeys.toArray(new ImmutableBytesPtr[rowKeys.size()]);
+        Arrays.sort(sortedRowKeys, new Comparator<ImmutableBytesPtr>() {
+            @Override
+            public int compare(ImmutableBytesPtr o1, ImmutableBytesPtr o2) {
+                return Integer.compare(getStripeIndex(o1), getStripeIndex(o2));
+            }
+        });
+        List<RowLock> rowLocks = Lists.newArrayListWithExpectedSize(sortedRowKeys.length);
+        boolean success = false;
+        try {
+            for (ImmutableBytesPtr rowKey : sortedRowKeys) {
+                rowLocks.add(lockRow(rowKey, waitDuration));
+            }
+            success = true;
+            return rowLocks;
+        } finally {
+            if (!success) {
+                for (RowLock rowLock : rowLocks) {
+                    rowLock.release();
+                }
+            }
+        }
+    }
+
+    @Override
+    public void unlockRow(byte[] row) throws IOException {
+        ReentrantLock lock = stripes[getStripeIndex(new ImmutableBytesPtr(row))];
+        if (lock.isHeldByCurrentThread()) {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Lock on a row, held through the lock of its stripe.
+     */
+    private static class StripedRowLock implements RowLock {
+        private final ImmutableBytesPtr rowKey;
+        private final ReentrantLock lock;
+
+        StripedRowLock(ImmutableBytesPtr rowKey, ReentrantLock lock) {
+            this.rowKey = rowKey;
+            this.lock = lock;
+        }
+
+        @Override
+        public void release() {
+            lock.unlock();
+        }
+
+        @Override
+        public ImmutableBytesPtr getRowKey() {
+            return rowKey;
+        }
+
+        @Override
+        public String toString() {
+            return "StripedRowLock{" +
+                    "row=" + rowKey +
+                    ", lock=" + lock +
+                    '}';
+        }
+    }
+}
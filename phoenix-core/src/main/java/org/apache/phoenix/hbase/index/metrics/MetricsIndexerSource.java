@@ -79,6 +79,18 @@ public interface MetricsIndexerSource extends BaseSource {
   String POST_INDEX_UPDATE_FAILURE = "postIndexUpdateFailure";
   String POST_INDEX_UPDATE_FAILURE_DESC = "The number of failures of index updates post data updates";
 
+  String ROW_LOCK_WAIT_TIME = "rowLockWaitTime";
+  String ROW_LOCK_WAIT_TIME_DESC = "Histogram for the time in milliseconds to acquire the row locks of a batch";
+
+  String ASYNC_INDEX_WRITE_LAG = "asyncIndexWriteLag";
+  String ASYNC_INDEX_WRITE_LAG_DESC = "Histogram for the time in milliseconds from queueing index updates to writing them to the index tables";
+
+  String ASYNC_INDEX_WRITE_BACK_PRESSURE_TIME = "asyncIndexWriteBackPressureTime";
+  String ASYNC_INDEX_WRITE_BACK_PRESSURE_TIME_DESC = "Histogram for the time in milliseconds index updates wait for the asynchronous index write queue to drain";
+
+  String ASYNC_INDEX_WRITE_QUEUE_SIZE = "asyncIndexWriteQueueSize";
+  String ASYNC_INDEX_WRITE_QUEUE_SIZE_DESC = "Histogram for the number of index mutations queued for asynchronous writes";
+
   /**
    * Updates the index preparation time histogram (preBatchMutate).
    * @param dataTableName  Physical data table name
@@ -210,4 +222,32 @@ public interface MetricsIndexerSource extends BaseSource {
    * @param dataTableName  Physical data table name
    */
   void incrementPostIndexUpdateFailures(String dataTableName);
+
+  /**
+   * Updates the row lock wait time histogram.
+   * @param dataTableName  Physical data table name
+   * @param t time taken in milliseconds
+   */
+  void updateRowLockWaitTime(String dataTableName, long t);
+
+  /**
+   * Updates the asynchronous index write lag histogram.
+   * @param dataTableName  Physical data table name
+   * @param t time in milliseconds since the oldest index update of a written batch was queued
+   */
+  void updateAsyncIndexWriteLag(String dataTableName, long t);
+
+  /**
+   * Updates the asynchronous index write back pressure time histogram.
+   * @param dataTableName  Physical data table name
+   * @param t time blocked in milliseconds
+   */
+  void updateAsyncIndexWriteBackPressureTime(String dataTableName, long t);
+
+  /**
+   * Updates the asynchronous index write queue size histogram.
+   * @param dataTableName  Physical data table name
+   * @param size number of queued mutations
+   */
+  void updateAsyncIndexWriteQueueSize(String dataTableName, long size);
 }
@@ -46,6 +46,10 @@ public class MetricsIndexerSourceImpl extends BaseSourceImpl implements MetricsI
     private final MetricHistogram postIndexUpdateFailureTimeHisto;
     private final MutableFastCounter preIndexUpdateFailures;
     private final MutableFastCounter postIndexUpdateFailures;
+    private final MetricHistogram rowLockWaitTimeHisto;
+    private final MetricHistogram asyncIndexWriteLagHisto;
+    private final MetricHistogram asyncIndexWriteBackPressureTimeHisto;
+    private final MetricHistogram asyncIndexWriteQueueSizeHisto;
 
     public MetricsIndexerSourceImpl() {
         this(METRICS_NAME, METRICS_DESCRIPTION, METRICS_CONTEXT, METRICS_JMX_CONTEXT);
@@ -82,6 +86,14 @@ public class MetricsIndexerSourceImpl extends BaseSourceImpl implements MetricsI
                 POST_INDEX_UPDATE_FAILURE, POST_INDEX_UPDATE_FAILURE_DESC, 0L);
         preIndexUpdateFailures = getMetricsRegistry().newCounter(
                 PRE_INDEX_UPDATE_FAILURE, PRE_INDEX_UPDATE_FAILURE_DESC, 0L);
+        rowLockWaitTimeHisto = getMetricsRegistry().newHistogram(
+                ROW_LOCK_WAIT_TIME, ROW_LOCK_WAIT_TIME_DESC);
+        asyncIndexWriteLagHisto = getMetricsRegistry().newHistogram(
+                ASYNC_INDEX_WRITE_LAG, ASYNC_INDEX_WRITE_LAG_DESC);
+        asyncIndexWriteBackPressureTimeHisto = getMetricsRegistry().newHistogram(
+                ASYNC_INDEX_WRITE_BACK_PRESSURE_TIME, ASYNC_INDEX_WRITE_BACK_PRESSURE_TIME_DESC);
+        asyncIndexWriteQueueSizeHisto = getMetricsRegistry().newHistogram(
+                ASYNC_INDEX_WRITE_QUEUE_SIZE, ASYNC_INDEX_WRITE_QUEUE_SIZE_DESC);
     }
 
     @Override
@@ -204,6 +216,30 @@ public class MetricsIndexerSourceImpl extends BaseSourceImpl implements MetricsI
         postIndexUpdateFailures.incr();
     }
 
+    @Override
+    public void updateRowLockWaitTime(String dataTableName, long t) {
+        incrementTableSpecificHistogram(ROW_LOCK_WAIT_TIME, dataTableName, t);
+        rowLockWaitTimeHisto.add(t);
+    }
+
+    @Override
+    public void updateAsyncIndexWriteLag(String dataTableName, long t) {
+        incrementTableSpecificHistogram(ASYNC_INDEX_WRITE_LAG, dataTableName, t);
+        asyncIndexWriteLagHisto.add(t);
+    }
+
+    @Override
+    public void updateAsyncIndexWriteBackPressureTime(String dataTableName, long t) {
+        incrementTableSpecificHistogram(ASYNC_INDEX_WRITE_BACK_PRESSURE_TIME, dataTableName, t);
+        asyncIndexWriteBackPressureTimeHisto.add(t);
+    }
+
+    @Override
+    public void updateAsyncIndexWriteQueueSize(String dataTableName, long size) {
+        incrementTableSpecificHistogram(ASYNC_INDEX_WRITE_QUEUE_SIZE, dataTableName, size);
+        asyncIndexWriteQueueSizeHisto.add(size);
+    }
+
     private void incrementTableSpecificCounter(String baseCounterName, String tableName) {
         MutableFastCounter indexSpecificCounter =
             getMetricsRegistry().getCounter(getCounterName(baseCounterName, tableName), 0);
@@ -17,8 +17,6 @@
  */
 package org.apache.phoenix.hbase.index.util;
 
-import static org.apache.phoenix.hbase.index.util.ImmutableBytesPtr.copyBytesIfNecessary;
-
 import java.util.List;
 
 import org.apache.hadoop.hbase.Cell;
@@ -70,8 +68,12 @@ public class GenericKeyValueBuilder extends KeyValueBuilder {
 
     private KeyValue build(ImmutableBytesWritable row, ImmutableBytesWritable family, ImmutableBytesWritable qualifier,
             long ts, KeyValue.Type type, ImmutableBytesWritable value) {
-        return new KeyValue(copyBytesIfNecessary(row), copyBytesIfNecessary(family), copyBytesIfNecessary(qualifier),
-                ts, type, value == null ? null : copyBytesIfNecessary(value));
+        // Copies the slices straight into the key value instead of into arrays of their own first
+        return new KeyValue(row.get(), row.getOffset(), row.getLength(),
+                family.get(), family.getOffset(), family.getLength(),
+                qualifier.get(), qualifier.getOffset(), qualifier.getLength(),
+                ts, type, value == null ? null : value.get(), value == null ? 0 : value.getOffset(),
+                value == null ? 0 : value.getLength());
     }
 
     @Override
@@ -0,0 +1,331 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.phoenix.hbase.index.write;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.client.Mutation;
+import org.apache.hadoop.hbase.coprocessor.RegionCoprocessorEnvironment;
+import org.apache.hadoop.hbase.util.EnvironmentEdgeManager;
+import org.apache.phoenix.hbase.index.metrics.MetricsIndexerSource;
+import org.apache.phoenix.hbase.index.metrics.MetricsIndexerSourceFactory;
+import org.apache.phoenix.hbase.index.table.HTableInterfaceReference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.phoenix.thirdparty.com.google.common.collect.ArrayListMultimap;
+import org.apache.phoenix.thirdparty.com.google.common.collect.Multimap;
+
+/**
+ * Writes the index updates to the index tables in the background, without blocking the caller on the index table
+ * writes. The updates are queued, optionally appended to a local {@link IndexWriteLog} of the region first, and a
+ * background thread writes them to the index tables in batches through a {@link TrackingParallelWriterIndexCommitter}.
+ * <p>
+ * This is meant for the last (i.e., post) phase of the index updates done by the
+ * {@link org.apache.phoenix.hbase.index.IndexRegionObserver}, which only verifies the index rows written before the
+ * data table update and deletes the index rows replaced by it. Until these updates are written, the index rows are
+ * unverified, and are repaired by the {@link org.apache.phoenix.index.GlobalIndexChecker} when they are read. Failures
+ * of the background writes are ignored the same way failures of the post phase updates are.
+ * <p>
+ * When more than a maximum number of mutations are queued or being written, writes block until the queue drains, so
+ * that slow index tables slow down data table writes instead of growing the queue without bounds.
+ */
+public class AsyncIndexCommitter implements IndexCommitter {
+    private static final Logger LOGGER = LoggerFactory.getLogger(AsyncIndexCommitter.class);
+
+    public static final String MAX_QUEUED_MUTATIONS_CONF_KEY = "phoenix.index.async.write.max.queued.mutations";
+    private static final int DEFAULT_MAX_QUEUED_MUTATIONS = 100000;
+    public static final String BATCH_SIZE_CONF_KEY = "phoenix.index.async.write.batch.size";
+    private static final int DEFAULT_BATCH_SIZE = 10000;
+    public static final String MAX_BLOCK_TIME_CONF_KEY = "phoenix.index.async.write.max.block.time.ms";
+    private static final long DEFAULT_MAX_BLOCK_TIME = 10000;
+    public static final String CLOSE_TIMEOUT_CONF_KEY = "phoenix.index.async.write.close.timeout.ms";
+    private static final long DEFAULT_CLOSE_TIMEOUT = 10000;
+    /**
+     * Local directory of the logs of the queued index updates. Queued updates are not logged when it is not set
+     */
+    public static final String LOG_DIR_CONF_KEY = "phoenix.index.async.write.log.dir";
+    public static final String LOG_SEGMENT_SIZE_CONF_KEY = "phoenix.index.async.write.log.segment.size";
+    private static final long DEFAULT_LOG_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final ArrayDeque<IndexWriteLog.Entry> queue = new ArrayDeque<>();
+    // The number of mutations that are queued or being written
+    private int queuedMutations;
+    private volatile boolean stopped;
+    // Set when the queued updates are not written before the close timeout
+    private volatile boolean aborted;
+
+    private IndexCommitter delegate;
+    private IndexWriteLog log;
+    private int maxQueuedMutations;
+    private int batchSize;
+    private long maxBlockTime;
+    private long closeTimeout;
+    private MetricsIndexerSource metricSource;
+    private String dataTableName;
+    private Thread drainer;
+
+    @Override
+    public void setup(IndexWriter parent, RegionCoprocessorEnvironment env, String name, boolean disableIndexOnFailure) {
+        Configuration conf = env.getConfiguration();
+        IndexCommitter delegate = new TrackingParallelWriterIndexCommitter();
+        delegate.setup(parent, env, name, disableIndexOnFailure);
+        IndexWriteLog log = null;
+        String logDir = conf.get(LOG_DIR_CONF_KEY);
+        if (logDir != null) {
+            log = new IndexWriteLog(new File(logDir, env.getRegionInfo().getEncodedName()),
+                    conf.getLong(LOG_SEGMENT_SIZE_CONF_KEY, DEFAULT_LOG_SEGMENT_SIZE));
+        }
+        setup(delegate, log, conf.getInt(MAX_QUEUED_MUTATIONS_CONF_KEY, DEFAULT_MAX_QUEUED_MUTATIONS),
+                conf.getInt(BATCH_SIZE_CONF_KEY, DEFAULT_BATCH_SIZE),
+                conf.getLong(MAX_BLOCK_TIME_CONF_KEY, DEFAULT_MAX_BLOCK_TIME),
+                conf.getLong(CLOSE_TIMEOUT_CONF_KEY, DEFAULT_CLOSE_TIMEOUT),
+                MetricsIndexerSourceFactory.getInstance().getIndexerSource(),
+                env.getRegionInfo().getTable().getNameAsString(), name);
+    }
+
+    /**
+     * Setup <tt>this</tt>, and start writing the updates recovered from the log, if any.
+     * <p>
+     * Exposed for TESTING
+     */
+    void setup(IndexCommitter delegate, IndexWriteLog log, int maxQueuedMutations, int batchSize, long maxBlockTime,
+               long closeTimeout, MetricsIndexerSource metricSource, String dataTableName, String name) {
+        this.delegate = delegate;
+        this.maxQueuedMutations = maxQueuedMutations;
+        this.batchSize = batchSize;
+        this.maxBlockTime = maxBlockTime;
+        this.closeTimeout = closeTimeout;
+        this.metricSource = metricSource;
+        this.dataTableName = dataTableName;
+        if (log != null) {
+            try {
+                long now = EnvironmentEdgeManager.currentTimeMillis();
+                for (IndexWriteLog.Entry entry : log.open()) {
+                    entry.enqueueTime = now;
+                    queue.add(entry);
+                    queuedMutations += entry.updates.size();
+                }
+                this.log = log;
+            } catch (IOException e) {
+                LOGGER.error("Could not open the index write log, index updates of " + dataTableName
+                        + " will be queued without being logged", e);
+            }
+        }
+        this.drainer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                drain();
+            }
+        }, name + "-async-writer");
+        this.drainer.setDaemon(true);
+        this.drainer.start();
+    }
+
+    @Override
+    public void write(Multimap<HTableInterfaceReference, Mutation> toWrite, boolean allowLocalUpdates,
+                      int clientVersion) throws IOException {
+        if (toWrite.isEmpty()) {
+            return;
+        }
+        IndexWriteLog.Entry entry = new IndexWriteLog.Entry(toWrite, allowLocalUpdates, clientVersion);
+        int size = toWrite.size();
+        // Encoded before taking the lock, and synced to the log after releasing it
+        byte[] record = log != null ? IndexWriteLog.toRecord(entry) : null;
+        long seq = 0;
+        lock.lock();
+        try {
+            long start = EnvironmentEdgeManager.currentTimeMillis();
+            long remaining = TimeUnit.MILLISECONDS.toNanos(maxBlockTime);
+            boolean blocked = false;
+            // An update larger than the whole queue is accepted once the queue is empty
+            while (!stopped && queuedMutations > 0 && queuedMutations + size > maxQueuedMutations) {
+                if (remaining <= 0) {
+                    metricSource.updateAsyncIndexWriteBackPressureTime(dataTableName,
+                            EnvironmentEdgeManager.currentTimeMillis() - start);
+                    throw new IOException("Timed out waiting for the asynchronous index write queue of "
+                            + dataTableName + " to drain");
+                }
+                blocked = true;
+                try {
+                    remaining = notFull.awaitNanos(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted waiting for the asynchronous index write queue of "
+                            + dataTableName + " to drain");
+                }
+            }
+            if (stopped) {
+                throw new IOException("Asynchronous index writer of " + dataTableName + " is stopped");
+            }
+            if (blocked) {
+                metricSource.updateAsyncIndexWriteBackPressureTime(dataTableName,
+                        EnvironmentEdgeManager.currentTimeMillis() - start);
+            }
+            if (log != null) {
+                // Appended under the lock so that the log holds the entries in the order of the queue
+                seq = log.append(entry, record);
+            }
+            entry.enqueueTime = EnvironmentEdgeManager.currentTimeMillis();
+            queue.add(entry);
+            queuedMutations += size;
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+        if (log != null) {
+            // The entry may already be written to the index tables by then, which does not need it to be synced
+            log.sync(seq);
+        }
+    }
+
+    private void drain() {
+        List<IndexWriteLog.Entry> batch = new ArrayList<>();
+        while (!aborted) {
+            int batchMutations = 0;
+            lock.lock();
+            try {
+                while (queue.isEmpty() && !stopped) {
+                    notEmpty.await();
+                }
+                if (queue.isEmpty()) {
+                    // stopped, and all the updates are written
+                    return;
+                }
+                metricSource.updateAsyncIndexWriteQueueSize(dataTableName, queuedMutations);
+                IndexWriteLog.Entry first = queue.peek();
+                while (!queue.isEmpty()) {
+                    IndexWriteLog.Entry next = queue.peek();
+                    if (!batch.isEmpty() && (batchMutations + next.updates.size() > batchSize
+                            || next.allowLocalUpdates != first.allowLocalUpdates
+                            || next.clientVersion != first.clientVersion)) {
+                        break;
+                    }
+                    batch.add(queue.poll());
+                    batchMutations += next.updates.size();
+                }
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                lock.unlock();
+            }
+            writeBatch(batch, batchMutations);
+            batch.clear();
+        }
+    }
+
+    private void writeBatch(List<IndexWriteLog.Entry> batch, int batchMutations) {
+        IndexWriteLog.Entry first = batch.get(0);
+        Multimap<HTableInterfaceReference, Mutation> updates;
+        if (batch.size() == 1) {
+            updates = first.updates;
+        } else {
+            updates = ArrayListMultimap.create();
+            for (IndexWriteLog.Entry entry : batch) {
+                updates.putAll(entry.updates);
+            }
+        }
+        long start = EnvironmentEdgeManager.currentTimeMillis();
+        try {
+            delegate.write(updates, first.allowLocalUpdates, first.clientVersion);
+            metricSource.updateAsyncIndexWriteLag(dataTableName,
+                    EnvironmentEdgeManager.currentTimeMillis() - first.enqueueTime);
+        } catch (Throwable e) {
+            // As for the post index updates written synchronously, the index rows stay unverified and are repaired
+            // when they are read
+            LOGGER.warn("Failed to write " + batchMutations + " queued index updates of " + dataTableName, e);
+            metricSource.updatePostIndexUpdateFailureTime(dataTableName,
+                    EnvironmentEdgeManager.currentTimeMillis() - start);
+            metricSource.incrementPostIndexUpdateFailures(dataTableName);
+        }
+        lock.lock();
+        try {
+            queuedMutations -= batchMutations;
+            notFull.signalAll();
+            if (log != null && !aborted) {
+                log.release(batch.get(batch.size() - 1).segmentId, queue.isEmpty());
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Failed to release the index write log segments of " + dataTableName, e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes the queued updates for at most the close timeout, and stops the delegate committer. The updates that
+     * are not written by then, including the ones of an interrupted write, are left in the log, if there is one, and
+     * are written again when the region is opened on this server.
+     */
+    @Override
+    public void stop(String why) {
+        if (stopped) {
+            return;
+        }
+        LOGGER.info("Shutting down " + this.getClass().getSimpleName() + " because " + why);
+        lock.lock();
+        try {
+            stopped = true;
+            notEmpty.signalAll();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            drainer.join(closeTimeout);
+            if (drainer.isAlive()) {
+                LOGGER.warn("Stopping the asynchronous index writer of " + dataTableName + " with "
+                        + queuedMutations + " queued mutations");
+                aborted = true;
+                drainer.interrupt();
+                drainer.join(closeTimeout);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        delegate.stop(why);
+        if (log != null) {
+            lock.lock();
+            try {
+                aborted = true;
+                log.close();
+            } catch (IOException e) {
+                LOGGER.warn("Failed to close the index write log of " + dataTableName, e);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    @Override
+    public boolean isStopped() {
+        return stopped;
+    }
+}
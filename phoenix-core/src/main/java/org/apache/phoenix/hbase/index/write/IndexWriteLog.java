@@ -0,0 +1,397 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.phoenix.hbase.index.write;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+import org.apache.hadoop.hbase.client.Mutation;
+import org.apache.hadoop.hbase.protobuf.generated.ClientProtos.MutationProto;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.phoenix.hbase.index.table.HTableInterfaceReference;
+import org.apache.phoenix.hbase.index.util.ImmutableBytesPtr;
+import org.apache.phoenix.protobuf.ProtobufUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.phoenix.thirdparty.com.google.common.annotations.VisibleForTesting;
+import org.apache.phoenix.thirdparty.com.google.common.collect.ArrayListMultimap;
+import org.apache.phoenix.thirdparty.com.google.common.collect.Multimap;
+
+/**
+ * Local log of the index updates queued by an {@link AsyncIndexCommitter}, so that the updates that are not written
+ * to the index tables yet survive a restart of the region server.
+ * <p>
+ * The log is a sequence of segment files in a directory. Entries are appended to the last segment, which is rolled
+ * once it grows over the segment size. Since the entries are written to the index tables in the order they are
+ * appended, a segment is deleted as soon as an entry of a later segment has been written. Each entry is prefixed
+ * with its length and checksum, and recovery stops at the first entry of a segment that was not completely written.
+ * <p>
+ * Appending an entry and syncing it to disk are separate steps, so that the caller can append under its own lock
+ * and sync outside of it. Syncs are grouped: a single sync covers every entry appended before it started, and the
+ * callers waiting for any of these entries return together.
+ */
+class IndexWriteLog implements Closeable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(IndexWriteLog.class);
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    /**
+     * Index updates of a single write, with the segment of the log they were appended to
+     */
+    static class Entry {
+        final Multimap<HTableInterfaceReference, Mutation> updates;
+        final boolean allowLocalUpdates;
+        final int clientVersion;
+        long segmentId = -1;
+        long enqueueTime;
+
+        Entry(Multimap<HTableInterfaceReference, Mutation> updates, boolean allowLocalUpdates, int clientVersion) {
+            this.updates = updates;
+            this.allowLocalUpdates = allowLocalUpdates;
+            this.clientVersion = clientVersion;
+        }
+    }
+
+    private final File dir;
+    private final long segmentSize;
+    // Guards the segments and the appended sequence number. Never held while syncing
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private long oldestSegmentId;
+    private long currentSegmentId;
+    private FileChannel currentSegment;
+    // Segments rolled since the last sync, closed once synced
+    private final List<FileChannel> rolledSegments = new ArrayList<>();
+    private long appendedSeq;
+
+    private final ReentrantLock syncLock = new ReentrantLock();
+    private final Condition synced = syncLock.newCondition();
+    private boolean syncing;
+    private long syncedSeq;
+
+    IndexWriteLog(File dir, long segmentSize) {
+        this.dir = dir;
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * Reads the entries of the existing segments, and opens a new segment for the entries appended from then on
+     * @return the entries of the existing segments, in the order they were appended
+     */
+    List<Entry> open() throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Could not create index write log directory " + dir);
+        }
+        List<Entry> entries = new ArrayList<>();
+        List<Long> segmentIds = getSegmentIds();
+        for (long segmentId : segmentIds) {
+            readSegment(segmentId, entries);
+        }
+        currentSegmentId = segmentIds.isEmpty() ? 0 : segmentIds.get(segmentIds.size() - 1) + 1;
+        oldestSegmentId = segmentIds.isEmpty() ? currentSegmentId : segmentIds.get(0);
+        currentSegment = openSegment(currentSegmentId);
+        if (!entries.isEmpty()) {
+            LOGGER.info("Recovered " + entries.size() + " index write log entries from " + dir);
+        }
+        return entries;
+    }
+
+    /**
+     * Appends the entry to the log and syncs it to disk, and sets the segment of the entry
+     */
+    void append(Entry entry) throws IOException {
+        sync(append(entry, toRecord(entry)));
+    }
+
+    /**
+     * Encodes the entry the way it is appended to a segment, prefixed with its length and checksum
+     */
+    static byte[] toRecord(Entry entry) throws IOException {
+        byte[] payload = encode(entry);
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        ByteBuffer buffer = ByteBuffer.allocate(Bytes.SIZEOF_INT + Bytes.SIZEOF_LONG + payload.length);
+        buffer.putInt(payload.length);
+        buffer.putLong(crc.getValue());
+        buffer.put(payload);
+        return buffer.array();
+    }
+
+    /**
+     * Appends the record of the entry to the log without syncing it to disk, and sets the segment of the entry.
+     * If the record is not completely written, it is truncated away, or the segment is rolled if that fails too,
+     * so that the entries appended after it can be recovered.
+     * @param record the entry as returned by {@link #toRecord(Entry)}
+     * @return the sequence number of the entry, to pass to {@link #sync(long)}
+     */
+    long append(Entry entry, byte[] record) throws IOException {
+        writeLock.lock();
+        try {
+            long start = currentSegment.size();
+            ByteBuffer buffer = ByteBuffer.wrap(record);
+            try {
+                write(currentSegment, buffer);
+            } catch (IOException e) {
+                try {
+                    currentSegment.truncate(start);
+                } catch (IOException te) {
+                    LOGGER.warn("Could not truncate an incomplete entry of index write log segment "
+                            + getSegmentFile(currentSegmentId) + ", rolling the segment", te);
+                    rollSegment();
+                }
+                throw e;
+            }
+            entry.segmentId = currentSegmentId;
+            if (currentSegment.size() >= segmentSize) {
+                rollSegment();
+            }
+            return ++appendedSeq;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @VisibleForTesting
+    void write(FileChannel segment, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            segment.write(buffer);
+        }
+    }
+
+    private void rollSegment() throws IOException {
+        rolledSegments.add(currentSegment);
+        currentSegmentId++;
+        currentSegment = openSegment(currentSegmentId);
+    }
+
+    /**
+     * Waits until the entries appended up to the given sequence number are synced to disk, syncing them if no
+     * other caller is already doing so
+     */
+    void sync(long seq) throws IOException {
+        syncLock.lock();
+        try {
+            while (syncedSeq < seq) {
+                if (syncing) {
+                    synced.awaitUninterruptibly();
+                    continue;
+                }
+                syncing = true;
+                long seqSynced = -1;
+                syncLock.unlock();
+                try {
+                    seqSynced = syncSegments();
+                } finally {
+                    syncLock.lock();
+                    syncing = false;
+                    syncedSeq = Math.max(syncedSeq, seqSynced);
+                    synced.signalAll();
+                }
+            }
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    /**
+     * Syncs the segments to disk, and closes the ones that were rolled
+     * @return the sequence number of the last entry synced
+     */
+    private long syncSegments() throws IOException {
+        FileChannel segment;
+        List<FileChannel> rolled;
+        long seq;
+        writeLock.lock();
+        try {
+            segment = currentSegment;
+            rolled = new ArrayList<>(rolledSegments);
+            rolledSegments.clear();
+            seq = appendedSeq;
+        } finally {
+            writeLock.unlock();
+        }
+        try {
+            for (FileChannel channel : rolled) {
+                channel.force(false);
+            }
+            segment.force(false);
+        } finally {
+            for (FileChannel channel : rolled) {
+                channel.close();
+            }
+        }
+        return seq;
+    }
+
+    /**
+     * Releases the segments whose entries have all been written to the index tables
+     * @param segmentId segment of the last entry written to the index tables
+     * @param empty whether all the entries appended so far have been written to the index tables
+     */
+    void release(long segmentId, boolean empty) throws IOException {
+        writeLock.lock();
+        try {
+            long limit = empty ? currentSegmentId : segmentId;
+            for (; oldestSegmentId < limit; oldestSegmentId++) {
+                deleteSegment(oldestSegmentId);
+            }
+            if (empty && currentSegment.size() > 0) {
+                currentSegment.truncate(0);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        writeLock.lock();
+        try {
+            for (FileChannel channel : rolledSegments) {
+                channel.close();
+            }
+            rolledSegments.clear();
+            if (currentSegment != null) {
+                currentSegment.close();
+                currentSegment = null;
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private File getSegmentFile(long segmentId) {
+        return new File(dir, segmentId + SEGMENT_SUFFIX);
+    }
+
+    private FileChannel openSegment(long segmentId) throws IOException {
+        return new FileOutputStream(getSegmentFile(segmentId), true).getChannel();
+    }
+
+    private void deleteSegment(long segmentId) {
+        File file = getSegmentFile(segmentId);
+        if (!file.delete() && file.exists()) {
+            LOGGER.warn("Could not delete index write log segment " + file);
+        }
+    }
+
+    private List<Long> getSegmentIds() {
+        String[] names = dir.list();
+        List<Long> segmentIds = new ArrayList<>(names == null ? 0 : names.length);
+        if (names != null) {
+            for (String name : names) {
+                if (!name.endsWith(SEGMENT_SUFFIX)) {
+                    continue;
+                }
+                try {
+                    segmentIds.add(Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())));
+                } catch (NumberFormatException e) {
+                    LOGGER.warn("Ignoring unexpected file " + name + " in index write log directory " + dir);
+                }
+            }
+        }
+        Collections.sort(segmentIds);
+        return segmentIds;
+    }
+
+    private void readSegment(long segmentId, List<Entry> entries) throws IOException {
+        File file = getSegmentFile(segmentId);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            while (true) {
+                byte[] payload;
+                long checksum;
+                try {
+                    int length = in.readInt();
+                    checksum = in.readLong();
+                    if (length < 0) {
+                        LOGGER.warn("Truncated index write log segment " + file);
+                        return;
+                    }
+                    payload = new byte[length];
+                    in.readFully(payload);
+                } catch (EOFException e) {
+                    // Either the end of the segment, or an entry whose append did not complete
+                    return;
+                }
+                CRC32 crc = new CRC32();
+                crc.update(payload, 0, payload.length);
+                if (crc.getValue() != checksum) {
+                    LOGGER.warn("Corrupted entry in index write log segment " + file + ", skipping the rest of it");
+                    return;
+                }
+                Entry entry = decode(payload);
+                entry.segmentId = segmentId;
+                entries.add(entry);
+            }
+        }
+    }
+
+    static byte[] encode(Entry entry) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeBoolean(entry.allowLocalUpdates);
+        out.writeInt(entry.clientVersion);
+        Map<HTableInterfaceReference, Collection<Mutation>> updates = entry.updates.asMap();
+        out.writeInt(updates.size());
+        for (Map.Entry<HTableInterfaceReference, Collection<Mutation>> tableUpdates : updates.entrySet()) {
+            Bytes.writeByteArray(out, tableUpdates.getKey().get().copyBytesIfNecessary());
+            out.writeInt(tableUpdates.getValue().size());
+            for (Mutation mutation : tableUpdates.getValue()) {
+                Bytes.writeByteArray(out, ProtobufUtil.toProto(mutation).toByteArray());
+            }
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    static Entry decode(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        boolean allowLocalUpdates = in.readBoolean();
+        int clientVersion = in.readInt();
+        int tableCount = in.readInt();
+        Multimap<HTableInterfaceReference, Mutation> updates = ArrayListMultimap.create();
+        for (int i = 0; i < tableCount; i++) {
+            HTableInterfaceReference table = new HTableInterfaceReference(
+                    new ImmutableBytesPtr(Bytes.readByteArray(in)));
+            int mutationCount = in.readInt();
+            for (int j = 0; j < mutationCount; j++) {
+                updates.put(table, org.apache.hadoop.hbase.protobuf.ProtobufUtil.toMutation(
+                        MutationProto.parseFrom(Bytes.readByteArray(in))));
+            }
+        }
+        return new Entry(updates, allowLocalUpdates, clientVersion);
+    }
+}
@@ -26,9 +26,13 @@ import static org.apache.phoenix.index.IndexMaintainer.getIndexMaintainer;
 import static org.apache.phoenix.schema.types.PDataType.TRUE_BYTES;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.hadoop.hbase.Cell;
 import org.apache.hadoop.hbase.CellUtil;
@@ -37,6 +41,7 @@ import org.apache.hadoop.hbase.DoNotRetryIOException;
 import org.apache.hadoop.hbase.TableName;
 import org.apache.hadoop.hbase.client.Delete;
 import org.apache.hadoop.hbase.client.Mutation;
+import org.apache.hadoop.hbase.client.Put;
 import org.apache.hadoop.hbase.client.RegionInfo;
 import org.apache.hadoop.hbase.client.Result;
 import org.apache.hadoop.hbase.client.ResultScanner;
@@ -55,20 +60,31 @@ import org.apache.hadoop.hbase.regionserver.Region;
 import org.apache.hadoop.hbase.regionserver.RegionScanner;
 import org.apache.hadoop.hbase.regionserver.ScannerContext;
 import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.phoenix.compile.ScanRanges;
 import org.apache.phoenix.coprocessor.BaseScannerRegionObserver;
+import org.apache.phoenix.coprocessor.GlobalIndexRegionScanner;
+import org.apache.phoenix.hbase.index.IndexRegionObserver;
+import org.apache.phoenix.hbase.index.ValueGetter;
 import org.apache.phoenix.hbase.index.covered.update.ColumnReference;
 import org.apache.phoenix.hbase.index.metrics.GlobalIndexCheckerSource;
 import org.apache.phoenix.hbase.index.metrics.MetricsIndexerSourceFactory;
+import org.apache.phoenix.hbase.index.util.GenericKeyValueBuilder;
+import org.apache.phoenix.hbase.index.util.ImmutableBytesPtr;
+import org.apache.phoenix.query.KeyRange;
 import org.apache.phoenix.query.QueryServices;
 import org.apache.phoenix.query.QueryServicesOptions;
 import org.apache.phoenix.schema.SortOrder;
 import org.apache.phoenix.schema.types.PLong;
+import org.apache.phoenix.schema.types.PVarbinary;
 import org.apache.phoenix.util.EnvironmentEdgeManager;
 import org.apache.phoenix.util.IndexUtil;
 import org.apache.phoenix.util.ServerUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import org.apache.phoenix.thirdparty.com.google.common.cache.Cache;
+import org.apache.phoenix.thirdparty.com.google.common.cache.CacheBuilder;
+
 /**
  * 
  * Coprocessor that verifies the scanned rows of a non-transactional global index.
@@ -91,12 +107,22 @@ import org.slf4j.LoggerFactory;
  * row updates) fail. There could be back to back such events so we need to scan older versions to retrieve
  * the verified version that is masked by the unverified version(s).
  *
+ * If {@link QueryServices#GLOBAL_INDEX_READ_REPAIR_BATCH_SIZE_ATTRIB} is set to more than one, the unverified rows
+ * are repaired in batches instead. On the first unverified row, the scanner looks ahead up to that many rows, and
+ * rebuilds the unverified ones from their data table rows retrieved by a single skip scan. The repaired rows are
+ * remembered for a while, so that concurrent scanners that see the same unverified rows restart their scan instead
+ * of repairing them again. The unverified rows that cannot be rebuilt this way are repaired one by one as above.
+ *
  */
 public class GlobalIndexChecker extends BaseRegionObserver implements RegionCoprocessor, RegionObserver {
     private static final Logger LOG =
         LoggerFactory.getLogger(GlobalIndexChecker.class);
     private GlobalIndexCheckerSource metricsSource;
     private CoprocessorEnvironment env;
+    private int readRepairBatchSize;
+    // The index rows recently repaired by the scanners of this region, with the timestamp of the unverified row
+    // they were repaired for. This is null unless unverified rows are repaired in batches
+    private Cache<ImmutableBytesPtr, Long> repairedRows;
 
     public enum RebuildReturnCode {
         NO_DATA_ROW(0),
@@ -142,6 +168,8 @@ public class GlobalIndexChecker extends BaseRegionObserver implements RegionCopr
         private boolean restartScanDueToPageFilterRemoval = false;
         private boolean hasMore;
         private String indexName;
+        // The last index row scanned while collecting the unverified rows of the last repair batch
+        private byte[] lastBatchRepairRowKey = null;
 
         public GlobalIndexScanner(RegionCoprocessorEnvironment env,
                                   Scan scan,
@@ -306,7 +334,7 @@ public class GlobalIndexChecker extends BaseRegionObserver implements RegionCopr
             return null;
         }
 
-        private void repairIndexRows(byte[] indexRowKey, long ts, List<Cell> row) throws IOException {
+        private void initializeRepair() throws IOException {
             if (buildIndexScan == null) {
                 PageFilter pageFilter = removePageFilter(scan);
                 if (pageFilter != null) {
@@ -336,6 +364,10 @@ public class GlobalIndexChecker extends BaseRegionObserver implements RegionCopr
                 }
                 buildIndexScan.addColumn(indexMaintainer.getDataEmptyKeyValueCF(), indexMaintainer.getEmptyKeyValueQualifier());
             }
+        }
+
+        private void repairIndexRows(byte[] indexRowKey, long ts, List<Cell> row) throws IOException {
+            initializeRepair();
             // Rebuild the index row from the corresponding the row in the the data table
             // Get the data row key from the index row key
             byte[] dataRowKey = indexMaintainer.buildDataRowKey(new ImmutableBytesWritable(indexRowKey), viewConstants);
@@ -462,6 +494,143 @@ public class GlobalIndexChecker extends BaseRegionObserver implements RegionCopr
                         region.getRegionInfo().getTable().getNameAsString());
         }
 
+        /**
+         * Restarts the scan from the given index row, so that the rows repaired after the current scanner was opened
+         * are visible to the scan
+         */
+        private void restartScan(byte[] indexRowKey) throws IOException {
+            scanner.close();
+            indexScan.withStartRow(indexRowKey, true);
+            scanner = region.getScanner(indexScan);
+            hasMore = true;
+            // Set restartScanDueToPageFilterRemoval to false as we do not restart the scan unnecessarily next time
+            restartScanDueToPageFilterRemoval = false;
+        }
+
+        /**
+         * Repairs the given unverified index row together with the unverified rows among the next rows of the
+         * scanner, and restarts the scan from the given row. The index rows are rebuilt from the data table rows
+         * retrieved by a single skip scan. An index row is rebuilt only if its data table row exists, points back to
+         * it, and is not older than it. The other unverified rows are left to {@link #repairIndexRows}, which handles
+         * all the cases, when they are scanned again.
+         * @return false if the row is not repaired in a batch, and the scanner is left as is
+         */
+        private boolean batchRepairIndexRows(byte[] indexRowKey, long ts) throws IOException {
+            if (lastBatchRepairRowKey != null && Bytes.compareTo(indexRowKey, lastBatchRepairRowKey) <= 0) {
+                // This row was scanned for the last batch, and is still unverified
+                return false;
+            }
+            initializeRepair();
+            Long repairedTs = repairedRows.getIfPresent(new ImmutableBytesPtr(indexRowKey));
+            if (repairedTs != null && repairedTs >= ts) {
+                // Another scanner repaired this row after this scanner was opened. The entry is removed so that the
+                // row goes through the regular repair if it is unverified again after restarting the scan
+                repairedRows.invalidate(new ImmutableBytesPtr(indexRowKey));
+                restartScan(indexRowKey);
+                return true;
+            }
+            Map<ImmutableBytesPtr, Long> unverifiedRows = new LinkedHashMap<>(readRepairBatchSize);
+            unverifiedRows.put(new ImmutableBytesPtr(indexRowKey), ts);
+            byte[] lastRowKey = indexRowKey;
+            List<Cell> row = new ArrayList<>();
+            boolean more = hasMore;
+            for (int i = 1; i < readRepairBatchSize && more; i++) {
+                row.clear();
+                more = scanner.next(row);
+                if (row.isEmpty()) {
+                    continue;
+                }
+                lastRowKey = CellUtil.cloneRow(row.get(0));
+                if (!verifyRowAndRemoveEmptyColumn(row)) {
+                    unverifiedRows.put(new ImmutableBytesPtr(lastRowKey), row.get(0).getTimestamp());
+                }
+            }
+            lastBatchRepairRowKey = lastRowKey;
+            long repairStart = EnvironmentEdgeManager.currentTimeMillis();
+            try {
+                rebuildIndexRows(unverifiedRows);
+            } catch (IOException e) {
+                metricsSource.incrementIndexRepairFailures(indexName);
+                metricsSource.updateIndexRepairFailureTime(indexName,
+                        EnvironmentEdgeManager.currentTimeMillis() - repairStart);
+                throw e;
+            }
+            metricsSource.updateIndexRepairTime(indexName, EnvironmentEdgeManager.currentTimeMillis() - repairStart);
+            restartScan(indexRowKey);
+            return true;
+        }
+
+        private void rebuildIndexRows(Map<ImmutableBytesPtr, Long> unverifiedRows) throws IOException {
+            Map<ImmutableBytesPtr, ImmutableBytesPtr> indexRowKeys = new LinkedHashMap<>(unverifiedRows.size());
+            List<KeyRange> keys = new ArrayList<>(unverifiedRows.size());
+            for (ImmutableBytesPtr indexRowKey : unverifiedRows.keySet()) {
+                byte[] dataRowKey = indexMaintainer.buildDataRowKey(indexRowKey, viewConstants);
+                indexRowKeys.put(new ImmutableBytesPtr(dataRowKey), indexRowKey);
+                keys.add(PVarbinary.INSTANCE.getKeyRange(dataRowKey));
+            }
+            Scan dataScan = new Scan();
+            for (ColumnReference column : indexMaintainer.getAllColumns()) {
+                dataScan.addColumn(column.getFamily(), column.getQualifier());
+            }
+            dataScan.addColumn(indexMaintainer.getDataEmptyKeyValueCF(), indexMaintainer.getEmptyKeyValueQualifier());
+            dataScan.setTimeRange(0, maxTimestamp);
+            ScanRanges scanRanges = ScanRanges.createPointLookup(keys);
+            scanRanges.initializeScan(dataScan);
+            dataScan.setFilter(scanRanges.getSkipScanFilter());
+            byte[] indexEmptyCF = indexMaintainer.getEmptyKeyValueFamily().copyBytesIfNecessary();
+            byte[] indexEmptyCQ = indexMaintainer.getEmptyKeyValueQualifier();
+            List<Mutation> indexPuts = new ArrayList<>(unverifiedRows.size());
+            List<ImmutableBytesPtr> repairedRowKeys = new ArrayList<>(unverifiedRows.size());
+            try (ResultScanner resultScanner = dataHTable.getScanner(dataScan)) {
+                for (Result result = resultScanner.next(); result != null; result = resultScanner.next()) {
+                    ImmutableBytesPtr dataRowKeyPtr = new ImmutableBytesPtr(result.getRow());
+                    ImmutableBytesPtr indexRowKey = indexRowKeys.get(dataRowKeyPtr);
+                    if (indexRowKey == null) {
+                        continue;
+                    }
+                    Put dataRow = new Put(result.getRow());
+                    long dataRowTs = 0;
+                    for (Cell cell : result.rawCells()) {
+                        dataRow.add(cell);
+                        dataRowTs = Math.max(dataRowTs, cell.getTimestamp());
+                    }
+                    if (dataRowTs < unverifiedRows.get(indexRowKey)) {
+                        // The rebuilt row would be masked by the unverified row
+                        continue;
+                    }
+                    ValueGetter valueGetter = new GlobalIndexRegionScanner.SimpleValueGetter(dataRow);
+                    Put indexPut = indexMaintainer.buildUpdateMutation(GenericKeyValueBuilder.INSTANCE,
+                            valueGetter, dataRowKeyPtr, dataRowTs, null, null);
+                    if (indexPut == null) {
+                        indexPut = new Put(indexMaintainer.buildRowKey(valueGetter, dataRowKeyPtr, null, null,
+                                dataRowTs));
+                    } else {
+                        IndexRegionObserver.removeEmptyColumn(indexPut, indexEmptyCF, indexEmptyCQ);
+                    }
+                    if (Bytes.compareTo(indexPut.getRow(), 0, indexPut.getRow().length, indexRowKey.get(),
+                            indexRowKey.getOffset(), indexRowKey.getLength()) != 0) {
+                        // The data table row does not point back to the unverified row
+                        continue;
+                    }
+                    indexPut.addColumn(indexEmptyCF, indexEmptyCQ, dataRowTs, VERIFIED_BYTES);
+                    indexPuts.add(indexPut);
+                    repairedRowKeys.add(indexRowKey);
+                }
+            } catch (Throwable t) {
+                ServerUtil.throwIOException(dataHTable.getName().toString(), t);
+            }
+            if (indexPuts.isEmpty()) {
+                return;
+            }
+            region.batchMutate(indexPuts.toArray(new Mutation[indexPuts.size()]));
+            for (ImmutableBytesPtr indexRowKey : repairedRowKeys) {
+                repairedRows.put(indexRowKey, unverifiedRows.get(indexRowKey));
+                metricsSource.incrementIndexRepairs(indexName);
+                metricsSource.updateUnverifiedIndexRowAge(indexName,
+                        EnvironmentEdgeManager.currentTimeMillis() - unverifiedRows.get(indexRowKey));
+            }
+        }
+
         private boolean isEmptyColumn(Cell cell) {
             return Bytes.compareTo(cell.getFamilyArray(), cell.getFamilyOffset(), cell.getFamilyLength(),
                     emptyCF, 0, emptyCF.length) == 0 &&
@@ -568,6 +737,11 @@ public class GlobalIndexChecker extends BaseRegionObserver implements RegionCopr
                 long ts = cellList.get(0).getTimestamp();
                 cellList.clear();
 
+                if (repairedRows != null && !scan.isReversed() && batchRepairIndexRows(rowKey, ts)) {
+                    // The scan restarts from this row, so skip it here
+                    return false;
+                }
+
                 try {
                     repairIndexRows(rowKey, ts, cellList);
                     metricsSource.incrementIndexRepairs(indexName);
@@ -609,6 +783,20 @@ public class GlobalIndexChecker extends BaseRegionObserver implements RegionCopr
     public void start(CoprocessorEnvironment e) throws IOException {
         this.env = e;
         this.metricsSource = MetricsIndexerSourceFactory.getInstance().getGlobalIndexCheckerSource();
+        this.readRepairBatchSize = e.getConfiguration().getInt(
+                QueryServices.GLOBAL_INDEX_READ_REPAIR_BATCH_SIZE_ATTRIB,
+                QueryServicesOptions.DEFAULT_GLOBAL_INDEX_READ_REPAIR_BATCH_SIZE);
+        if (readRepairBatchSize > 1) {
+            this.repairedRows = CacheBuilder.newBuilder()
+                    .maximumSize(e.getConfiguration().getInt(
+                            QueryServices.GLOBAL_INDEX_REPAIRED_ROW_CACHE_SIZE_ATTRIB,
+                            QueryServicesOptions.DEFAULT_GLOBAL_INDEX_REPAIRED_ROW_CACHE_SIZE))
+                    .expireAfterWrite(e.getConfiguration().getLong(
+                            QueryServices.GLOBAL_INDEX_REPAIRED_ROW_CACHE_TTL_MS_ATTRIB,
+                            QueryServicesOptions.DEFAULT_GLOBAL_INDEX_REPAIRED_ROW_CACHE_TTL_MS),
+                            TimeUnit.MILLISECONDS)
+                    .build();
+        }
     }
 
 }
@@ -0,0 +1,90 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.phoenix.iterate;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+import org.apache.phoenix.compile.QueryPlan;
+import org.apache.phoenix.compile.StatementContext;
+import org.apache.phoenix.query.QueryServices;
+import org.apache.phoenix.query.QueryServicesOptions;
+import org.apache.phoenix.util.ReadOnlyProps;
+
+/**
+ * Grouper that sizes the parallel scans of a query from the row estimates of the guideposts
+ * and from the load of the client thread pool, instead of running one scan per guidepost chunk.
+ * Adjacent chunks of a region are merged into one scan until the scan reaches a minimum number
+ * of estimated rows, so that a query over few rows doesn't fan out into many small scans. That
+ * minimum grows with the number of tasks already running or queued in the thread pool, which
+ * limits the fan out of queries while the pool is busy. Conversely, while the pool has idle
+ * threads, a chunk with more than a maximum number of estimated rows is split into several
+ * scans so that large queries still use the whole pool.
+ *
+ * Scans are grouped the same way as by the {@link DefaultParallelScanGrouper}.
+ */
+public class AdaptiveParallelScanGrouper extends DefaultParallelScanGrouper {
+    private static final int MAX_CHUNK_SPLIT_COUNT = 16;
+
+    private final long minRowsPerScan;
+    private final long maxRowsPerScan;
+    private final double load;
+
+    AdaptiveParallelScanGrouper(long minRowsPerScan, long maxRowsPerScan, double load) {
+        this.minRowsPerScan = minRowsPerScan;
+        this.maxRowsPerScan = maxRowsPerScan;
+        this.load = load;
+    }
+
+    /**
+     * @return whether the parallel scans of queries should be sized by an adaptive grouper
+     */
+    public static boolean isEnabled(StatementContext context) {
+        return context.getConnection().getQueryServices().getProps().getBoolean(
+                QueryServices.ADAPTIVE_SCAN_GROUPER_ENABLED_ATTRIB,
+                QueryServicesOptions.DEFAULT_ADAPTIVE_SCAN_GROUPER_ENABLED);
+    }
+
+    /**
+     * Create a grouper for the scans of a query, sized by the current load of the thread pool.
+     */
+    public static AdaptiveParallelScanGrouper newInstance(StatementContext context) {
+        ReadOnlyProps props = context.getConnection().getQueryServices().getProps();
+        ThreadPoolExecutor executor = context.getConnection().getQueryServices().getExecutor();
+        double load = (double)(executor.getActiveCount() + executor.getQueue().size())
+                / Math.max(1, executor.getMaximumPoolSize());
+        return new AdaptiveParallelScanGrouper(
+                props.getLong(QueryServices.ADAPTIVE_SCAN_GROUPER_MIN_ROWS_PER_SCAN_ATTRIB,
+                        QueryServicesOptions.DEFAULT_ADAPTIVE_SCAN_GROUPER_MIN_ROWS_PER_SCAN),
+                props.getLong(QueryServices.ADAPTIVE_SCAN_GROUPER_MAX_ROWS_PER_SCAN_ATTRIB,
+                        QueryServicesOptions.DEFAULT_ADAPTIVE_SCAN_GROUPER_MAX_ROWS_PER_SCAN),
+                load);
+    }
+
+    @Override
+    public boolean shouldMergeWithNextChunk(QueryPlan plan, long estimatedRows) {
+        return estimatedRows < minRowsPerScan * Math.max(1.0, load);
+    }
+
+    @Override
+    public int getChunkSplitCount(QueryPlan plan, long estimatedRows) {
+        if (load >= 1.0 || maxRowsPerScan <= 0 || estimatedRows <= maxRowsPerScan) {
+            return 1;
+        }
+        return (int)Math.min(MAX_CHUNK_SPLIT_COUNT, (estimatedRows + maxRowsPerScan - 1) / maxRowsPerScan);
+    }
+}
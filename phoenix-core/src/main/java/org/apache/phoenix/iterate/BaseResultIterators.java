@@ -36,6 +36,7 @@ import java.io.ByteArrayInputStream;
 import java.io.DataInput;
 import java.io.DataInputStream;
 import java.io.EOFException;
+import java.io.IOException;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -78,11 +79,13 @@ import org.apache.phoenix.compile.ScanRanges;
 import org.apache.phoenix.compile.StatementContext;
 import org.apache.phoenix.coprocessor.BaseScannerRegionObserver;
 import org.apache.phoenix.coprocessor.HashJoinCacheNotFoundException;
+import org.apache.phoenix.coprocessor.LooseIndexScan;
 import org.apache.phoenix.coprocessor.UngroupedAggregateRegionObserver;
 import org.apache.phoenix.exception.SQLExceptionCode;
 import org.apache.phoenix.exception.SQLExceptionInfo;
 import org.apache.phoenix.execute.MutationState;
 import org.apache.phoenix.execute.ScanPlan;
+import org.apache.phoenix.expression.Expression;
 import org.apache.phoenix.expression.OrderByExpression;
 import org.apache.phoenix.filter.BooleanExpressionFilter;
 import org.apache.phoenix.filter.ColumnProjectionFilter;
@@ -194,7 +197,11 @@ public abstract class BaseResultIterators extends ExplainTable implements Result
         return !isSerial();
     }
     
-    private static void initializeScan(QueryPlan plan, Integer perScanLimit, Integer offset, Scan scan) throws SQLException {
+    /**
+     * Set the projection, filters and storage attributes of the plan on the scan, as they are
+     * before the scan is split in chunks. Also used for scans run on the region servers.
+     */
+    public static void initializeScan(QueryPlan plan, Integer perScanLimit, Integer offset, Scan scan) throws SQLException {
         StatementContext context = plan.getContext();
         TableRef tableRef = plan.getTableRef();
         boolean wildcardIncludesDynamicCols = context.getConnection().getQueryServices()
@@ -300,6 +307,26 @@ public abstract class BaseResultIterators extends ExplainTable implements Result
                         // we can not push the limit.
                         ScanUtil.andFilterAtEnd(scan, new PageFilter(plan.getLimit()));
                     }
+            } else if (cols > 0 &&
+                !plan.getStatement().getHint().hasHint(HintNode.Hint.RANGE_SCAN) &&
+                cols < table.getRowKeySchema().getFieldCount() &&
+                groupBy.isOrderPreserving() && !groupBy.isUngroupedAggregate() &&
+                !context.getAggregationManager().isEmpty() &&
+                table.getBucketNum() == null && !table.isMultiTenant() && table.getViewIndexId() == null &&
+                table.getType() != PTableType.INDEX && !ScanUtil.isLocalIndex(scan) && !ScanUtil.isReversed(scan) &&
+                context.getConnection().getQueryServices().getProps().getBoolean(
+                        QueryServices.LOOSE_INDEX_SCAN_ENABLED_ATTRIB,
+                        QueryServicesOptions.DEFAULT_LOOSE_INDEX_SCAN_ENABLED)) {
+                // Seek past the rest of each group once its aggregates are decided
+                List<List<Expression>> decidingExpressions = LooseIndexScan.getDecidingExpressions(
+                        table.getRowKeySchema(), cols, context.getAggregationManager().getAggregators());
+                if (decidingExpressions != null) {
+                    try {
+                        LooseIndexScan.serializeIntoScan(scan, table.getRowKeySchema(), cols, decidingExpressions);
+                    } catch (IOException e) {
+                        throw ServerUtil.parseServerException(e);
+                    }
+                }
             }
             scan.setAttribute(BaseScannerRegionObserver.QUALIFIER_ENCODING_SCHEME, new byte[]{table.getEncodingScheme().getSerializedMetadataValue()});
             scan.setAttribute(BaseScannerRegionObserver.IMMUTABLE_STORAGE_ENCODING_SCHEME, new byte[]{table.getImmutableStorageScheme().getSerializedMetadataValue()});
@@ -515,9 +542,11 @@ public abstract class BaseResultIterators extends ExplainTable implements Result
         this.plan = plan;
         this.scan = scan;
         this.caches = caches;
-        this.scanGrouper = scanGrouper;
         this.dataPlan = dataPlan;
         StatementContext context = plan.getContext();
+        this.scanGrouper = scanGrouper == DefaultParallelScanGrouper.getInstance()
+                && AdaptiveParallelScanGrouper.isEnabled(context)
+                ? AdaptiveParallelScanGrouper.newInstance(context) : scanGrouper;
         // Clone MutationState as the one on the connection will change if auto commit is on
         // yet we need the original one with the original transaction from TableResultIterator.
         this.mutationState = new MutationState(context.getConnection().getMutationState());
@@ -657,6 +686,36 @@ public abstract class BaseResultIterators extends ExplainTable implements Result
         return scans;
     }
 
+    /**
+     * Add the scans of a guidepost chunk split into evenly sized key ranges
+     */
+    private List<Scan> addSplitScans(List<List<Scan>> parallelScans, List<Scan> scans, Scan chunkScan,
+            int splitCount, ScanRanges scanRanges, HRegionLocation regionLocation) {
+        byte[] startRow = chunkScan.getStartRow();
+        byte[] stopRow = chunkScan.getStopRow();
+        byte[][] splitKeys = null;
+        if (startRow.length > 0 && stopRow.length > 0 && Bytes.compareTo(startRow, stopRow) < 0) {
+            try {
+                splitKeys = Bytes.split(startRow, stopRow, splitCount - 1);
+            } catch (IllegalArgumentException e) {
+                // The key range is too narrow to be split
+            }
+        }
+        if (splitKeys == null) {
+            return addNewScan(parallelScans, scans, chunkScan, stopRow, false, regionLocation);
+        }
+        RegionInfo regionInfo = regionLocation.getRegion();
+        for (int i = 0; i < splitKeys.length - 1; i++) {
+            Scan splitScan = scanRanges.intersectScan(scan, splitKeys[i], splitKeys[i + 1], 0, false);
+            if (splitScan != null) {
+                ScanUtil.setLocalIndexAttributes(splitScan, 0, regionInfo.getStartKey(), regionInfo.getEndKey(),
+                    splitScan.getStartRow(), splitScan.getStopRow());
+                scans = addNewScan(parallelScans, scans, splitScan, splitKeys[i + 1], false, regionLocation);
+            }
+        }
+        return scans;
+    }
+
     private List<List<Scan>> getParallelScans() throws SQLException {
         // If the scan boundaries are not matching with scan in context that means we need to get
         // parallel scans for the chunk after split/merge.
@@ -1072,11 +1131,14 @@ public abstract class BaseResultIterators extends ExplainTable implements Result
                     keyOffset = ScanUtil.getRowKeyOffset(regionInfo.getStartKey(), regionInfo.getEndKey());
                 }
                 byte[] initialKeyBytes = currentKeyBytes;
+                boolean gpsInThisRegion = false;
                 int gpsComparedToEndKey = -1;
                 boolean everNotDelayed = false;
+                long rowsInScan = 0;
                 while (intersectWithGuidePosts && (endKey.length == 0 || (gpsComparedToEndKey=currentGuidePost.compareTo(endKey)) <= 0)) {
                     Scan newScan = scanRanges.intersectScan(scan, currentKeyBytes, currentGuidePostBytes, keyOffset,
                         false);
+                    gpsInThisRegion = true;
                     if (newScan != null) {
                         ScanUtil.setLocalIndexAttributes(newScan, keyOffset,
                             regionInfo.getStartKey(), regionInfo.getEndKey(),
@@ -1095,8 +1157,20 @@ public abstract class BaseResultIterators extends ExplainTable implements Result
                         delayAddingEst = false;
                     }
                     everNotDelayed |= !delayAddingEst;
-                    scans = addNewScan(parallelScans, scans, newScan, currentGuidePostBytes, false, regionLocation);
-                    currentKeyBytes = currentGuidePostBytes;
+                    long chunkRows = newScan == null ? 0 : gps.getRowCounts()[guideIndex];
+                    if (newScan != null && useStatsForParallelization
+                            && scanGrouper.shouldMergeWithNextChunk(plan, rowsInScan + chunkRows)) {
+                        // Leave the current key as is, so that the next scan spans this chunk too
+                        rowsInScan += chunkRows;
+                    } else {
+                        int splitCount = newScan == null || rowsInScan > 0 || keyOffset > 0 ? 1
+                                : scanGrouper.getChunkSplitCount(plan, chunkRows);
+                        scans = splitCount > 1
+                                ? addSplitScans(parallelScans, scans, newScan, splitCount, scanRanges, regionLocation)
+                                : addNewScan(parallelScans, scans, newScan, currentGuidePostBytes, false, regionLocation);
+                        currentKeyBytes = currentGuidePostBytes;
+                        rowsInScan = 0;
+                    }
                     try {
                         currentGuidePost = PrefixByteCodec.decode(decoder, input);
                         currentGuidePostBytes = currentGuidePost.copyBytes();
@@ -1106,7 +1180,6 @@ public abstract class BaseResultIterators extends ExplainTable implements Result
                         intersectWithGuidePosts = false;
                     }
                 }
-                boolean gpsInThisRegion = initialKeyBytes != currentKeyBytes;
                 if (!useStatsForParallelization) {
                     /*
                      * If we are not using stats for generating parallel scans, we need to reset the
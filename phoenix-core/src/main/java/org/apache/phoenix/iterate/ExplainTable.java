@@ -161,6 +161,9 @@ public abstract class ExplainTable {
         if (distinctFilter != null) {
             planSteps.add("    SERVER DISTINCT PREFIX FILTER OVER "+groupBy.getExpressions().toString());
         }
+        if (scan.getAttribute(BaseScannerRegionObserver.LOOSE_INDEX_SCAN) != null) {
+            planSteps.add("    SERVER LOOSE INDEX SCAN OVER " + groupBy.getExpressions().toString());
+        }
         if (!orderBy.getOrderByExpressions().isEmpty() && groupBy.isEmpty()) { // with GROUP BY, sort happens client-side
             planSteps.add("    SERVER" + (limit == null ? "" : " TOP " + limit + " ROW" + (limit == 1 ? "" : "S"))
                     + " SORTED BY " + orderBy.getOrderByExpressions().toString());
@@ -0,0 +1,730 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.phoenix.iterate;
+
+import static org.apache.phoenix.monitoring.TaskExecutionMetricsHolder.NO_OP_INSTANCE;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.AbstractQueue;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.phoenix.iterate.OrderedResultIterator.ResultEntry;
+import org.apache.phoenix.job.JobManager.JobCallable;
+import org.apache.phoenix.monitoring.TaskExecutionMetricsHolder;
+import org.apache.phoenix.schema.tuple.ResultTuple;
+import org.apache.phoenix.schema.tuple.Tuple;
+import org.apache.phoenix.util.PhoenixKeyValueUtil;
+import org.apache.phoenix.util.ResultUtil;
+import org.apache.phoenix.util.TrustedByteArrayOutputStream;
+import org.iq80.snappy.Snappy;
+
+import org.apache.phoenix.thirdparty.com.google.common.collect.Lists;
+import org.apache.phoenix.thirdparty.com.google.common.util.concurrent.Futures;
+
+/**
+ * Sorted queue for an ORDER BY without a LIMIT that does not fit in memory, implemented
+ * as an external merge sort. Entries are collected into runs; each full run is sorted and
+ * written to a Snappy compressed run file by a task on the given executor while the
+ * caller keeps reading input, or by the caller itself when the executor rejects the task.
+ * As the caller waits on the pending tasks, the executor should not queue tasks, or a caller
+ * running on one of its threads could wait on tasks queued behind it. Once all entries have been added, the run files and the last
+ * run, which is only sorted in memory, are combined with a k-way merge over a loser tree.
+ *
+ * The configured threshold bounds the memory held by the runs being collected and sorted.
+ * Whenever the number of run files reaches the merge factor, they are merged into a single
+ * run file, so the number of temporary files stays bounded no matter the input size.
+ *
+ * Iterating over the queue goes through a merge of its own over the entries not polled yet,
+ * in sort order, without consuming them.
+ *
+ * Failures to write or read back run files are thrown as {@link UncheckedIOException}, as the
+ * {@link java.util.Queue} methods cannot throw checked exceptions. Callers are expected to
+ * unwrap them into a {@link java.sql.SQLException}.
+ *
+ * @since 5.1.0
+ */
+public class ExternalSortedQueue extends AbstractQueue<ResultEntry> implements SizeAwareQueue<ResultEntry> {
+    private static final int BLOCK_SIZE = 64 * 1024;
+    private static final int EOF = -1;
+    private static final long MIN_RUN_BYTES = 1024 * 1024;
+
+    private final Comparator<ResultEntry> comparator;
+    private final ExecutorService executor;
+    private final int maxPendingRuns;
+    private final int mergeFactor;
+    private final long runThresholdBytes;
+
+    private List<ResultEntry> currentRun = Lists.newArrayList();
+    private long currentRunBytes;
+    private List<Future<File>> runFiles = Lists.newArrayList();
+    private int size;
+    private LoserTree mergedRuns;
+    private final List<Run> iteratorRuns = Lists.newArrayList();
+    private boolean closed;
+
+    /**
+     * @param comparator the sort order
+     * @param thresholdBytes the memory to use for sorting, shared between the runs being sorted
+     * @param executor the thread pool runs are sorted and written on, without a queue
+     * @param parallelism the maximum number of runs to sort at the same time
+     * @param mergeFactor the maximum number of run files to keep before merging them
+     */
+    public ExternalSortedQueue(Comparator<ResultEntry> comparator, long thresholdBytes,
+            ExecutorService executor, int parallelism, int mergeFactor) {
+        this.comparator = comparator;
+        this.executor = executor;
+        this.maxPendingRuns = Math.max(1, parallelism);
+        this.mergeFactor = Math.max(2, mergeFactor);
+        this.runThresholdBytes = Math.max(MIN_RUN_BYTES, thresholdBytes / (maxPendingRuns + 1));
+    }
+
+    @Override
+    public boolean offer(ResultEntry e) {
+        if (closed || mergedRuns != null) {
+            return false;
+        }
+        currentRun.add(e);
+        currentRunBytes += ResultEntry.sizeOf(e);
+        size++;
+        if (currentRunBytes >= runThresholdBytes) {
+            try {
+                spillCurrentRun();
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+        return true;
+    }
+
+    private void spillCurrentRun() throws IOException {
+        waitForPendingRuns(maxPendingRuns - 1);
+        final List<ResultEntry> run = currentRun;
+        currentRun = Lists.newArrayList();
+        currentRunBytes = 0;
+        runFiles.add(submit(new JobCallable<File>() {
+            @Override
+            public File call() throws Exception {
+                Collections.sort(run, comparator);
+                return writeRun(new ListRun(run));
+            }
+
+            @Override
+            public Object getJobId() {
+                return ExternalSortedQueue.this;
+            }
+
+            @Override
+            public TaskExecutionMetricsHolder getTaskExecutionMetric() {
+                return NO_OP_INSTANCE;
+            }
+        }));
+        if (runFiles.size() >= mergeFactor) {
+            // Merge every run file written so far into one to bound the number of files
+            final List<File> files = getRunFiles();
+            runFiles = Lists.newArrayList();
+            runFiles.add(submit(new JobCallable<File>() {
+                @Override
+                public File call() throws Exception {
+                    List<Run> runs = Lists.newArrayListWithExpectedSize(files.size());
+                    try {
+                        for (File file : files) {
+                            runs.add(new FileRun(file));
+                        }
+                        return writeRun(new LoserTree(runs, comparator));
+                    } finally {
+                        for (Run run : runs) {
+                            run.close();
+                        }
+                        // Covers the files that could not be opened
+                        for (File file : files) {
+                            file.delete();
+                        }
+                    }
+                }
+
+                @Override
+                public Object getJobId() {
+                    return ExternalSortedQueue.this;
+                }
+
+                @Override
+                public TaskExecutionMetricsHolder getTaskExecutionMetric() {
+                    return NO_OP_INSTANCE;
+                }
+            }));
+        }
+    }
+
+    /**
+     * Run the task on the executor, or on the calling thread if the executor is saturated.
+     */
+    private Future<File> submit(JobCallable<File> task) throws IOException {
+        if (executor != null) {
+            try {
+                return executor.submit(task);
+            } catch (RejectedExecutionException e) {
+                // Fall through and do the work inline
+            }
+        }
+        try {
+            return Futures.immediateFuture(task.call());
+        } catch (IOException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+    }
+
+    private void waitForPendingRuns(int maxPending) throws IOException {
+        int pending = 0;
+        for (Future<File> future : runFiles) {
+            if (!future.isDone()) {
+                pending++;
+            }
+        }
+        for (int i = 0; pending > maxPending && i < runFiles.size(); i++) {
+            Future<File> future = runFiles.get(i);
+            if (!future.isDone()) {
+                getRunFile(future);
+                pending--;
+            }
+        }
+    }
+
+    private List<File> getRunFiles() throws IOException {
+        List<File> files = Lists.newArrayListWithExpectedSize(runFiles.size());
+        for (Future<File> future : runFiles) {
+            files.add(getRunFile(future));
+        }
+        return files;
+    }
+
+    private static File getRunFile(Future<File> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private LoserTree getMergedRuns() {
+        if (mergedRuns == null && !closed) {
+            Collections.sort(currentRun, comparator);
+            List<Run> runs = Lists.newArrayListWithExpectedSize(runFiles.size() + 1);
+            try {
+                for (File file : getRunFiles()) {
+                    runs.add(new FileRun(file));
+                }
+                runs.add(new ListRun(currentRun));
+                mergedRuns = new LoserTree(runs, comparator);
+            } catch (IOException e) {
+                for (Run run : runs) {
+                    run.close();
+                }
+                throw new UncheckedIOException(e);
+            }
+            currentRun = Collections.emptyList();
+        }
+        return mergedRuns;
+    }
+
+    @Override
+    public ResultEntry poll() {
+        LoserTree runs = getMergedRuns();
+        if (runs == null) {
+            return null;
+        }
+        ResultEntry entry = runs.peek();
+        if (entry != null) {
+            try {
+                runs.advance();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            size--;
+        }
+        return entry;
+    }
+
+    @Override
+    public ResultEntry peek() {
+        LoserTree runs = getMergedRuns();
+        return runs == null ? null : runs.peek();
+    }
+
+    /**
+     * @return an iterator over the entries not polled yet, in sort order. The iterator reads
+     * from copies of the runs, so it does not reflect entries offered or polled afterwards.
+     */
+    @Override
+    public Iterator<ResultEntry> iterator() {
+        if (closed) {
+            return Collections.<ResultEntry>emptyIterator();
+        }
+        final Run run;
+        try {
+            run = mergedRuns != null ? mergedRuns.copy() : copyRuns();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        iteratorRuns.add(run);
+        return new Iterator<ResultEntry>() {
+            @Override
+            public boolean hasNext() {
+                if (run.peek() != null) {
+                    return true;
+                }
+                run.close();
+                iteratorRuns.remove(run);
+                return false;
+            }
+
+            @Override
+            public ResultEntry next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                ResultEntry entry = run.peek();
+                try {
+                    run.advance();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return entry;
+            }
+        };
+    }
+
+    /**
+     * Merge over the run files written so far and a sorted copy of the current run, leaving
+     * the queue itself open to more entries.
+     */
+    private LoserTree copyRuns() throws IOException {
+        List<ResultEntry> entries = Lists.newArrayList(currentRun);
+        Collections.sort(entries, comparator);
+        List<Run> runs = Lists.newArrayListWithExpectedSize(runFiles.size() + 1);
+        try {
+            for (File file : getRunFiles()) {
+                runs.add(new FileRun(file, false, 0));
+            }
+        } catch (IOException e) {
+            for (Run run : runs) {
+                run.close();
+            }
+            throw e;
+        }
+        runs.add(new ListRun(entries, false));
+        return new LoserTree(runs, comparator);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public long getByteSize() {
+        return currentRunBytes;
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (mergedRuns != null) {
+            mergedRuns.close();
+        }
+        for (Run run : iteratorRuns) {
+            run.close();
+        }
+        iteratorRuns.clear();
+        for (Future<File> future : runFiles) {
+            if (!future.cancel(false)) {
+                try {
+                    getRunFile(future).delete();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+        runFiles.clear();
+        currentRun = Collections.emptyList();
+        currentRunBytes = 0;
+        size = 0;
+    }
+
+    /**
+     * Write the entries of a sorted run to a new compressed run file, as a sequence of
+     * Snappy compressed blocks each prefixed with its uncompressed and compressed length.
+     */
+    private static File writeRun(Run run) throws IOException {
+        File file = File.createTempFile(UUID.randomUUID().toString(), null);
+        boolean success = false;
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(file.toPath())))) {
+            TrustedByteArrayOutputStream block = new TrustedByteArrayOutputStream(BLOCK_SIZE + BLOCK_SIZE / 4);
+            DataOutputStream blockOut = new DataOutputStream(block);
+            byte[] compressed = new byte[Snappy.maxCompressedLength(BLOCK_SIZE)];
+            for (ResultEntry e = run.peek(); e != null; run.advance(), e = run.peek()) {
+                writeEntry(blockOut, e);
+                if (block.size() >= BLOCK_SIZE) {
+                    compressed = writeBlock(out, block, compressed);
+                }
+            }
+            if (block.size() > 0) {
+                writeBlock(out, block, compressed);
+            }
+            out.writeInt(EOF);
+            success = true;
+        } finally {
+            run.close();
+            if (!success) {
+                file.delete();
+            }
+        }
+        return file;
+    }
+
+    private static byte[] writeBlock(DataOutputStream out, TrustedByteArrayOutputStream block,
+            byte[] compressed) throws IOException {
+        int maxCompressedLength = Snappy.maxCompressedLength(block.size());
+        if (compressed.length < maxCompressedLength) {
+            compressed = new byte[maxCompressedLength];
+        }
+        int compressedLength = Snappy.compress(block.getBuffer(), 0, block.size(), compressed, 0);
+        out.writeInt(block.size());
+        out.writeInt(compressedLength);
+        out.write(compressed, 0, compressedLength);
+        block.reset();
+        return compressed;
+    }
+
+    private static void writeEntry(DataOutputStream out, ResultEntry e) throws IOException {
+        Tuple result = e.getResult();
+        int size = result.size();
+        List<KeyValue> keyValues = Lists.newArrayListWithExpectedSize(size);
+        int totalLen = 0;
+        for (int i = 0; i < size; i++) {
+            KeyValue kv = PhoenixKeyValueUtil.maybeCopyCell(result.getValue(i));
+            keyValues.add(kv);
+            totalLen += kv.getLength() + Bytes.SIZEOF_INT;
+        }
+        out.writeInt(totalLen);
+        for (KeyValue kv : keyValues) {
+            out.writeInt(kv.getLength());
+            out.write(kv.getBuffer(), kv.getOffset(), kv.getLength());
+        }
+        out.writeInt(e.sortKeys.length);
+        for (ImmutableBytesWritable sortKey : e.sortKeys) {
+            if (sortKey != null) {
+                out.writeInt(sortKey.getLength());
+                out.write(sortKey.get(), sortKey.getOffset(), sortKey.getLength());
+            } else {
+                out.writeInt(0);
+            }
+        }
+    }
+
+    /**
+     * A sorted sequence of entries being merged.
+     */
+    private interface Run extends Closeable {
+        /**
+         * @return the current entry, or null once the run is exhausted
+         */
+        ResultEntry peek();
+
+        void advance() throws IOException;
+
+        /**
+         * @return a new run over the entries not consumed yet, leaving this one untouched
+         */
+        Run copy() throws IOException;
+
+        @Override
+        void close();
+    }
+
+    private static class ListRun implements Run {
+        private final List<ResultEntry> entries;
+        private final boolean release;
+        private int index;
+
+        private ListRun(List<ResultEntry> entries) {
+            this(entries, true);
+        }
+
+        private ListRun(List<ResultEntry> entries, boolean release) {
+            this.entries = entries;
+            this.release = release;
+        }
+
+        @Override
+        public ResultEntry peek() {
+            return index < entries.size() ? entries.get(index) : null;
+        }
+
+        @Override
+        public void advance() {
+            if (release) {
+                // Release the entry as soon as it has been consumed
+                entries.set(index, null);
+            }
+            index++;
+        }
+
+        @Override
+        public Run copy() {
+            // A copy of the remaining entries, as this run releases them while it is consumed
+            return new ListRun(Lists.newArrayList(entries.subList(index, entries.size())), false);
+        }
+
+        @Override
+        public void close() {
+            index = entries.size();
+        }
+    }
+
+    /**
+     * Reads back a run file one decompressed block at a time. Entries point into the
+     * block they were read from instead of being copied out of it. Unless the run is only
+     * a copy, the file is deleted once the run is closed.
+     */
+    private static class FileRun implements Run {
+        private final File file;
+        private final boolean deleteOnClose;
+        private final DataInputStream in;
+        private byte[] compressed = new byte[0];
+        private byte[] block;
+        private int offset;
+        private int limit;
+        private ResultEntry current;
+        private long consumed;
+
+        private FileRun(File file) throws IOException {
+            this(file, true, 0);
+        }
+
+        /**
+         * @param skip the number of entries to skip from the start of the file
+         */
+        private FileRun(File file, boolean deleteOnClose, long skip) throws IOException {
+            this.file = file;
+            this.deleteOnClose = deleteOnClose;
+            this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath())));
+            try {
+                for (long i = 0; i <= skip; i++) {
+                    advance();
+                }
+            } catch (IOException e) {
+                close();
+                throw e;
+            }
+            consumed = skip;
+        }
+
+        @Override
+        public ResultEntry peek() {
+            return current;
+        }
+
+        @Override
+        public void advance() throws IOException {
+            if (offset == limit && !readBlock()) {
+                current = null;
+                return;
+            }
+            int totalLen = Bytes.toInt(block, offset);
+            offset += Bytes.SIZEOF_INT;
+            Result result = ResultUtil.toResult(new ImmutableBytesWritable(block, offset, totalLen));
+            offset += totalLen;
+            int nSortKeys = Bytes.toInt(block, offset);
+            offset += Bytes.SIZEOF_INT;
+            ImmutableBytesWritable[] sortKeys = new ImmutableBytesWritable[nSortKeys];
+            for (int i = 0; i < nSortKeys; i++) {
+                int length = Bytes.toInt(block, offset);
+                offset += Bytes.SIZEOF_INT;
+                sortKeys[i] = length > 0 ? new ImmutableBytesWritable(block, offset, length) : null;
+                offset += length;
+            }
+            current = new ResultEntry(sortKeys, new ResultTuple(result));
+            consumed++;
+        }
+
+        @Override
+        public Run copy() throws IOException {
+            if (current == null) {
+                // Exhausted, and the file may be gone already
+                return new ListRun(Collections.<ResultEntry>emptyList(), false);
+            }
+            return new FileRun(file, false, consumed);
+        }
+
+        private boolean readBlock() throws IOException {
+            int uncompressedLength;
+            try {
+                uncompressedLength = in.readInt();
+            } catch (EOFException e) {
+                uncompressedLength = EOF;
+            }
+            if (uncompressedLength == EOF) {
+                close();
+                return false;
+            }
+            int compressedLength = in.readInt();
+            if (compressed.length < compressedLength) {
+                compressed = new byte[compressedLength];
+            }
+            in.readFully(compressed, 0, compressedLength);
+            // A new block every time, as entries handed out keep pointing into the previous one
+            block = new byte[uncompressedLength];
+            Snappy.uncompress(compressed, 0, compressedLength, block, 0);
+            offset = 0;
+            limit = uncompressedLength;
+            return true;
+        }
+
+        @Override
+        public void close() {
+            offset = limit = 0;
+            try {
+                in.close();
+            } catch (IOException ignored) {
+            }
+            if (deleteOnClose) {
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * K-way merge of sorted runs over a loser tree. Internal node i holds the run that lost
+     * the match played at that node, and node 0 holds the overall winner, so replacing the
+     * winner costs one comparison per level of the tree. Ties go to the earlier run, which
+     * keeps the merge stable.
+     */
+    private static class LoserTree implements Run {
+        private final Run[] runs;
+        private final int[] tree;
+        private final Comparator<ResultEntry> comparator;
+
+        private LoserTree(List<Run> runs, Comparator<ResultEntry> comparator) {
+            this.runs = runs.toArray(new Run[runs.size()]);
+            this.tree = new int[Math.max(1, this.runs.length)];
+            this.comparator = comparator;
+            if (this.runs.length > 0) {
+                tree[0] = build(1);
+            }
+        }
+
+        private int build(int node) {
+            if (node >= runs.length) {
+                return node - runs.length;
+            }
+            int left = build(2 * node);
+            int right = build(2 * node + 1);
+            if (beats(left, right)) {
+                tree[node] = right;
+                return left;
+            }
+            tree[node] = left;
+            return right;
+        }
+
+        private boolean beats(int a, int b) {
+            ResultEntry ea = runs[a].peek();
+            ResultEntry eb = runs[b].peek();
+            if (ea == null || eb == null) {
+                return eb == null && (ea != null || a < b);
+            }
+            int c = comparator.compare(ea, eb);
+            return c < 0 || (c == 0 && a < b);
+        }
+
+        @Override
+        public ResultEntry peek() {
+            return runs.length == 0 ? null : runs[tree[0]].peek();
+        }
+
+        @Override
+        public void advance() throws IOException {
+            int winner = tree[0];
+            runs[winner].advance();
+            for (int node = (winner + runs.length) >> 1; node > 0; node >>= 1) {
+                if (beats(tree[node], winner)) {
+                    int loser = winner;
+                    winner = tree[node];
+                    tree[node] = loser;
+                }
+            }
+            tree[0] = winner;
+        }
+
+        @Override
+        public Run copy() throws IOException {
+            List<Run> copies = Lists.newArrayListWithExpectedSize(runs.length);
+            try {
+                for (Run run : runs) {
+                    copies.add(run.copy());
+                }
+            } catch (IOException e) {
+                for (Run run : copies) {
+                    run.close();
+                }
+                throw e;
+            }
+            return new LoserTree(copies, comparator);
+        }
+
+        @Override
+        public void close() {
+            for (Run run : runs) {
+                run.close();
+            }
+        }
+    }
+}
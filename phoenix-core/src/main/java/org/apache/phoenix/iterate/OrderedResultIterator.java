@@ -21,11 +21,13 @@ import static org.apache.phoenix.thirdparty.com.google.common.base.Preconditions
 import static org.apache.phoenix.thirdparty.com.google.common.base.Preconditions.checkPositionIndex;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Queue;
+import java.util.concurrent.ExecutorService;
 
 import org.apache.hadoop.hbase.KeyValue;
 import org.apache.hadoop.hbase.client.Result;
@@ -49,8 +51,9 @@ import org.apache.phoenix.thirdparty.com.google.common.collect.Ordering;
 /**
  * Result scanner that sorts aggregated rows by columns specified in the ORDER BY clause.
  * <p>
- * Note that currently the sort is entirely done in memory. 
- *  
+ * Unless spooling is enabled, the sort is entirely done in memory. When given an executor,
+ * an ORDER BY without a LIMIT is sorted with a parallel external merge sort.
+ *
  * 
  * @since 0.1
  */
@@ -142,6 +145,8 @@ public class OrderedResultIterator implements PeekingResultIterator {
     private final ResultIterator delegate;
     private final List<OrderByExpression> orderByExpressions;
     private final long estimatedByteSize;
+    private final ExecutorService sortExecutor;
+    private final int mergeFactor;
     
     private PeekingResultIterator resultIterator;
     private long byteSize;
@@ -163,11 +168,26 @@ public class OrderedResultIterator implements PeekingResultIterator {
     public OrderedResultIterator(ResultIterator delegate,
             List<OrderByExpression> orderByExpressions, boolean spoolingEnabled,
             long thresholdBytes, Integer limit, Integer offset, int estimatedRowSize) {
+        this(delegate, orderByExpressions, spoolingEnabled, thresholdBytes, limit, offset,
+                estimatedRowSize, null, 0);
+    }
+
+    /**
+     * @param sortExecutor if not null and spooling is enabled, an ORDER BY without a LIMIT
+     *            is sorted with a parallel external merge sort on this executor
+     * @param mergeFactor the maximum number of sorted run files of the external sort
+     */
+    public OrderedResultIterator(ResultIterator delegate,
+            List<OrderByExpression> orderByExpressions, boolean spoolingEnabled,
+            long thresholdBytes, Integer limit, Integer offset, int estimatedRowSize,
+            ExecutorService sortExecutor, int mergeFactor) {
         checkArgument(!orderByExpressions.isEmpty());
         this.delegate = delegate;
         this.orderByExpressions = orderByExpressions;
         this.spoolingEnabled = spoolingEnabled;
         this.thresholdBytes = thresholdBytes;
+        this.sortExecutor = sortExecutor;
+        this.mergeFactor = mergeFactor;
         this.offset = offset == null ? 0 : offset;
         if (limit != null) {
             this.limit = limit + this.offset;
@@ -256,7 +276,10 @@ public class OrderedResultIterator implements PeekingResultIterator {
         final Comparator<ResultEntry> comparator = buildComparator(orderByExpressions);
         try{
             final SizeAwareQueue<ResultEntry> queueEntries =
-                    PhoenixQueues.newResultEntrySortedQueue(comparator, limit, spoolingEnabled,
+                    spoolingEnabled && limit == null && sortExecutor != null
+                    ? PhoenixQueues.newExternalResultEntrySortedQueue(comparator, thresholdBytes,
+                        sortExecutor, mergeFactor)
+                    : PhoenixQueues.newResultEntrySortedQueue(comparator, limit, spoolingEnabled,
                         thresholdBytes);
             resultIterator = new RecordPeekingResultIterator(queueEntries);
             for (Tuple result = delegate.next(); result != null; result = delegate.next()) {
@@ -273,6 +296,9 @@ public class OrderedResultIterator implements PeekingResultIterator {
             this.byteSize = queueEntries.getByteSize();
         } catch (IOException e) {
             ServerUtil.createIOException(e.getMessage(), e);
+        } catch (UncheckedIOException e) {
+            // A run of the external sort could not be spilled
+            throw ServerUtil.parseServerException(e.getCause());
         } finally {
             delegate.close();
         }
@@ -324,11 +350,11 @@ public class OrderedResultIterator implements PeekingResultIterator {
 
         @Override
         public Tuple next() throws SQLException {
-            ResultEntry entry = queueEntries.poll();
+            ResultEntry entry = poll();
             while (entry != null && offset != null && count < offset) {
                 count++;
                 if (entry.getResult() == null) { return null; }
-                entry = queueEntries.poll();
+                entry = poll();
             }
             if (entry == null || (limit != null && count++ > limit)) {
                 resultIterator.close();
@@ -340,18 +366,35 @@ public class OrderedResultIterator implements PeekingResultIterator {
 
         @Override
         public Tuple peek() throws SQLException {
-            ResultEntry entry = queueEntries.peek();
+            ResultEntry entry = peekEntry();
             while (entry != null && offset != null && count < offset) {
-                entry = queueEntries.poll();
+                entry = poll();
                 count++;
                 if (entry == null) { return null; }
             }
             if (limit != null && count > limit) { return null; }
-            entry = queueEntries.peek();
+            entry = peekEntry();
             if (entry == null) { return null; }
             return entry.getResult();
         }
 
+        // The external sort reads back its runs as entries are polled
+        private ResultEntry poll() throws SQLException {
+            try {
+                return queueEntries.poll();
+            } catch (UncheckedIOException e) {
+                throw ServerUtil.parseServerException(e.getCause());
+            }
+        }
+
+        private ResultEntry peekEntry() throws SQLException {
+            try {
+                return queueEntries.peek();
+            } catch (UncheckedIOException e) {
+                throw ServerUtil.parseServerException(e.getCause());
+            }
+        }
+
         @Override
         public void explain(List<String> planSteps) {
         }
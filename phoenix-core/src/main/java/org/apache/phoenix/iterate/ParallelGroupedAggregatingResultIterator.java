@@ -0,0 +1,337 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.phoenix.iterate;
+
+import static org.apache.phoenix.monitoring.TaskExecutionMetricsHolder.NO_OP_INSTANCE;
+import static org.apache.phoenix.query.QueryConstants.AGG_TIMESTAMP;
+import static org.apache.phoenix.query.QueryConstants.SINGLE_COLUMN;
+import static org.apache.phoenix.query.QueryConstants.SINGLE_COLUMN_FAMILY;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.hbase.Cell;
+import org.apache.phoenix.compile.StatementContext;
+import org.apache.phoenix.exception.SQLExceptionCode;
+import org.apache.phoenix.exception.SQLExceptionInfo;
+import org.apache.phoenix.expression.aggregator.Aggregator;
+import org.apache.phoenix.expression.aggregator.Aggregators;
+import org.apache.phoenix.expression.aggregator.ClientAggregators;
+import org.apache.phoenix.hbase.index.util.ImmutableBytesPtr;
+import org.apache.phoenix.job.JobManager.JobCallable;
+import org.apache.phoenix.memory.MemoryManager;
+import org.apache.phoenix.memory.MemoryManager.MemoryChunk;
+import org.apache.phoenix.monitoring.TaskExecutionMetricsHolder;
+import org.apache.phoenix.schema.tuple.MultiKeyValueTuple;
+import org.apache.phoenix.schema.tuple.Tuple;
+import org.apache.phoenix.util.PhoenixKeyValueUtil;
+import org.apache.phoenix.util.ServerUtil;
+import org.apache.phoenix.util.SizedUtil;
+
+/**
+ * Merges the partial aggregates of the groups returned by the regions on several threads.
+ * The partial groups are read in any order and hash partitioned on their group key, each
+ * partition being merged into a hash map by its own worker with its own client aggregators.
+ * The merged groups of every partition are returned one partition after the other, so in no
+ * particular order. The workers run on the executor returned by
+ * {@link org.apache.phoenix.query.QueryServices#getAggregateMergeExecutor()}, and the partitions
+ * without a worker are merged by the thread reading the partial groups.
+ */
+public class ParallelGroupedAggregatingResultIterator implements AggregatingResultIterator {
+    // Number of partial groups handed to a partition worker at a time
+    private static final int BATCH_SIZE = 1024;
+    // Number of batches that may be waiting for a partition worker
+    private static final int QUEUE_CAPACITY = 16;
+    private static final long OFFER_TIMEOUT_MS = 100;
+    private static final int MEMORY_CHUNK_SIZE = 64 * 1024;
+    // Sentinel batch telling a partition worker that there are no more partial groups
+    private static final List<Tuple> END_OF_INPUT = new ArrayList<Tuple>(0);
+
+    private final StatementContext context;
+    private final ResultIterator resultIterator;
+    private final Aggregators aggregators;
+    private final int numPartitions;
+    private final List<MemoryChunk> memoryChunks = Collections.synchronizedList(new ArrayList<MemoryChunk>());
+    private List<BlockingQueue<List<Tuple>>> queues;
+    private List<Future<Map<ImmutableBytesPtr, Aggregator[]>>> futures;
+    private List<Map<ImmutableBytesPtr, Aggregator[]>> partitions;
+    private Iterator<Map.Entry<ImmutableBytesPtr, Aggregator[]>> entryIterator;
+    private int partitionIndex;
+
+    public ParallelGroupedAggregatingResultIterator(StatementContext context, ResultIterator resultIterator,
+            Aggregators aggregators, int numPartitions) {
+        if (resultIterator == null) throw new NullPointerException();
+        if (aggregators == null) throw new NullPointerException();
+        this.context = context;
+        this.resultIterator = resultIterator;
+        this.aggregators = aggregators;
+        this.numPartitions = numPartitions;
+    }
+
+    @Override
+    public Tuple next() throws SQLException {
+        if (partitions == null) {
+            partitions = merge();
+            partitionIndex = 0;
+            entryIterator = partitions.get(0).entrySet().iterator();
+        }
+        while (!entryIterator.hasNext()) {
+            if (++partitionIndex >= partitions.size()) {
+                return null;
+            }
+            entryIterator = partitions.get(partitionIndex).entrySet().iterator();
+        }
+        Map.Entry<ImmutableBytesPtr, Aggregator[]> entry = entryIterator.next();
+        byte[] value = aggregators.toBytes(entry.getValue());
+        Cell keyValue = PhoenixKeyValueUtil.newKeyValue(entry.getKey(), SINGLE_COLUMN_FAMILY, SINGLE_COLUMN,
+                AGG_TIMESTAMP, value, 0, value.length);
+        return new MultiKeyValueTuple(Collections.<Cell> singletonList(keyValue));
+    }
+
+    /**
+     * Reads all the partial groups, handing them to the worker of their partition, and waits
+     * for every partition to be merged. The workers run on their own executor, and a partition
+     * for which no worker thread is available is merged by the calling thread as it reads the
+     * partial groups. If the merge fails, the workers are stopped right away.
+     */
+    private List<Map<ImmutableBytesPtr, Aggregator[]>> merge() throws SQLException {
+        ExecutorService executor = context.getConnection().getQueryServices().getAggregateMergeExecutor();
+        List<PartitionMerger> mergers = new ArrayList<PartitionMerger>(numPartitions);
+        queues = new ArrayList<BlockingQueue<List<Tuple>>>(numPartitions);
+        futures = new ArrayList<Future<Map<ImmutableBytesPtr, Aggregator[]>>>(numPartitions);
+        List<List<Tuple>> batches = new ArrayList<List<Tuple>>(numPartitions);
+        boolean success = false;
+        try {
+            for (int i = 0; i < numPartitions; i++) {
+                final PartitionMerger merger = new PartitionMerger();
+                final BlockingQueue<List<Tuple>> queue = new ArrayBlockingQueue<List<Tuple>>(QUEUE_CAPACITY);
+                Future<Map<ImmutableBytesPtr, Aggregator[]>> future;
+                try {
+                    future = executor.submit(new JobCallable<Map<ImmutableBytesPtr, Aggregator[]>>() {
+
+                        @Override
+                        public Map<ImmutableBytesPtr, Aggregator[]> call() throws Exception {
+                            return mergePartition(merger, queue);
+                        }
+
+                        @Override
+                        public Object getJobId() {
+                            return ParallelGroupedAggregatingResultIterator.this;
+                        }
+
+                        @Override
+                        public TaskExecutionMetricsHolder getTaskExecutionMetric() {
+                            return NO_OP_INSTANCE;
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    // All the merge threads are busy, so the partition is merged inline
+                    future = null;
+                }
+                mergers.add(merger);
+                futures.add(future);
+                queues.add(future == null ? null : queue);
+                batches.add(future == null ? null : new ArrayList<Tuple>(BATCH_SIZE));
+            }
+            ImmutableBytesPtr key = new ImmutableBytesPtr();
+            for (Tuple result = resultIterator.next(); result != null; result = resultIterator.next()) {
+                result.getKey(key);
+                int partition = getPartition(key.hashCode(), numPartitions);
+                List<Tuple> batch = batches.get(partition);
+                if (batch == null) {
+                    mergers.get(partition).aggregate(result);
+                    continue;
+                }
+                batch.add(result);
+                if (batch.size() >= BATCH_SIZE) {
+                    put(partition, batch);
+                    batches.set(partition, new ArrayList<Tuple>(BATCH_SIZE));
+                }
+            }
+            for (int i = 0; i < numPartitions; i++) {
+                if (batches.get(i) == null) {
+                    continue;
+                }
+                if (!batches.get(i).isEmpty()) {
+                    put(i, batches.get(i));
+                }
+                put(i, END_OF_INPUT);
+            }
+            List<Map<ImmutableBytesPtr, Aggregator[]>> partitions =
+                    new ArrayList<Map<ImmutableBytesPtr, Aggregator[]>>(numPartitions);
+            for (int i = 0; i < numPartitions; i++) {
+                Future<Map<ImmutableBytesPtr, Aggregator[]>> future = futures.get(i);
+                partitions.add(future == null ? mergers.get(i).groups : getResult(future));
+            }
+            success = true;
+            return partitions;
+        } finally {
+            if (!success) {
+                cancelWorkers();
+            }
+        }
+    }
+
+    private static Map<ImmutableBytesPtr, Aggregator[]> mergePartition(PartitionMerger merger,
+            BlockingQueue<List<Tuple>> queue) throws InterruptedException {
+        while (true) {
+            List<Tuple> batch = queue.take();
+            if (batch == END_OF_INPUT) {
+                return merger.groups;
+            }
+            for (Tuple result : batch) {
+                merger.aggregate(result);
+            }
+        }
+    }
+
+    /**
+     * Merges the partial groups of a partition into a hash map. Client aggregators keep state
+     * while aggregating, so each partition needs its own.
+     */
+    private class PartitionMerger {
+        private final ClientAggregators partitionAggregators = new ClientAggregators(
+                Arrays.asList(aggregators.getFunctions()), aggregators.getMinNullableIndex());
+        private final int aggSize = aggregators.getEstimatedByteSize();
+        private final MemoryChunk memoryChunk;
+        private final Map<ImmutableBytesPtr, Aggregator[]> groups = new HashMap<ImmutableBytesPtr, Aggregator[]>();
+        private final ImmutableBytesPtr key = new ImmutableBytesPtr();
+        private long keySize = 0;
+
+        PartitionMerger() {
+            MemoryManager memoryManager = context.getConnection().getQueryServices().getMemoryManager();
+            memoryChunk = memoryManager.allocate(MEMORY_CHUNK_SIZE);
+            memoryChunks.add(memoryChunk);
+        }
+
+        void aggregate(Tuple result) {
+            result.getKey(key);
+            Aggregator[] rowAggregators = groups.get(key);
+            if (rowAggregators == null) {
+                keySize += key.getSize();
+                long size = SizedUtil.sizeOfMap(groups.size() + 1, SizedUtil.IMMUTABLE_BYTES_WRITABLE_SIZE, aggSize) + keySize;
+                if (size > memoryChunk.getSize() + MEMORY_CHUNK_SIZE) {
+                    // This will throw InsufficientMemoryException if necessary
+                    memoryChunk.resize(size + MEMORY_CHUNK_SIZE);
+                }
+                rowAggregators = partitionAggregators.newAggregators();
+                groups.put(new ImmutableBytesPtr(key), rowAggregators);
+            }
+            partitionAggregators.aggregate(rowAggregators, result);
+        }
+    }
+
+    /**
+     * Maps the hash code of a group key onto a partition using its high bits after mixing, so
+     * that the groups of a partition still spread over the buckets of its hash map.
+     */
+    static int getPartition(int hashCode, int numPartitions) {
+        long mixed = (hashCode * 0x9E3779B9) & 0xFFFFFFFFL;
+        return (int)((mixed * numPartitions) >>> 32);
+    }
+
+    private void put(int partition, List<Tuple> batch) throws SQLException {
+        BlockingQueue<List<Tuple>> queue = queues.get(partition);
+        Future<Map<ImmutableBytesPtr, Aggregator[]>> future = futures.get(partition);
+        try {
+            while (!queue.offer(batch, OFFER_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                if (future.isDone()) {
+                    // The worker can only have stopped early by failing
+                    getResult(future);
+                    throw new IllegalStateException("Merge of partition " + partition + " ended before its input");
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLExceptionInfo.Builder(SQLExceptionCode.INTERRUPTED_EXCEPTION)
+                    .setRootCause(e).build().buildException();
+        }
+    }
+
+    private static <T> T getResult(Future<T> future) throws SQLException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            throw ServerUtil.parseServerException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLExceptionInfo.Builder(SQLExceptionCode.INTERRUPTED_EXCEPTION)
+                    .setRootCause(e).build().buildException();
+        }
+    }
+
+    private void cancelWorkers() {
+        if (futures != null) {
+            for (Future<Map<ImmutableBytesPtr, Aggregator[]>> future : futures) {
+                if (future != null) {
+                    future.cancel(true);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() throws SQLException {
+        entryIterator = null;
+        partitions = null;
+        try {
+            cancelWorkers();
+            synchronized (memoryChunks) {
+                for (MemoryChunk memoryChunk : memoryChunks) {
+                    memoryChunk.close();
+                }
+                memoryChunks.clear();
+            }
+        } finally {
+            resultIterator.close();
+        }
+    }
+
+    @Override
+    public Aggregator[] aggregate(Tuple result) {
+        Aggregator[] rowAggregators = aggregators.getAggregators();
+        aggregators.reset(rowAggregators);
+        aggregators.aggregate(rowAggregators, result);
+        return rowAggregators;
+    }
+
+    @Override
+    public void explain(List<String> planSteps) {
+        resultIterator.explain(planSteps);
+        planSteps.add("CLIENT PARALLEL MERGE INTO " + numPartitions + " PARTITIONS");
+    }
+
+    @Override
+    public String toString() {
+        return "ParallelGroupedAggregatingResultIterator [resultIterator=" + resultIterator
+                + ", aggregators=" + aggregators + ", numPartitions=" + numPartitions + "]";
+    }
+}
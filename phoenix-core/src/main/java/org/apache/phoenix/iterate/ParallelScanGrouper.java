@@ -43,4 +43,27 @@ public interface ParallelScanGrouper {
 
 	List<HRegionLocation> getRegionBoundaries(StatementContext context, byte[] tableName) throws SQLException;
 
+	/**
+	 * Determines whether the scan of a guidepost chunk should be extended over the next
+	 * chunk of the same region instead of ending at the guidepost.
+	 *
+	 * @param plan						current query plan
+	 * @param estimatedRows				estimated number of rows of the scan up to the guidepost
+	 * @return true if the scan should be extended to the next guidepost
+	 */
+	default boolean shouldMergeWithNextChunk(QueryPlan plan, long estimatedRows) {
+		return false;
+	}
+
+	/**
+	 * Determines the number of scans the scan of a guidepost chunk is split into.
+	 *
+	 * @param plan						current query plan
+	 * @param estimatedRows				estimated number of rows of the guidepost chunk
+	 * @return number of scans to run over the chunk
+	 */
+	default int getChunkSplitCount(QueryPlan plan, long estimatedRows) {
+		return 1;
+	}
+
 }
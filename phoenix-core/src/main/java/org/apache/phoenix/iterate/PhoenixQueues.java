@@ -20,6 +20,8 @@ package org.apache.phoenix.iterate;
 import java.io.IOException;
 import java.util.Comparator;
 import java.util.LinkedList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
 
 import org.apache.hadoop.hbase.KeyValue;
 import org.apache.hadoop.hbase.util.Bytes;
@@ -84,6 +86,20 @@ public class PhoenixQueues {
         }
     }
 
+    /**
+     * Create a queue that sorts with a parallel external merge sort, running on at most as
+     * many threads of the executor as there are cores.
+     */
+    public static SizeAwareQueue<ResultEntry> newExternalResultEntrySortedQueue(
+            Comparator<ResultEntry> comparator, long thresholdBytes, ExecutorService executor,
+            int mergeFactor) {
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        if (executor instanceof ThreadPoolExecutor) {
+            parallelism = Math.min(parallelism, ((ThreadPoolExecutor) executor).getMaximumPoolSize());
+        }
+        return new ExternalSortedQueue(comparator, thresholdBytes, executor, parallelism, mergeFactor);
+    }
+
     public static SizeAwareQueue<Tuple> newTupleQueue(boolean spoolingEnabled,
             long thresholdBytes) {
         if (spoolingEnabled) {
@@ -22,19 +22,22 @@ import static org.apache.phoenix.monitoring.GlobalClientMetrics.GLOBAL_MEMORY_WA
 import static org.apache.phoenix.monitoring.GlobalClientMetrics.GLOBAL_SPOOL_FILE_COUNTER;
 import static org.apache.phoenix.monitoring.GlobalClientMetrics.GLOBAL_SPOOL_FILE_SIZE;
 
-import java.io.BufferedInputStream;
-import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.StandardOpenOption;
 import java.sql.SQLException;
 import java.util.List;
 
 import org.apache.commons.io.output.DeferredFileOutputStream;
 import org.apache.hadoop.hbase.client.Scan;
 import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.util.Bytes;
 import org.apache.hadoop.io.WritableUtils;
 import org.apache.phoenix.compile.QueryPlan;
 import org.apache.phoenix.compile.StatementContext;
@@ -51,7 +54,9 @@ import org.apache.phoenix.util.ByteUtil;
 import org.apache.phoenix.util.EnvironmentEdgeManager;
 import org.apache.phoenix.util.ResultUtil;
 import org.apache.phoenix.util.ServerUtil;
+import org.apache.phoenix.util.TrustedByteArrayOutputStream;
 import org.apache.phoenix.util.TupleUtil;
+import org.iq80.snappy.Snappy;
 
 /**
  *
@@ -69,6 +74,11 @@ import org.apache.phoenix.util.TupleUtil;
 @Deprecated
 public class SpoolingResultIterator implements PeekingResultIterator {
     
+    // Size of the blocks results are compressed in, and read back from disk in
+    private static final int BLOCK_SIZE = 64 * 1024;
+    // Size of the windows of a spool file that are memory mapped at a time
+    private static final long MAP_WINDOW_SIZE = 64L * 1024 * 1024;
+
     private final PeekingResultIterator spoolFrom;
     private final SpoolingMetricsHolder spoolMetrics;
     private final MemoryMetricsHolder memoryMetrics;
@@ -99,7 +109,13 @@ public class SpoolingResultIterator implements PeekingResultIterator {
                 services.getProps().getLong(QueryServices.CLIENT_SPOOL_THRESHOLD_BYTES_ATTRIB,
                     QueryServicesOptions.DEFAULT_CLIENT_SPOOL_THRESHOLD_BYTES),
                 services.getProps().getLong(QueryServices.MAX_SPOOL_TO_DISK_BYTES_ATTRIB, QueryServicesOptions.DEFAULT_MAX_SPOOL_TO_DISK_BYTES),
-                services.getProps().get(QueryServices.SPOOL_DIRECTORY, QueryServicesOptions.DEFAULT_SPOOL_DIRECTORY));
+                services.getProps().get(QueryServices.SPOOL_DIRECTORY, QueryServicesOptions.DEFAULT_SPOOL_DIRECTORY),
+                services.getProps().getBoolean(QueryServices.CLIENT_SPOOL_COMPRESSION_ENABLED_ATTRIB,
+                    QueryServicesOptions.DEFAULT_CLIENT_SPOOL_COMPRESSION_ENABLED));
+    }
+
+    SpoolingResultIterator(SpoolingMetricsHolder sMetrics, MemoryMetricsHolder mMetrics, ResultIterator scanner, MemoryManager mm, final long thresholdBytes, final long maxSpoolToDisk, final String spoolDirectory) throws SQLException {
+        this(sMetrics, mMetrics, scanner, mm, thresholdBytes, maxSpoolToDisk, spoolDirectory, false);
     }
 
     /**
@@ -109,9 +125,10 @@ public class SpoolingResultIterator implements PeekingResultIterator {
     * @param mm memory manager tracking memory usage across threads.
     * @param thresholdBytes the requested threshold.  Will be dialed down if memory usage (as determined by
     *  the memory manager) is exceeded.
+    * @param compress whether results are spooled as Snappy compressed blocks instead of as is
     * @throws SQLException
     */
-    SpoolingResultIterator(SpoolingMetricsHolder sMetrics, MemoryMetricsHolder mMetrics, ResultIterator scanner, MemoryManager mm, final long thresholdBytes, final long maxSpoolToDisk, final String spoolDirectory) throws SQLException {
+    SpoolingResultIterator(SpoolingMetricsHolder sMetrics, MemoryMetricsHolder mMetrics, ResultIterator scanner, MemoryManager mm, final long thresholdBytes, final long maxSpoolToDisk, final String spoolDirectory, boolean compress) throws SQLException {
         this.spoolMetrics = sMetrics;
         this.memoryMetrics = mMetrics;
         boolean success = false;
@@ -135,20 +152,30 @@ public class SpoolingResultIterator implements PeekingResultIterator {
                 }
             };
             DataOutputStream out = new DataOutputStream(spoolTo);
+            // When compressing, results are gathered into a block that is compressed once full
+            TrustedByteArrayOutputStream block = compress ? new TrustedByteArrayOutputStream(BLOCK_SIZE + BLOCK_SIZE / 4) : null;
+            DataOutputStream resultOut = compress ? new DataOutputStream(block) : out;
+            byte[] compressed = compress ? new byte[Snappy.maxCompressedLength(BLOCK_SIZE)] : null;
             final long maxBytesAllowed = maxSpoolToDisk == -1 ?
             		Long.MAX_VALUE : thresholdBytes + maxSpoolToDisk;
             long bytesWritten = 0L;
             for (Tuple result = scanner.next(); result != null; result = scanner.next()) {
-                int length = TupleUtil.write(result, out);
+                int length = TupleUtil.write(result, resultOut);
                 bytesWritten += length;
                 if(bytesWritten > maxBytesAllowed){
                 		throw new SpoolTooBigToDiskException("result too big, max allowed(bytes): " + maxBytesAllowed);
                 }
+                if (compress && block.size() >= BLOCK_SIZE) {
+                    compressed = writeBlock(out, block, compressed);
+                }
+            }
+            if (compress && block.size() > 0) {
+                writeBlock(out, block, compressed);
             }
             if (spoolTo.isInMemory()) {
                 byte[] data = spoolTo.getData();
                 chunk.resize(data.length);
-                spoolFrom = new InMemoryResultIterator(data, chunk);
+                spoolFrom = new InMemoryResultIterator(data, chunk, compress);
                 GLOBAL_MEMORY_CHUNK_BYTES.update(data.length);
                 memoryMetrics.getMemoryChunkSizeMetric().change(data.length);
             } else {
@@ -157,7 +184,7 @@ public class SpoolingResultIterator implements PeekingResultIterator {
                 GLOBAL_SPOOL_FILE_COUNTER.increment();
                 spoolMetrics.getNumSpoolFileMetric().increment();
                 spoolMetrics.getSpoolFileSizeMetric().change(sizeOfSpoolFile);
-                spoolFrom = new OnDiskResultIterator(spoolTo.getFile());
+                spoolFrom = new OnDiskResultIterator(spoolTo.getFile(), compress);
                 if (spoolTo.getFile() != null) {
                     spoolTo.getFile().deleteOnExit();
                 }
@@ -187,6 +214,24 @@ public class SpoolingResultIterator implements PeekingResultIterator {
         }
     }
 
+    /**
+     * Compress a block of results with Snappy and write it prefixed with its uncompressed
+     * and compressed length.
+     */
+    private static byte[] writeBlock(DataOutputStream out, TrustedByteArrayOutputStream block,
+            byte[] compressed) throws IOException {
+        int maxCompressedLength = Snappy.maxCompressedLength(block.size());
+        if (compressed.length < maxCompressedLength) {
+            compressed = new byte[maxCompressedLength];
+        }
+        int compressedLength = Snappy.compress(block.getBuffer(), 0, block.size(), compressed, 0);
+        out.writeInt(block.size());
+        out.writeInt(compressedLength);
+        out.write(compressed, 0, compressedLength);
+        block.reset();
+        return compressed;
+    }
+
     @Override
     public Tuple peek() throws SQLException {
         return spoolFrom.peek();
@@ -203,34 +248,37 @@ public class SpoolingResultIterator implements PeekingResultIterator {
     }
 
     /**
-     *
-     * Backing result iterator if it was not necessary to spool results to disk.
-     *
-     *
-     * @since 0.1
+     * Hands out the results spooled into a sequence of blocks, each holding whole results
+     * prefixed with their length. Results point into the block they were read from instead
+     * of being copied out of it, so a new block is read rather than reusing the last one.
      */
-    private static class InMemoryResultIterator implements PeekingResultIterator {
-        private final MemoryChunk memoryChunk;
-        private final byte[] bytes;
-        private Tuple next;
+    private static abstract class BlockResultIterator implements PeekingResultIterator {
+        private byte[] block;
         private int offset;
+        private int limit;
+        protected Tuple next;
 
-        private InMemoryResultIterator(byte[] bytes, MemoryChunk memoryChunk) throws SQLException {
-            this.bytes = bytes;
-            this.memoryChunk = memoryChunk;
-            advance();
+        /**
+         * Read the next block of results
+         * @return false if there are no more results
+         */
+        protected abstract boolean readBlock() throws IOException;
+
+        protected void setBlock(byte[] block, int offset, int length) {
+            this.block = block;
+            this.offset = offset;
+            this.limit = offset + length;
         }
 
-        private Tuple advance() throws SQLException {
-            if (offset >= bytes.length) {
+        protected Tuple advance() throws IOException {
+            if (offset >= limit && !readBlock()) {
                 return next = null;
             }
-            int resultSize = ByteUtil.vintFromBytes(bytes, offset);
+            int resultSize = ByteUtil.vintFromBytes(block, offset);
             offset += WritableUtils.getVIntSize(resultSize);
-            ImmutableBytesWritable value = new ImmutableBytesWritable(bytes,offset,resultSize);
+            ImmutableBytesWritable value = new ImmutableBytesWritable(block, offset, resultSize);
             offset += resultSize;
-            Tuple result = new ResultTuple(ResultUtil.toResult(value));
-            return next = result;
+            return next = new ResultTuple(ResultUtil.toResult(value));
         }
 
         @Override
@@ -241,40 +289,100 @@ public class SpoolingResultIterator implements PeekingResultIterator {
         @Override
         public Tuple next() throws SQLException {
             Tuple current = next;
-            advance();
+            try {
+                advance();
+            } catch (IOException e) {
+                throw ServerUtil.parseServerException(e);
+            }
             return current;
         }
 
         @Override
-        public void close() {
-            memoryChunk.close();
+        public void explain(List<String> planSteps) {
+        }
+    }
+
+    /**
+     *
+     * Backing result iterator if it was not necessary to spool results to disk.
+     *
+     *
+     * @since 0.1
+     */
+    private static class InMemoryResultIterator extends BlockResultIterator {
+        private final MemoryChunk memoryChunk;
+        private final byte[] bytes;
+        private final boolean compressed;
+        private int offset;
+
+        private InMemoryResultIterator(byte[] bytes, MemoryChunk memoryChunk, boolean compressed) throws SQLException {
+            this.bytes = bytes;
+            this.memoryChunk = memoryChunk;
+            this.compressed = compressed;
+            try {
+                advance();
+            } catch (IOException e) {
+                throw ServerUtil.parseServerException(e);
+            }
         }
 
         @Override
-        public void explain(List<String> planSteps) {
+        protected boolean readBlock() throws IOException {
+            if (offset >= bytes.length) {
+                return false;
+            }
+            if (!compressed) {
+                setBlock(bytes, 0, bytes.length);
+                offset = bytes.length;
+                return true;
+            }
+            int uncompressedLength = Bytes.toInt(bytes, offset);
+            int compressedLength = Bytes.toInt(bytes, offset + Bytes.SIZEOF_INT);
+            offset += 2 * Bytes.SIZEOF_INT;
+            byte[] block = new byte[uncompressedLength];
+            Snappy.uncompress(bytes, offset, compressedLength, block, 0);
+            offset += compressedLength;
+            setBlock(block, 0, uncompressedLength);
+            return true;
+        }
+
+        @Override
+        public void close() {
+            memoryChunk.close();
         }
     }
 
     /**
      *
-     * Backing result iterator if results were spooled to disk
+     * Backing result iterator if results were spooled to disk. The spool file is memory mapped
+     * a window at a time. Results are copied out of the mapping a block of whole results at a
+     * time, or decompressed from it when the results were spooled compressed, rather than
+     * being read through a stream into an array of their own.
      *
      *
      * @since 0.1
      */
-    private static class OnDiskResultIterator implements PeekingResultIterator {
+    private static class OnDiskResultIterator extends BlockResultIterator {
         private final File file;
-        private DataInputStream spoolFrom;
-        private Tuple next;
+        private final boolean compressed;
+        private FileChannel channel;
+        private MappedByteBuffer window;
+        private long windowStart;
+        private long position;
+        private long fileSize;
+        private byte[] compressedBlock = new byte[0];
+        private final byte[] vintBytes = new byte[WritableUtils.getVIntSize(Integer.MIN_VALUE)];
         private boolean isClosed;
 
-        private OnDiskResultIterator (File file) {
+        private OnDiskResultIterator (File file, boolean compressed) {
             this.file = file;
+            this.compressed = compressed;
         }
 
         private synchronized void init() throws IOException {
-            if (spoolFrom == null) {
-                spoolFrom = new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath())));
+            if (channel == null && !isClosed) {
+                channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+                fileSize = channel.size();
                 advance();
             }
         }
@@ -282,40 +390,87 @@ public class SpoolingResultIterator implements PeekingResultIterator {
         private synchronized void reachedEnd() throws IOException {
             next = null;
             isClosed = true;
+            // The mapping is released once it is garbage collected, which doesn't prevent
+            // deleting the file on the platforms we run on
+            window = null;
             try {
-                if (spoolFrom != null) {
-                    spoolFrom.close();
+                if (channel != null) {
+                    channel.close();
                 }
             } finally {
                 file.delete();
             }
         }
 
-        private synchronized Tuple advance() throws IOException {
+        /**
+         * Map the window of the file starting at start if the current one doesn't cover the
+         * given number of bytes from there.
+         */
+        private void map(long start, int length) throws IOException {
+            if (start + length > fileSize) {
+                throw new EOFException("Spool file " + file + " ended before the result at " + start);
+            }
+            if (window != null && start >= windowStart && start + length <= windowStart + window.capacity()) {
+                return;
+            }
+            long size = Math.min(Math.max(MAP_WINDOW_SIZE, length), fileSize - start);
+            window = channel.map(MapMode.READ_ONLY, start, size);
+            windowStart = start;
+        }
+
+        private void copy(long start, byte[] dest, int length) {
+            ByteBuffer buffer = window.duplicate();
+            buffer.position((int)(start - windowStart));
+            buffer.get(dest, 0, length);
+        }
+
+        @Override
+        protected boolean readBlock() throws IOException {
             if (isClosed) {
-                return next;
+                return false;
             }
-            int length;
-            try {
-                length = WritableUtils.readVInt(spoolFrom);
-            } catch (EOFException e) {
+            if (position >= fileSize) {
                 reachedEnd();
-                return next;
+                return false;
             }
-            int totalBytesRead = 0;
-            int offset = 0;
-            byte[] buffer = new byte[length];
-            while(totalBytesRead < length) {
-                int bytesRead = spoolFrom.read(buffer, offset, length);
-                if (bytesRead == -1) {
-                    reachedEnd();
-                    return next;
-                }
-                offset += bytesRead;
-                totalBytesRead += bytesRead;
+            return compressed ? readCompressedBlock() : readUncompressedBlock();
+        }
+
+        private boolean readUncompressedBlock() throws IOException {
+            // Gather whole results until the block is full, keeping at least one however big it is
+            long start = position;
+            int length = 0;
+            while (length < BLOCK_SIZE && start + length < fileSize) {
+                map(start, length + 1);
+                int vintSize = WritableUtils.decodeVIntSize(window.get((int)(start + length - windowStart)));
+                map(start, length + vintSize);
+                copy(start + length, vintBytes, vintSize);
+                int resultLength = vintSize + ByteUtil.vintFromBytes(vintBytes, 0);
+                map(start, length + resultLength);
+                length += resultLength;
             }
-            next = new ResultTuple(ResultUtil.toResult(new ImmutableBytesWritable(buffer,0,length)));
-            return next;
+            byte[] block = new byte[length];
+            copy(start, block, length);
+            position = start + length;
+            setBlock(block, 0, length);
+            return true;
+        }
+
+        private boolean readCompressedBlock() throws IOException {
+            map(position, 2 * Bytes.SIZEOF_INT);
+            int uncompressedLength = window.getInt((int)(position - windowStart));
+            int compressedLength = window.getInt((int)(position - windowStart) + Bytes.SIZEOF_INT);
+            position += 2 * Bytes.SIZEOF_INT;
+            map(position, compressedLength);
+            if (compressedBlock.length < compressedLength) {
+                compressedBlock = new byte[compressedLength];
+            }
+            copy(position, compressedBlock, compressedLength);
+            position += compressedLength;
+            byte[] block = new byte[uncompressedLength];
+            Snappy.uncompress(compressedBlock, 0, compressedLength, block, 0);
+            setBlock(block, 0, uncompressedLength);
+            return true;
         }
 
         @Override
@@ -332,12 +487,10 @@ public class SpoolingResultIterator implements PeekingResultIterator {
         public synchronized Tuple next() throws SQLException {
             try {
                 init();
-                Tuple current = next;
-                advance();
-                return current;
             } catch (IOException e) {
                 throw ServerUtil.parseServerException(e);
             }
+            return super.next();
         }
 
         @Override
@@ -350,10 +503,6 @@ public class SpoolingResultIterator implements PeekingResultIterator {
                 throw ServerUtil.parseServerException(e);
             }
         }
-
-        @Override
-        public void explain(List<String> planSteps) {
-        }
     }
 
     @Override
@@ -0,0 +1,86 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.phoenix.jdbc;
+
+import org.apache.phoenix.jdbc.PhoenixStatement.CompilableStatement;
+import org.apache.phoenix.jdbc.PhoenixStatement.Operation;
+import org.apache.phoenix.query.QueryServices;
+import org.apache.phoenix.query.QueryServicesOptions;
+import org.apache.phoenix.thirdparty.com.google.common.cache.Cache;
+import org.apache.phoenix.thirdparty.com.google.common.cache.CacheBuilder;
+import org.apache.phoenix.util.ReadOnlyProps;
+
+/**
+ * Cache of the statements parsed from SQL text, shared by all the connections of a
+ * {@link org.apache.phoenix.query.ConnectionQueryServices} so that executing the same
+ * SQL text again doesn't go through the parser.
+ *
+ * The parse of a statement doesn't depend on the tenant, the schema or the table metadata,
+ * so a cached statement is handed out as is to any number of connections. Only queries,
+ * upserts and deletes are cached, as their parse nodes are not modified once parsed. DDL
+ * statements are not: the column definitions of CREATE TABLE for instance are updated by
+ * MetaDataClient when the table already exists. The cache is disabled unless
+ * {@link QueryServices#PARSED_STATEMENT_CACHE_SIZE_ATTRIB} is set.
+ */
+public class ParsedStatementCache {
+    public static final ParsedStatementCache NO_OP_INSTANCE = new ParsedStatementCache(0, 0);
+
+    private final Cache<String, CompilableStatement> cache;
+    private final int maxSqlLength;
+
+    private ParsedStatementCache(long maxSize, int maxSqlLength) {
+        this.cache = maxSize <= 0 ? null : CacheBuilder.newBuilder().maximumSize(maxSize).<String, CompilableStatement>build();
+        this.maxSqlLength = maxSqlLength;
+    }
+
+    public static ParsedStatementCache newInstance(ReadOnlyProps props) {
+        long maxSize = props.getLong(QueryServices.PARSED_STATEMENT_CACHE_SIZE_ATTRIB,
+                QueryServicesOptions.DEFAULT_PARSED_STATEMENT_CACHE_SIZE);
+        int maxSqlLength = props.getInt(QueryServices.PARSED_STATEMENT_CACHE_MAX_SQL_LENGTH_ATTRIB,
+                QueryServicesOptions.DEFAULT_PARSED_STATEMENT_CACHE_MAX_SQL_LENGTH);
+        return maxSize <= 0 ? NO_OP_INSTANCE : new ParsedStatementCache(maxSize, maxSqlLength);
+    }
+
+    CompilableStatement get(String sql) {
+        if (cache == null) {
+            return null;
+        }
+        return cache.getIfPresent(sql);
+    }
+
+    void put(String sql, CompilableStatement statement) {
+        if (cache == null || sql.length() > maxSqlLength) {
+            return;
+        }
+        // Statements whose parse nodes may be modified while they are executed must not be shared
+        Operation operation = statement.getOperation();
+        if (operation == Operation.QUERY || operation == Operation.UPSERT || operation == Operation.DELETE) {
+            cache.put(sql, statement);
+        }
+    }
+
+    public long size() {
+        return cache == null ? 0 : cache.size();
+    }
+
+    public void clear() {
+        if (cache != null) {
+            cache.invalidateAll();
+        }
+    }
+}
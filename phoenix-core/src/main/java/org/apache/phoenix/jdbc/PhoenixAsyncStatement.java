@@ -0,0 +1,66 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.phoenix.jdbc;
+
+import java.sql.ResultSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Asynchronous execution of statements, obtained by unwrapping a statement created by a
+ * Phoenix connection:
+ * <pre>
+ * PhoenixAsyncStatement stmt = conn.createStatement().unwrap(PhoenixAsyncStatement.class);
+ * stmt.executeQueryAsync("SELECT ...").thenCompose(rs -&gt; stmt.fetchAsync(rs, 1000))...
+ * </pre>
+ * Each method returns right away with a future that completes with the result of the call, or
+ * exceptionally with the {@link java.sql.SQLException} the corresponding blocking call would
+ * have thrown. The work runs on the executor returned by
+ * {@link org.apache.phoenix.query.QueryServices#getAsyncExecutor()}, so the calling thread
+ * is never blocked on a scan or a commit. Each call still occupies a thread of that executor
+ * until it completes, so at most phoenix.query.asyncStatement.threadPoolSize calls run at once
+ * and the others wait in its queue.
+ *
+ * As with the blocking calls, a statement and its result sets must not be used concurrently:
+ * the next call on a statement should be made once the future of the previous one completed.
+ */
+public interface PhoenixAsyncStatement {
+    /**
+     * Asynchronously execute a query, as {@link java.sql.Statement#executeQuery(String)} does
+     */
+    CompletableFuture<ResultSet> executeQueryAsync(String sql);
+
+    /**
+     * Asynchronously execute an upsert or a delete, as {@link java.sql.Statement#executeUpdate(String)} does
+     */
+    CompletableFuture<Integer> executeUpdateAsync(String sql);
+
+    /**
+     * Asynchronously read the next rows of a result set
+     * @param rs result set returned by this statement
+     * @param maxRows maximum number of rows to read
+     * @return future of the column values of the rows read, with fewer than maxRows rows
+     * once the result set is exhausted
+     */
+    CompletableFuture<List<Object[]>> fetchAsync(ResultSet rs, int maxRows);
+
+    /**
+     * Asynchronously commit the connection of this statement, as {@link java.sql.Connection#commit()} does
+     */
+    CompletableFuture<Void> commitAsync();
+}
@@ -45,6 +45,8 @@ import java.util.BitSet;
 import java.util.Calendar;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 
 import org.apache.phoenix.compile.BindManager;
 import org.apache.phoenix.compile.MutationPlan;
@@ -206,6 +208,32 @@ public class PhoenixPreparedStatement extends PhoenixStatement implements Prepar
         return executeMutation(statement);
     }
 
+    /**
+     * Asynchronously execute this query, as {@link #executeQuery()} does. The parameters
+     * must not be changed until the returned future completes.
+     */
+    public CompletableFuture<ResultSet> executeQueryAsync() {
+        return executeAsync(new Callable<ResultSet>() {
+            @Override
+            public ResultSet call() throws SQLException {
+                return executeQuery();
+            }
+        });
+    }
+
+    /**
+     * Asynchronously execute this upsert or delete, as {@link #executeUpdate()} does. The
+     * parameters must not be changed until the returned future completes.
+     */
+    public CompletableFuture<Integer> executeUpdateAsync() {
+        return executeAsync(new Callable<Integer>() {
+            @Override
+            public Integer call() throws SQLException {
+                return executeUpdate();
+            }
+        });
+    }
+
     public QueryPlan optimizeQuery() throws SQLException {
         throwIfUnboundParameters();
         return optimizeQuery(statement);
@@ -40,6 +40,10 @@ import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileSystem;
@@ -218,7 +222,7 @@ import org.apache.phoenix.thirdparty.com.google.common.math.IntMath;
  * 
  * @since 0.1
  */
-public class PhoenixStatement implements Statement, SQLCloseable {
+public class PhoenixStatement implements Statement, SQLCloseable, PhoenixAsyncStatement {
 	
     private static final Logger LOGGER = LoggerFactory.getLogger(PhoenixStatement.class);
     
@@ -1816,13 +1820,19 @@ public class PhoenixStatement implements Statement, SQLCloseable {
     }
     
     protected CompilableStatement parseStatement(String sql) throws SQLException {
+        ParsedStatementCache cache = connection.getQueryServices().getParsedStatementCache();
+        CompilableStatement statement = cache.get(sql);
+        if (statement != null) {
+            return statement;
+        }
         PhoenixStatementParser parser = null;
         try {
             parser = new PhoenixStatementParser(sql, new ExecutableNodeFactory());
         } catch (IOException e) {
             throw ServerUtil.parseServerException(e);
         }
-        CompilableStatement statement = parser.parseStatement();
+        statement = parser.parseStatement();
+        cache.put(sql, statement);
         return statement;
     }
     
@@ -1916,6 +1926,91 @@ public class PhoenixStatement implements Statement, SQLCloseable {
             connection.flush();
         }
     }
+
+    /**
+     * Run a blocking call on the asynchronous executor of the query services
+     * @return a future completed with the result of the call
+     */
+    protected <T> CompletableFuture<T> executeAsync(final Callable<T> callable) {
+        final CompletableFuture<T> future = new CompletableFuture<T>();
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    future.complete(callable.call());
+                } catch (Throwable t) {
+                    future.completeExceptionally(t);
+                }
+            }
+        };
+        ThreadPoolExecutor executor = connection.getQueryServices().getAsyncExecutor();
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            // The executor is shut down when the query services are closed, in which case a new
+            // one is created for the next statement
+            if (executor.isShutdown()) {
+                try {
+                    connection.getQueryServices().getAsyncExecutor().execute(task);
+                    return future;
+                } catch (RejectedExecutionException e1) {
+                    e = e1;
+                }
+            }
+            future.completeExceptionally(ServerUtil.parseServerException(e));
+        }
+        return future;
+    }
+
+    @Override
+    public CompletableFuture<ResultSet> executeQueryAsync(final String sql) {
+        return executeAsync(new Callable<ResultSet>() {
+            @Override
+            public ResultSet call() throws SQLException {
+                return executeQuery(sql);
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<Integer> executeUpdateAsync(final String sql) {
+        return executeAsync(new Callable<Integer>() {
+            @Override
+            public Integer call() throws SQLException {
+                return executeUpdate(sql);
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<List<Object[]>> fetchAsync(final ResultSet rs, final int maxRows) {
+        return executeAsync(new Callable<List<Object[]>>() {
+            @Override
+            public List<Object[]> call() throws SQLException {
+                int columnCount = rs.getMetaData().getColumnCount();
+                List<Object[]> rows = Lists.newArrayListWithExpectedSize(Math.min(maxRows, 1024));
+                while (rows.size() < maxRows && rs.next()) {
+                    Object[] row = new Object[columnCount];
+                    for (int i = 0; i < columnCount; i++) {
+                        row[i] = rs.getObject(i + 1);
+                    }
+                    rows.add(row);
+                }
+                return rows;
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> commitAsync() {
+        return executeAsync(new Callable<Void>() {
+            @Override
+            public Void call() throws SQLException {
+                connection.commit();
+                return null;
+            }
+        });
+    }
     
     @Override
     public boolean execute(String sql) throws SQLException {
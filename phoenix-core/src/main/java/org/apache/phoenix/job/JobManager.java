@@ -39,6 +39,8 @@ import java.util.concurrent.atomic.AtomicLong;
 import javax.annotation.Nullable;
 
 import org.apache.phoenix.monitoring.TaskExecutionMetricsHolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import org.apache.phoenix.thirdparty.com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.phoenix.util.EnvironmentEdgeManager;
@@ -53,6 +55,7 @@ import org.apache.phoenix.util.EnvironmentEdgeManager;
 @SuppressWarnings("rawtypes")
 public class JobManager<T> extends AbstractRoundRobinQueue<T> {
 	
+    private static final Logger LOGGER = LoggerFactory.getLogger(JobManager.class);
     private static final AtomicLong PHOENIX_POOL_INDEX = new AtomicLong(1);
 	
     public JobManager(int maxSize) {
@@ -73,6 +76,18 @@ public class JobManager<T> extends AbstractRoundRobinQueue<T> {
     }
 
     public static ThreadPoolExecutor createThreadPoolExec(int keepAliveMs, int size, int queueSize, boolean useInstrumentedThreadPool) {
+        return createThreadPoolExec(keepAliveMs, size, queueSize, useInstrumentedThreadPool, false);
+    }
+
+    /**
+     * Create the executor of the tasks of a query services. With virtual threads, the pool runs
+     * each task on a virtual thread instead of a platform one, which allows for a pool size well
+     * beyond the number of platform threads a client can afford. Tasks are still queued and
+     * interleaved across jobs the same way, and are still instrumented. Virtual threads require
+     * Java 21, and platform threads are used when the JVM doesn't support them.
+     */
+    public static ThreadPoolExecutor createThreadPoolExec(int keepAliveMs, int size, int queueSize,
+            boolean useInstrumentedThreadPool, boolean useVirtualThreads) {
         BlockingQueue<Runnable> queue;
         if (queueSize == 0) {
             queue = new SynchronousQueue<Runnable>(); // Specialized for 0 length.
@@ -80,11 +95,16 @@ public class JobManager<T> extends AbstractRoundRobinQueue<T> {
             queue = new JobManager<Runnable>(queueSize);
         }
         String name = "phoenix-" + PHOENIX_POOL_INDEX.getAndIncrement();
+        ThreadFactory baseFactory = useVirtualThreads ? newVirtualThreadFactory() : null;
+        if (useVirtualThreads && baseFactory == null) {
+            LOGGER.warn("Virtual threads are not supported by this JVM, " + name + " uses platform threads");
+        }
         ThreadFactory threadFactory = new ThreadFactoryBuilder()
-                .setNameFormat(name + "-thread-%s")
+                .setNameFormat(name + (baseFactory == null ? "-thread-%s" : "-virtual-thread-%s"))
                 .setDaemon(true)
-                .setThreadFactory(
-                        new ContextClassLoaderThreadFactory(JobManager.class.getClassLoader()))
+                .setThreadFactory(baseFactory == null
+                        ? new ContextClassLoaderThreadFactory(JobManager.class.getClassLoader())
+                        : new ContextClassLoaderThreadFactory(baseFactory, JobManager.class.getClassLoader()))
                 .build();
         ThreadPoolExecutor exec;
         if (useInstrumentedThreadPool) {
@@ -119,6 +139,26 @@ public class JobManager<T> extends AbstractRoundRobinQueue<T> {
         return exec;
     }
 
+    /**
+     * @return true if the JVM supports virtual threads
+     */
+    public static boolean isVirtualThreadsSupported() {
+        return newVirtualThreadFactory() != null;
+    }
+
+    /**
+     * @return a factory of virtual threads, or null if the JVM doesn't support them. Looked up
+     * reflectively, as Phoenix is built for Java versions that predate virtual threads.
+     */
+    static ThreadFactory newVirtualThreadFactory() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            return (ThreadFactory)Class.forName("java.lang.Thread$Builder").getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
     /**
      * Subclasses FutureTask for the sole purpose of providing {@link #getCallable()}, which is used to extract the producer in the {@link JobBasedRoundRobinQueue}
      */
@@ -217,7 +257,11 @@ public class JobManager<T> extends AbstractRoundRobinQueue<T> {
         private final ClassLoader contextClassLoader;
 
         public ContextClassLoaderThreadFactory(ClassLoader contextClassLoader) {
-            baseFactory = Executors.defaultThreadFactory();
+            this(Executors.defaultThreadFactory(), contextClassLoader);
+        }
+
+        public ContextClassLoaderThreadFactory(ThreadFactory baseFactory, ClassLoader contextClassLoader) {
+            this.baseFactory = baseFactory;
             this.contextClassLoader = contextClassLoader;
         }
 
@@ -0,0 +1,128 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.phoenix.join;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.protobuf.ProtobufUtil;
+import org.apache.hadoop.hbase.protobuf.generated.ClientProtos;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.phoenix.expression.Expression;
+import org.apache.phoenix.expression.ExpressionType;
+import org.apache.phoenix.schema.RowKeySchema;
+
+/**
+ * The right-hand side of a join that is merged with the left-hand table region by region
+ * on the server, instead of being sent to the region servers as a hash cache. Both tables
+ * are equated on their first {@link #getKeyPrefixLength()} row key columns, so the rows
+ * joining a row of the left-hand table all start with the same row key prefix. Each
+ * left-hand region reads the right-hand rows of its key range from the right-hand regions
+ * hosted on the same region server, and through a client scan from the others.
+ */
+public class CoLocatedJoinInfo {
+    private final byte[] physicalTableName;
+    private final Scan scan;
+    private final List<Expression> keyExpressions;
+    private final boolean singleValueOnly;
+    private final RowKeySchema lhsRowKeySchema;
+    private final RowKeySchema rhsRowKeySchema;
+    private final int keyPrefixLength;
+
+    public CoLocatedJoinInfo(byte[] physicalTableName, Scan scan, List<Expression> keyExpressions,
+            boolean singleValueOnly, RowKeySchema lhsRowKeySchema, RowKeySchema rhsRowKeySchema,
+            int keyPrefixLength) {
+        this.physicalTableName = physicalTableName;
+        this.scan = scan;
+        this.keyExpressions = keyExpressions;
+        this.singleValueOnly = singleValueOnly;
+        this.lhsRowKeySchema = lhsRowKeySchema;
+        this.rhsRowKeySchema = rhsRowKeySchema;
+        this.keyPrefixLength = keyPrefixLength;
+    }
+
+    public byte[] getPhysicalTableName() {
+        return physicalTableName;
+    }
+
+    /**
+     * @return the scan of the right-hand table, ready to be sent to its regions
+     */
+    public Scan getScan() {
+        return scan;
+    }
+
+    public List<Expression> getKeyExpressions() {
+        return keyExpressions;
+    }
+
+    public boolean isSingleValueOnly() {
+        return singleValueOnly;
+    }
+
+    public RowKeySchema getLhsRowKeySchema() {
+        return lhsRowKeySchema;
+    }
+
+    public RowKeySchema getRhsRowKeySchema() {
+        return rhsRowKeySchema;
+    }
+
+    public int getKeyPrefixLength() {
+        return keyPrefixLength;
+    }
+
+    void write(DataOutput output) throws IOException {
+        Bytes.writeByteArray(output, physicalTableName);
+        Bytes.writeByteArray(output, ProtobufUtil.toScan(scan).toByteArray());
+        WritableUtils.writeVInt(output, keyExpressions.size());
+        for (Expression expression : keyExpressions) {
+            WritableUtils.writeVInt(output, ExpressionType.valueOf(expression).ordinal());
+            expression.write(output);
+        }
+        output.writeBoolean(singleValueOnly);
+        lhsRowKeySchema.write(output);
+        rhsRowKeySchema.write(output);
+        WritableUtils.writeVInt(output, keyPrefixLength);
+    }
+
+    static CoLocatedJoinInfo read(DataInput input) throws IOException {
+        byte[] physicalTableName = Bytes.readByteArray(input);
+        Scan scan = ProtobufUtil.toScan(ClientProtos.Scan.parseFrom(Bytes.readByteArray(input)));
+        int count = WritableUtils.readVInt(input);
+        List<Expression> keyExpressions = new ArrayList<Expression>(count);
+        for (int i = 0; i < count; i++) {
+            Expression expression = ExpressionType.values()[WritableUtils.readVInt(input)].newInstance();
+            expression.readFields(input);
+            keyExpressions.add(expression);
+        }
+        boolean singleValueOnly = input.readBoolean();
+        RowKeySchema lhsRowKeySchema = new RowKeySchema();
+        lhsRowKeySchema.readFields(input);
+        RowKeySchema rhsRowKeySchema = new RowKeySchema();
+        rhsRowKeySchema.readFields(input);
+        int keyPrefixLength = WritableUtils.readVInt(input);
+        return new CoLocatedJoinInfo(physicalTableName, scan, keyExpressions, singleValueOnly,
+                lhsRowKeySchema, rhsRowKeySchema, keyPrefixLength);
+    }
+}
@@ -0,0 +1,302 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.phoenix.join;
+
+import java.util.Arrays;
+
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.phoenix.util.SizedUtil;
+
+/**
+ * Open-addressing hash table that maps a byte array key to one or more rows held
+ * in a single flat byte buffer. Neither the keys nor the rows are materialized as
+ * objects: keys are appended to a byte arena, rows are recorded as offset/length
+ * pairs into the backing buffer, and rows sharing a key are chained through an int
+ * array. Callers get back positions that can be turned into zero-copy views of
+ * the backing buffer.
+ *
+ * Not thread safe while being built. Once all rows have been added, concurrent
+ * lookups are safe.
+ *
+ * @since 5.1.0
+ */
+public class CompactHashTable {
+    public static final int NOT_FOUND = -1;
+
+    private static final float LOAD_FACTOR = 0.75f;
+    private static final int MIN_CAPACITY = 16;
+
+    private final byte[] rowBuffer;
+
+    // Per row state
+    private int[] rowOffsets;
+    private int[] rowLengths;
+    private int[] nextRows;
+    private int nRows;
+
+    // Per distinct key state
+    private int[] keyHashes;
+    private int[] keyOffsets;
+    private int[] keyLengths;
+    private int[] firstRows;
+    private int[] lastRows;
+    private int[] rowCounts;
+    private int nKeys;
+    private byte[] keyArena;
+    private int keyArenaSize;
+
+    // Open addressing slots holding a key index, or NOT_FOUND when empty
+    private int[] slots;
+    private int mask;
+
+    /**
+     * @param rowBuffer the buffer all row offsets passed to {@link #add} refer to
+     * @param expectedRows the expected number of rows, used to presize the table
+     */
+    public CompactHashTable(byte[] rowBuffer, int expectedRows) {
+        this.rowBuffer = rowBuffer;
+        int rowCapacity = Math.max(expectedRows, 1);
+        this.rowOffsets = new int[rowCapacity];
+        this.rowLengths = new int[rowCapacity];
+        this.nextRows = new int[rowCapacity];
+        this.keyHashes = new int[rowCapacity];
+        this.keyOffsets = new int[rowCapacity];
+        this.keyLengths = new int[rowCapacity];
+        this.firstRows = new int[rowCapacity];
+        this.lastRows = new int[rowCapacity];
+        this.rowCounts = new int[rowCapacity];
+        this.keyArena = new byte[Math.max(rowCapacity * Bytes.SIZEOF_LONG, MIN_CAPACITY)];
+        int capacity = tableSizeFor(rowCapacity);
+        this.slots = new int[capacity];
+        Arrays.fill(this.slots, NOT_FOUND);
+        this.mask = capacity - 1;
+    }
+
+    private static int tableSizeFor(int nKeys) {
+        int capacity = MIN_CAPACITY;
+        while (capacity * LOAD_FACTOR < nKeys) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private static int hash(byte[] b, int offset, int length) {
+        int h = Bytes.hashCode(b, offset, length);
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * @return the hash a key is stored under, as returned by {@link #getKeyHash(int)}
+     */
+    public static int hash(ImmutableBytesWritable key) {
+        return hash(key.get(), key.getOffset(), key.getLength());
+    }
+
+    /**
+     * Add a row to the table under the given key. The key bytes are copied, while
+     * the row is only referenced by its position in the backing buffer.
+     * @param key the key the row is stored under
+     * @param rowOffset offset of the row in the backing buffer
+     * @param rowLength length of the row in the backing buffer
+     */
+    public void add(ImmutableBytesWritable key, int rowOffset, int rowLength) {
+        byte[] b = key.get();
+        int offset = key.getOffset();
+        int length = key.getLength();
+        int h = hash(b, offset, length);
+        int keyIndex = findKey(b, offset, length, h);
+        if (keyIndex == NOT_FOUND) {
+            keyIndex = addKey(b, offset, length, h);
+        }
+        int row = addRow(rowOffset, rowLength);
+        if (rowCounts[keyIndex] == 0) {
+            firstRows[keyIndex] = row;
+        } else {
+            nextRows[lastRows[keyIndex]] = row;
+        }
+        lastRows[keyIndex] = row;
+        rowCounts[keyIndex]++;
+    }
+
+    private int addRow(int rowOffset, int rowLength) {
+        if (nRows == rowOffsets.length) {
+            int newLength = rowOffsets.length * 2;
+            rowOffsets = Arrays.copyOf(rowOffsets, newLength);
+            rowLengths = Arrays.copyOf(rowLengths, newLength);
+            nextRows = Arrays.copyOf(nextRows, newLength);
+        }
+        int row = nRows++;
+        rowOffsets[row] = rowOffset;
+        rowLengths[row] = rowLength;
+        nextRows[row] = NOT_FOUND;
+        return row;
+    }
+
+    private int addKey(byte[] b, int offset, int length, int h) {
+        if (nKeys == keyHashes.length) {
+            int newLength = keyHashes.length * 2;
+            keyHashes = Arrays.copyOf(keyHashes, newLength);
+            keyOffsets = Arrays.copyOf(keyOffsets, newLength);
+            keyLengths = Arrays.copyOf(keyLengths, newLength);
+            firstRows = Arrays.copyOf(firstRows, newLength);
+            lastRows = Arrays.copyOf(lastRows, newLength);
+            rowCounts = Arrays.copyOf(rowCounts, newLength);
+        }
+        if (keyArenaSize + length > keyArena.length) {
+            keyArena = Arrays.copyOf(keyArena, Math.max(keyArena.length * 2, keyArenaSize + length));
+        }
+        System.arraycopy(b, offset, keyArena, keyArenaSize, length);
+        int keyIndex = nKeys++;
+        keyHashes[keyIndex] = h;
+        keyOffsets[keyIndex] = keyArenaSize;
+        keyLengths[keyIndex] = length;
+        rowCounts[keyIndex] = 0;
+        keyArenaSize += length;
+        if (nKeys > slots.length * LOAD_FACTOR) {
+            rehash(slots.length * 2);
+        } else {
+            insertSlot(keyIndex);
+        }
+        return keyIndex;
+    }
+
+    private void insertSlot(int keyIndex) {
+        int slot = keyHashes[keyIndex] & mask;
+        while (slots[slot] != NOT_FOUND) {
+            slot = (slot + 1) & mask;
+        }
+        slots[slot] = keyIndex;
+    }
+
+    private void rehash(int capacity) {
+        slots = new int[capacity];
+        Arrays.fill(slots, NOT_FOUND);
+        mask = capacity - 1;
+        for (int i = 0; i < nKeys; i++) {
+            insertSlot(i);
+        }
+    }
+
+    private int findKey(byte[] b, int offset, int length, int h) {
+        int slot = h & mask;
+        int keyIndex;
+        while ((keyIndex = slots[slot]) != NOT_FOUND) {
+            if (keyHashes[keyIndex] == h && Bytes.equals(keyArena, keyOffsets[keyIndex],
+                    keyLengths[keyIndex], b, offset, length)) {
+                return keyIndex;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return NOT_FOUND;
+    }
+
+    /**
+     * Look up a key.
+     * @return the index of the key, or {@link #NOT_FOUND} if the key is not present
+     */
+    public int find(byte[] b, int offset, int length) {
+        return findKey(b, offset, length, hash(b, offset, length));
+    }
+
+    public int find(ImmutableBytesWritable key) {
+        return find(key.get(), key.getOffset(), key.getLength());
+    }
+
+    /**
+     * @return the number of rows stored under the key at keyIndex
+     */
+    public int getRowCount(int keyIndex) {
+        return rowCounts[keyIndex];
+    }
+
+    /**
+     * @return the first row stored under the key at keyIndex
+     */
+    public int getFirstRow(int keyIndex) {
+        return firstRows[keyIndex];
+    }
+
+    /**
+     * @return the row following the given row under the same key, or {@link #NOT_FOUND}
+     */
+    public int getNextRow(int row) {
+        return nextRows[row];
+    }
+
+    /**
+     * Point ptr at the bytes of a row inside the backing buffer without copying.
+     */
+    public void getRow(int row, ImmutableBytesWritable ptr) {
+        ptr.set(rowBuffer, rowOffsets[row], rowLengths[row]);
+    }
+
+    public int getRowOffset(int row) {
+        return rowOffsets[row];
+    }
+
+    public int getRowLength(int row) {
+        return rowLengths[row];
+    }
+
+    /**
+     * @return the hash of the key at keyIndex
+     */
+    public int getKeyHash(int keyIndex) {
+        return keyHashes[keyIndex];
+    }
+
+    /**
+     * Point ptr at the bytes of the key at keyIndex without copying.
+     */
+    public void getKey(int keyIndex, ImmutableBytesWritable ptr) {
+        ptr.set(keyArena, keyOffsets[keyIndex], keyLengths[keyIndex]);
+    }
+
+    public int getKeyCount() {
+        return nKeys;
+    }
+
+    public int getRowCount() {
+        return nRows;
+    }
+
+    /**
+     * @return the estimated number of bytes held by this table, including the backing buffer
+     */
+    public long getEstimatedByteSize() {
+        return SizedUtil.OBJECT_SIZE + 11L * SizedUtil.ARRAY_SIZE
+                + (rowBuffer == null ? 0 : rowBuffer.length)
+                + (long) rowOffsets.length * 3 * SizedUtil.INT_SIZE
+                + (long) keyHashes.length * 6 * SizedUtil.INT_SIZE
+                + (long) slots.length * SizedUtil.INT_SIZE
+                + keyArena.length;
+    }
+
+    /**
+     * Estimate the number of bytes a table holding nRows rows with keys of about
+     * keyLength bytes each would take, assuming all keys are distinct.
+     */
+    public static long estimateByteSize(int bufferLength, int nRows, int keyLength) {
+        int rowCapacity = Math.max(nRows, 1);
+        return SizedUtil.OBJECT_SIZE + 11L * SizedUtil.ARRAY_SIZE + bufferLength
+                + (long) rowCapacity * 9 * SizedUtil.INT_SIZE
+                + (long) tableSizeFor(rowCapacity) * SizedUtil.INT_SIZE
+                + (long) rowCapacity * Math.max(keyLength, Bytes.SIZEOF_LONG);
+    }
+}
@@ -23,12 +23,14 @@ import java.sql.SQLException;
 import java.util.List;
 
 import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.ipc.RpcServer;
 import org.apache.hadoop.hbase.util.Bytes;
 import org.apache.hadoop.io.WritableUtils;
 import org.apache.phoenix.cache.ServerCacheClient;
 import org.apache.phoenix.cache.ServerCacheClient.ServerCache;
 import org.apache.phoenix.compile.QueryPlan;
 import org.apache.phoenix.compile.ScanRanges;
+import org.apache.phoenix.coprocessor.MetaDataProtocol;
 import org.apache.phoenix.expression.Expression;
 import org.apache.phoenix.expression.ExpressionType;
 import org.apache.phoenix.expression.LiteralExpression;
@@ -41,11 +43,14 @@ import org.apache.phoenix.schema.PTable;
 import org.apache.phoenix.schema.tuple.Tuple;
 import org.apache.phoenix.schema.types.PDataType;
 import org.apache.phoenix.util.ByteUtil;
+import org.apache.phoenix.util.KeyBloomFilter;
+import org.apache.phoenix.util.ReadOnlyProps;
 import org.apache.phoenix.util.ServerUtil;
 import org.apache.phoenix.util.TrustedByteArrayOutputStream;
 import org.apache.phoenix.util.TupleUtil;
 import org.iq80.snappy.Snappy;
 
+import org.apache.phoenix.thirdparty.com.google.common.annotations.VisibleForTesting;
 import org.apache.phoenix.thirdparty.com.google.common.collect.Lists;
 
 /**
@@ -56,6 +61,9 @@ import org.apache.phoenix.thirdparty.com.google.common.collect.Lists;
  * @since 0.1
  */
 public class HashCacheClient  {
+    // Number of uncompressed bytes of a hash cache compressed in blocks per block
+    private static final int COMPRESSED_BLOCK_SIZE = 64 * 1024;
+
     private final ServerCacheClient serverCache;
 
     /**
@@ -86,6 +94,7 @@ public class HashCacheClient  {
      * region servers for regions of the table that will use the cache
      * that intersect with the minMaxKeyRange.
      * @param scanner scanner for the table or intermediate results being cached
+     * @param bloomFilterBuilder if not null, collects the hash key of every row being cached
      * @return client-side {@link ServerCache} representing the added hash cache
      * @throws SQLException 
      * @throws MaxServerCacheSizeExceededException if size of hash cache exceeds max allowed
@@ -94,12 +103,12 @@ public class HashCacheClient  {
     public ServerCache addHashCache(
             ScanRanges keyRanges, byte[] cacheId, ResultIterator iterator, long estimatedSize, List<Expression> onExpressions,
             boolean singleValueOnly, boolean usePersistentCache, PTable cacheUsingTable, Expression keyRangeRhsExpression,
-            List<Expression> keyRangeRhsValues) throws SQLException {
+            List<Expression> keyRangeRhsValues, KeyBloomFilter.Builder bloomFilterBuilder) throws SQLException {
         /**
          * Serialize and compress hashCacheTable
          */
         ImmutableBytesWritable ptr = new ImmutableBytesWritable();
-        serialize(ptr, iterator, estimatedSize, onExpressions, singleValueOnly, keyRangeRhsExpression, keyRangeRhsValues);
+        serialize(ptr, iterator, estimatedSize, onExpressions, singleValueOnly, keyRangeRhsExpression, keyRangeRhsValues, bloomFilterBuilder);
         ServerCache cache = serverCache.addServerCache(keyRanges, cacheId, ptr, ByteUtil.EMPTY_BYTE_ARRAY, new HashCacheFactory(), cacheUsingTable, usePersistentCache, true);
         return cache;
     }
@@ -118,9 +127,17 @@ public class HashCacheClient  {
         return serverCache.addServerCache(startkeyOfRegion, cache, new HashCacheFactory(), ByteUtil.EMPTY_BYTE_ARRAY, pTable);
     }
     
-    private void serialize(ImmutableBytesWritable ptr, ResultIterator iterator, long estimatedSize, List<Expression> onExpressions, boolean singleValueOnly, Expression keyRangeRhsExpression, List<Expression> keyRangeRhsValues) throws SQLException {
-        long maxSize = serverCache.getConnection().getQueryServices().getProps().getLong(QueryServices.MAX_SERVER_CACHE_SIZE_ATTRIB, QueryServicesOptions.DEFAULT_MAX_SERVER_CACHE_SIZE);
+    private void serialize(ImmutableBytesWritable ptr, ResultIterator iterator, long estimatedSize, List<Expression> onExpressions, boolean singleValueOnly, Expression keyRangeRhsExpression, List<Expression> keyRangeRhsValues, KeyBloomFilter.Builder bloomFilterBuilder) throws SQLException {
+        ReadOnlyProps props = serverCache.getConnection().getQueryServices().getProps();
+        long maxSize = props.getLong(QueryServices.MAX_SERVER_CACHE_SIZE_ATTRIB, QueryServicesOptions.DEFAULT_MAX_SERVER_CACHE_SIZE);
         estimatedSize = Math.min(estimatedSize, maxSize);
+        // Region servers spill the part of a hash cache that does not fit in memory to disk,
+        // so when enabled only the hard limit on the serialized size applies.
+        boolean spillable = props.getBoolean(QueryServices.HASH_JOIN_SPILLABLE_ATTRIB, QueryServicesOptions.DEFAULT_HASH_JOIN_SPILLABLE);
+        if (spillable) {
+            maxSize = Math.max(maxSize, Math.min(Integer.MAX_VALUE,
+                    props.getLong(QueryServices.MAX_SERVER_CACHE_SPILL_SIZE_ATTRIB, QueryServicesOptions.DEFAULT_MAX_SERVER_CACHE_SPILL_SIZE)));
+        }
         if (estimatedSize > Integer.MAX_VALUE) {
             throw new IllegalStateException("Estimated size(" + estimatedSize + ") must not be greater than Integer.MAX_VALUE(" + Integer.MAX_VALUE + ")");
         }
@@ -147,6 +164,9 @@ public class HashCacheClient  {
                 if (keyRangeRhsExpression != null) {
                     keyRangeRhsValues.add(evaluateKeyExpression(keyRangeRhsExpression, result, tempPtr));
                 }
+                if (bloomFilterBuilder != null) {
+                    bloomFilterBuilder.add(TupleUtil.getConcatenatedValue(result, onExpressions));
+                }
                 nRows++;
             }
             TrustedByteArrayOutputStream sizeOut = new TrustedByteArrayOutputStream(Bytes.SIZEOF_INT);
@@ -157,12 +177,16 @@ public class HashCacheClient  {
                 byte[] cache = baOut.getBuffer();
                 // Replace number of rows written above with the correct value.
                 System.arraycopy(sizeOut.getBuffer(), 0, cache, exprSize, sizeOut.size());
-                // Reallocate to actual size plus compressed buffer size (which is allocated below)
-                int maxCompressedSize = Snappy.maxCompressedLength(baOut.size());
-                byte[] compressed = new byte[maxCompressedSize]; // size for worst case
-                int compressedSize = Snappy.compress(baOut.getBuffer(), 0, baOut.size(), compressed, 0);
-                // Last realloc to size of compressed buffer.
-                ptr.set(compressed,0,compressedSize);
+                compress(baOut, serverCache.getConnection().getQueryServices().getLowestClusterPhoenixVersion()
+                        >= MetaDataProtocol.MIN_BLOCK_COMPRESSED_HASH_CACHE_VERSION, ptr);
+                // The compressed cache is still sent to each region server in a single request,
+                // which fails when beyond the request size limit of region servers
+                long maxRequestSize = props.getLong(RpcServer.MAX_REQUEST_SIZE, RpcServer.DEFAULT_MAX_REQUEST_SIZE);
+                if (spillable && ptr.getLength() > maxRequestSize) {
+                    throw new MaxServerCacheSizeExceededException("Compressed size of hash cache (" + ptr.getLength()
+                            + " bytes) exceeds the maximum request size of region servers (" + maxRequestSize
+                            + " bytes) set by " + RpcServer.MAX_REQUEST_SIZE);
+                }
             } finally {
                 dataOut.close();
             }
@@ -173,6 +197,47 @@ public class HashCacheClient  {
         }
     }
     
+    /**
+     * Compress a serialized hash cache. Region servers that support it are sent the cache
+     * compressed in blocks, so that they can build the hash table and spill what doesn't fit
+     * in memory while decompressing it, without ever holding the whole uncompressed cache.
+     * @param uncompressed the serialized hash cache
+     * @param inBlocks true to compress in blocks, and false to compress as a single block
+     * @param ptr set to the compressed cache
+     */
+    @VisibleForTesting
+    static void compress(TrustedByteArrayOutputStream uncompressed, boolean inBlocks, ImmutableBytesWritable ptr)
+            throws IOException {
+        if (!inBlocks) {
+            // Reallocate to actual size plus compressed buffer size (which is allocated below)
+            int maxCompressedSize = Snappy.maxCompressedLength(uncompressed.size());
+            byte[] compressed = new byte[maxCompressedSize]; // size for worst case
+            int compressedSize = Snappy.compress(uncompressed.getBuffer(), 0, uncompressed.size(), compressed, 0);
+            // Last realloc to size of compressed buffer.
+            ptr.set(compressed,0,compressedSize);
+            return;
+        }
+        TrustedByteArrayOutputStream compressedOut =
+                new TrustedByteArrayOutputStream(Snappy.maxCompressedLength(uncompressed.size()));
+        DataOutputStream out = new DataOutputStream(compressedOut);
+        try {
+            out.writeByte(HashCacheFactory.BLOCK_COMPRESSED_FORMAT);
+            out.writeInt(uncompressed.size());
+            byte[] compressed = new byte[Snappy.maxCompressedLength(COMPRESSED_BLOCK_SIZE)];
+            for (int offset = 0; offset < uncompressed.size(); offset += COMPRESSED_BLOCK_SIZE) {
+                int length = Math.min(COMPRESSED_BLOCK_SIZE, uncompressed.size() - offset);
+                int compressedLength = Snappy.compress(uncompressed.getBuffer(), offset, length, compressed, 0);
+                out.writeInt(length);
+                out.writeInt(compressedLength);
+                out.write(compressed, 0, compressedLength);
+            }
+            out.flush();
+            ptr.set(compressedOut.getBuffer(), 0, compressedOut.size());
+        } finally {
+            out.close();
+        }
+    }
+
     /**
      * Evaluate the RHS key expression and wrap the result as a new Expression.
      * Unlike other types of Expression which will be evaluated and wrapped as a 
@@ -17,48 +17,79 @@
  */
 package org.apache.phoenix.join;
 
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayInputStream;
 import java.io.Closeable;
 import java.io.DataInput;
 import java.io.DataInputStream;
 import java.io.DataOutput;
+import java.io.EOFException;
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.sql.SQLException;
+import java.util.AbstractList;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
+import java.util.RandomAccess;
 
 import net.jcip.annotations.Immutable;
 
+import org.apache.hadoop.conf.Configurable;
+import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
 import org.apache.hadoop.hbase.util.Bytes;
 import org.apache.hadoop.io.WritableUtils;
 import org.apache.phoenix.cache.HashCache;
+import org.apache.phoenix.cache.aggcache.SpillFile;
 import org.apache.phoenix.coprocessor.ServerCachingProtocol.ServerCacheFactory;
 import org.apache.phoenix.exception.SQLExceptionCode;
 import org.apache.phoenix.exception.SQLExceptionInfo;
 import org.apache.phoenix.expression.Expression;
 import org.apache.phoenix.expression.ExpressionType;
 import org.apache.phoenix.hbase.index.util.ImmutableBytesPtr;
+import org.apache.phoenix.memory.InsufficientMemoryException;
 import org.apache.phoenix.memory.MemoryManager.MemoryChunk;
+import org.apache.phoenix.query.QueryServices;
 import org.apache.phoenix.schema.tuple.ResultTuple;
 import org.apache.phoenix.schema.tuple.Tuple;
+import org.apache.phoenix.thirdparty.com.google.common.annotations.VisibleForTesting;
+import org.apache.phoenix.util.ByteUtil;
 import org.apache.phoenix.util.ResultUtil;
 import org.apache.phoenix.util.ServerUtil;
-import org.apache.phoenix.util.SizedUtil;
 import org.apache.phoenix.util.TupleUtil;
 import org.iq80.snappy.CorruptionException;
 import org.iq80.snappy.Snappy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-public class HashCacheFactory implements ServerCacheFactory {
+public class HashCacheFactory implements ServerCacheFactory, Configurable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(HashCacheFactory.class);
+    // Number of partitions, by join key hash, a hash cache that does not fit in memory is split into
+    private static final int SPILL_PARTITIONS = 32;
+    // First byte of a hash cache compressed in blocks. A cache compressed as a single Snappy
+    // block never starts with it, as that would be the uncompressed length of an empty cache.
+    static final byte BLOCK_COMPRESSED_FORMAT = 0;
+
+    private Configuration conf;
 
     public HashCacheFactory() {
     }
 
+    @Override
+    public void setConf(Configuration conf) {
+        this.conf = conf;
+    }
+
+    @Override
+    public Configuration getConf() {
+        return conf;
+    }
+
     @Override
     public void readFields(DataInput input) throws IOException {
     }
@@ -68,36 +99,252 @@ public class HashCacheFactory implements ServerCacheFactory {
     }
 
     @Override
-    public Closeable newCache(ImmutableBytesWritable cachePtr, byte[] txState, MemoryChunk chunk, boolean useProtoForIndexMaintainer, int clientVersion) throws SQLException {
+    public Closeable newCache(final ImmutableBytesWritable cachePtr, byte[] txState, MemoryChunk chunk, boolean useProtoForIndexMaintainer, final int clientVersion) throws SQLException {
+        // Identical build sides sent by concurrent or repeated queries share one built cache
+        ImmutableBytesPtr contentKey = SharedHashCacheRegistry.getContentKey(cachePtr, clientVersion);
+        return SharedHashCacheRegistry.getInstance().acquire(contentKey, chunk, new SharedHashCacheRegistry.Builder() {
+            @Override
+            public HashCache build(MemoryChunk chunk) throws SQLException {
+                return newHashCache(cachePtr, chunk, clientVersion);
+            }
+        });
+    }
+
+    @VisibleForTesting
+    HashCache newHashCache(ImmutableBytesWritable cachePtr, MemoryChunk chunk, int clientVersion) throws SQLException {
         try {
-            // This reads the uncompressed length from the front of the compressed input
-            int uncompressedLen = Snappy.getUncompressedLength(cachePtr.get(), cachePtr.getOffset());
-            byte[] uncompressed = new byte[uncompressedLen];
-            Snappy.uncompress(cachePtr.get(), cachePtr.getOffset(), cachePtr.getLength(),
-                uncompressed, 0);
-            return new HashCacheImpl(uncompressed, chunk, clientVersion);
+            CacheBytes cacheBytes;
+            if (cachePtr.getLength() > 0 && cachePtr.get()[cachePtr.getOffset()] == BLOCK_COMPRESSED_FORMAT) {
+                cacheBytes = new BlockCompressedCacheBytes(cachePtr);
+            } else {
+                // Caches sent by older clients, or to clusters with older region servers, are
+                // compressed as a single block. That can only be decompressed as a whole, so
+                // the whole cache is held in memory while the table is built, even if it spills.
+                // This reads the uncompressed length from the front of the compressed input
+                int uncompressedLen = Snappy.getUncompressedLength(cachePtr.get(), cachePtr.getOffset());
+                byte[] uncompressed = new byte[uncompressedLen];
+                Snappy.uncompress(cachePtr.get(), cachePtr.getOffset(), cachePtr.getLength(),
+                    uncompressed, 0);
+                cacheBytes = new UncompressedCacheBytes(uncompressed);
+            }
+            return new HashCacheImpl(cacheBytes, chunk, clientVersion);
         } catch (CorruptionException e) {
             throw ServerUtil.parseServerException(e);
+        } catch (IOException e) {
+            throw ServerUtil.parseServerException(e);
+        }
+    }
+
+    private static boolean tryResize(MemoryChunk chunk, long nBytes) {
+        try {
+            chunk.resize(nBytes);
+            return true;
+        } catch (InsufficientMemoryException e) {
+            return false;
+        }
+    }
+
+    private static int getPartition(int keyHash) {
+        return keyHash & (SPILL_PARTITIONS - 1);
+    }
+
+    /**
+     * The uncompressed bytes of a hash cache, which may be read more than once
+     */
+    private static abstract class CacheBytes {
+        abstract int getLength();
+
+        /**
+         * @return a stream over the uncompressed bytes, from the start
+         */
+        abstract DataInputStream open();
+
+        abstract byte[] toByteArray() throws IOException;
+    }
+
+    private static class UncompressedCacheBytes extends CacheBytes {
+        private final byte[] bytes;
+
+        private UncompressedCacheBytes(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        @Override
+        int getLength() {
+            return bytes.length;
+        }
+
+        @Override
+        DataInputStream open() {
+            return new DataInputStream(new ByteArrayInputStream(bytes));
+        }
+
+        @Override
+        byte[] toByteArray() {
+            return bytes;
+        }
+    }
+
+    /**
+     * A hash cache compressed in blocks by {@link HashCacheClient}, which is decompressed one
+     * block at a time while it is read
+     */
+    private static class BlockCompressedCacheBytes extends CacheBytes {
+        private final ImmutableBytesWritable cachePtr;
+        private final int length;
+
+        private BlockCompressedCacheBytes(ImmutableBytesWritable cachePtr) {
+            this.cachePtr = cachePtr;
+            this.length = Bytes.toInt(cachePtr.get(), cachePtr.getOffset() + 1);
+        }
+
+        @Override
+        int getLength() {
+            return length;
+        }
+
+        @Override
+        DataInputStream open() {
+            int offset = cachePtr.getOffset() + 1 + Bytes.SIZEOF_INT;
+            return new DataInputStream(new BlockInputStream(cachePtr.get(), offset,
+                    cachePtr.getOffset() + cachePtr.getLength()));
+        }
+
+        @Override
+        byte[] toByteArray() throws IOException {
+            byte[] bytes = new byte[length];
+            DataInputStream input = open();
+            try {
+                input.readFully(bytes);
+            } finally {
+                input.close();
+            }
+            return bytes;
+        }
+    }
+
+    /**
+     * Stream over Snappy compressed blocks, each prefixed with its uncompressed and compressed
+     * length
+     */
+    private static class BlockInputStream extends InputStream {
+        private final byte[] bytes;
+        private final int end;
+        private int position;
+        private byte[] block = ByteUtil.EMPTY_BYTE_ARRAY;
+        private int blockOffset;
+        private int blockLength;
+
+        private BlockInputStream(byte[] bytes, int offset, int end) {
+            this.bytes = bytes;
+            this.position = offset;
+            this.end = end;
+        }
+
+        private boolean nextBlock() {
+            if (position >= end) {
+                return false;
+            }
+            int uncompressedLength = Bytes.toInt(bytes, position);
+            int compressedLength = Bytes.toInt(bytes, position + Bytes.SIZEOF_INT);
+            position += 2 * Bytes.SIZEOF_INT;
+            if (block.length < uncompressedLength) {
+                block = new byte[uncompressedLength];
+            }
+            Snappy.uncompress(bytes, position, compressedLength, block, 0);
+            position += compressedLength;
+            blockOffset = 0;
+            blockLength = uncompressedLength;
+            return true;
+        }
+
+        @Override
+        public int read() {
+            if (blockOffset == blockLength && !nextBlock()) {
+                return -1;
+            }
+            return block[blockOffset++] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (blockOffset == blockLength && !nextBlock()) {
+                return -1;
+            }
+            int n = Math.min(len, blockLength - blockOffset);
+            System.arraycopy(block, blockOffset, b, off, n);
+            blockOffset += n;
+            return n;
+        }
+    }
+
+    /**
+     * Reads the rows of a hash cache one at a time and evaluates their join key
+     */
+    private static class RowReader implements Closeable {
+        private final DataInputStream input;
+        private final List<Expression> onExpressions;
+        private final ImmutableBytesWritable row = new ImmutableBytesWritable();
+        private byte[] buffer = ByteUtil.EMPTY_BYTE_ARRAY;
+        private ImmutableBytesPtr key;
+
+        private RowReader(CacheBytes cacheBytes, int rowsOffset, List<Expression> onExpressions) throws IOException {
+            this.input = cacheBytes.open();
+            this.onExpressions = onExpressions;
+            input.readFully(new byte[rowsOffset]);
+        }
+
+        private void next() throws IOException {
+            int length = WritableUtils.readVInt(input);
+            if (buffer.length < length) {
+                buffer = new byte[Math.max(length, buffer.length * 2)];
+            }
+            input.readFully(buffer, 0, length);
+            row.set(buffer, 0, length);
+            key = TupleUtil.getConcatenatedValue(new ResultTuple(ResultUtil.toResult(row)), onExpressions);
+        }
+
+        /**
+         * @return the bytes of the current row, valid until the next row is read
+         */
+        private ImmutableBytesWritable getRow() {
+            return row;
+        }
+
+        private ImmutableBytesPtr getKey() {
+            return key;
+        }
+
+        @Override
+        public void close() throws IOException {
+            input.close();
         }
     }
 
     @Immutable
     private class HashCacheImpl implements HashCache {
-        private final Map<ImmutableBytesPtr,List<Tuple>> hashCache;
+        private final CompactHashTable hashTable;
         private final MemoryChunk memoryChunk;
         private final boolean singleValueOnly;
         private final int clientVersion;
+        // Set only when part of the rows had to be spilled to disk
+        private final SpillFile spillFile;
+        private final FileChannel spillChannel;
+        private final boolean[] spilledPartitions;
         
-        private HashCacheImpl(byte[] hashCacheBytes, MemoryChunk memoryChunk, int clientVersion) {
+        private HashCacheImpl(CacheBytes cacheBytes, MemoryChunk memoryChunk, int clientVersion) throws IOException {
+            this.memoryChunk = memoryChunk;
+            this.clientVersion = clientVersion;
+            List<Expression> onExpressions;
+            int exprSize;
+            int nRows;
+            DataInputStream dataInput = cacheBytes.open();
             try {
-                this.memoryChunk = memoryChunk;
-                this.clientVersion = clientVersion;
-                byte[] hashCacheByteArray = hashCacheBytes;
-                int offset = 0;
-                ByteArrayInputStream input = new ByteArrayInputStream(hashCacheByteArray, offset, hashCacheBytes.length);
-                DataInputStream dataInput = new DataInputStream(input);
                 int nExprs = dataInput.readInt();
-                List<Expression> onExpressions = new ArrayList<Expression>(nExprs);
+                onExpressions = new ArrayList<Expression>(nExprs);
                 for (int i = 0; i < nExprs; i++) {
                     int expressionOrdinal = WritableUtils.readVInt(dataInput);
                     Expression expression = ExpressionType.values()[expressionOrdinal].newInstance();
@@ -106,45 +353,177 @@ public class HashCacheFactory implements ServerCacheFactory {
                 }
                 boolean singleValueOnly = false;
                 int exprSizeAndSingleValueOnly = dataInput.readInt();
-                int exprSize = exprSizeAndSingleValueOnly;
+                exprSize = exprSizeAndSingleValueOnly;
                 if (exprSize < 0) {
                     exprSize *= -1;
                     singleValueOnly = true;
                 }
                 this.singleValueOnly = singleValueOnly;
-                offset += exprSize;
-                int nRows = dataInput.readInt();
-                long estimatedSize = SizedUtil.sizeOfMap(nRows, SizedUtil.IMMUTABLE_BYTES_WRITABLE_SIZE, SizedUtil.RESULT_SIZE) + hashCacheBytes.length;
-                this.memoryChunk.resize(estimatedSize);
-                HashMap<ImmutableBytesPtr,List<Tuple>> hashCacheMap = new HashMap<ImmutableBytesPtr,List<Tuple>>(nRows * 5 / 4);
-                offset += Bytes.SIZEOF_INT;
-                // Build Map with evaluated hash key as key and row as value
+                nRows = dataInput.readInt();
+            } finally {
+                dataInput.close();
+            }
+            int rowsOffset = exprSize + Bytes.SIZEOF_INT;
+            // Reserve for the worst case up front and give back the unused part once built.
+            // If that is not available, build a table that spills what does not fit instead.
+            CompactHashTable hashTable = null;
+            if (tryResize(this.memoryChunk, CompactHashTable.estimateByteSize(cacheBytes.getLength(), nRows, 0))) {
+                hashTable = newHashTable(cacheBytes.toByteArray(), rowsOffset, nRows, onExpressions);
+                if (!tryResize(this.memoryChunk, hashTable.getEstimatedByteSize())) {
+                    hashTable = null;
+                }
+            }
+            if (hashTable != null) {
+                this.hashTable = hashTable;
+                this.spillFile = null;
+                this.spillChannel = null;
+                this.spilledPartitions = null;
+                return;
+            }
+
+            // The keys and row positions must always fit; fail like before if they do not
+            long indexSize = CompactHashTable.estimateByteSize(0, nRows, 0);
+            this.memoryChunk.resize(indexSize);
+            long[] partitionSizes = getPartitionSizes(cacheBytes, rowsOffset, nRows, onExpressions);
+            this.spilledPartitions = new boolean[SPILL_PARTITIONS];
+            long residentSize = 0;
+            long spilledSize = 0;
+            int nSpilled = 0;
+            for (int partition = 0; partition < SPILL_PARTITIONS; partition++) {
+                if (tryResize(this.memoryChunk, indexSize + residentSize + partitionSizes[partition])) {
+                    residentSize += partitionSizes[partition];
+                } else {
+                    spilledPartitions[partition] = true;
+                    spilledSize += partitionSizes[partition];
+                    nSpilled++;
+                }
+            }
+            if (spilledSize > Integer.MAX_VALUE) {
+                throw new IOException("Size of the spilled rows of hash cache (" + spilledSize
+                        + " bytes) exceeds the maximum of " + Integer.MAX_VALUE + " bytes");
+            }
+            LOGGER.info("Spilling " + nSpilled + " of " + SPILL_PARTITIONS + " hash cache partitions ("
+                    + spilledSize + " bytes) to disk");
+            File spillFilesDir = conf != null && conf.get(QueryServices.SPOOL_DIRECTORY) != null ?
+                    new File(conf.get(QueryServices.SPOOL_DIRECTORY)) : null;
+            SpillFile spillFile = SpillFile.createSpillFile(spillFilesDir);
+            boolean success = false;
+            try {
+                this.spillChannel = spillFile.getPage(0).getChannel();
+                this.hashTable = newSpilledHashTable(cacheBytes, rowsOffset, nRows, onExpressions,
+                        (int) residentSize);
+                this.memoryChunk.resize(this.hashTable.getEstimatedByteSize());
+                success = true;
+            } finally {
+                if (!success) {
+                    spillFile.close();
+                }
+            }
+            this.spillFile = spillFile;
+        }
+
+        /**
+         * Build a table over the whole cache, with the rows left in place in the cache bytes
+         */
+        private CompactHashTable newHashTable(byte[] hashCacheByteArray, int offset, int nRows,
+                List<Expression> onExpressions) throws IOException {
+            CompactHashTable hashTable = new CompactHashTable(hashCacheByteArray, nRows);
+            ImmutableBytesWritable value = new ImmutableBytesWritable();
+            // Build table with evaluated hash key as key and the position of the row as value
+            for (int i = 0; i < nRows; i++) {
+                int resultSize = (int)Bytes.readVLong(hashCacheByteArray, offset);
+                offset += WritableUtils.decodeVIntSize(hashCacheByteArray[offset]);
+                value.set(hashCacheByteArray, offset, resultSize);
+                Tuple result = new ResultTuple(ResultUtil.toResult(value));
+                ImmutableBytesPtr key = TupleUtil.getConcatenatedValue(result, onExpressions);
+                hashTable.add(key, offset, resultSize);
+                offset += resultSize;
+            }
+            return hashTable;
+        }
+
+        /**
+         * Read through the rows once to get the number of bytes of rows in each partition
+         */
+        private long[] getPartitionSizes(CacheBytes cacheBytes, int rowsOffset, int nRows,
+                List<Expression> onExpressions) throws IOException {
+            long[] partitionSizes = new long[SPILL_PARTITIONS];
+            RowReader reader = new RowReader(cacheBytes, rowsOffset, onExpressions);
+            try {
+                for (int i = 0; i < nRows; i++) {
+                    reader.next();
+                    partitionSizes[getPartition(CompactHashTable.hash(reader.getKey()))] += reader.getRow().getLength();
+                }
+            } finally {
+                reader.close();
+            }
+            return partitionSizes;
+        }
+
+        /**
+         * Build a table keeping the rows of the partitions that fit in the memory chunk in a
+         * buffer of their own and writing the rest to the spill file as they are read, so that
+         * the whole cache is never held in memory
+         */
+        private CompactHashTable newSpilledHashTable(CacheBytes cacheBytes, int rowsOffset, int nRows,
+                List<Expression> onExpressions, int residentSize) throws IOException {
+            byte[] residentBuffer = new byte[residentSize];
+            CompactHashTable hashTable = new CompactHashTable(residentBuffer, nRows);
+            // Not closed, as that would close the spill file channel
+            OutputStream spillOutput = new BufferedOutputStream(Channels.newOutputStream(spillChannel));
+            RowReader reader = new RowReader(cacheBytes, rowsOffset, onExpressions);
+            try {
+                int residentOffset = 0;
+                int spillOffset = 0;
                 for (int i = 0; i < nRows; i++) {
-                    int resultSize = (int)Bytes.readVLong(hashCacheByteArray, offset);
-                    offset += WritableUtils.decodeVIntSize(hashCacheByteArray[offset]);
-                    ImmutableBytesWritable value = new ImmutableBytesWritable(hashCacheByteArray,offset,resultSize);
-                    Tuple result = new ResultTuple(ResultUtil.toResult(value));
-                    ImmutableBytesPtr key = TupleUtil.getConcatenatedValue(result, onExpressions);
-                    List<Tuple> tuples = hashCacheMap.get(key);
-                    if (tuples == null) {
-                        tuples = new LinkedList<Tuple>();
-                        hashCacheMap.put(key, tuples);
+                    reader.next();
+                    ImmutableBytesWritable row = reader.getRow();
+                    if (spilledPartitions[getPartition(CompactHashTable.hash(reader.getKey()))]) {
+                        spillOutput.write(row.get(), row.getOffset(), row.getLength());
+                        hashTable.add(reader.getKey(), spillOffset, row.getLength());
+                        spillOffset += row.getLength();
+                    } else {
+                        System.arraycopy(row.get(), row.getOffset(), residentBuffer, residentOffset, row.getLength());
+                        hashTable.add(reader.getKey(), residentOffset, row.getLength());
+                        residentOffset += row.getLength();
                     }
-                    tuples.add(result);
-                    offset += resultSize;
                 }
-                this.hashCache = Collections.unmodifiableMap(hashCacheMap);
-            } catch (IOException e) { // Not possible with ByteArrayInputStream
-                throw new RuntimeException(e);
+                spillOutput.flush();
+            } finally {
+                reader.close();
             }
+            return hashTable;
+        }
+
+        private boolean isSpilled(int keyIndex) {
+            return spilledPartitions != null && spilledPartitions[getPartition(hashTable.getKeyHash(keyIndex))];
+        }
+
+        private List<Tuple> readSpilledRows(int keyIndex) throws IOException {
+            List<Tuple> tuples = new ArrayList<Tuple>(hashTable.getRowCount(keyIndex));
+            for (int row = hashTable.getFirstRow(keyIndex); row != CompactHashTable.NOT_FOUND; row = hashTable.getNextRow(row)) {
+                byte[] rowBytes = new byte[hashTable.getRowLength(row)];
+                ByteBuffer buffer = ByteBuffer.wrap(rowBytes);
+                long position = hashTable.getRowOffset(row);
+                while (buffer.hasRemaining()) {
+                    int n = spillChannel.read(buffer, position);
+                    if (n < 0) {
+                        throw new EOFException("Unexpected end of hash cache spill file");
+                    }
+                    position += n;
+                }
+                tuples.add(new ResultTuple(ResultUtil.toResult(new ImmutableBytesWritable(rowBytes))));
+            }
+            return tuples;
         }
 
         @Override
         public String toString() {
             StringBuilder sb = new StringBuilder();
-            Set<ImmutableBytesPtr> keySet = hashCache.keySet();
-            for (ImmutableBytesPtr key : keySet) {
-                sb.append("key: " + key + " value: " + hashCache.get(key));
+            ImmutableBytesPtr key = new ImmutableBytesPtr();
+            for (int i = 0; i < hashTable.getKeyCount(); i++) {
+                hashTable.getKey(i, key);
+                sb.append("key: " + key + " value: " + (isSpilled(i) ? "<spilled>" : new RowList(i)));
             }
             return sb.toString();
         }
@@ -152,23 +531,73 @@ public class HashCacheFactory implements ServerCacheFactory {
         @Override
         public void close() {
             memoryChunk.close();
+            if (spillFile != null) {
+                spillFile.close();
+            }
         }
         
         @Override
         public List<Tuple> get(ImmutableBytesPtr hashKey) throws IOException {
-            List<Tuple> ret = hashCache.get(hashKey);
-            if (singleValueOnly && ret != null && ret.size() > 1) {
+            int keyIndex = hashTable.find(hashKey);
+            if (keyIndex == CompactHashTable.NOT_FOUND) {
+                return null;
+            }
+            if (singleValueOnly && hashTable.getRowCount(keyIndex) > 1) {
                 SQLException ex = new SQLExceptionInfo.Builder(SQLExceptionCode.SINGLE_ROW_SUBQUERY_RETURNS_MULTIPLE_ROWS).build().buildException();
                 ServerUtil.throwIOException(ex.getMessage(), ex);
             }
             
-            return ret;
+            if (isSpilled(keyIndex)) {
+                return readSpilledRows(keyIndex);
+            }
+            return new RowList(keyIndex);
         }
 
         @Override
         public int getClientVersion() {
             return clientVersion;
         }
+
+        /**
+         * Read-only view over the rows stored under one key. Each {@link Tuple}
+         * is a view over the decompressed cache bytes, so no row data is copied.
+         * The tuples are materialized once, on first access, so iterating over
+         * the rows again or accessing them by index does not build them again.
+         */
+        private class RowList extends AbstractList<Tuple> implements RandomAccess {
+            private final int keyIndex;
+            private Tuple[] tuples;
+
+            private RowList(int keyIndex) {
+                this.keyIndex = keyIndex;
+            }
+
+            private Tuple[] getTuples() {
+                if (tuples == null) {
+                    Tuple[] rowTuples = new Tuple[hashTable.getRowCount(keyIndex)];
+                    int i = 0;
+                    for (int row = hashTable.getFirstRow(keyIndex); row != CompactHashTable.NOT_FOUND; row = hashTable.getNextRow(row)) {
+                        ImmutableBytesWritable ptr = new ImmutableBytesWritable();
+                        hashTable.getRow(row, ptr);
+                        rowTuples[i++] = new ResultTuple(ResultUtil.toResult(ptr));
+                    }
+                    tuples = rowTuples;
+                }
+                return tuples;
+            }
+
+            @Override
+            public Tuple get(int index) {
+                if (index < 0 || index >= size()) {
+                    throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+                }
+                return getTuples()[index];
+            }
+
+            @Override
+            public int size() {
+                return hashTable.getRowCount(keyIndex);
+            }
+        }
     }
 }
-
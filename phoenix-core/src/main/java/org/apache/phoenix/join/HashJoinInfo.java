@@ -40,6 +40,7 @@ import org.apache.phoenix.util.SchemaUtil;
 
 public class HashJoinInfo {
     private static final String HASH_JOIN = "HashJoin";
+    private static final String CO_LOCATED_JOIN = "CoLocatedJoin";
 
     private KeyValueSchema joinedSchema;
     private ImmutableBytesPtr[] joinIds;
@@ -51,6 +52,7 @@ public class HashJoinInfo {
     private Expression postJoinFilterExpression;
     private Integer limit;
     private boolean forceProjection; // always true now, but for backward compatibility.
+    private CoLocatedJoinInfo[] coLocatedJoins;
     
     public HashJoinInfo(PTable joinedTable, ImmutableBytesPtr[] joinIds, List<Expression>[] joinExpressions, JoinType[] joinTypes, boolean[] earlyEvaluation, PTable[] tables, int[] fieldPositions, Expression postJoinFilterExpression, Integer limit) {
     	this(buildSchema(joinedTable), joinIds, joinExpressions, joinTypes, earlyEvaluation, buildSchemas(tables), fieldPositions, postJoinFilterExpression, limit, true);
@@ -87,6 +89,7 @@ public class HashJoinInfo {
         this.postJoinFilterExpression = postJoinFilterExpression;
         this.limit = limit;
         this.forceProjection = forceProjection;
+        this.coLocatedJoins = new CoLocatedJoinInfo[joinIds.length];
     }
 
     public KeyValueSchema getJoinedSchema() {
@@ -128,6 +131,14 @@ public class HashJoinInfo {
     public boolean forceProjection() {
         return forceProjection;
     }
+
+    /**
+     * @return for each join, the right-hand side to merge region by region with the left-hand
+     * table, or null if the join uses the hash cache identified by its join id
+     */
+    public CoLocatedJoinInfo[] getCoLocatedJoins() {
+        return coLocatedJoins;
+    }
  
     public static void serializeHashJoinIntoScan(Scan scan, HashJoinInfo joinInfo) {
         ByteArrayOutputStream stream = new ByteArrayOutputStream();
@@ -157,6 +168,7 @@ public class HashJoinInfo {
             WritableUtils.writeVInt(output, joinInfo.limit == null ? -1 : joinInfo.limit);
             output.writeBoolean(joinInfo.forceProjection);
             scan.setAttribute(HASH_JOIN, stream.toByteArray());
+            serializeCoLocatedJoinsIntoScan(scan, joinInfo.coLocatedJoins);
         } catch (IOException e) {
             throw new RuntimeException(e);
         } finally {
@@ -222,7 +234,9 @@ public class HashJoinInfo {
                 forceProjection = input.readBoolean();
             } catch (EOFException ignore) {
             }
-            return new HashJoinInfo(joinedSchema, joinIds, joinExpressions, joinTypes, earlyEvaluation, schemas, fieldPositions, postJoinFilterExpression, limit >= 0 ? limit : null,  forceProjection);
+            HashJoinInfo joinInfo = new HashJoinInfo(joinedSchema, joinIds, joinExpressions, joinTypes, earlyEvaluation, schemas, fieldPositions, postJoinFilterExpression, limit >= 0 ? limit : null,  forceProjection);
+            deserializeCoLocatedJoinsFromScan(scan, joinInfo.coLocatedJoins);
+            return joinInfo;
         } catch (IOException e) {
             throw new RuntimeException(e);
         } finally {
@@ -233,4 +247,39 @@ public class HashJoinInfo {
             }
         }
     }
+
+    private static void serializeCoLocatedJoinsIntoScan(Scan scan, CoLocatedJoinInfo[] coLocatedJoins) throws IOException {
+        boolean hasCoLocatedJoin = false;
+        for (CoLocatedJoinInfo coLocatedJoin : coLocatedJoins) {
+            hasCoLocatedJoin |= coLocatedJoin != null;
+        }
+        if (!hasCoLocatedJoin) {
+            scan.setAttribute(CO_LOCATED_JOIN, null);
+            return;
+        }
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(stream);
+        WritableUtils.writeVInt(output, coLocatedJoins.length);
+        for (CoLocatedJoinInfo coLocatedJoin : coLocatedJoins) {
+            output.writeBoolean(coLocatedJoin != null);
+            if (coLocatedJoin != null) {
+                coLocatedJoin.write(output);
+            }
+        }
+        scan.setAttribute(CO_LOCATED_JOIN, stream.toByteArray());
+    }
+
+    private static void deserializeCoLocatedJoinsFromScan(Scan scan, CoLocatedJoinInfo[] coLocatedJoins) throws IOException {
+        byte[] coLocatedJoin = scan.getAttribute(CO_LOCATED_JOIN);
+        if (coLocatedJoin == null) {
+            return;
+        }
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(coLocatedJoin));
+        int count = WritableUtils.readVInt(input);
+        for (int i = 0; i < count; i++) {
+            if (input.readBoolean()) {
+                coLocatedJoins[i] = CoLocatedJoinInfo.read(input);
+            }
+        }
+    }
 }
@@ -0,0 +1,290 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.phoenix.join;
+
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.phoenix.cache.HashCache;
+import org.apache.phoenix.hbase.index.util.ImmutableBytesPtr;
+import org.apache.phoenix.memory.InsufficientMemoryException;
+import org.apache.phoenix.memory.MemoryManager.MemoryChunk;
+import org.apache.phoenix.schema.tuple.Tuple;
+import org.apache.phoenix.util.Closeables;
+import org.apache.phoenix.util.ServerUtil;
+
+import org.apache.phoenix.thirdparty.com.google.common.annotations.VisibleForTesting;
+
+/**
+ * Region server wide registry of built hash join caches, keyed by the content of the
+ * serialized cache (which includes the ON expressions and every row of the build side).
+ * Concurrent or repeated queries that broadcast an identical build side share one built
+ * {@link HashCache} instead of each holding its own copy, no matter which cache ID or
+ * tenant they were sent under.
+ *
+ * Each caller gets its own handle. The shared cache is reference counted and closed, which
+ * releases its memory, when the last handle is closed. The memory of the shared cache is
+ * accounted to the {@link MemoryChunk} of one handle at a time, initially the one of the
+ * caller that built it; the chunks of the callers that reuse it are shrunk to zero. When
+ * the handle holding the memory is closed while others are still open, the memory is moved
+ * over to the chunk of one of them, so that it stays accounted to a tenant still using the
+ * cache. Only if none of them has room for it does it stay with the closed handle's tenant
+ * until the cache is released.
+ *
+ * @since 5.1.0
+ */
+public class SharedHashCacheRegistry {
+    private static final SharedHashCacheRegistry INSTANCE = new SharedHashCacheRegistry();
+
+    private final ConcurrentMap<ImmutableBytesPtr, Entry> entries = new ConcurrentHashMap<ImmutableBytesPtr, Entry>();
+
+    @VisibleForTesting
+    SharedHashCacheRegistry() {
+    }
+
+    public static SharedHashCacheRegistry getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Builds the hash cache for a serialized cache the first time its content is seen.
+     */
+    public interface Builder {
+        HashCache build(MemoryChunk chunk) throws SQLException;
+    }
+
+    /**
+     * Compute the key a serialized hash cache is registered under.
+     * @param cachePtr the serialized (compressed) hash cache as sent by the client
+     * @param clientVersion the version of the client that sent it
+     */
+    public static ImmutableBytesPtr getContentKey(ImmutableBytesWritable cachePtr, int clientVersion) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+        digest.update(cachePtr.get(), cachePtr.getOffset(), cachePtr.getLength());
+        digest.update(Bytes.toBytes(cachePtr.getLength()));
+        digest.update(Bytes.toBytes(clientVersion));
+        return new ImmutableBytesPtr(digest.digest());
+    }
+
+    /**
+     * Get a handle on the hash cache registered under contentKey, building it with
+     * builder if it is not present yet. The returned handle must be closed when no
+     * longer needed.
+     */
+    public HashCache acquire(ImmutableBytesPtr contentKey, MemoryChunk chunk, Builder builder) throws SQLException {
+        while (true) {
+            Entry entry = new Entry(contentKey);
+            Entry existing = entries.putIfAbsent(contentKey, entry);
+            if (existing == null) {
+                HashCache cache;
+                try {
+                    cache = builder.build(chunk);
+                } catch (SQLException | RuntimeException | Error e) {
+                    entries.remove(contentKey, entry);
+                    entry.fail(e);
+                    throw e;
+                }
+                // The chunk now belongs to the shared cache and is freed with it
+                Handle handle = new Handle(entry, null);
+                entry.complete(cache, chunk, handle);
+                return handle;
+            }
+            if (existing.retain()) {
+                boolean success = false;
+                try {
+                    existing.await();
+                    chunk.resize(0);
+                    Handle handle = new Handle(existing, chunk);
+                    existing.add(handle);
+                    success = true;
+                    return handle;
+                } finally {
+                    if (!success) {
+                        existing.release();
+                    }
+                }
+            }
+            // The existing entry is being released by its last holder; wait for it to go away
+            Thread.yield();
+        }
+    }
+
+    /**
+     * @return the number of distinct hash caches currently registered
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    private class Entry {
+        private final ImmutableBytesPtr contentKey;
+        private final AtomicInteger refCount = new AtomicInteger(1);
+        private final CountDownLatch built = new CountDownLatch(1);
+        private volatile HashCache cache;
+        private volatile Throwable failure;
+        // Open handles, the handle the memory of the cache is accounted to, and the chunk of a
+        // closed handle it had to stay with
+        private final List<Handle> handles = new ArrayList<Handle>();
+        private MemoryChunk builderChunk;
+        private Handle holder;
+        private MemoryChunk parkedChunk;
+
+        private Entry(ImmutableBytesPtr contentKey) {
+            this.contentKey = contentKey;
+        }
+
+        private void complete(HashCache cache, MemoryChunk chunk, Handle handle) {
+            synchronized (this) {
+                this.builderChunk = chunk;
+                this.holder = handle;
+                handles.add(handle);
+            }
+            this.cache = cache;
+            built.countDown();
+        }
+
+        private synchronized void add(Handle handle) {
+            handles.add(handle);
+        }
+
+        /**
+         * Forget a closed handle, moving the memory of the cache to another open handle if
+         * it was accounted to this one.
+         * @return whether the chunk of the handle still holds the memory of the cache
+         */
+        private synchronized boolean remove(Handle handle) {
+            handles.remove(handle);
+            if (holder != handle) {
+                return false;
+            }
+            holder = null;
+            long size = builderChunk.getSize() + (handle.chunk == null ? 0 : handle.chunk.getSize());
+            for (Handle survivor : handles) {
+                try {
+                    survivor.chunk.resize(size);
+                } catch (InsufficientMemoryException e) {
+                    continue;
+                }
+                holder = survivor;
+                builderChunk.resize(0);
+                return false;
+            }
+            if (handle.chunk != null) {
+                parkedChunk = handle.chunk;
+                return true;
+            }
+            return false;
+        }
+
+        private void fail(Throwable failure) {
+            this.failure = failure;
+            built.countDown();
+            refCount.decrementAndGet();
+        }
+
+        private void await() throws SQLException {
+            try {
+                built.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw ServerUtil.parseServerException(e);
+            }
+            if (failure != null) {
+                throw ServerUtil.parseServerException(failure);
+            }
+        }
+
+        private boolean retain() {
+            while (true) {
+                int count = refCount.get();
+                if (count <= 0) {
+                    return false;
+                }
+                if (refCount.compareAndSet(count, count + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        private void release() {
+            if (refCount.decrementAndGet() == 0) {
+                entries.remove(contentKey, this);
+                Closeables.closeQuietly(cache);
+                synchronized (this) {
+                    if (parkedChunk != null) {
+                        parkedChunk.close();
+                    }
+                }
+            }
+        }
+    }
+
+    private static class Handle implements HashCache {
+        private final Entry entry;
+        private final MemoryChunk chunk;
+        private boolean closed;
+
+        private Handle(Entry entry, MemoryChunk chunk) {
+            this.entry = entry;
+            this.chunk = chunk;
+        }
+
+        @Override
+        public int getClientVersion() {
+            return entry.cache.getClientVersion();
+        }
+
+        @Override
+        public List<Tuple> get(ImmutableBytesPtr hashKey) throws IOException {
+            return entry.cache.get(hashKey);
+        }
+
+        @Override
+        public synchronized void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            boolean holdsCache = entry.remove(this);
+            if (chunk != null && !holdsCache) {
+                chunk.close();
+            }
+            entry.release();
+        }
+
+        @Override
+        public String toString() {
+            return entry.cache.toString();
+        }
+    }
+}
@@ -36,19 +36,30 @@ import org.apache.phoenix.util.ReadOnlyProps;
  */
 public abstract class BaseQueryServicesImpl implements QueryServices {
     private final ThreadPoolExecutor executor;
+    private final int keepAliveMs;
+    private ThreadPoolExecutor asyncExecutor;
+    private ThreadPoolExecutor commitExecutor;
+    private ThreadPoolExecutor aggregateMergeExecutor;
+    private ThreadPoolExecutor sortExecutor;
     private final MemoryManager memoryManager;
     private final ReadOnlyProps props;
     private final QueryOptimizer queryOptimizer;
     
     public BaseQueryServicesImpl(ReadOnlyProps defaultProps, QueryServicesOptions options) {
+        boolean useVirtualThreads = options.isVirtualThreadsEnabled();
+        // The pool falls back to platform threads when the JVM doesn't support virtual threads,
+        // in which case it must not be sized for virtual threads
         this.executor =  JobManager.createThreadPoolExec(
                 options.getKeepAliveMs(), 
-                options.getThreadPoolSize(), 
+                useVirtualThreads && JobManager.isVirtualThreadsSupported()
+                        ? options.getVirtualThreadPoolSize() : options.getThreadPoolSize(),
                 options.getQueueSize(),
-                options.isGlobalMetricsEnabled());
+                options.isGlobalMetricsEnabled(),
+                useVirtualThreads);
         this.memoryManager = new GlobalMemoryManager(
                 Runtime.getRuntime().maxMemory() * options.getMaxMemoryPerc() / 100);
         this.props = options.getProps(defaultProps);
+        this.keepAliveMs = options.getKeepAliveMs();
         this.queryOptimizer = new QueryOptimizer(this);
     }
     
@@ -57,6 +68,78 @@ public abstract class BaseQueryServicesImpl implements QueryServices {
         return executor;
     }
 
+    /**
+     * Get the executor of asynchronous statements, which is only created once first used and
+     * is created again if used after the services were closed.
+     */
+    @Override
+    public synchronized ThreadPoolExecutor getAsyncExecutor() {
+        if (asyncExecutor == null) {
+            asyncExecutor = JobManager.createThreadPoolExec(
+                    keepAliveMs,
+                    props.getInt(QueryServices.ASYNC_STATEMENT_THREAD_POOL_SIZE_ATTRIB,
+                            QueryServicesOptions.DEFAULT_ASYNC_STATEMENT_THREAD_POOL_SIZE),
+                    props.getInt(QueryServices.ASYNC_STATEMENT_QUEUE_SIZE_ATTRIB,
+                            QueryServicesOptions.DEFAULT_ASYNC_STATEMENT_QUEUE_SIZE),
+                    false);
+        }
+        return asyncExecutor;
+    }
+
+    /**
+     * Get the executor of pipelined commits, which is created and shut down the same way as
+     * the executor of asynchronous statements. It has no queue, so a commit writes a table
+     * itself rather than wait for a thread.
+     */
+    @Override
+    public synchronized ThreadPoolExecutor getCommitExecutor() {
+        if (commitExecutor == null) {
+            commitExecutor = JobManager.createThreadPoolExec(
+                    keepAliveMs,
+                    props.getInt(QueryServices.MUTATE_PIPELINED_COMMIT_THREAD_POOL_SIZE_ATTRIB,
+                            QueryServicesOptions.DEFAULT_MUTATE_PIPELINED_COMMIT_THREAD_POOL_SIZE),
+                    0,
+                    false);
+        }
+        return commitExecutor;
+    }
+
+    /**
+     * Get the executor of client aggregate merges, which is created and shut down the same way
+     * as the executor of pipelined commits, and has no queue either. It is separate from the
+     * executor of the scans, as the merge may run on one of its threads as part of a sub-plan.
+     */
+    @Override
+    public synchronized ThreadPoolExecutor getAggregateMergeExecutor() {
+        if (aggregateMergeExecutor == null) {
+            aggregateMergeExecutor = JobManager.createThreadPoolExec(
+                    keepAliveMs,
+                    props.getInt(QueryServices.CLIENT_AGGREGATE_MERGE_THREAD_POOL_SIZE_ATTRIB,
+                            QueryServicesOptions.DEFAULT_CLIENT_AGGREGATE_MERGE_THREAD_POOL_SIZE),
+                    0,
+                    false);
+        }
+        return aggregateMergeExecutor;
+    }
+
+    /**
+     * Get the executor of client external sorts, which is created and shut down the same way
+     * as the executor of client aggregate merges, and has no queue either, for the same reason:
+     * the sort may run on a thread of the executor of the scans as part of a sub-plan.
+     */
+    @Override
+    public synchronized ThreadPoolExecutor getSortExecutor() {
+        if (sortExecutor == null) {
+            sortExecutor = JobManager.createThreadPoolExec(
+                    keepAliveMs,
+                    props.getInt(QueryServices.CLIENT_ORDERBY_SORT_THREAD_POOL_SIZE_ATTRIB,
+                            QueryServicesOptions.DEFAULT_CLIENT_ORDERBY_SORT_THREAD_POOL_SIZE),
+                    0,
+                    false);
+        }
+        return sortExecutor;
+    }
+
     @Override
     public MemoryManager getMemoryManager() {
         return memoryManager;
@@ -71,6 +154,26 @@ public abstract class BaseQueryServicesImpl implements QueryServices {
     public void close() {
         // Do not shutdown the executor as it prevents the Driver from being able
         // to attempt to open a connection in the future.
+        // The asynchronous statement, commit, aggregate merge and sort executors are created again if
+        // needed, and the tasks already submitted to them still run to completion.
+        synchronized (this) {
+            if (asyncExecutor != null) {
+                asyncExecutor.shutdown();
+                asyncExecutor = null;
+            }
+            if (commitExecutor != null) {
+                commitExecutor.shutdown();
+                commitExecutor = null;
+            }
+            if (aggregateMergeExecutor != null) {
+                aggregateMergeExecutor.shutdown();
+                aggregateMergeExecutor = null;
+            }
+            if (sortExecutor != null) {
+                sortExecutor.shutdown();
+                sortExecutor = null;
+            }
+        }
     }
 
     @Override
@@ -37,6 +37,7 @@ import org.apache.phoenix.compile.MutationPlan;
 import org.apache.phoenix.coprocessor.MetaDataProtocol.MetaDataMutationResult;
 import org.apache.phoenix.execute.MutationState;
 import org.apache.phoenix.hbase.index.util.KeyValueBuilder;
+import org.apache.phoenix.jdbc.ParsedStatementCache;
 import org.apache.phoenix.jdbc.PhoenixConnection;
 import org.apache.phoenix.log.QueryLoggerDisruptor;
 import org.apache.phoenix.parse.PFunction;
@@ -129,6 +130,10 @@ public interface ConnectionQueryServices extends QueryServices, MetaDataMutated
     public void init(String url, Properties props) throws SQLException;
 
     public int getLowestClusterHBaseVersion();
+    /**
+     * @return the lowest Phoenix version of the region servers of the cluster
+     */
+    public int getLowestClusterPhoenixVersion();
     public Admin getAdmin() throws SQLException;
 
     void clearTableRegionCache(TableName name) throws SQLException;
@@ -187,6 +192,11 @@ public interface ConnectionQueryServices extends QueryServices, MetaDataMutated
     public User getUser();
 
     public QueryLoggerDisruptor getQueryDisruptor();
+
+    /**
+     * @return cache of the statements parsed from SQL text by the connections of these services
+     */
+    public ParsedStatementCache getParsedStatementCache();
     
     public PhoenixTransactionClient initTransactionClient(TransactionFactory.Provider provider) throws SQLException;
     
@@ -216,6 +216,7 @@ import org.apache.phoenix.index.PhoenixIndexCodec;
 import org.apache.phoenix.index.PhoenixTransactionalIndexer;
 import org.apache.phoenix.iterate.TableResultIterator;
 import org.apache.phoenix.iterate.TableResultIterator.RenewLeaseStatus;
+import org.apache.phoenix.jdbc.ParsedStatementCache;
 import org.apache.phoenix.jdbc.PhoenixConnection;
 import org.apache.phoenix.jdbc.PhoenixDatabaseMetaData;
 import org.apache.phoenix.jdbc.PhoenixEmbeddedDriver.ConnectionInfo;
@@ -331,6 +332,8 @@ public class ConnectionQueryServicesImpl extends DelegateQueryServices implement
 
     // Lowest HBase version on the cluster.
     private int lowestClusterHBaseVersion = Integer.MAX_VALUE;
+    // Lowest Phoenix version on the cluster.
+    private int lowestClusterPhoenixVersion = Integer.MAX_VALUE;
     private boolean hasIndexWALCodec = true;
 
     @GuardedBy("connectionCountLock")
@@ -389,6 +392,7 @@ public class ConnectionQueryServicesImpl extends DelegateQueryServices implement
                 }
             });
     private QueryLoggerDisruptor queryDisruptor;
+    private final ParsedStatementCache parsedStatementCache;
 
     private PMetaData newEmptyMetaData() {
         return new PSynchronizedMetaData(new PMetaDataImpl(INITIAL_META_DATA_TABLE_CAPACITY, getProps()));
@@ -453,6 +457,7 @@ public class ConnectionQueryServicesImpl extends DelegateQueryServices implement
         this.maxConnectionsAllowed = config.getInt(QueryServices.CLIENT_CONNECTION_MAX_ALLOWED_CONNECTIONS,
             QueryServicesOptions.DEFAULT_CLIENT_CONNECTION_MAX_ALLOWED_CONNECTIONS);
         this.shouldThrottleNumConnections = (maxConnectionsAllowed > 0);
+        this.parsedStatementCache = ParsedStatementCache.newInstance(props);
         if (!QueryUtil.isServerConnection(props)) {
             //Start queryDistruptor everytime as log level can be change at connection level as well, but we can avoid starting for server connections.
             try {
@@ -1561,6 +1566,7 @@ public class ConnectionQueryServicesImpl extends DelegateQueryServices implement
             AccessDeniedException {
         StringBuilder errorMessage = new StringBuilder();
         int minHBaseVersion = Integer.MAX_VALUE;
+        int minPhoenixVersion = Integer.MAX_VALUE;
         boolean isTableNamespaceMappingEnabled = false;
         long systemCatalogTimestamp = Long.MAX_VALUE;
         Table ht = null;
@@ -1637,6 +1643,9 @@ public class ConnectionQueryServicesImpl extends DelegateQueryServices implement
                 if (minHBaseVersion > MetaDataUtil.decodeHBaseVersion(serverJarVersion)) {
                     minHBaseVersion = MetaDataUtil.decodeHBaseVersion(serverJarVersion);
                 }
+                if (minPhoenixVersion > MetaDataUtil.decodePhoenixVersion(serverJarVersion)) {
+                    minPhoenixVersion = MetaDataUtil.decodePhoenixVersion(serverJarVersion);
+                }
                 // In case this is the first time connecting to this cluster, the system catalog table does not have an
                 // entry for itself yet, so we cannot get the timestamp and this will not be returned from the
                 // GetVersionResponse message object
@@ -1662,6 +1671,7 @@ public class ConnectionQueryServicesImpl extends DelegateQueryServices implement
                             + " is consistent on client and server.")
                             .build().buildException(); }
             lowestClusterHBaseVersion = minHBaseVersion;
+            lowestClusterPhoenixVersion = minPhoenixVersion;
         } finally {
             if (ht != null) {
                 try {
@@ -4724,6 +4734,11 @@ public class ConnectionQueryServicesImpl extends DelegateQueryServices implement
         return lowestClusterHBaseVersion;
     }
 
+    @Override
+    public int getLowestClusterPhoenixVersion() {
+        return lowestClusterPhoenixVersion;
+    }
+
     @Override
     public boolean hasIndexWALCodec() {
         return hasIndexWALCodec;
@@ -5704,6 +5719,11 @@ public class ConnectionQueryServicesImpl extends DelegateQueryServices implement
         return this.queryDisruptor;
     }
 
+    @Override
+    public ParsedStatementCache getParsedStatementCache() {
+        return parsedStatementCache;
+    }
+
     @Override
     public synchronized PhoenixTransactionClient initTransactionClient(Provider provider) throws SQLException {
         PhoenixTransactionClient client = txClients[provider.ordinal()];
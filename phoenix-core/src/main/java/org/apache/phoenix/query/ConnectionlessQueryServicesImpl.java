@@ -56,6 +56,7 @@ import org.apache.phoenix.exception.SQLExceptionInfo;
 import org.apache.phoenix.execute.MutationState;
 import org.apache.phoenix.hbase.index.util.GenericKeyValueBuilder;
 import org.apache.phoenix.hbase.index.util.KeyValueBuilder;
+import org.apache.phoenix.jdbc.ParsedStatementCache;
 import org.apache.phoenix.jdbc.PhoenixConnection;
 import org.apache.phoenix.jdbc.PhoenixDatabaseMetaData;
 import org.apache.phoenix.jdbc.PhoenixEmbeddedDriver.ConnectionInfo;
@@ -122,6 +123,7 @@ public class ConnectionlessQueryServicesImpl extends DelegateQueryServices imple
     private final Map<String, List<HRegionLocation>> tableSplits = Maps.newHashMap();
     private final GuidePostsCacheWrapper guidePostsCache;
     private final Configuration config;
+    private final ParsedStatementCache parsedStatementCache;
 
     private User user;
     
@@ -156,6 +158,7 @@ public class ConnectionlessQueryServicesImpl extends DelegateQueryServices imple
 
         this.guidePostsCache = GUIDE_POSTS_CACHE_PROVIDER.getGuidePostsCache(props.get(GUIDE_POSTS_CACHE_FACTORY_CLASS,
                 QueryServicesOptions.DEFAULT_GUIDE_POSTS_CACHE_FACTORY_CLASS), null, config);
+        this.parsedStatementCache = ParsedStatementCache.newInstance(props);
     }
 
     private PMetaData newEmptyMetaData() {
@@ -454,6 +457,11 @@ public class ConnectionlessQueryServicesImpl extends DelegateQueryServices imple
         return Integer.MAX_VALUE; // Allow everything for connectionless
     }
 
+    @Override
+    public int getLowestClusterPhoenixVersion() {
+        return Integer.MAX_VALUE; // Allow everything for connectionless
+    }
+
     @Override
     public Admin getAdmin() throws SQLException {
         throw new UnsupportedOperationException();
@@ -776,6 +784,11 @@ public class ConnectionlessQueryServicesImpl extends DelegateQueryServices imple
     public QueryLoggerDisruptor getQueryDisruptor() {
         return null;
     }
+
+    @Override
+    public ParsedStatementCache getParsedStatementCache() {
+        return parsedStatementCache;
+    }
     
     @Override
     public PhoenixTransactionClient initTransactionClient(Provider provider) {
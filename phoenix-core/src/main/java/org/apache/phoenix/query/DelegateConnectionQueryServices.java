@@ -37,6 +37,7 @@ import org.apache.phoenix.compile.MutationPlan;
 import org.apache.phoenix.coprocessor.MetaDataProtocol.MetaDataMutationResult;
 import org.apache.phoenix.execute.MutationState;
 import org.apache.phoenix.hbase.index.util.KeyValueBuilder;
+import org.apache.phoenix.jdbc.ParsedStatementCache;
 import org.apache.phoenix.jdbc.PhoenixConnection;
 import org.apache.phoenix.log.QueryLoggerDisruptor;
 import org.apache.phoenix.parse.PFunction;
@@ -177,6 +178,11 @@ public class DelegateConnectionQueryServices extends DelegateQueryServices imple
         return getDelegate().getLowestClusterHBaseVersion();
     }
 
+    @Override
+    public int getLowestClusterPhoenixVersion() {
+        return getDelegate().getLowestClusterPhoenixVersion();
+    }
+
     @Override
     public Admin getAdmin() throws SQLException {
         return getDelegate().getAdmin();
@@ -386,6 +392,11 @@ public class DelegateConnectionQueryServices extends DelegateQueryServices imple
     public QueryLoggerDisruptor getQueryDisruptor() {
         return getDelegate().getQueryDisruptor();
     }
+
+    @Override
+    public ParsedStatementCache getParsedStatementCache() {
+        return getDelegate().getParsedStatementCache();
+    }
     
     @Override
     public PhoenixTransactionClient initTransactionClient(Provider provider) throws SQLException {
@@ -50,6 +50,26 @@ public class DelegateQueryServices implements QueryServices {
         return parent.getExecutor();
     }
 
+    @Override
+    public ThreadPoolExecutor getAsyncExecutor() {
+        return parent.getAsyncExecutor();
+    }
+
+    @Override
+    public ThreadPoolExecutor getCommitExecutor() {
+        return parent.getCommitExecutor();
+    }
+
+    @Override
+    public ThreadPoolExecutor getAggregateMergeExecutor() {
+        return parent.getAggregateMergeExecutor();
+    }
+
+    @Override
+    public ThreadPoolExecutor getSortExecutor() {
+        return parent.getSortExecutor();
+    }
+
     @Override
     public MemoryManager getMemoryManager() {
         return parent.getMemoryManager();
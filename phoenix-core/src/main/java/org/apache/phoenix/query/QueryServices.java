@@ -355,10 +355,114 @@ public interface QueryServices extends SQLCloseable {
     public static final String GUIDE_POSTS_CACHE_FACTORY_CLASS = "phoenix.guide.posts.cache.factory.class";
 
     public static final String PENDING_MUTATIONS_DDL_THROW_ATTRIB = "phoenix.pending.mutations.before.ddl.throw";
+
+    // Allow the build side of a hash join to grow beyond phoenix.query.maxServerCacheBytes. Region
+    // servers then keep the partitions of the hash cache that fit in memory and spill the rest to disk
+    public static final String HASH_JOIN_SPILLABLE_ATTRIB = "phoenix.query.hashjoin.spillable";
+    // Hard limit on the uncompressed size of the build side of a hash join when spilling is enabled.
+    // The compressed build side is still sent to each region server in one request, so it must also
+    // fit within hbase.ipc.max.request.size, which the client checks against its own configuration,
+    // and in the memory of the region server while the request is held
+    public static final String MAX_SERVER_CACHE_SPILL_SIZE_ATTRIB = "phoenix.query.maxServerCacheSpillBytes";
+    // Build a Bloom filter of the join keys of the build side of a hash join and push it into the
+    // probe side scan, so that rows without a match are dropped by the region scanner
+    public static final String HASH_JOIN_BLOOM_FILTER_ENABLED_ATTRIB = "phoenix.query.hashjoin.bloomFilter.enabled";
+    // Build sides with more join keys than this do not get a Bloom filter
+    public static final String HASH_JOIN_BLOOM_FILTER_MAX_KEYS_ATTRIB = "phoenix.query.hashjoin.bloomFilter.maxKeys";
+    // Sort client side ORDER BY without LIMIT with a parallel external merge sort when spooling is enabled
+    public static final String CLIENT_ORDERBY_EXTERNAL_SORT_ENABLED_ATTRIB = "phoenix.query.client.orderBy.externalSort.enabled";
+    // Maximum number of sorted run files of an external sort before they are merged into one
+    public static final String CLIENT_ORDERBY_MERGE_FACTOR_ATTRIB = "phoenix.query.client.orderBy.mergeFactor";
+    // Evaluate supported where clauses of scans and ungrouped aggregations a batch of rows at a time
+    // on the region server instead of through a row by row filter
+    public static final String VECTORIZED_FILTER_ENABLED_ATTRIB = "phoenix.coprocessor.vectorizedFilter.enabled";
+    // Number of rows evaluated together when the where clause is evaluated in batches
+    public static final String VECTORIZED_FILTER_BATCH_SIZE_ATTRIB = "phoenix.coprocessor.vectorizedFilter.batchSize";
+    // Aggregate groups of an unordered group by into primitive accumulator columns when all
+    // aggregates are COUNT, SUM, MIN or MAX over values that fit in a long or a double
+    public static final String GROUPBY_PRIMITIVE_AGGREGATION_ENABLED_ATTRIB = "phoenix.groupby.primitiveAggregation.enabled";
+    // Maximum number of parsed statements cached per connection query services, with 0, the default,
+    // disabling the cache
+    public static final String PARSED_STATEMENT_CACHE_SIZE_ATTRIB = "phoenix.query.parsedStatementCache.size";
+    // Statements with SQL text longer than this are not cached after they are parsed
+    public static final String PARSED_STATEMENT_CACHE_MAX_SQL_LENGTH_ATTRIB = "phoenix.query.parsedStatementCache.maxSqlLength";
+    // Spool client side results as Snappy compressed blocks, both in memory and on disk
+    public static final String CLIENT_SPOOL_COMPRESSION_ENABLED_ATTRIB = "phoenix.query.spoolFile.compression.enabled";
+    // Write the mutations of each phase of a non transactional commit to the physical tables
+    // involved concurrently instead of one table after the other
+    public static final String MUTATE_PIPELINED_COMMIT_ENABLED_ATTRIB = "phoenix.mutate.pipelinedCommit.enabled";
+    // Maximum number of physical tables written to concurrently by a pipelined commit
+    public static final String MUTATE_PIPELINED_COMMIT_MAX_IN_FLIGHT_ATTRIB = "phoenix.mutate.pipelinedCommit.maxInFlight";
+    // Number of threads running the statements and commits executed through PhoenixAsyncStatement
+    public static final String ASYNC_STATEMENT_THREAD_POOL_SIZE_ATTRIB = "phoenix.query.asyncStatement.threadPoolSize";
+    // Number of asynchronous statements and commits that may wait for a thread before new ones are rejected
+    public static final String ASYNC_STATEMENT_QUEUE_SIZE_ATTRIB = "phoenix.query.asyncStatement.queueSize";
+    // Run the tasks of parallel and serial scans on virtual threads, on JVMs that support them
+    public static final String VIRTUAL_THREADS_ENABLED_ATTRIB = "phoenix.query.virtualThreads.enabled";
+    // Maximum number of scan tasks running at once on virtual threads, replacing phoenix.query.threadPoolSize
+    public static final String VIRTUAL_THREAD_POOL_SIZE_ATTRIB = "phoenix.query.virtualThreads.poolSize";
+    // Size the parallel scans of queries from guidepost row estimates and thread pool load
+    public static final String ADAPTIVE_SCAN_GROUPER_ENABLED_ATTRIB = "phoenix.query.adaptiveScanGrouper.enabled";
+    // Minimum number of estimated rows of a parallel scan while the thread pool is idle
+    public static final String ADAPTIVE_SCAN_GROUPER_MIN_ROWS_PER_SCAN_ATTRIB = "phoenix.query.adaptiveScanGrouper.minRowsPerScan";
+    // Guidepost chunks estimated to hold more rows are split while the thread pool has idle threads
+    public static final String ADAPTIVE_SCAN_GROUPER_MAX_ROWS_PER_SCAN_ATTRIB = "phoenix.query.adaptiveScanGrouper.maxRowsPerScan";
+    // Maximum number of unverified global index rows repaired together with a single scan of the data table
+    public static final String GLOBAL_INDEX_READ_REPAIR_BATCH_SIZE_ATTRIB = "phoenix.global.index.read.repair.batch.size";
+    // Maximum number of recently repaired global index rows remembered by an index region
+    public static final String GLOBAL_INDEX_REPAIRED_ROW_CACHE_SIZE_ATTRIB = "phoenix.global.index.repaired.row.cache.size";
+    // Time a repaired global index row is remembered by an index region
+    public static final String GLOBAL_INDEX_REPAIRED_ROW_CACHE_TTL_MS_ATTRIB = "phoenix.global.index.repaired.row.cache.ttl.ms";
+    // Whether the guideposts of a region are updated with the data of each memstore flush, between full collections
+    public static final String STATS_COLLECT_ON_FLUSH_ENABLED_ATTRIB = "phoenix.stats.collectOnFlush.enabled";
+    // Whether a join on the leading row key columns of two tables is merged region by region on the server.
+    // Each left-hand region scans the matching right-hand key range remotely; the regions need not be aligned
+    public static final String CO_LOCATED_JOIN_ENABLED_ATTRIB = "phoenix.query.coLocatedJoin.enabled";
+    // Whether a semi or anti sort merge join on the leading row key columns of the right-hand table
+    // probes that table for the left-hand keys instead of merging with all of its rows
+    public static final String SORT_MERGE_JOIN_EXISTENCE_PROBE_ENABLED_ATTRIB = "phoenix.query.sortMergeJoin.existenceProbe.enabled";
+    // Number of left-hand rows whose keys are probed for with a single skip scan
+    public static final String SORT_MERGE_JOIN_EXISTENCE_PROBE_BATCH_SIZE_ATTRIB = "phoenix.query.sortMergeJoin.existenceProbe.batchSize";
+    // Whether an aggregation grouped on leading row key columns seeks past the rest of each group
+    // once its MIN, MAX, FIRST_VALUE or LAST_VALUE aggregates can no longer change
+    public static final String LOOSE_INDEX_SCAN_ENABLED_ATTRIB = "phoenix.query.looseIndexScan.enabled";
+    // Whether the spillable group by cache bounds itself by its share of the memory available to
+    // concurrent aggregations and partitions its spilled groups by the number of groups seen
+    public static final String GROUPBY_ADAPTIVE_SPILL_ENABLED_ATTRIB = "phoenix.groupby.adaptiveSpill.enabled";
+    // Maximum number of spill files the spilled groups of an adaptive group by cache are partitioned into
+    public static final String GROUPBY_MAX_SPILL_FILES_ATTRIB = "phoenix.groupby.maxSpillFiles";
+    // Number of client threads merging the partial aggregates of the groups returned by the
+    // regions of a group by that is not in row key order, one meaning a single threaded merge sort
+    public static final String CLIENT_AGGREGATE_MERGE_THREADS_ATTRIB = "phoenix.query.clientAggregate.mergeThreads";
+    // Number of threads writing the physical tables of pipelined commits, shared by all connections.
+    // A table is written by the committing thread itself when they are all busy
+    public static final String MUTATE_PIPELINED_COMMIT_THREAD_POOL_SIZE_ATTRIB = "phoenix.mutate.pipelinedCommit.threadPoolSize";
+    // Number of threads merging the partitions of client aggregate merges, shared by all connections.
+    // A partition is merged by the thread reading the partial aggregates when they are all busy
+    public static final String CLIENT_AGGREGATE_MERGE_THREAD_POOL_SIZE_ATTRIB = "phoenix.query.clientAggregate.mergeThreadPoolSize";
+    // Number of threads sorting and writing the runs of client external sorts, shared by all connections.
+    // A run is sorted and written by the thread reading the rows when they are all busy
+    public static final String CLIENT_ORDERBY_SORT_THREAD_POOL_SIZE_ATTRIB = "phoenix.query.client.orderBy.sortThreadPoolSize";
     /**
      * Get executor service used for parallel scans
      */
     public ThreadPoolExecutor getExecutor();
+    /**
+     * Get executor service used to run statements and commits executed asynchronously
+     */
+    public ThreadPoolExecutor getAsyncExecutor();
+    /**
+     * Get executor service used to write the physical tables of pipelined commits
+     */
+    public ThreadPoolExecutor getCommitExecutor();
+    /**
+     * Get executor service used to merge the partitions of client aggregate merges
+     */
+    public ThreadPoolExecutor getAggregateMergeExecutor();
+    /**
+     * Get executor service used to sort and write the runs of client external sorts
+     */
+    public ThreadPoolExecutor getSortExecutor();
     /**
      * Get the memory manager used to track memory usage
      */
@@ -97,6 +97,8 @@ import static org.apache.phoenix.query.QueryServices.USE_BYTE_BASED_REGEX_ATTRIB
 import static org.apache.phoenix.query.QueryServices.USE_INDEXES_ATTRIB;
 import static org.apache.phoenix.query.QueryServices.USE_STATS_FOR_PARALLELIZATION;
 import static org.apache.phoenix.query.QueryServices.CLIENT_INDEX_ASYNC_THRESHOLD;
+import static org.apache.phoenix.query.QueryServices.VIRTUAL_THREADS_ENABLED_ATTRIB;
+import static org.apache.phoenix.query.QueryServices.VIRTUAL_THREAD_POOL_SIZE_ATTRIB;
 
 import java.util.HashSet;
 import java.util.Map.Entry;
@@ -369,6 +371,42 @@ public class QueryServicesOptions {
     public static final boolean DEFAULT_LONG_VIEW_INDEX_ENABLED = false;
 
     public static final boolean DEFAULT_PENDING_MUTATIONS_DDL_THROW = false;
+
+    public static final boolean DEFAULT_HASH_JOIN_SPILLABLE = false;
+    public static final long DEFAULT_MAX_SERVER_CACHE_SPILL_SIZE = 1024L*1024*1024; // 1 GB
+    public static final boolean DEFAULT_HASH_JOIN_BLOOM_FILTER_ENABLED = false;
+    public static final int DEFAULT_HASH_JOIN_BLOOM_FILTER_MAX_KEYS = 100000;
+    public static final boolean DEFAULT_CLIENT_ORDERBY_EXTERNAL_SORT_ENABLED = false;
+    public static final int DEFAULT_CLIENT_ORDERBY_MERGE_FACTOR = 64;
+    public static final boolean DEFAULT_VECTORIZED_FILTER_ENABLED = false;
+    public static final int DEFAULT_VECTORIZED_FILTER_BATCH_SIZE = 1024;
+    public static final boolean DEFAULT_GROUPBY_PRIMITIVE_AGGREGATION_ENABLED = false;
+    public static final long DEFAULT_PARSED_STATEMENT_CACHE_SIZE = 0;
+    public static final int DEFAULT_PARSED_STATEMENT_CACHE_MAX_SQL_LENGTH = 8 * 1024;
+    public static final boolean DEFAULT_CLIENT_SPOOL_COMPRESSION_ENABLED = false;
+    public static final boolean DEFAULT_MUTATE_PIPELINED_COMMIT_ENABLED = false;
+    public static final int DEFAULT_MUTATE_PIPELINED_COMMIT_MAX_IN_FLIGHT = 8;
+    public static final int DEFAULT_ASYNC_STATEMENT_THREAD_POOL_SIZE = 64;
+    public static final int DEFAULT_ASYNC_STATEMENT_QUEUE_SIZE = 5000;
+    public static final boolean DEFAULT_VIRTUAL_THREADS_ENABLED = false;
+    public static final int DEFAULT_VIRTUAL_THREAD_POOL_SIZE = 4096;
+    public static final boolean DEFAULT_ADAPTIVE_SCAN_GROUPER_ENABLED = false;
+    public static final long DEFAULT_ADAPTIVE_SCAN_GROUPER_MIN_ROWS_PER_SCAN = 100000;
+    public static final long DEFAULT_ADAPTIVE_SCAN_GROUPER_MAX_ROWS_PER_SCAN = 10000000;
+    public static final int DEFAULT_GLOBAL_INDEX_READ_REPAIR_BATCH_SIZE = 1;
+    public static final int DEFAULT_GLOBAL_INDEX_REPAIRED_ROW_CACHE_SIZE = 10000;
+    public static final long DEFAULT_GLOBAL_INDEX_REPAIRED_ROW_CACHE_TTL_MS = 60000;
+    public static final boolean DEFAULT_STATS_COLLECT_ON_FLUSH_ENABLED = false;
+    public static final boolean DEFAULT_CO_LOCATED_JOIN_ENABLED = false;
+    public static final boolean DEFAULT_SORT_MERGE_JOIN_EXISTENCE_PROBE_ENABLED = false;
+    public static final int DEFAULT_SORT_MERGE_JOIN_EXISTENCE_PROBE_BATCH_SIZE = 1000;
+    public static final boolean DEFAULT_LOOSE_INDEX_SCAN_ENABLED = false;
+    public static final boolean DEFAULT_GROUPBY_ADAPTIVE_SPILL_ENABLED = false;
+    public static final int DEFAULT_GROUPBY_MAX_SPILL_FILES = 16;
+    public static final int DEFAULT_CLIENT_AGGREGATE_MERGE_THREADS = 1;
+    public static final int DEFAULT_MUTATE_PIPELINED_COMMIT_THREAD_POOL_SIZE = 32;
+    public static final int DEFAULT_CLIENT_AGGREGATE_MERGE_THREAD_POOL_SIZE = 32;
+    public static final int DEFAULT_CLIENT_ORDERBY_SORT_THREAD_POOL_SIZE = 32;
     private final Configuration config;
 
     private QueryServicesOptions(Configuration config) {
@@ -608,6 +646,14 @@ public class QueryServicesOptions {
         return config.getInt(QUEUE_SIZE_ATTRIB, DEFAULT_QUEUE_SIZE);
     }
 
+    public boolean isVirtualThreadsEnabled() {
+        return config.getBoolean(VIRTUAL_THREADS_ENABLED_ATTRIB, DEFAULT_VIRTUAL_THREADS_ENABLED);
+    }
+
+    public int getVirtualThreadPoolSize() {
+        return config.getInt(VIRTUAL_THREAD_POOL_SIZE_ATTRIB, DEFAULT_VIRTUAL_THREAD_POOL_SIZE);
+    }
+
     public int getMaxMemoryPerc() {
         return config.getInt(MAX_MEMORY_PERC_ATTRIB, DEFAULT_MAX_MEMORY_PERC);
     }
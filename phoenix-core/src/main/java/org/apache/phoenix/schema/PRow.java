@@ -21,6 +21,7 @@ import java.util.List;
 import java.util.Map;
 
 import org.apache.hadoop.hbase.client.Mutation;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
 
 import org.apache.phoenix.thirdparty.com.google.common.collect.ImmutableMap;
 import org.apache.hadoop.hbase.coprocessor.ObserverContext;
@@ -58,6 +59,16 @@ public interface PRow {
      */
     public void setValue(PColumn col, byte[] value);
 
+    /**
+     * Set a column value in the row from a slice of a byte array, which is only
+     * copied into the mutations of the row
+     * @param col the column for which the value is being set
+     * @param value the value, an empty one meaning null
+     * @throws ConstraintViolationException if row data violates schema
+     * constraint
+     */
+    public void setValue(PColumn col, ImmutableBytesWritable value);
+
     /**
      * Set attributes for the Put operations involving dynamic columns. These attributes are
      * persisted as cells under a reserved qualifier for the dynamic column metadata so that we
@@ -1322,16 +1322,24 @@ public class PTableImpl implements PTable {
 
         @Override
         public void setValue(PColumn column, byte[] byteValue) {
+            // Check null, since some types have no byte representation for null
+            if (byteValue == null) {
+                byteValue = ByteUtil.EMPTY_BYTE_ARRAY;
+            }
+            setValue(column, new ImmutableBytesWritable(byteValue));
+        }
+
+        @Override
+        public void setValue(PColumn column, ImmutableBytesWritable value) {
             deleteRow = null;
             byte[] family = column.getFamilyName().getBytes();
             byte[] qualifier = column.getColumnQualifierBytes();
             ImmutableBytesPtr qualifierPtr = new ImmutableBytesPtr(qualifier);
             PDataType<?> type = column.getDataType();
-            // Check null, since some types have no byte representation for null
-            if (byteValue == null) {
-                byteValue = ByteUtil.EMPTY_BYTE_ARRAY;
-            }
-            boolean isNull = type.isNull(byteValue);
+            byte[] byteValue = value.get();
+            int offset = value.getOffset();
+            int length = value.getLength();
+            boolean isNull = length == 0;
             if (isNull && !column.isNullable()) {
                 throw new ConstraintViolationException(name.getString() + "." + column.getName().getString() + 
                         " may not be null");
@@ -1347,7 +1355,7 @@ public class PTableImpl implements PTable {
                 deleteQuietly(unsetValues, kvBuilder, kvBuilder.buildDeleteColumns(keyPtr, column
                             .getFamilyName().getBytesPtr(), qualifierPtr, ts));
             } else {
-                ImmutableBytesWritable ptr = new ImmutableBytesWritable(byteValue);
+                ImmutableBytesWritable ptr = new ImmutableBytesWritable(byteValue, offset, length);
                 Integer    maxLength = column.getMaxLength();
                 Integer scale = column.getScale();
                 SortOrder sortOrder = column.getSortOrder();
@@ -1355,13 +1363,13 @@ public class PTableImpl implements PTable {
                     throw new DataExceedsCapacityException(column.getDataType(), maxLength,
                             column.getScale(), column.getName().getString());
                 }
-                ptr.set(byteValue);
+                ptr.set(byteValue, offset, length);
                 type.pad(ptr, maxLength, sortOrder);
                 removeIfPresent(unsetValues, family, qualifier);
                 // store all columns for a given column family in a single cell instead of one column per cell in order to improve write performance
                 // we don't need to do anything with unsetValues as it is only used when storeNulls is false, storeNulls is always true when storeColsInSingleCell is true
                 if (immutableStorageScheme == ImmutableStorageScheme.SINGLE_CELL_ARRAY_WITH_OFFSETS) {
-                    columnToValueMap.put(column, ptr.get());
+                    columnToValueMap.put(column, ByteUtil.copyKeyBytesIfNecessary(ptr));
                 }
                 else {
                     removeIfPresent(unsetValues, family, qualifier);
@@ -0,0 +1,129 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.phoenix.schema.stats;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.KeyValueUtil;
+
+/**
+ * Summarizes the cells written by a memstore flush as consecutive chunks of rows, each with the
+ * key of its last row and its byte and row counts, so that they can be merged into the existing
+ * guideposts of the region after the flush. See {@link IncrementalGuidePostsCollector}. A chunk
+ * ends at the first row boundary after it reaches the chunk size. When the maximum number of
+ * chunks is reached, adjacent chunks are combined and the chunk size is doubled, which bounds the
+ * memory held regardless of the size of the flush.
+ */
+class FlushedRowsSummary {
+    static class Chunk {
+        private final byte[] lastRow;
+        private final long byteCount;
+        private final long rowCount;
+
+        Chunk(byte[] lastRow, long byteCount, long rowCount) {
+            this.lastRow = lastRow;
+            this.byteCount = byteCount;
+            this.rowCount = rowCount;
+        }
+
+        byte[] getLastRow() {
+            return lastRow;
+        }
+
+        long getByteCount() {
+            return byteCount;
+        }
+
+        long getRowCount() {
+            return rowCount;
+        }
+    }
+
+    private final int maxChunks;
+    private long chunkSize;
+    private final List<Chunk> chunks = new ArrayList<>();
+    private byte[] currentRow;
+    private long byteCount = 0;
+    private long rowCount = 0;
+    private long maxTimeStamp = StatisticsCollector.NO_TIMESTAMP;
+
+    FlushedRowsSummary(long chunkSize, int maxChunks) {
+        this.chunkSize = chunkSize;
+        this.maxChunks = Math.max(2, maxChunks);
+    }
+
+    /**
+     * Collect the given cells of a row, in the order they are flushed
+     */
+    void collectStatistics(List<Cell> results) {
+        if (results.isEmpty()) {
+            return;
+        }
+        Cell first = results.get(0);
+        if (currentRow == null || !CellUtil.matchingRows(first, currentRow)) {
+            if (byteCount >= chunkSize) {
+                closeChunk();
+            }
+            currentRow = CellUtil.cloneRow(first);
+            rowCount++;
+        }
+        for (Cell cell : results) {
+            maxTimeStamp = Math.max(maxTimeStamp, cell.getTimestamp());
+            byteCount += KeyValueUtil.getSerializedSize(cell, true);
+        }
+    }
+
+    private void closeChunk() {
+        chunks.add(new Chunk(currentRow, byteCount, rowCount));
+        byteCount = 0;
+        rowCount = 0;
+        if (chunks.size() >= maxChunks) {
+            List<Chunk> combined = new ArrayList<>(chunks.size() / 2 + 1);
+            for (int i = 0; i < chunks.size(); i += 2) {
+                if (i + 1 == chunks.size()) {
+                    combined.add(chunks.get(i));
+                } else {
+                    Chunk chunk = chunks.get(i);
+                    Chunk nextChunk = chunks.get(i + 1);
+                    combined.add(new Chunk(nextChunk.lastRow, chunk.byteCount + nextChunk.byteCount,
+                            chunk.rowCount + nextChunk.rowCount));
+                }
+            }
+            chunks.clear();
+            chunks.addAll(combined);
+            chunkSize *= 2;
+        }
+    }
+
+    long getMaxTimeStamp() {
+        return maxTimeStamp;
+    }
+
+    /**
+     * @return the chunks of the flushed rows, in row key order, once all the rows are collected
+     */
+    List<Chunk> getChunks() {
+        if (rowCount > 0) {
+            closeChunk();
+        }
+        return chunks;
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.phoenix.schema.stats;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.phoenix.util.ByteUtil;
+import org.apache.phoenix.util.PrefixByteDecoder;
+
+/**
+ * Merges the rows written by a memstore flush, as summarized by {@link FlushedRowsSummary}, into
+ * the existing guideposts of a region, without rescanning the region. The existing guideposts are
+ * kept as boundaries: the bytes and rows flushed into the interval ending at an existing guidepost
+ * are added to the counts of that guidepost. Within an interval, a new guidepost is added each
+ * time the flushed bytes reach the guidepost depth, the same way as
+ * {@link DefaultStatisticsCollector} does for a full collection. Only the guideposts whose counts
+ * changed are returned by {@link #merge(List)}, so that they can be written over the existing
+ * ones. Like a full collection, the bytes following the last guidepost of the region are not
+ * accounted for.
+ */
+class IncrementalGuidePostsCollector {
+    private final List<ImmutableBytesWritable> guidePosts;
+    private final long[] byteCounts;
+    private final long[] rowCounts;
+    private final long guidePostDepth;
+    private final GuidePostsInfoBuilder builder = new GuidePostsInfoBuilder();
+    // Index of the existing guidepost ending the interval of the current row
+    private int next = 0;
+    private long byteCount = 0;
+    private long rowCount = 0;
+
+    IncrementalGuidePostsCollector(GuidePostsInfo existingGuidePosts, long guidePostDepth) {
+        this.guidePostDepth = guidePostDepth;
+        this.guidePosts = new ArrayList<>();
+        if (existingGuidePosts == null || existingGuidePosts.isEmptyGuidePost()) {
+            this.byteCounts = new long[0];
+            this.rowCounts = new long[0];
+            return;
+        }
+        this.byteCounts = existingGuidePosts.getByteCounts();
+        this.rowCounts = existingGuidePosts.getRowCounts();
+        ImmutableBytesWritable keys = existingGuidePosts.getGuidePosts();
+        if (keys.getLength() == 0) {
+            return;
+        }
+        try (ByteArrayInputStream stream =
+                new ByteArrayInputStream(keys.get(), keys.getOffset(), keys.getLength())) {
+            DataInput input = new DataInputStream(stream);
+            PrefixByteDecoder decoder = new PrefixByteDecoder(existingGuidePosts.getMaxLength());
+            while (true) {
+                ImmutableBytesWritable ptr = decoder.decode(input);
+                guidePosts.add(new ImmutableBytesWritable(ByteUtil.copyKeyBytesIfNecessary(ptr)));
+            }
+        } catch (EOFException e) { // Ignore as this signifies we're done
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Merges the chunks of flushed rows, in row key order. The bytes and rows of a chunk are
+     * accounted for at its last row, so a chunk spanning an existing guidepost is added to the
+     * interval of its last row.
+     * @return the new and updated guideposts, or null if none of the guideposts changed
+     */
+    GuidePostsInfo merge(List<FlushedRowsSummary.Chunk> chunks) {
+        if (guidePostDepth > 0) {
+            for (FlushedRowsSummary.Chunk chunk : chunks) {
+                collect(chunk.getLastRow(), chunk.getByteCount(), chunk.getRowCount());
+            }
+        }
+        if (next < guidePosts.size()) {
+            closeInterval();
+        }
+        return builder.isEmpty() ? null : builder.build();
+    }
+
+    private void collect(byte[] row, long chunkByteCount, long chunkRowCount) {
+        while (next < guidePosts.size() && compareToGuidePost(row, next) > 0) {
+            closeInterval();
+        }
+        byteCount += chunkByteCount;
+        rowCount += chunkRowCount;
+        if (byteCount >= guidePostDepth
+                && (next == guidePosts.size() || compareToGuidePost(row, next) < 0)) {
+            if (builder.addGuidePostOnCollection(new ImmutableBytesWritable(row), byteCount,
+                    rowCount)) {
+                byteCount = 0;
+                rowCount = 0;
+            }
+        }
+    }
+
+    private int compareToGuidePost(byte[] row, int index) {
+        ImmutableBytesWritable guidePost = guidePosts.get(index);
+        return Bytes.compareTo(row, 0, row.length, guidePost.get(), guidePost.getOffset(),
+                guidePost.getLength());
+    }
+
+    private void closeInterval() {
+        if (byteCount > 0) {
+            builder.trackGuidePost(guidePosts.get(next), byteCounts[next] + byteCount,
+                    rowCounts[next] + rowCount, 0);
+            byteCount = 0;
+            rowCount = 0;
+        }
+        next++;
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.phoenix.schema.stats;
+
+import static org.apache.phoenix.query.QueryServices.COMMIT_STATS_ASYNC;
+import static org.apache.phoenix.query.QueryServicesOptions.DEFAULT_COMMIT_STATS_ASYNC;
+
+import java.io.IOException;
+import java.security.PrivilegedExceptionAction;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.client.Connection;
+import org.apache.hadoop.hbase.client.Mutation;
+import org.apache.hadoop.hbase.coprocessor.RegionCoprocessorEnvironment;
+import org.apache.hadoop.hbase.regionserver.InternalScanner;
+import org.apache.hadoop.hbase.regionserver.Region;
+import org.apache.hadoop.hbase.regionserver.ScannerContext;
+import org.apache.hadoop.hbase.security.User;
+import org.apache.phoenix.hbase.index.util.ImmutableBytesPtr;
+import org.apache.phoenix.util.EnvironmentEdgeManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The scanner that summarizes the cells written by a memstore flush, and merges them into the
+ * existing guideposts of the region once the flush is done. See {@link FlushedRowsSummary} and
+ * {@link IncrementalGuidePostsCollector}. Nothing is read from the SYSTEM tables on the flush
+ * path: the guidepost depth and the existing guideposts are read when merging, on the stats
+ * executor unless stats are committed synchronously. The guideposts are rebuilt from scratch on
+ * the next major compaction.
+ */
+public class IncrementalStatisticsScanner implements InternalScanner {
+    private static final Logger LOGGER = LoggerFactory.getLogger(IncrementalStatisticsScanner.class);
+    // The flushed rows are summarized in chunks of at least 64KB, and in at most 1024 chunks
+    private static final long MIN_CHUNK_SIZE = 64 * 1024;
+    private static final int MAX_CHUNKS = 1024;
+    private final InternalScanner delegate;
+    private final FlushedRowsSummary summary = new FlushedRowsSummary(MIN_CHUNK_SIZE, MAX_CHUNKS);
+    private final String tableName;
+    private final long clientTimeStamp;
+    private final Region region;
+    private final ImmutableBytesPtr family;
+    private final RegionCoprocessorEnvironment env;
+
+    public IncrementalStatisticsScanner(RegionCoprocessorEnvironment env, String tableName,
+            InternalScanner delegate, ImmutableBytesPtr family) {
+        this.delegate = delegate;
+        this.tableName = tableName;
+        this.clientTimeStamp = EnvironmentEdgeManager.currentTimeMillis();
+        this.region = env.getRegion();
+        this.env = env;
+        this.family = family;
+    }
+
+    @Override
+    public boolean next(List<Cell> result) throws IOException {
+        boolean ret = delegate.next(result);
+        summary.collectStatistics(result);
+        return ret;
+    }
+
+    @Override
+    public boolean next(List<Cell> result, ScannerContext scannerContext) throws IOException {
+        return next(result);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            delegate.close();
+        } finally {
+            Callable<Void> callable = new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    // Switch to the login user as for compactions, in case the flush was requested
+                    // by another user
+                    return User.runAsLoginUser(new PrivilegedExceptionAction<Void>() {
+                        @Override
+                        public Void run() {
+                            mergeStats();
+                            return null;
+                        }
+                    });
+                }
+            };
+            if (isConnectionClosed()) {
+                LOGGER.debug("Not updating table statistics because the server is stopping/stopped");
+            } else if (!env.getConfiguration().getBoolean(COMMIT_STATS_ASYNC, DEFAULT_COMMIT_STATS_ASYNC)) {
+                try {
+                    callable.call();
+                } catch (Exception e) {
+                    LOGGER.warn("Failed to update statistics table after a flush", e);
+                }
+            } else {
+                StatisticsCollectionRunTracker.getInstance(env.getConfiguration()).runTask(callable);
+            }
+        }
+    }
+
+    private void mergeStats() {
+        // A major compaction in progress rewrites the stats of the region anyway
+        if (StatisticsCollectionRunTracker.getInstance(env.getConfiguration())
+                .areStatsBeingCollectedOnCompaction(region.getRegionInfo())) {
+            return;
+        }
+        List<FlushedRowsSummary.Chunk> chunks = summary.getChunks();
+        if (chunks.isEmpty()) {
+            return;
+        }
+        StatisticsCollector tracker = null;
+        try {
+            tracker = StatisticsCollectorFactory.createStatisticsCollector(env, tableName,
+                    clientTimeStamp, family.copyBytesIfNecessary());
+            tracker.init();
+            StatisticsWriter statsWriter = tracker.getStatisticsWriter();
+            // A guide posts depth of zero disables the collection of stats
+            if (statsWriter == null || tracker.getGuidePostDepth() <= 0) {
+                return;
+            }
+            GuidePostsInfo gps = new IncrementalGuidePostsCollector(
+                    statsWriter.readStatsForRegion(region, family), tracker.getGuidePostDepth()).merge(chunks);
+            if (gps == null) {
+                return;
+            }
+            List<Mutation> mutations = new ArrayList<Mutation>();
+            statsWriter.addIncrementalStats(family, gps, mutations, summary.getMaxTimeStamp());
+            statsWriter.commitIncrementalStats(mutations);
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("Updated " + gps.getGuidePostsCount() + " guideposts of the region "
+                        + region.getRegionInfo().getRegionNameAsString() + " after a flush");
+            }
+        } catch (IOException e) {
+            if (isConnectionClosed()) {
+                LOGGER.debug("Ignoring error updating statistics because region is closing/closed");
+            } else {
+                LOGGER.warn("Failed to update statistics table after a flush", e);
+            }
+        } finally {
+            if (tracker != null) {
+                try {
+                    tracker.close();
+                } catch (IOException e) {
+                    LOGGER.warn("Failed to close the statistics collector after a flush", e);
+                }
+            }
+        }
+    }
+
+    private boolean isConnectionClosed() {
+        Connection connection = env.getConnection();
+        return connection == null || connection.isClosed() || connection.isAborted();
+    }
+}
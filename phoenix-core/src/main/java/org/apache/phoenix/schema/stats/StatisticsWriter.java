@@ -32,6 +32,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.Cell;
 import org.apache.hadoop.hbase.DoNotRetryIOException;
 import org.apache.hadoop.hbase.HConstants;
 import org.apache.hadoop.hbase.TableName;
@@ -59,6 +60,7 @@ import org.apache.phoenix.jdbc.PhoenixDatabaseMetaData;
 import org.apache.phoenix.query.QueryConstants;
 import org.apache.phoenix.query.QueryServices;
 import org.apache.phoenix.query.QueryServicesOptions;
+import org.apache.phoenix.schema.SortOrder;
 import org.apache.phoenix.schema.types.PDate;
 import org.apache.phoenix.schema.types.PLong;
 import org.apache.phoenix.util.ByteUtil;
@@ -179,29 +181,9 @@ public class StatisticsWriter implements Closeable {
         }
         GuidePostsInfo gps = tracker.getGuidePosts(cfKey);
         if (gps != null) {
-            long[] byteCounts = gps.getByteCounts();
-            long[] rowCounts = gps.getRowCounts();
-            ImmutableBytesWritable keys = gps.getGuidePosts();
-            boolean hasGuidePosts = keys.getLength() > 0;
+            boolean hasGuidePosts = gps.getGuidePosts().getLength() > 0;
             if (hasGuidePosts) {
-                int guidePostCount = 0;
-                try (ByteArrayInputStream stream = new ByteArrayInputStream(keys.get(), keys.getOffset(), keys.getLength())) {
-                    DataInput input = new DataInputStream(stream);
-                    PrefixByteDecoder decoder = new PrefixByteDecoder(gps.getMaxLength());
-                    do {
-                        ImmutableBytesWritable ptr = decoder.decode(input);
-                        addGuidepost(cfKey, mutations, ptr, byteCounts[guidePostCount], rowCounts[guidePostCount], timeStamp);
-                        guidePostCount++;
-                    } while (decoder != null);
-                } catch (EOFException e) { // Ignore as this signifies we're done
-
-                }
-                // If we've written guideposts with a guidepost key, then delete the
-                // empty guidepost indicator that may have been written by other
-                // regions.
-                byte[] rowKey = StatisticsUtil.getRowKey(tableName, cfKey, ByteUtil.EMPTY_IMMUTABLE_BYTE_ARRAY);
-                Delete delete = new Delete(rowKey, timeStamp);
-                mutations.add(delete);
+                addGuideposts(cfKey, mutations, gps, timeStamp);
             } else {
                 /*
                  * When there is not enough data in the region, we create a guide post with empty
@@ -218,6 +200,51 @@ public class StatisticsWriter implements Closeable {
         }
     }
     
+    /**
+     * Update the statistics of a region with the guideposts collected from a memstore flush. The
+     * given guideposts are written over the existing ones with the same key, and the other existing
+     * guideposts of the region are left as they are.
+     *
+     * @param cfKey
+     *            - the family for which the stats is getting collected.
+     * @param gps
+     *            - the new and updated guideposts of the region
+     * @param mutations
+     *            - list of mutations that collects all the mutations to commit in a batch
+     * @param maxTimeStamp
+     *            - the maximum timestamp of the flushed cells
+     */
+    public void addIncrementalStats(ImmutableBytesPtr cfKey, GuidePostsInfo gps, List<Mutation> mutations,
+            long maxTimeStamp) throws IOException {
+        long timeStamp = clientTimeStamp == DefaultStatisticsCollector.NO_TIMESTAMP ? maxTimeStamp : clientTimeStamp;
+        addGuideposts(cfKey, mutations, gps, timeStamp);
+    }
+
+    private void addGuideposts(ImmutableBytesPtr cfKey, List<Mutation> mutations, GuidePostsInfo gps, long timeStamp)
+            throws IOException {
+        long[] byteCounts = gps.getByteCounts();
+        long[] rowCounts = gps.getRowCounts();
+        ImmutableBytesWritable keys = gps.getGuidePosts();
+        int guidePostCount = 0;
+        try (ByteArrayInputStream stream = new ByteArrayInputStream(keys.get(), keys.getOffset(), keys.getLength())) {
+            DataInput input = new DataInputStream(stream);
+            PrefixByteDecoder decoder = new PrefixByteDecoder(gps.getMaxLength());
+            do {
+                ImmutableBytesWritable ptr = decoder.decode(input);
+                addGuidepost(cfKey, mutations, ptr, byteCounts[guidePostCount], rowCounts[guidePostCount], timeStamp);
+                guidePostCount++;
+            } while (decoder != null);
+        } catch (EOFException e) { // Ignore as this signifies we're done
+
+        }
+        // If we've written guideposts with a guidepost key, then delete the
+        // empty guidepost indicator that may have been written by other
+        // regions.
+        byte[] rowKey = StatisticsUtil.getRowKey(tableName, cfKey, ByteUtil.EMPTY_IMMUTABLE_BYTE_ARRAY);
+        Delete delete = new Delete(rowKey, timeStamp);
+        mutations.add(delete);
+    }
+
     @SuppressWarnings("deprecation")
     private void addGuidepost(ImmutableBytesPtr cfKey, List<Mutation> mutations, ImmutableBytesWritable ptr, long byteCount, long rowCount, long timeStamp) {
         byte[] prefix = StatisticsUtil.getRowKey(tableName, cfKey, ptr);
@@ -249,27 +276,45 @@ public class StatisticsWriter implements Closeable {
             @Override
             public Void run() throws Exception {
                 commitLastStatsUpdatedTime(statsCollector);
-                if (mutations.size() > 0) {
-                    byte[] row = mutations.get(0).getRow();
-                    MutateRowsRequest.Builder mrmBuilder = MutateRowsRequest.newBuilder();
-                    for (Mutation m : mutations) {
-                        mrmBuilder.addMutationRequest(ProtobufUtil.toMutation(getMutationType(m), m));
-                    }
-                    MutateRowsRequest mrm = mrmBuilder.build();
-                    CoprocessorRpcChannel channel = statsWriterTable.coprocessorService(row);
-                    MultiRowMutationService.BlockingInterface service = MultiRowMutationService
-                            .newBlockingStub(channel);
-                    try {
-                        service.mutateRows(null, mrm);
-                    } catch (ServiceException ex) {
-                        ProtobufUtil.toIOException(ex);
-                    }
-                }
+                mutateRows(mutations);
                 return null;
             }
         });
     }
 
+    /**
+     * Commit the guideposts added by {@link #addIncrementalStats}. Unlike {@link #commitStats}, this
+     * does not update the last stats update time of the table, which throttles UPDATE STATISTICS.
+     */
+    public void commitIncrementalStats(final List<Mutation> mutations) throws IOException {
+        User.runAsLoginUser(new PrivilegedExceptionAction<Void>() {
+            @Override
+            public Void run() throws Exception {
+                mutateRows(mutations);
+                return null;
+            }
+        });
+    }
+
+    private void mutateRows(List<Mutation> mutations) throws IOException {
+        if (mutations.size() > 0) {
+            byte[] row = mutations.get(0).getRow();
+            MutateRowsRequest.Builder mrmBuilder = MutateRowsRequest.newBuilder();
+            for (Mutation m : mutations) {
+                mrmBuilder.addMutationRequest(ProtobufUtil.toMutation(getMutationType(m), m));
+            }
+            MutateRowsRequest mrm = mrmBuilder.build();
+            CoprocessorRpcChannel channel = statsWriterTable.coprocessorService(row);
+            MultiRowMutationService.BlockingInterface service = MultiRowMutationService
+                    .newBlockingStub(channel);
+            try {
+                service.mutateRows(null, mrm);
+            } catch (ServiceException ex) {
+                ProtobufUtil.toIOException(ex);
+            }
+        }
+    }
+
     private Put getLastStatsUpdatedTimePut(long timeStamp) {
         long currentTime = EnvironmentEdgeManager.currentTimeMillis();
         byte[] prefix = tableName;
@@ -285,6 +330,43 @@ public class StatisticsWriter implements Closeable {
         statsWriterTable.put(put);
     }
 
+    /**
+     * Read the guideposts of the given region, in key order. The empty guidepost indicator is not
+     * included, since it does not belong to a region.
+     */
+    public GuidePostsInfo readStatsForRegion(Region region, ImmutableBytesPtr fam) throws IOException {
+        byte[] startKey = region.getRegionInfo().getStartKey();
+        byte[] stopKey = region.getRegionInfo().getEndKey();
+        Scan s =
+                MetaDataUtil.newTableRowsScan(getAdjustedKey(startKey, tableName, fam, false),
+                    getAdjustedKey(stopKey, tableName, fam, true),
+                    MetaDataProtocol.MIN_TABLE_TIMESTAMP, HConstants.LATEST_TIMESTAMP);
+        s.addColumn(QueryConstants.DEFAULT_COLUMN_FAMILY_BYTES, PhoenixDatabaseMetaData.GUIDE_POSTS_WIDTH_BYTES);
+        s.addColumn(QueryConstants.DEFAULT_COLUMN_FAMILY_BYTES, PhoenixDatabaseMetaData.GUIDE_POSTS_ROW_COUNT_BYTES);
+        byte[] cfName = fam.copyBytesIfNecessary();
+        GuidePostsInfoBuilder guidePostsInfoBuilder = new GuidePostsInfoBuilder();
+        try (ResultScanner scanner = statsReaderTable.getScanner(s)) {
+            Result result = null;
+            while ((result = scanner.next()) != null) {
+                byte[] guidePost = StatisticsUtil.getGuidePostsInfoFromRowKey(tableName, cfName, result.getRow());
+                if (GuidePostsInfo.isEmptyGpsKey(guidePost)) {
+                    continue;
+                }
+                Cell byteCountCell = result.getColumnLatestCell(QueryConstants.DEFAULT_COLUMN_FAMILY_BYTES,
+                        PhoenixDatabaseMetaData.GUIDE_POSTS_WIDTH_BYTES);
+                Cell rowCountCell = result.getColumnLatestCell(QueryConstants.DEFAULT_COLUMN_FAMILY_BYTES,
+                        PhoenixDatabaseMetaData.GUIDE_POSTS_ROW_COUNT_BYTES);
+                long byteCount = byteCountCell == null ? 0 : PLong.INSTANCE.getCodec().decodeLong(
+                        byteCountCell.getValueArray(), byteCountCell.getValueOffset(), SortOrder.getDefault());
+                long rowCount = rowCountCell == null ? 0 : PLong.INSTANCE.getCodec().decodeLong(
+                        rowCountCell.getValueArray(), rowCountCell.getValueOffset(), SortOrder.getDefault());
+                guidePostsInfoBuilder.trackGuidePost(new ImmutableBytesWritable(guidePost), byteCount, rowCount,
+                        0);
+            }
+        }
+        return guidePostsInfoBuilder.build();
+    }
+
     public void deleteStatsForRegion(Region region, StatisticsCollector tracker, ImmutableBytesPtr fam,
             List<Mutation> mutations) throws IOException {
         long timeStamp =
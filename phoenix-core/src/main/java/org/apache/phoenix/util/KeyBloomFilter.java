@@ -0,0 +1,197 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.phoenix.util;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+
+/**
+ * Compact Bloom filter over byte array keys. Membership tests never return false
+ * negatives, so a key for which {@link #mightContain(byte[], int, int)} returns false
+ * was definitely never added. Sized from the actual number of keys through
+ * {@link Builder}, and serializable so it can be shipped to region servers.
+ *
+ * @since 5.1.0
+ */
+public class KeyBloomFilter implements Writable {
+    private static final byte VERSION = 1;
+    private static final int MAX_HASH_FUNCTIONS = 16;
+
+    private long[] bits;
+    private int numBits;
+    private int numHashFunctions;
+
+    public KeyBloomFilter() {
+    }
+
+    private KeyBloomFilter(int numBits, int numHashFunctions) {
+        this.bits = new long[(numBits + Long.SIZE - 1) / Long.SIZE];
+        this.numBits = bits.length * Long.SIZE;
+        this.numHashFunctions = numHashFunctions;
+    }
+
+    /**
+     * 64 bit FNV-1a hash of the key followed by the MurmurHash3 finalizer
+     */
+    public static long hash(byte[] b, int offset, int length) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = offset; i < offset + length; i++) {
+            h ^= b[i];
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private void put(long hash) {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 1; i <= numHashFunctions; i++) {
+            int combined = h1 + i * h2;
+            if (combined < 0) {
+                combined = ~combined;
+            }
+            int bit = combined % numBits;
+            bits[bit >>> 6] |= 1L << bit;
+        }
+    }
+
+    public boolean mightContain(byte[] b, int offset, int length) {
+        long hash = hash(b, offset, length);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 1; i <= numHashFunctions; i++) {
+            int combined = h1 + i * h2;
+            if (combined < 0) {
+                combined = ~combined;
+            }
+            int bit = combined % numBits;
+            if ((bits[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public boolean mightContain(ImmutableBytesWritable key) {
+        return mightContain(key.get(), key.getOffset(), key.getLength());
+    }
+
+    /**
+     * @return the size in bytes of the bit array
+     */
+    public int getByteSize() {
+        return bits.length * Bytes.SIZEOF_LONG;
+    }
+
+    public int getNumHashFunctions() {
+        return numHashFunctions;
+    }
+
+    @Override
+    public void write(DataOutput output) throws IOException {
+        output.writeByte(VERSION);
+        WritableUtils.writeVInt(output, numHashFunctions);
+        WritableUtils.writeVInt(output, bits.length);
+        for (long word : bits) {
+            output.writeLong(word);
+        }
+    }
+
+    @Override
+    public void readFields(DataInput input) throws IOException {
+        input.readByte(); // ignore
+        numHashFunctions = WritableUtils.readVInt(input);
+        bits = new long[WritableUtils.readVInt(input)];
+        for (int i = 0; i < bits.length; i++) {
+            bits[i] = input.readLong();
+        }
+        numBits = bits.length * Long.SIZE;
+    }
+
+    /**
+     * Collects key hashes and builds a filter sized for the number of keys seen and
+     * the requested false positive probability. Gives up once more than maxKeys keys
+     * have been added, as the filter would be too large to be worth shipping.
+     */
+    public static class Builder {
+        private final int maxKeys;
+        private final double falsePositiveProbability;
+        private long[] hashes = new long[16];
+        private int nKeys;
+        private boolean overflowed;
+
+        public Builder(int maxKeys, double falsePositiveProbability) {
+            this.maxKeys = maxKeys;
+            this.falsePositiveProbability = falsePositiveProbability;
+        }
+
+        public void add(byte[] b, int offset, int length) {
+            if (overflowed) {
+                return;
+            }
+            if (nKeys == maxKeys) {
+                overflowed = true;
+                hashes = null;
+                return;
+            }
+            if (nKeys == hashes.length) {
+                hashes = Arrays.copyOf(hashes, Math.min(hashes.length * 2, Math.max(maxKeys, 1)));
+            }
+            hashes[nKeys++] = hash(b, offset, length);
+        }
+
+        public void add(ImmutableBytesWritable key) {
+            add(key.get(), key.getOffset(), key.getLength());
+        }
+
+        public boolean isOverflowed() {
+            return overflowed;
+        }
+
+        /**
+         * @return the filter, or null if more than maxKeys keys were added
+         */
+        public KeyBloomFilter build() {
+            if (overflowed) {
+                return null;
+            }
+            int n = Math.max(nKeys, 1);
+            double ln2 = Math.log(2);
+            long numBits = (long) Math.ceil(-n * Math.log(falsePositiveProbability) / (ln2 * ln2));
+            numBits = Math.max(Long.SIZE, Math.min(numBits, Integer.MAX_VALUE - Long.SIZE));
+            int numHashFunctions = (int) Math.max(1, Math.min(MAX_HASH_FUNCTIONS, Math.round((double) numBits / n * ln2)));
+            KeyBloomFilter filter = new KeyBloomFilter((int) numBits, numHashFunctions);
+            for (int i = 0; i < nKeys; i++) {
+                filter.put(hashes[i]);
+            }
+            return filter;
+        }
+    }
+}
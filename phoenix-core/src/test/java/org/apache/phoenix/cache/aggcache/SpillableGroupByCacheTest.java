@@ -0,0 +1,134 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.phoenix.cache.aggcache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.coprocessor.RegionCoprocessorEnvironment;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.phoenix.coprocessor.GroupedAggregateRegionObserver;
+import org.apache.phoenix.expression.Expression;
+import org.apache.phoenix.expression.KeyValueColumnExpression;
+import org.apache.phoenix.expression.LiteralExpression;
+import org.apache.phoenix.expression.aggregator.ServerAggregators;
+import org.apache.phoenix.expression.function.CountAggregateFunction;
+import org.apache.phoenix.expression.function.SingleAggregateFunction;
+import org.apache.phoenix.hbase.index.util.ImmutableBytesPtr;
+import org.apache.phoenix.memory.GlobalMemoryManager;
+import org.apache.phoenix.memory.MemoryManager;
+import org.apache.phoenix.query.QueryConstants;
+import org.apache.phoenix.query.QueryServices;
+import org.apache.phoenix.schema.types.PLong;
+import org.junit.Test;
+
+public class SpillableGroupByCacheTest {
+    private static final long MB = 1024L * 1024L;
+    private static final int GROUP_COUNT = 2000;
+
+    @Test
+    public void testFairShare() {
+        assertEquals(100, SpillableGroupByCache.getFairShare(100, 0));
+        assertEquals(100, SpillableGroupByCache.getFairShare(100, 1));
+        assertEquals(25, SpillableGroupByCache.getFairShare(100, 4));
+    }
+
+    @Test
+    public void testSpillPartitionCount() {
+        // Never fewer than the configured number of spill files
+        assertEquals(2, SpillableGroupByCache.getSpillPartitionCount(0, 2, 16));
+        assertEquals(2, SpillableGroupByCache.getSpillPartitionCount(100 * MB, 2, 16));
+        assertEquals(3, SpillableGroupByCache.getSpillPartitionCount(129 * MB, 2, 16));
+        assertEquals(10, SpillableGroupByCache.getSpillPartitionCount(640 * MB, 2, 16));
+        // Nor more than the maximum
+        assertEquals(16, SpillableGroupByCache.getSpillPartitionCount(Long.MAX_VALUE / 2, 2, 16));
+        assertEquals(4, SpillableGroupByCache.getSpillPartitionCount(640 * MB, 4, 2));
+    }
+
+    private static RegionCoprocessorEnvironment newEnv() {
+        Configuration conf = new Configuration(false);
+        conf.setBoolean(QueryServices.GROUPBY_ADAPTIVE_SPILL_ENABLED_ATTRIB, true);
+        RegionCoprocessorEnvironment env = mock(RegionCoprocessorEnvironment.class);
+        when(env.getConfiguration()).thenReturn(conf);
+        return env;
+    }
+
+    private static ServerAggregators newAggregators(Configuration conf) {
+        Expression column = new KeyValueColumnExpression(LiteralExpression.newConstant(null, PLong.INSTANCE),
+                QueryConstants.DEFAULT_COLUMN_FAMILY_BYTES, Bytes.toBytes("A"));
+        return ServerAggregators.deserialize(ServerAggregators.serialize(Arrays.<SingleAggregateFunction>asList(
+                new CountAggregateFunction(Arrays.asList(column))), 1), conf, null);
+    }
+
+    /**
+     * Puts GROUP_COUNT groups into a new cache on the given memory manager
+     * @return whether the cache spilled any of them
+     */
+    private static boolean isSpilling(RegionCoprocessorEnvironment env, MemoryManager memoryManager,
+            ServerAggregators aggregators) throws IOException {
+        SpillableGroupByCache cache = new SpillableGroupByCache(env, memoryManager, aggregators, 16);
+        try {
+            for (int i = 0; i < GROUP_COUNT; i++) {
+                cache.cache(new ImmutableBytesPtr(Bytes.toBytes(i)));
+            }
+            assertEquals(GROUP_COUNT, cache.size());
+            return cache.isSpilling();
+        } finally {
+            cache.close();
+        }
+    }
+
+    @Test
+    public void testSpillAtShareOfTenantMemory() throws IOException {
+        RegionCoprocessorEnvironment env = newEnv();
+        ServerAggregators aggregators = newAggregators(env.getConfiguration());
+        // Room for the groups of one cache, with some to spare, but not for those of two
+        long maxMemory = GroupedAggregateRegionObserver.sizeOfUnorderedGroupByMap(2 * GROUP_COUNT,
+                aggregators.getEstimatedByteSize());
+        GlobalMemoryManager memoryManager = new GlobalMemoryManager(maxMemory);
+        GlobalMemoryManager otherMemoryManager = new GlobalMemoryManager(maxMemory);
+
+        assertFalse(isSpilling(env, memoryManager, aggregators));
+        assertEquals(0, SpillableGroupByCache.getActiveAdaptiveCaches(memoryManager).get());
+
+        // A cache of another tenant leaves the share of this one alone
+        SpillableGroupByCache other = new SpillableGroupByCache(env, otherMemoryManager, aggregators, 16);
+        assertEquals(1, SpillableGroupByCache.getActiveAdaptiveCaches(otherMemoryManager).get());
+        assertEquals(0, SpillableGroupByCache.getActiveAdaptiveCaches(memoryManager).get());
+        assertFalse(isSpilling(env, memoryManager, aggregators));
+        other.close();
+        other.close();
+        assertEquals(0, SpillableGroupByCache.getActiveAdaptiveCaches(otherMemoryManager).get());
+
+        // A cache of the same tenant halves it
+        other = new SpillableGroupByCache(env, memoryManager, aggregators, 16);
+        assertEquals(1, SpillableGroupByCache.getActiveAdaptiveCaches(memoryManager).get());
+        assertTrue(isSpilling(env, memoryManager, aggregators));
+        assertEquals(1, SpillableGroupByCache.getActiveAdaptiveCaches(memoryManager).get());
+        other.close();
+        assertEquals(0, SpillableGroupByCache.getActiveAdaptiveCaches(memoryManager).get());
+        assertEquals(maxMemory, memoryManager.getAvailableMemory());
+    }
+}
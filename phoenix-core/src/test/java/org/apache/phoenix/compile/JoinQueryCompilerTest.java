@@ -27,11 +27,14 @@ import static org.apache.phoenix.util.TestUtil.JOIN_SUPPLIER_TABLE_DISPLAY_NAME;
 import static org.apache.phoenix.util.TestUtil.JOIN_SUPPLIER_TABLE_FULL_NAME;
 import static org.apache.phoenix.util.TestUtil.TEST_PROPERTIES;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Properties;
 
 import org.apache.phoenix.compile.JoinCompiler.JoinTable;
 import org.apache.phoenix.jdbc.PhoenixConnection;
@@ -39,6 +42,7 @@ import org.apache.phoenix.jdbc.PhoenixStatement;
 import org.apache.phoenix.parse.SQLParser;
 import org.apache.phoenix.parse.SelectStatement;
 import org.apache.phoenix.query.BaseConnectionlessQueryTest;
+import org.apache.phoenix.query.QueryServices;
 import org.apache.phoenix.util.PropertiesUtil;
 import org.apache.phoenix.util.QueryUtil;
 import org.apache.phoenix.util.TestUtil;
@@ -161,5 +165,82 @@ public class JoinQueryCompilerTest extends BaseConnectionlessQueryTest {
         assertEquals(0, joinTable.getJoinSpecs().get(0).getRhsJoinTable().getLeftTable().getPreFilters().size());
         assertEquals(1, joinTable.getJoinSpecs().get(1).getRhsJoinTable().getLeftTable().getPreFilters().size());
     }
-}
 
+    @Test
+    public void testCoLocatedJoin() throws Exception {
+        Properties props = PropertiesUtil.deepCopy(TEST_PROPERTIES);
+        props.setProperty(QueryServices.CO_LOCATED_JOIN_ENABLED_ATTRIB, Boolean.TRUE.toString());
+        String query = "EXPLAIN SELECT o.ORDER_ID, l.QUANTITY FROM CL_ORDERS o JOIN %s l ON %s";
+        try (Connection conn = DriverManager.getConnection(getUrl(), props)) {
+            conn.createStatement().execute("CREATE TABLE CL_ORDERS (ORG_ID CHAR(3) NOT NULL, ORDER_ID VARCHAR NOT NULL, "
+                    + "AMOUNT INTEGER CONSTRAINT PK PRIMARY KEY (ORG_ID, ORDER_ID))");
+            conn.createStatement().execute("CREATE TABLE CL_LINES (ORG_ID CHAR(3) NOT NULL, ORDER_ID VARCHAR NOT NULL, "
+                    + "LINE_ID INTEGER NOT NULL, QUANTITY INTEGER CONSTRAINT PK PRIMARY KEY (ORG_ID, ORDER_ID, LINE_ID))");
+            conn.createStatement().execute("CREATE TABLE CL_SALTED_LINES (ORG_ID CHAR(3) NOT NULL, ORDER_ID VARCHAR NOT NULL, "
+                    + "LINE_ID INTEGER NOT NULL, QUANTITY INTEGER CONSTRAINT PK PRIMARY KEY (ORG_ID, ORDER_ID, LINE_ID)) "
+                    + "SALT_BUCKETS=4");
+
+            String plan = QueryUtil.getExplainPlan(conn.createStatement().executeQuery(String.format(query,
+                    "CL_LINES", "o.ORG_ID = l.ORG_ID AND o.ORDER_ID = l.ORDER_ID")));
+            assertTrue(plan, plan.contains("    CO-LOCATED INNER-JOIN TABLE 0 ON 2 KEY COLUMNS\n"));
+
+            plan = QueryUtil.getExplainPlan(conn.createStatement().executeQuery(String.format(query,
+                    "CL_LINES", "o.ORG_ID = l.ORG_ID AND o.AMOUNT = l.QUANTITY")));
+            assertTrue(plan, plan.contains("    CO-LOCATED INNER-JOIN TABLE 0 ON 1 KEY COLUMN\n"));
+
+            // not on the leading row key column
+            plan = QueryUtil.getExplainPlan(conn.createStatement().executeQuery(String.format(query,
+                    "CL_LINES", "o.ORDER_ID = l.ORDER_ID")));
+            assertFalse(plan, plan.contains("CO-LOCATED"));
+            assertTrue(plan, plan.contains("    PARALLEL INNER-JOIN TABLE 0\n"));
+
+            // the salt byte is computed over the whole row key
+            plan = QueryUtil.getExplainPlan(conn.createStatement().executeQuery(String.format(query,
+                    "CL_SALTED_LINES", "o.ORG_ID = l.ORG_ID AND o.ORDER_ID = l.ORDER_ID")));
+            assertFalse(plan, plan.contains("CO-LOCATED"));
+        }
+        try (Connection conn = DriverManager.getConnection(getUrl())) {
+            String plan = QueryUtil.getExplainPlan(conn.createStatement().executeQuery(String.format(query,
+                    "CL_LINES", "o.ORG_ID = l.ORG_ID AND o.ORDER_ID = l.ORDER_ID")));
+            assertFalse(plan, plan.contains("CO-LOCATED"));
+        }
+    }
+
+    @Test
+    public void testSortMergeJoinExistenceProbe() throws Exception {
+        Properties props = PropertiesUtil.deepCopy(TEST_PROPERTIES);
+        props.setProperty(QueryServices.SORT_MERGE_JOIN_EXISTENCE_PROBE_ENABLED_ATTRIB, Boolean.TRUE.toString());
+        String query = "EXPLAIN SELECT /*+ USE_SORT_MERGE_JOIN */ o.ORDER_ID FROM EP_ORDERS o WHERE %s";
+        try (Connection conn = DriverManager.getConnection(getUrl(), props)) {
+            conn.createStatement().execute("CREATE TABLE EP_ORDERS (ORG_ID CHAR(3) NOT NULL, ORDER_ID VARCHAR NOT NULL, "
+                    + "AMOUNT INTEGER CONSTRAINT PK PRIMARY KEY (ORG_ID, ORDER_ID))");
+            conn.createStatement().execute("CREATE TABLE EP_LINES (ORG_ID CHAR(3) NOT NULL, ORDER_ID VARCHAR NOT NULL, "
+                    + "LINE_ID INTEGER NOT NULL, QUANTITY INTEGER CONSTRAINT PK PRIMARY KEY (ORG_ID, ORDER_ID, LINE_ID))");
+
+            String plan = QueryUtil.getExplainPlan(conn.createStatement().executeQuery(String.format(query,
+                    "o.ORG_ID IN (SELECT ORG_ID FROM EP_LINES WHERE QUANTITY > 1)")));
+            assertTrue(plan, plan.contains("SORT-MERGE-JOIN (SEMI) TABLES"));
+            assertTrue(plan, plan.contains("\nAND (EXISTENCE PROBE OVER EP_LINES ON 1 KEY COLUMN)\n"));
+
+            plan = QueryUtil.getExplainPlan(conn.createStatement().executeQuery(String.format(query,
+                    "(o.ORG_ID, o.ORDER_ID) NOT IN (SELECT ORG_ID, ORDER_ID FROM EP_LINES)")));
+            assertTrue(plan, plan.contains("SORT-MERGE-JOIN (ANTI) TABLES"));
+            assertTrue(plan, plan.contains("\nAND (EXISTENCE PROBE OVER EP_LINES ON 2 KEY COLUMNS)\n"));
+
+            // not on the leading row key column of the right-hand table
+            plan = QueryUtil.getExplainPlan(conn.createStatement().executeQuery(String.format(query,
+                    "o.ORDER_ID IN (SELECT ORDER_ID FROM EP_LINES)")));
+            assertFalse(plan, plan.contains("EXISTENCE PROBE"));
+
+            // the right-hand side is not a scan of the table
+            plan = QueryUtil.getExplainPlan(conn.createStatement().executeQuery(String.format(query,
+                    "o.ORG_ID IN (SELECT ORG_ID FROM EP_LINES GROUP BY ORG_ID HAVING COUNT(*) > 1)")));
+            assertFalse(plan, plan.contains("EXISTENCE PROBE"));
+        }
+        try (Connection conn = DriverManager.getConnection(getUrl())) {
+            String plan = QueryUtil.getExplainPlan(conn.createStatement().executeQuery(String.format(query,
+                    "o.ORG_ID IN (SELECT ORG_ID FROM EP_LINES)")));
+            assertFalse(plan, plan.contains("EXISTENCE PROBE"));
+        }
+    }
+}
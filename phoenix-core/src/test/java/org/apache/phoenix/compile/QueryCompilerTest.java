@@ -2999,6 +2999,39 @@ public class QueryCompilerTest extends BaseConnectionlessQueryTest {
         }
     }
 
+    @Test
+    public void testLooseIndexScanGroupBy() throws Exception {
+        Properties props = PropertiesUtil.deepCopy(TEST_PROPERTIES);
+        props.setProperty(QueryServices.LOOSE_INDEX_SCAN_ENABLED_ATTRIB, Boolean.TRUE.toString());
+        try (Connection conn = DriverManager.getConnection(getUrl(), props)) {
+            conn.createStatement().execute("CREATE TABLE LIS_READINGS (DEVICE VARCHAR NOT NULL, "
+                    + "TS DATE NOT NULL, SEQ INTEGER NOT NULL, READING INTEGER "
+                    + "CONSTRAINT PK PRIMARY KEY (DEVICE, TS DESC, SEQ))");
+            String[] queries = new String[] {
+                    "SELECT DEVICE, MAX(TS) FROM LIS_READINGS GROUP BY DEVICE",
+                    "SELECT DEVICE, MAX(TS) FROM LIS_READINGS WHERE READING > 5 GROUP BY DEVICE",
+                    "SELECT DEVICE, LAST_VALUE(READING) WITHIN GROUP (ORDER BY TS ASC) FROM LIS_READINGS GROUP BY DEVICE",
+                    "SELECT DEVICE, TS, MIN(SEQ) FROM LIS_READINGS GROUP BY DEVICE, TS",
+            };
+            for (String query : queries) {
+                String plan = QueryUtil.getExplainPlan(conn.createStatement().executeQuery("EXPLAIN " + query));
+                assertTrue(query + "\n" + plan, plan.contains("    SERVER LOOSE INDEX SCAN OVER "));
+            }
+            queries = new String[] {
+                    "SELECT DEVICE, MIN(TS) FROM LIS_READINGS GROUP BY DEVICE",
+                    "SELECT DEVICE, COUNT(*) FROM LIS_READINGS GROUP BY DEVICE",
+                    "SELECT DEVICE, MAX(TS), MAX(READING) FROM LIS_READINGS GROUP BY DEVICE",
+                    "SELECT DEVICE, FIRST_VALUE(READING) WITHIN GROUP (ORDER BY TS ASC) FROM LIS_READINGS GROUP BY DEVICE",
+                    "SELECT DEVICE, MAX(SEQ) FROM LIS_READINGS GROUP BY DEVICE",
+                    "SELECT READING, MAX(TS) FROM LIS_READINGS GROUP BY READING",
+            };
+            for (String query : queries) {
+                String plan = QueryUtil.getExplainPlan(conn.createStatement().executeQuery("EXPLAIN " + query));
+                assertFalse(query + "\n" + plan, plan.contains("LOOSE INDEX SCAN"));
+            }
+        }
+    }
+
     @Test
     public void testOrderPreservingGroupByForClientAggregatePlan() throws Exception {
         Connection conn = null;
@@ -0,0 +1,282 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.phoenix.coprocessor;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.KeyValueUtil;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.RegionInfoBuilder;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.client.Table;
+import org.apache.hadoop.hbase.regionserver.OnlineRegions;
+import org.apache.hadoop.hbase.regionserver.Region;
+import org.apache.hadoop.hbase.regionserver.RegionScanner;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.phoenix.expression.Expression;
+import org.apache.phoenix.expression.LiteralExpression;
+import org.apache.phoenix.expression.RowKeyColumnExpression;
+import org.apache.phoenix.hbase.index.util.ImmutableBytesPtr;
+import org.apache.phoenix.join.CoLocatedJoinInfo;
+import org.apache.phoenix.memory.GlobalMemoryManager;
+import org.apache.phoenix.query.QueryConstants;
+import org.apache.phoenix.schema.RowKeySchema;
+import org.apache.phoenix.schema.RowKeySchema.RowKeySchemaBuilder;
+import org.apache.phoenix.schema.RowKeyValueAccessor;
+import org.apache.phoenix.schema.SortOrder;
+import org.apache.phoenix.schema.tuple.ResultTuple;
+import org.apache.phoenix.schema.tuple.Tuple;
+import org.apache.phoenix.schema.types.PInteger;
+import org.apache.phoenix.schema.types.PVarchar;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+public class CoLocatedMergeJoinCacheTest {
+    private static final int PREFIX_COUNT = 10;
+    private static final int ROWS_PER_PREFIX = 20;
+    private static final byte[] FAMILY = QueryConstants.DEFAULT_COLUMN_FAMILY_BYTES;
+    private static final byte[] QUALIFIER = Bytes.toBytes("V");
+
+    private static final TableName TABLE_NAME = TableName.valueOf("RHS");
+
+    private final List<Result> rhsRows = new ArrayList<Result>();
+    // Start and stop rows of the client scans of the right-hand table
+    private final List<byte[]> startRows = new ArrayList<byte[]>();
+    private final List<byte[]> stopRows = new ArrayList<byte[]>();
+    // Start rows of the scans of the local right-hand regions
+    private final List<byte[]> regionStartRows = new ArrayList<byte[]>();
+    private final List<Region> localRegions = new ArrayList<Region>();
+    private OnlineRegions onlineRegions;
+    private Table table;
+    private CoLocatedJoinInfo joinInfo;
+
+    /**
+     * Row key of a (VARCHAR, INTEGER) primary key
+     */
+    private static byte[] getRowKey(String prefix, int value) {
+        return Bytes.add(Bytes.toBytes(prefix), new byte[] { QueryConstants.SEPARATOR_BYTE },
+                PInteger.INSTANCE.toBytes(value));
+    }
+
+    private static String getPrefix(int i) {
+        return "p" + i;
+    }
+
+    private static Tuple newTuple(byte[] row, byte[] value) {
+        Cell cell = new KeyValue(row, FAMILY, QUALIFIER, value);
+        return new ResultTuple(Result.create(Collections.singletonList(cell)));
+    }
+
+    /**
+     * The right-hand rows within the key range of the given scan
+     */
+    private Iterator<Result> getRows(Scan scan) {
+        List<Result> rows = new ArrayList<Result>();
+        for (Result result : rhsRows) {
+            if (Bytes.compareTo(result.getRow(), scan.getStartRow()) >= 0
+                    && (scan.getStopRow().length == 0 || Bytes.compareTo(result.getRow(), scan.getStopRow()) < 0)) {
+                rows.add(result);
+            }
+        }
+        return rows.iterator();
+    }
+
+    private Region newLocalRegion(byte[] startKey, byte[] endKey) throws IOException {
+        Region region = mock(Region.class);
+        when(region.getRegionInfo()).thenReturn(
+                RegionInfoBuilder.newBuilder(TABLE_NAME).setStartKey(startKey).setEndKey(endKey).build());
+        when(region.getScanner(any(Scan.class))).thenAnswer(new Answer<RegionScanner>() {
+            @Override
+            public RegionScanner answer(InvocationOnMock invocation) throws Throwable {
+                Scan scan = (Scan) invocation.getArguments()[0];
+                regionStartRows.add(scan.getStartRow());
+                final Iterator<Result> iterator = getRows(scan);
+                RegionScanner scanner = mock(RegionScanner.class);
+                when(scanner.nextRaw(any(List.class))).thenAnswer(new Answer<Boolean>() {
+                    @Override
+                    public Boolean answer(InvocationOnMock invocation) {
+                        @SuppressWarnings("unchecked")
+                        List<Cell> results = (List<Cell>) invocation.getArguments()[0];
+                        if (iterator.hasNext()) {
+                            results.addAll(Arrays.asList(iterator.next().rawCells()));
+                        }
+                        return iterator.hasNext();
+                    }
+                });
+                return scanner;
+            }
+        });
+        localRegions.add(region);
+        return region;
+    }
+
+    private CoLocatedMergeJoinCache newCache(GlobalMemoryManager memoryManager) {
+        return new CoLocatedMergeJoinCache(onlineRegions, table, memoryManager.allocate(0), joinInfo);
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        // Every other prefix is missing on the right-hand side
+        for (int i = 0; i < PREFIX_COUNT; i += 2) {
+            for (int j = 0; j < ROWS_PER_PREFIX; j++) {
+                byte[] value = Bytes.toBytes(String.format("%s-%d %0100d", getPrefix(i), j, 0));
+                Cell cell = new KeyValue(getRowKey(getPrefix(i), j), FAMILY, QUALIFIER, value);
+                rhsRows.add(Result.create(Collections.singletonList(cell)));
+            }
+        }
+        table = mock(Table.class);
+        when(table.getScanner(any(Scan.class))).thenAnswer(new Answer<ResultScanner>() {
+            @Override
+            public ResultScanner answer(InvocationOnMock invocation) throws Throwable {
+                Scan scan = (Scan) invocation.getArguments()[0];
+                startRows.add(scan.getStartRow());
+                stopRows.add(scan.getStopRow());
+                final Iterator<Result> iterator = getRows(scan);
+                ResultScanner scanner = mock(ResultScanner.class);
+                when(scanner.next()).thenAnswer(new Answer<Result>() {
+                    @Override
+                    public Result answer(InvocationOnMock invocation) {
+                        return iterator.hasNext() ? iterator.next() : null;
+                    }
+                });
+                return scanner;
+            }
+        });
+        onlineRegions = mock(OnlineRegions.class);
+        doReturn(localRegions).when(onlineRegions).getRegions(TABLE_NAME);
+
+        LiteralExpression prefix = LiteralExpression.newConstant(null, PVarchar.INSTANCE);
+        LiteralExpression value = LiteralExpression.newConstant(null, PInteger.INSTANCE);
+        RowKeySchema schema = new RowKeySchemaBuilder(2)
+                .addField(prefix, false, SortOrder.ASC)
+                .addField(value, false, SortOrder.ASC)
+                .build();
+        List<Expression> keyExpressions = Collections.<Expression>singletonList(new RowKeyColumnExpression(
+                value, new RowKeyValueAccessor(Arrays.asList(prefix, value), 1)));
+        joinInfo = new CoLocatedJoinInfo(Bytes.toBytes("RHS"), new Scan(), keyExpressions, false,
+                schema, schema, 1);
+    }
+
+    private static void assertJoined(CoLocatedMergeJoinCache cache, int i) throws IOException {
+        cache.seek(newTuple(getRowKey(getPrefix(i), 0), Bytes.toBytes(0)));
+        for (int j = 0; j < ROWS_PER_PREFIX; j++) {
+            List<Tuple> tuples = cache.get(new ImmutableBytesPtr(PInteger.INSTANCE.toBytes(j)));
+            if (i % 2 != 0) {
+                assertNull(tuples);
+                continue;
+            }
+            assertEquals(1, tuples.size());
+            assertTrue(Bytes.toString(tuples.get(0).getValue(0).getValueArray(),
+                    tuples.get(0).getValue(0).getValueOffset(), tuples.get(0).getValue(0).getValueLength())
+                    .startsWith(getPrefix(i) + "-" + j + " "));
+        }
+        assertNull(cache.get(new ImmutableBytesPtr(PInteger.INSTANCE.toBytes(ROWS_PER_PREFIX))));
+    }
+
+    @Test
+    public void testMemoryHeldForCurrentPrefixOnly() throws IOException {
+        // Room for the rows of a couple of prefixes, not for the whole right-hand side
+        long prefixSize = 0;
+        for (int j = 0; j < ROWS_PER_PREFIX; j++) {
+            prefixSize += KeyValueUtil.getSerializedSize(rhsRows.get(j).rawCells()[0], true);
+        }
+        GlobalMemoryManager memoryManager = new GlobalMemoryManager(3 * prefixSize);
+        newLocalRegion(HConstants.EMPTY_START_ROW, HConstants.EMPTY_END_ROW);
+        CoLocatedMergeJoinCache cache = newCache(memoryManager);
+        try {
+            for (int i = 0; i < PREFIX_COUNT; i++) {
+                assertJoined(cache, i);
+                assertTrue(memoryManager.getAvailableMemory() >= memoryManager.getMaxMemory() - prefixSize);
+            }
+        } finally {
+            cache.close();
+        }
+        assertEquals(memoryManager.getMaxMemory(), memoryManager.getAvailableMemory());
+        // Read through a single scan of the local region
+        assertEquals(1, regionStartRows.size());
+        assertTrue(startRows.isEmpty());
+    }
+
+    @Test
+    public void testRegionsStartAtTheirFirstPrefix() throws IOException {
+        GlobalMemoryManager memoryManager = new GlobalMemoryManager(100 * 1024 * 1024);
+        // Left-hand regions split at a key the right-hand regions are not split at
+        int[][] regions = new int[][] { { 0, 1, 2 }, { 3, 4, 7 }, { 8, 9 } };
+        for (int[] region : regions) {
+            startRows.clear();
+            CoLocatedMergeJoinCache cache = newCache(memoryManager);
+            try {
+                for (int i : region) {
+                    assertJoined(cache, i);
+                }
+            } finally {
+                cache.close();
+            }
+            // The scan starts at the first prefix of the region, without its separator
+            assertArrayEquals(Bytes.toBytes(getPrefix(region[0])), startRows.get(0));
+        }
+        assertEquals(memoryManager.getMaxMemory(), memoryManager.getAvailableMemory());
+    }
+
+    @Test
+    public void testRemoteRangeBetweenLocalRegions() throws IOException {
+        GlobalMemoryManager memoryManager = new GlobalMemoryManager(100 * 1024 * 1024);
+        // The right-hand region between the two is hosted by another region server
+        byte[] remoteStartKey = Bytes.toBytes(getPrefix(3));
+        byte[] remoteEndKey = Bytes.toBytes(getPrefix(6));
+        newLocalRegion(HConstants.EMPTY_START_ROW, remoteStartKey);
+        newLocalRegion(remoteEndKey, HConstants.EMPTY_END_ROW);
+        CoLocatedMergeJoinCache cache = newCache(memoryManager);
+        try {
+            for (int i = 0; i < PREFIX_COUNT; i++) {
+                assertJoined(cache, i);
+            }
+        } finally {
+            cache.close();
+        }
+        assertEquals(2, regionStartRows.size());
+        assertArrayEquals(Bytes.toBytes(getPrefix(0)), regionStartRows.get(0));
+        assertArrayEquals(remoteEndKey, regionStartRows.get(1));
+        // Only the range hosted elsewhere is read through a client scan
+        assertEquals(1, startRows.size());
+        assertArrayEquals(remoteStartKey, startRows.get(0));
+        assertArrayEquals(remoteEndKey, stopRows.get(0));
+        assertEquals(memoryManager.getMaxMemory(), memoryManager.getAvailableMemory());
+    }
+}
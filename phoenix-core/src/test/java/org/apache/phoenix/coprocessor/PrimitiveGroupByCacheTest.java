@@ -0,0 +1,198 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.phoenix.coprocessor;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.coprocessor.RegionCoprocessorEnvironment;
+import org.apache.hadoop.hbase.regionserver.RegionScanner;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.phoenix.cache.GlobalCache;
+import org.apache.phoenix.cache.aggcache.SpillableGroupByCache;
+import org.apache.phoenix.expression.Expression;
+import org.apache.phoenix.expression.KeyValueColumnExpression;
+import org.apache.phoenix.expression.LiteralExpression;
+import org.apache.phoenix.expression.aggregator.Aggregator;
+import org.apache.phoenix.expression.aggregator.ServerAggregators;
+import org.apache.phoenix.expression.function.CountAggregateFunction;
+import org.apache.phoenix.expression.function.MaxAggregateFunction;
+import org.apache.phoenix.expression.function.MinAggregateFunction;
+import org.apache.phoenix.expression.function.SingleAggregateFunction;
+import org.apache.phoenix.expression.function.SumAggregateFunction;
+import org.apache.phoenix.hbase.index.util.ImmutableBytesPtr;
+import org.apache.phoenix.memory.MemoryManager;
+import org.apache.phoenix.query.QueryConstants;
+import org.apache.phoenix.schema.tuple.MultiKeyValueTuple;
+import org.apache.phoenix.schema.tuple.Tuple;
+import org.apache.phoenix.schema.types.PDataType;
+import org.apache.phoenix.schema.types.PDouble;
+import org.apache.phoenix.schema.types.PLong;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PrimitiveGroupByCacheTest {
+    private static final int ROW_COUNT = 1000;
+    private static final int GROUP_COUNT = 50;
+
+    private static final Expression A = kvExpr("A", PLong.INSTANCE);
+    private static final Expression B = kvExpr("B", PDouble.INSTANCE);
+
+    private final Configuration conf = new Configuration(false);
+    private RegionCoprocessorEnvironment env;
+    private ServerAggregators aggregators;
+    private Map<ImmutableBytesPtr, Aggregator[]> expected;
+
+    private static Expression kvExpr(String name, PDataType type) {
+        return new KeyValueColumnExpression(LiteralExpression.newConstant(null, type),
+                QueryConstants.DEFAULT_COLUMN_FAMILY_BYTES, Bytes.toBytes(name));
+    }
+
+    private static List<Expression> children(Expression child) {
+        return Arrays.asList(child);
+    }
+
+    /**
+     * Row i has A = i - 500, except for every fifth row where A is missing, and B = i / 3
+     */
+    private static Tuple createRow(int i) {
+        byte[] row = Bytes.toBytes(i);
+        List<Cell> cells = new ArrayList<Cell>();
+        if (i % 5 != 0) {
+            cells.add(new KeyValue(row, QueryConstants.DEFAULT_COLUMN_FAMILY_BYTES, Bytes.toBytes("A"),
+                    PLong.INSTANCE.toBytes((long) (i - 500))));
+        }
+        cells.add(new KeyValue(row, QueryConstants.DEFAULT_COLUMN_FAMILY_BYTES, Bytes.toBytes("B"),
+                PDouble.INSTANCE.toBytes(i / 3.0)));
+        return new MultiKeyValueTuple(cells);
+    }
+
+    private static ImmutableBytesPtr getGroup(int i) {
+        return new ImmutableBytesPtr(Bytes.toBytes(i % GROUP_COUNT));
+    }
+
+    @Before
+    public void setUp() {
+        env = mock(RegionCoprocessorEnvironment.class);
+        when(env.getConfiguration()).thenReturn(conf);
+        List<SingleAggregateFunction> functions = Arrays.<SingleAggregateFunction>asList(
+                new CountAggregateFunction(children(A)),
+                new SumAggregateFunction(children(A)),
+                new SumAggregateFunction(children(B)),
+                new MinAggregateFunction(children(A)),
+                new MaxAggregateFunction(children(B)));
+        aggregators = ServerAggregators.deserialize(ServerAggregators.serialize(functions, 1), conf, null);
+        expected = new HashMap<ImmutableBytesPtr, Aggregator[]>();
+    }
+
+    private PrimitiveGroupByCache newCache() {
+        PrimitiveGroupByCache cache = PrimitiveGroupByCache.newInstance(env, null, null, aggregators, 4,
+                new PrimitiveGroupByCache.AggregatorCacheFactory() {
+                    @Override
+                    public GroupByCache newCache(int estDistVals) {
+                        return new SpillableGroupByCache(env, null, aggregators, estDistVals);
+                    }
+                }, true);
+        assertNotNull(cache);
+        return cache;
+    }
+
+    private void aggregate(GroupByCache cache, int from, int to) {
+        for (int i = from; i < to; i++) {
+            Tuple row = createRow(i);
+            ImmutableBytesPtr key = getGroup(i);
+            cache.aggregate(key, row);
+            Aggregator[] rowAggregators = expected.get(key);
+            if (rowAggregators == null) {
+                rowAggregators = aggregators.newAggregators(conf);
+                expected.put(key, rowAggregators);
+            }
+            aggregators.aggregate(rowAggregators, row);
+        }
+    }
+
+    private void assertResults(GroupByCache cache) throws IOException {
+        assertEquals(expected.size(), cache.size());
+        RegionScanner scanner = cache.getScanner(mock(RegionScanner.class));
+        Map<ImmutableBytesPtr, byte[]> actual = new HashMap<ImmutableBytesPtr, byte[]>();
+        List<Cell> results = new ArrayList<Cell>();
+        boolean hasMore;
+        do {
+            results.clear();
+            hasMore = scanner.next(results);
+            for (Cell cell : results) {
+                actual.put(new ImmutableBytesPtr(CellUtil.cloneRow(cell)), CellUtil.cloneValue(cell));
+            }
+        } while (hasMore);
+        scanner.close();
+        assertEquals(expected.size(), actual.size());
+        for (Map.Entry<ImmutableBytesPtr, Aggregator[]> entry : expected.entrySet()) {
+            assertArrayEquals(aggregators.toBytes(entry.getValue()), actual.get(entry.getKey()));
+        }
+    }
+
+    private MemoryManager getMemoryManager() {
+        return GlobalCache.getTenantCache(env, null).getMemoryManager();
+    }
+
+    @Test
+    public void testSameResultsAsAggregators() throws IOException {
+        long availableMemory = getMemoryManager().getAvailableMemory();
+        // Presized for fewer groups to go through the growth of the table
+        PrimitiveGroupByCache cache = newCache();
+        aggregate(cache, 0, ROW_COUNT);
+        assertResults(cache);
+        assertEquals(availableMemory, getMemoryManager().getAvailableMemory());
+    }
+
+    @Test
+    public void testHandOverOnCache() throws IOException {
+        long availableMemory = getMemoryManager().getAvailableMemory();
+        PrimitiveGroupByCache cache = newCache();
+        aggregate(cache, 0, ROW_COUNT / 2);
+
+        // Asking for the aggregators of a group moves all the groups over to the other cache
+        ImmutableBytesPtr key = new ImmutableBytesPtr(Bytes.toBytes(GROUP_COUNT));
+        Aggregator[] rowAggregators = cache.cache(key);
+        assertEquals(GROUP_COUNT + 1, cache.size());
+        Tuple row = createRow(ROW_COUNT);
+        aggregators.aggregate(rowAggregators, row);
+        Aggregator[] expectedAggregators = aggregators.newAggregators(conf);
+        aggregators.aggregate(expectedAggregators, row);
+        expected.put(key, expectedAggregators);
+
+        // Groups aggregated before and after the hand over are combined
+        aggregate(cache, ROW_COUNT / 2, ROW_COUNT);
+        assertResults(cache);
+        assertEquals(availableMemory, getMemoryManager().getAvailableMemory());
+    }
+}
@@ -0,0 +1,270 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.phoenix.coprocessor;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.hadoop.hbase.ByteBufferKeyValue;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.filter.CompareFilter.CompareOp;
+import org.apache.hadoop.hbase.filter.Filter;
+import org.apache.hadoop.hbase.filter.FilterList;
+import org.apache.hadoop.hbase.filter.PageFilter;
+import org.apache.hadoop.hbase.regionserver.RegionScanner;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.phoenix.expression.ComparisonExpression;
+import org.apache.phoenix.expression.Expression;
+import org.apache.phoenix.expression.KeyValueColumnExpression;
+import org.apache.phoenix.expression.LiteralExpression;
+import org.apache.phoenix.filter.SingleCQKeyValueComparisonFilter;
+import org.apache.phoenix.filter.SkipScanFilter;
+import org.apache.phoenix.query.KeyRange;
+import org.apache.phoenix.query.QueryConstants;
+import org.apache.phoenix.schema.RowKeySchema;
+import org.apache.phoenix.schema.RowKeySchema.RowKeySchemaBuilder;
+import org.apache.phoenix.schema.SortOrder;
+import org.apache.phoenix.schema.types.PBoolean;
+import org.apache.phoenix.schema.types.PDataType;
+import org.apache.phoenix.schema.types.PInteger;
+import org.apache.phoenix.schema.types.PLong;
+import org.junit.Test;
+
+public class VectorizedFilterRegionScannerTest {
+    private static final int ROW_COUNT = 100;
+    private static final byte[] FAMILY = QueryConstants.DEFAULT_COLUMN_FAMILY_BYTES;
+    private static final byte[] QUALIFIER = Bytes.toBytes("A");
+
+    private static Expression kvExpr(String name, PDataType type) {
+        return new KeyValueColumnExpression(LiteralExpression.newConstant(null, type), FAMILY, Bytes.toBytes(name));
+    }
+
+    /**
+     * A > 10, so that the rows of the first batch are only partly selected
+     */
+    private static Expression whereExpression() throws Exception {
+        return new ComparisonExpression(Arrays.asList(kvExpr("A", PLong.INSTANCE),
+                LiteralExpression.newConstant(10L, PLong.INSTANCE)), CompareOp.GREATER);
+    }
+
+    private static boolean isSelected(int i) {
+        return i > 10;
+    }
+
+    private static byte[] getRow(int i) {
+        return PInteger.INSTANCE.toBytes(i);
+    }
+
+    private static SkipScanFilter skipScanFilter() {
+        RowKeySchema schema = new RowKeySchemaBuilder(1)
+                .addField(LiteralExpression.newConstant(null, PInteger.INSTANCE), false, SortOrder.ASC)
+                .build();
+        return new SkipScanFilter(Arrays.<List<KeyRange>>asList(Arrays.asList(
+                KeyRange.getKeyRange(getRow(0), true, getRow(ROW_COUNT), false))), schema, false);
+    }
+
+    /**
+     * Region scanner over rows 0 to ROW_COUNT - 1, each with a single off heap cell holding the
+     * row number. The cells it returned are overwritten once {@link #shipped()} is called, like
+     * the blocks of an off heap block cache that are released after being shipped.
+     */
+    private static class OffHeapRegionScanner extends DelegateRegionScanner {
+        private final List<ByteBuffer> returned = new ArrayList<ByteBuffer>();
+        private int next;
+        private int calls;
+
+        OffHeapRegionScanner() {
+            super(null);
+        }
+
+        @Override
+        public boolean next(List<Cell> result) {
+            calls++;
+            if (next < ROW_COUNT) {
+                KeyValue kv = new KeyValue(getRow(next), FAMILY, QUALIFIER, 1,
+                        PLong.INSTANCE.toBytes((long) next));
+                ByteBuffer buffer = ByteBuffer.allocateDirect(kv.getLength());
+                buffer.put(kv.getBuffer(), kv.getOffset(), kv.getLength());
+                returned.add(buffer);
+                result.add(new ByteBufferKeyValue(buffer, 0, kv.getLength()));
+                next++;
+            }
+            return next < ROW_COUNT;
+        }
+
+        @Override
+        public boolean nextRaw(List<Cell> result) {
+            return next(result);
+        }
+
+        @Override
+        public boolean reseek(byte[] row) {
+            next = Bytes.toInt(row) ^ Integer.MIN_VALUE;
+            return true;
+        }
+
+        @Override
+        public boolean isFilterDone() {
+            return next >= ROW_COUNT;
+        }
+
+        void shipped() {
+            for (ByteBuffer buffer : returned) {
+                for (int i = 0; i < buffer.capacity(); i++) {
+                    buffer.put(i, (byte) 0);
+                }
+            }
+            returned.clear();
+        }
+    }
+
+    private static Scan newVectorizedScan() throws Exception {
+        Scan scan = new Scan();
+        scan.setFilter(new SingleCQKeyValueComparisonFilter(whereExpression()));
+        assertTrue(VectorizedFilterRegionScanner.pushIntoScan(scan));
+        return scan;
+    }
+
+    private static int getValue(List<Cell> result) {
+        assertEquals(1, result.size());
+        Cell cell = result.get(0);
+        int row = PInteger.INSTANCE.getCodec().decodeInt(cell.getRowArray(), cell.getRowOffset(), SortOrder.ASC);
+        long value = PLong.INSTANCE.getCodec().decodeLong(CellUtil.cloneValue(cell), 0, SortOrder.ASC);
+        assertEquals(row, value);
+        return row;
+    }
+
+    @Test
+    public void testPushIntoScan() throws Exception {
+        Scan scan = newVectorizedScan();
+        assertNull(scan.getFilter());
+        assertNotNull(scan.getAttribute(BaseScannerRegionObserver.VECTORIZED_FILTER));
+
+        // A skip scan is left in the scan
+        SkipScanFilter skipScanFilter = skipScanFilter();
+        scan = new Scan();
+        scan.setFilter(new FilterList(FilterList.Operator.MUST_PASS_ALL, Arrays.<Filter>asList(
+                skipScanFilter, new SingleCQKeyValueComparisonFilter(whereExpression()))));
+        assertTrue(VectorizedFilterRegionScanner.pushIntoScan(scan));
+        assertSame(skipScanFilter, scan.getFilter());
+
+        // Any other filter could depend on the rows the where clause drops
+        Filter filter = new FilterList(FilterList.Operator.MUST_PASS_ALL, Arrays.<Filter>asList(
+                new PageFilter(10), new SingleCQKeyValueComparisonFilter(whereExpression())));
+        scan = new Scan();
+        scan.setFilter(filter);
+        assertFalse(VectorizedFilterRegionScanner.pushIntoScan(scan));
+        assertSame(filter, scan.getFilter());
+        assertNull(scan.getAttribute(BaseScannerRegionObserver.VECTORIZED_FILTER));
+
+        // The where clause cannot be evaluated in batches
+        filter = new SingleCQKeyValueComparisonFilter(kvExpr("B", PBoolean.INSTANCE));
+        scan = new Scan();
+        scan.setFilter(filter);
+        assertFalse(VectorizedFilterRegionScanner.pushIntoScan(scan));
+        assertSame(filter, scan.getFilter());
+
+        // No where clause
+        scan = new Scan();
+        assertFalse(VectorizedFilterRegionScanner.pushIntoScan(scan));
+        assertNull(scan.getFilter());
+    }
+
+    @Test
+    public void testWrap() throws Exception {
+        RegionScanner delegate = new OffHeapRegionScanner();
+        assertSame(delegate, VectorizedFilterRegionScanner.wrap(new Scan(), delegate, 16));
+        RegionScanner scanner = VectorizedFilterRegionScanner.wrap(newVectorizedScan(), delegate, 16);
+        assertTrue(scanner instanceof VectorizedFilterRegionScanner);
+    }
+
+    @Test
+    public void testBufferedRowsAreCopied() throws Exception {
+        OffHeapRegionScanner delegate = new OffHeapRegionScanner();
+        RegionScanner scanner = VectorizedFilterRegionScanner.wrap(newVectorizedScan(), delegate, 16);
+        List<Integer> rows = new ArrayList<Integer>();
+        List<Cell> result = new ArrayList<Cell>();
+        boolean hasMore;
+        do {
+            result.clear();
+            hasMore = scanner.nextRaw(result);
+            if (!result.isEmpty()) {
+                rows.add(getValue(result));
+            }
+            // Releases the cells of the whole batch read by the delegate
+            delegate.shipped();
+        } while (hasMore);
+        List<Integer> expected = new ArrayList<Integer>();
+        for (int i = 0; i < ROW_COUNT; i++) {
+            if (isSelected(i)) {
+                expected.add(i);
+            }
+        }
+        assertEquals(expected, rows);
+    }
+
+    @Test
+    public void testLimit() throws Exception {
+        OffHeapRegionScanner delegate = new OffHeapRegionScanner();
+        RegionScanner scanner = VectorizedFilterRegionScanner.wrap(newVectorizedScan(), delegate, 64);
+        List<Cell> result = new ArrayList<Cell>();
+        // Only the first rows are read, as with a limit, with more rows buffered
+        for (int i = 11; i < 16; i++) {
+            result.clear();
+            assertTrue(scanner.next(result));
+            assertEquals(i, getValue(result));
+        }
+        // A single batch is read from the delegate
+        assertEquals(64, delegate.calls);
+        assertFalse(scanner.isFilterDone());
+        scanner.close();
+    }
+
+    @Test
+    public void testReseek() throws Exception {
+        OffHeapRegionScanner delegate = new OffHeapRegionScanner();
+        RegionScanner scanner = VectorizedFilterRegionScanner.wrap(newVectorizedScan(), delegate, 64);
+        List<Cell> result = new ArrayList<Cell>();
+        assertTrue(scanner.next(result));
+        assertEquals(11, getValue(result));
+        // The rows buffered before the new position are not returned
+        assertTrue(scanner.reseek(getRow(50)));
+        result.clear();
+        assertTrue(scanner.next(result));
+        assertEquals(50, getValue(result));
+        // Nor the ones buffered after it
+        assertTrue(scanner.reseek(getRow(90)));
+        result.clear();
+        assertTrue(scanner.next(result));
+        assertEquals(90, getValue(result));
+        assertArrayEquals(getRow(90), CellUtil.cloneRow(result.get(0)));
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.phoenix.execute;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Iterator;
+import java.util.Map;
+
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.phoenix.schema.PColumn;
+import org.junit.Test;
+
+public class PackedColumnValuesTest {
+
+    @Test
+    public void testPutAndGet() {
+        PColumn col1 = mock(PColumn.class);
+        PColumn col2 = mock(PColumn.class);
+        PColumn col3 = mock(PColumn.class);
+        PackedColumnValues values = new PackedColumnValues(2);
+        assertNull(values.put(col1, Bytes.toBytes("a")));
+        assertNull(values.put(col2, new byte[0]));
+        // grows beyond the expected number of columns
+        assertNull(values.put(col3, Bytes.toBytes("ccc")));
+        assertEquals(3, values.size());
+        assertArrayEquals(Bytes.toBytes("a"), values.get(col1));
+        assertArrayEquals(new byte[0], values.get(col2));
+        assertArrayEquals(Bytes.toBytes("ccc"), values.get(col3));
+        assertNull(values.get(mock(PColumn.class)));
+
+        Iterator<Map.Entry<PColumn, byte[]>> iterator = values.entrySet().iterator();
+        assertEquals(col1, iterator.next().getKey());
+        assertEquals(col2, iterator.next().getKey());
+        Map.Entry<PColumn, byte[]> entry = iterator.next();
+        assertEquals(col3, entry.getKey());
+        assertArrayEquals(Bytes.toBytes("ccc"), entry.getValue());
+    }
+
+    @Test
+    public void testReplaceValue() {
+        PColumn col1 = mock(PColumn.class);
+        PColumn col2 = mock(PColumn.class);
+        PColumn col3 = mock(PColumn.class);
+        PackedColumnValues values = new PackedColumnValues(3);
+        values.put(col1, Bytes.toBytes("aa"));
+        values.put(col2, Bytes.toBytes("bb"));
+        values.put(col3, Bytes.toBytes("cc"));
+        values.trimToSize();
+        long size = values.getEstimatedSize();
+
+        assertArrayEquals(Bytes.toBytes("bb"), values.put(col2, Bytes.toBytes("xx")));
+        assertEquals(size, values.getEstimatedSize());
+        assertArrayEquals(Bytes.toBytes("xx"), values.put(col2, Bytes.toBytes("yyyy")));
+        values.trimToSize();
+        assertEquals(size + 2, values.getEstimatedSize());
+        assertArrayEquals(Bytes.toBytes("yyyy"), values.put(col2, Bytes.toBytes("z")));
+        values.trimToSize();
+        assertEquals(size - 1, values.getEstimatedSize());
+
+        assertEquals(3, values.size());
+        assertArrayEquals(Bytes.toBytes("aa"), values.get(col1));
+        assertArrayEquals(Bytes.toBytes("z"), values.get(col2));
+        assertArrayEquals(Bytes.toBytes("cc"), values.get(col3));
+    }
+
+    @Test
+    public void testAppendAfterTrimmingEmpty() {
+        PColumn col = mock(PColumn.class);
+        PackedColumnValues values = new PackedColumnValues(4);
+        values.trimToSize();
+        assertTrue(values.isEmpty());
+        values.put(col, Bytes.toBytes("a"));
+        assertArrayEquals(Bytes.toBytes("a"), values.get(col));
+    }
+
+    @Test
+    public void testValuesReadInPlace() {
+        PColumn col1 = mock(PColumn.class);
+        PColumn col2 = mock(PColumn.class);
+        PackedColumnValues values = new PackedColumnValues(2);
+        values.put(col1, Bytes.toBytes("aa"));
+        values.put(col2, Bytes.toBytes("bbb"));
+        ImmutableBytesWritable ptr = new ImmutableBytesWritable();
+        values.getValue(1, ptr);
+        assertEquals(col2, values.getColumn(1));
+        assertArrayEquals(Bytes.toBytes("bbb"), ptr.copyBytes());
+        ImmutableBytesWritable other = new ImmutableBytesWritable();
+        values.getValue(0, other);
+        // Both point into the same packed array
+        assertTrue(ptr.get() == other.get());
+
+        values.set(col1, Bytes.toBytes("xxyyzz"), 2, 3);
+        assertArrayEquals(Bytes.toBytes("yyz"), values.get(col1));
+        assertArrayEquals(Bytes.toBytes("bbb"), values.get(col2));
+    }
+
+    @Test
+    public void testEstimatedSizeIncludesColumns() {
+        PColumn col1 = mock(PColumn.class);
+        PColumn col2 = mock(PColumn.class);
+        PackedColumnValues values = new PackedColumnValues(2);
+        values.put(col1, Bytes.toBytes("a"));
+        values.put(col2, Bytes.toBytes("b"));
+        long size = values.getEstimatedSize();
+        when(col1.getEstimatedSize()).thenReturn(100);
+        when(col2.getEstimatedSize()).thenReturn(50);
+        assertEquals(size + 150, values.getEstimatedSize());
+    }
+}
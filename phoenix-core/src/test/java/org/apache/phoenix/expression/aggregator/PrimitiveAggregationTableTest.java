@@ -0,0 +1,283 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.phoenix.expression.aggregator;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.phoenix.expression.Expression;
+import org.apache.phoenix.expression.KeyValueColumnExpression;
+import org.apache.phoenix.expression.function.CountAggregateFunction;
+import org.apache.phoenix.expression.function.MaxAggregateFunction;
+import org.apache.phoenix.expression.function.MinAggregateFunction;
+import org.apache.phoenix.expression.function.SingleAggregateFunction;
+import org.apache.phoenix.expression.function.SumAggregateFunction;
+import org.apache.phoenix.hbase.index.util.ImmutableBytesPtr;
+import org.apache.phoenix.query.QueryConstants;
+import org.apache.phoenix.schema.PBaseColumn;
+import org.apache.phoenix.schema.PColumn;
+import org.apache.phoenix.schema.PName;
+import org.apache.phoenix.schema.PNameFactory;
+import org.apache.phoenix.schema.SortOrder;
+import org.apache.phoenix.schema.tuple.MultiKeyValueTuple;
+import org.apache.phoenix.schema.types.PDataType;
+import org.apache.phoenix.schema.types.PDecimal;
+import org.apache.phoenix.schema.types.PDouble;
+import org.apache.phoenix.schema.types.PInteger;
+import org.apache.phoenix.schema.types.PLong;
+import org.apache.phoenix.schema.types.PVarchar;
+import org.junit.Test;
+
+public class PrimitiveAggregationTableTest {
+    private static final int ROW_COUNT = 200;
+
+    private static final KeyValueColumnExpression A = kvExpr("A", PLong.INSTANCE);
+    private static final KeyValueColumnExpression B = kvExpr("B", PDouble.INSTANCE);
+    private static final KeyValueColumnExpression I = kvExpr("I", PInteger.INSTANCE);
+
+    private final Configuration conf = new Configuration(false);
+
+    private static PColumn pcolumn(final String name, final PDataType type) {
+        return new PBaseColumn() {
+            @Override public PName getName() {
+                return PNameFactory.newName(name);
+            }
+
+            @Override public PDataType getDataType() {
+                return type;
+            }
+
+            @Override public PName getFamilyName() {
+                return PNameFactory.newName(QueryConstants.DEFAULT_COLUMN_FAMILY);
+            }
+
+            @Override public int getPosition() {
+                return 0;
+            }
+
+            @Override public Integer getArraySize() {
+                return null;
+            }
+
+            @Override public byte[] getViewConstant() {
+                return new byte[0];
+            }
+
+            @Override public boolean isViewReferenced() {
+                return false;
+            }
+
+            @Override public String getExpressionStr() {
+                return null;
+            }
+
+            @Override public boolean isRowTimestamp() {
+                return false;
+            }
+
+            @Override public boolean isDynamic() {
+                return false;
+            }
+
+            @Override public byte[] getColumnQualifierBytes() {
+                return null;
+            }
+
+            @Override public long getTimestamp() {
+                return 0;
+            }
+
+            @Override public boolean isDerived() {
+                return false;
+            }
+
+            @Override public boolean isExcluded() {
+                return false;
+            }
+
+            @Override public SortOrder getSortOrder() {
+                return SortOrder.getDefault();
+            }
+        };
+    }
+
+    private static KeyValueColumnExpression kvExpr(String name, PDataType type) {
+        return new KeyValueColumnExpression(pcolumn(name, type));
+    }
+
+    private static Cell createCell(byte[] row, String name, byte[] value) {
+        return CellUtil.createCell(row, QueryConstants.DEFAULT_COLUMN_FAMILY_BYTES, Bytes.toBytes(name),
+                1, KeyValue.Type.Put.getCode(), value);
+    }
+
+    private static List<Expression> children(Expression child) {
+        return Arrays.asList(child);
+    }
+
+    private ServerAggregators newAggregators(SingleAggregateFunction... functions) {
+        byte[] serialized = ServerAggregators.serialize(Arrays.asList(functions), 0);
+        return ServerAggregators.deserialize(serialized, conf, null);
+    }
+
+    private static int getGroup(int i) {
+        // A is missing from every group 100 row
+        return i % 5 == 0 ? 100 : i % 7;
+    }
+
+    /**
+     * Row i has A = i - 100, except for every fifth row where A is missing, B = (i - 100) / 3
+     * and I = 50 - i
+     */
+    private static MultiKeyValueTuple createRow(int i) {
+        byte[] row = Bytes.toBytes(i);
+        List<Cell> cells = new ArrayList<Cell>();
+        if (i % 5 != 0) {
+            cells.add(createCell(row, "A", PLong.INSTANCE.toBytes((long) (i - 100))));
+        }
+        cells.add(createCell(row, "B", PDouble.INSTANCE.toBytes((i - 100) / 3.0)));
+        cells.add(createCell(row, "I", PInteger.INSTANCE.toBytes(50 - i)));
+        return new MultiKeyValueTuple(cells);
+    }
+
+    @Test
+    public void testSameValueAsAggregators() {
+        ServerAggregators aggregators = newAggregators(
+                new CountAggregateFunction(children(A)),
+                new SumAggregateFunction(children(A)),
+                new SumAggregateFunction(children(B)),
+                new SumAggregateFunction(children(I)),
+                new MinAggregateFunction(children(A)),
+                new MaxAggregateFunction(children(A)),
+                new MinAggregateFunction(children(B)),
+                new MaxAggregateFunction(children(B)),
+                new MinAggregateFunction(children(I)),
+                new MaxAggregateFunction(children(I)));
+        // Start small to go through the growth of the table
+        PrimitiveAggregationTable table = PrimitiveAggregationTable.newInstance(aggregators, 2);
+        assertNotNull(table);
+
+        Map<ImmutableBytesPtr, Aggregator[]> expected = new HashMap<ImmutableBytesPtr, Aggregator[]>();
+        for (int i = 0; i < ROW_COUNT; i++) {
+            MultiKeyValueTuple row = createRow(i);
+            ImmutableBytesPtr key = new ImmutableBytesPtr(Bytes.toBytes(getGroup(i)));
+            Aggregator[] rowAggregators = expected.get(key);
+            if (rowAggregators == null) {
+                rowAggregators = aggregators.newAggregators(conf);
+                expected.put(key, rowAggregators);
+            }
+            aggregators.aggregate(rowAggregators, row);
+            table.aggregate(table.getOrAddGroup(key), row);
+        }
+
+        assertEquals(expected.size(), table.getGroupCount());
+        ImmutableBytesWritable key = new ImmutableBytesWritable();
+        for (int groupId = 0; groupId < table.getGroupCount(); groupId++) {
+            table.getKey(groupId, key);
+            assertEquals(groupId, table.find(key));
+            Aggregator[] rowAggregators = expected.get(new ImmutableBytesPtr(key));
+            assertNotNull(rowAggregators);
+            byte[] value = table.toBytes(groupId);
+            assertArrayEquals(aggregators.toBytes(rowAggregators), value);
+            // Aggregators recreated from the table hold the same values
+            assertArrayEquals(value, aggregators.toBytes(table.newAggregators(groupId, conf)));
+        }
+        assertEquals(PrimitiveAggregationTable.NOT_FOUND,
+                table.find(new ImmutableBytesWritable(Bytes.toBytes(-1))));
+    }
+
+    private static NumberSumAggregator newNotNullableSumAggregator(ImmutableBytesWritable ptr) {
+        return new NumberSumAggregator(SortOrder.getDefault(), ptr) {
+            @Override
+            protected PDataType getInputDataType() {
+                return PLong.INSTANCE;
+            }
+
+            @Override
+            public boolean isNullable() {
+                return false;
+            }
+        };
+    }
+
+    @Test
+    public void testNotNullableSumWithoutValues() {
+        SingleAggregateFunction sum = new SumAggregateFunction(children(A)) {
+            @Override
+            public Aggregator newServerAggregator(Configuration conf) {
+                return newNotNullableSumAggregator(null);
+            }
+
+            @Override
+            public Aggregator newServerAggregator(Configuration conf, ImmutableBytesWritable ptr) {
+                return newNotNullableSumAggregator(ptr);
+            }
+        };
+        SingleAggregateFunction count = new CountAggregateFunction(children(A));
+        SingleAggregateFunction max = new MaxAggregateFunction(children(A));
+        ServerAggregators aggregators = new NonSizeTrackingServerAggregators(
+                new SingleAggregateFunction[] { sum, count, max },
+                new Aggregator[] { sum.newServerAggregator(conf), count.newServerAggregator(conf),
+                        max.newServerAggregator(conf) },
+                new Expression[] { A, A, A }, 2);
+        PrimitiveAggregationTable table = PrimitiveAggregationTable.newInstance(aggregators, 2);
+        assertNotNull(table);
+
+        // Every fifth row has no value for A
+        Aggregator[] expected = aggregators.newAggregators(conf);
+        ImmutableBytesPtr key = new ImmutableBytesPtr(Bytes.toBytes(0));
+        int groupId = table.getOrAddGroup(key);
+        for (int i = 0; i < ROW_COUNT; i += 5) {
+            MultiKeyValueTuple row = createRow(i);
+            aggregators.aggregate(expected, row);
+            table.aggregate(groupId, row);
+        }
+        byte[] value = table.toBytes(groupId);
+        assertArrayEquals(aggregators.toBytes(expected), value);
+        assertArrayEquals(value, aggregators.toBytes(table.newAggregators(groupId, conf)));
+        ImmutableBytesWritable ptr = new ImmutableBytesWritable();
+        Aggregator[] groupAggregators = table.newAggregators(groupId, conf);
+        assertTrue(groupAggregators[0].evaluate(null, ptr));
+        assertEquals(0L, PLong.INSTANCE.getCodec().decodeLong(ptr, SortOrder.getDefault()));
+        assertFalse(groupAggregators[2].evaluate(null, ptr));
+    }
+
+    @Test
+    public void testUnsupportedAggregates() {
+        assertNull(PrimitiveAggregationTable.newInstance(newAggregators(
+                new CountAggregateFunction(children(A)),
+                new SumAggregateFunction(children(kvExpr("D", PDecimal.INSTANCE)))), 10));
+        assertNull(PrimitiveAggregationTable.newInstance(newAggregators(
+                new MaxAggregateFunction(children(kvExpr("V", PVarchar.INSTANCE)))), 10));
+    }
+}
@@ -0,0 +1,248 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.phoenix.expression.vector;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.filter.CompareFilter.CompareOp;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.phoenix.expression.AndExpression;
+import org.apache.phoenix.expression.ComparisonExpression;
+import org.apache.phoenix.expression.DoubleMultiplyExpression;
+import org.apache.phoenix.expression.Expression;
+import org.apache.phoenix.expression.InListExpression;
+import org.apache.phoenix.expression.KeyValueColumnExpression;
+import org.apache.phoenix.expression.LiteralExpression;
+import org.apache.phoenix.expression.LongAddExpression;
+import org.apache.phoenix.expression.OrExpression;
+import org.apache.phoenix.query.QueryConstants;
+import org.apache.phoenix.schema.PBaseColumn;
+import org.apache.phoenix.schema.PColumn;
+import org.apache.phoenix.schema.PName;
+import org.apache.phoenix.schema.PNameFactory;
+import org.apache.phoenix.schema.SortOrder;
+import org.apache.phoenix.schema.types.PBoolean;
+import org.apache.phoenix.schema.types.PDataType;
+import org.apache.phoenix.schema.types.PDouble;
+import org.apache.phoenix.schema.types.PLong;
+import org.apache.phoenix.schema.types.PVarchar;
+import org.junit.Test;
+
+public class VectorizedPredicateTest {
+    private static final int ROW_COUNT = 100;
+
+    private static final KeyValueColumnExpression A = kvExpr("A", PLong.INSTANCE);
+    private static final KeyValueColumnExpression B = kvExpr("B", PDouble.INSTANCE);
+    private static final KeyValueColumnExpression C = kvExpr("C", PVarchar.INSTANCE);
+
+    private static PColumn pcolumn(final String name, final PDataType type) {
+        return new PBaseColumn() {
+            @Override public PName getName() {
+                return PNameFactory.newName(name);
+            }
+
+            @Override public PDataType getDataType() {
+                return type;
+            }
+
+            @Override public PName getFamilyName() {
+                return PNameFactory.newName(QueryConstants.DEFAULT_COLUMN_FAMILY);
+            }
+
+            @Override public int getPosition() {
+                return 0;
+            }
+
+            @Override public Integer getArraySize() {
+                return null;
+            }
+
+            @Override public byte[] getViewConstant() {
+                return new byte[0];
+            }
+
+            @Override public boolean isViewReferenced() {
+                return false;
+            }
+
+            @Override public String getExpressionStr() {
+                return null;
+            }
+
+            @Override public boolean isRowTimestamp() {
+                return false;
+            }
+
+            @Override public boolean isDynamic() {
+                return false;
+            }
+
+            @Override public byte[] getColumnQualifierBytes() {
+                return null;
+            }
+
+            @Override public long getTimestamp() {
+                return 0;
+            }
+
+            @Override public boolean isDerived() {
+                return false;
+            }
+
+            @Override public boolean isExcluded() {
+                return false;
+            }
+
+            @Override public SortOrder getSortOrder() {
+                return SortOrder.getDefault();
+            }
+        };
+    }
+
+    private static KeyValueColumnExpression kvExpr(String name, PDataType type) {
+        return new KeyValueColumnExpression(pcolumn(name, type));
+    }
+
+    private static Cell createCell(byte[] row, String name, byte[] value) {
+        return CellUtil.createCell(row, QueryConstants.DEFAULT_COLUMN_FAMILY_BYTES, Bytes.toBytes(name),
+                1, KeyValue.Type.Put.getCode(), value);
+    }
+
+    /**
+     * Row i has A = i, except for every seventh row where A is missing, B = i / 2 and
+     * C = 'v' followed by the last digit of i
+     */
+    private static VectorizedBatch createBatch() {
+        VectorizedBatch batch = new VectorizedBatch(128);
+        for (int i = 0; i < ROW_COUNT; i++) {
+            byte[] row = Bytes.toBytes(i);
+            List<Cell> cells = batch.newRow();
+            if (i % 7 != 0) {
+                cells.add(createCell(row, "A", PLong.INSTANCE.toBytes((long) i)));
+            }
+            cells.add(createCell(row, "B", PDouble.INSTANCE.toBytes(i / 2.0)));
+            cells.add(createCell(row, "C", PVarchar.INSTANCE.toBytes("v" + (i % 10))));
+            batch.addRow();
+        }
+        return batch;
+    }
+
+    private static Expression compare(CompareOp op, Expression lhs, Expression rhs) {
+        return new ComparisonExpression(Arrays.asList(lhs, rhs), op);
+    }
+
+    private static Expression literal(Object value, PDataType type) throws Exception {
+        return LiteralExpression.newConstant(value, type);
+    }
+
+    /**
+     * Checks the rows selected by the vectorized form of the expression against the rows
+     * for which the row by row evaluation of the expression is true
+     */
+    private static void assertSameSelection(Expression expression) {
+        VectorizedBatch batch = createBatch();
+        List<Integer> expected = new ArrayList<Integer>();
+        ImmutableBytesWritable ptr = new ImmutableBytesWritable();
+        for (int i = 0; i < batch.size(); i++) {
+            expression.reset();
+            if (expression.evaluate(batch.getTuple(i), ptr) && ptr.getLength() != 0
+                    && Boolean.TRUE.equals(PBoolean.INSTANCE.toObject(ptr))) {
+                expected.add(i);
+            }
+        }
+        VectorizedPredicate predicate = VectorizedExpressionCompiler.compile(expression);
+        assertNotNull(predicate);
+        // Evaluate twice to check that the vectors reused across batches are reset
+        for (int k = 0; k < 2; k++) {
+            int[] selection = new int[batch.getCapacity()];
+            for (int i = 0; i < batch.size(); i++) {
+                selection[i] = i;
+            }
+            int selected = predicate.select(batch, selection, batch.size());
+            List<Integer> actual = new ArrayList<Integer>();
+            for (int j = 0; j < selected; j++) {
+                actual.add(selection[j]);
+            }
+            assertEquals(expression.toString(), expected, actual);
+        }
+    }
+
+    @Test
+    public void testComparisons() throws Exception {
+        assertSameSelection(compare(CompareOp.GREATER, A, literal(42L, PLong.INSTANCE)));
+        assertSameSelection(compare(CompareOp.LESS_OR_EQUAL, literal(42L, PLong.INSTANCE), A));
+        assertSameSelection(compare(CompareOp.NOT_EQUAL, B, literal(10.5, PDouble.INSTANCE)));
+        assertSameSelection(compare(CompareOp.GREATER_OR_EQUAL, C, literal("v5", PVarchar.INSTANCE)));
+        assertSameSelection(compare(CompareOp.EQUAL, A, literal(null, PLong.INSTANCE)));
+    }
+
+    @Test
+    public void testAndOr() throws Exception {
+        assertSameSelection(new AndExpression(Arrays.asList(
+                compare(CompareOp.GREATER, A, literal(10L, PLong.INSTANCE)),
+                compare(CompareOp.LESS, B, literal(30.0, PDouble.INSTANCE)))));
+        assertSameSelection(new OrExpression(Arrays.asList(
+                compare(CompareOp.LESS, A, literal(5L, PLong.INSTANCE)),
+                compare(CompareOp.EQUAL, C, literal("v3", PVarchar.INSTANCE)),
+                compare(CompareOp.GREATER, B, literal(45.0, PDouble.INSTANCE)))));
+        assertSameSelection(new AndExpression(Arrays.asList(
+                new OrExpression(Arrays.asList(
+                        compare(CompareOp.LESS, A, literal(20L, PLong.INSTANCE)),
+                        compare(CompareOp.GREATER, A, literal(80L, PLong.INSTANCE)))),
+                compare(CompareOp.NOT_EQUAL, C, literal("v1", PVarchar.INSTANCE)))));
+    }
+
+    @Test
+    public void testArithmetic() throws Exception {
+        assertSameSelection(compare(CompareOp.GREATER,
+                new LongAddExpression(Arrays.<Expression>asList(A, literal(5L, PLong.INSTANCE))),
+                literal(50L, PLong.INSTANCE)));
+        assertSameSelection(compare(CompareOp.LESS_OR_EQUAL,
+                new DoubleMultiplyExpression(Arrays.<Expression>asList(B, literal(2.0, PDouble.INSTANCE))),
+                literal(40.0, PDouble.INSTANCE)));
+    }
+
+    @Test
+    public void testInList() throws Exception {
+        assertSameSelection(InListExpression.create(Arrays.asList(C,
+                literal("v1", PVarchar.INSTANCE), literal("v2", PVarchar.INSTANCE), literal("v5", PVarchar.INSTANCE)),
+                false, new ImmutableBytesWritable(), false));
+        assertSameSelection(InListExpression.create(Arrays.asList(A,
+                literal(3L, PLong.INSTANCE), literal(7L, PLong.INSTANCE), literal(8L, PLong.INSTANCE)),
+                false, new ImmutableBytesWritable(), false));
+    }
+
+    @Test
+    public void testUnsupported() throws Exception {
+        assertNull(VectorizedExpressionCompiler.compile(
+                compare(CompareOp.GREATER, A, LiteralExpression.newConstant(BigDecimal.ONE))));
+        assertNull(VectorizedExpressionCompiler.compile(
+                compare(CompareOp.GREATER, C, literal(1L, PLong.INSTANCE))));
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.phoenix.filter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.phoenix.execute.TupleProjector;
+import org.apache.phoenix.expression.Expression;
+import org.apache.phoenix.expression.KeyValueColumnExpression;
+import org.apache.phoenix.expression.ProjectedColumnExpression;
+import org.apache.phoenix.hbase.index.util.ImmutableBytesPtr;
+import org.apache.phoenix.query.QueryConstants;
+import org.apache.phoenix.schema.PColumn;
+import org.apache.phoenix.schema.PColumnImpl;
+import org.apache.phoenix.schema.PNameFactory;
+import org.apache.phoenix.schema.SortOrder;
+import org.apache.phoenix.schema.tuple.ResultTuple;
+import org.apache.phoenix.schema.tuple.Tuple;
+import org.apache.phoenix.schema.types.PDataType;
+import org.apache.phoenix.schema.types.PLong;
+import org.apache.phoenix.schema.types.PVarchar;
+import org.apache.phoenix.util.KeyBloomFilter;
+import org.apache.phoenix.util.TupleUtil;
+import org.junit.Test;
+
+public class HashJoinBloomFilterTest {
+    private static final int ROW_COUNT = 2000;
+    private static final byte[] FAMILY = QueryConstants.DEFAULT_COLUMN_FAMILY_BYTES;
+
+    private final List<PColumn> columns = Arrays.asList(newColumn("A", PLong.INSTANCE, 0),
+            newColumn("B", PVarchar.INSTANCE, 1));
+    private final TupleProjector projector = new TupleProjector(ProjectedColumnExpression.buildSchema(columns),
+            new Expression[] { new KeyValueColumnExpression(columns.get(0)),
+                    new KeyValueColumnExpression(columns.get(1)) });
+    // Join key compiled against the projected row, with a variable and a fixed width column
+    private final List<Expression> joinExpressions = Arrays.<Expression>asList(
+            new ProjectedColumnExpression(columns.get(1), columns, 1, "B"),
+            new ProjectedColumnExpression(columns.get(0), columns, 0, "A"));
+
+    private static PColumn newColumn(String name, PDataType type, int position) {
+        return new PColumnImpl(PNameFactory.newName(name), PNameFactory.newName(FAMILY), type, null, null, true,
+                position, SortOrder.getDefault(), 0, null, false, null, false, false, Bytes.toBytes(name),
+                HConstants.LATEST_TIMESTAMP);
+    }
+
+    /**
+     * Row i has A = i / 2, so that two rows share each key, and B = "b" + i % 7, except for
+     * every eleventh row where B is missing
+     */
+    private static List<Cell> createRow(int i) {
+        byte[] row = Bytes.toBytes(i);
+        List<Cell> cells = new ArrayList<Cell>();
+        cells.add(new KeyValue(row, FAMILY, Bytes.toBytes("A"), PLong.INSTANCE.toBytes((long) (i / 2))));
+        if (i % 11 != 0) {
+            cells.add(new KeyValue(row, FAMILY, Bytes.toBytes("B"), PVarchar.INSTANCE.toBytes("b" + i % 7)));
+        }
+        return cells;
+    }
+
+    private static boolean hasNullKey(int i) {
+        return i % 11 == 0;
+    }
+
+    /**
+     * @return the key the hash join region scanner probes the hash cache with for the row
+     */
+    private ImmutableBytesPtr getProjectedKey(int i) throws Exception {
+        Tuple tuple = projector.projectResults(new ResultTuple(Result.create(createRow(i))), true);
+        return TupleUtil.getConcatenatedValue(tuple, joinExpressions);
+    }
+
+    /**
+     * @return a filter with the Bloom filter of the keys of the rows matching on the build side,
+     * round tripped through serialization as it is shipped to region servers
+     */
+    @SuppressWarnings("unchecked")
+    private HashJoinBloomFilter newFilter(KeyBloomFilter bloomFilter) throws Exception {
+        List<Expression> keyExpressions = HashJoinBloomFilter.getKeyExpressions(projector, joinExpressions);
+        assertNotNull(keyExpressions);
+        HashJoinBloomFilter filter = new HashJoinBloomFilter(new List[] { keyExpressions },
+                new KeyBloomFilter[] { bloomFilter });
+        return HashJoinBloomFilter.parseFrom(filter.toByteArray());
+    }
+
+    private static boolean filter(HashJoinBloomFilter filter, int i) throws Exception {
+        List<Cell> cells = createRow(i);
+        filter.reset();
+        filter.filterRowCells(cells);
+        assertEquals(filter.filterRow(), cells.isEmpty());
+        return filter.filterRow();
+    }
+
+    @Test
+    public void testRowsWithoutMatchAreDropped() throws Exception {
+        // Every fourth key is on the build side
+        KeyBloomFilter.Builder builder = new KeyBloomFilter.Builder(ROW_COUNT, 0.01);
+        for (int i = 0; i < ROW_COUNT; i += 4) {
+            builder.add(getProjectedKey(i));
+        }
+        HashJoinBloomFilter filter = newFilter(builder.build());
+        int dropped = 0;
+        int withoutMatch = 0;
+        for (int i = 0; i < ROW_COUNT; i++) {
+            boolean isDropped = filter(filter, i);
+            if (i % 4 == 0 || hasNullKey(i)) {
+                // Neither rows with a match nor rows with a null key value are dropped
+                assertFalse("Row " + i, isDropped);
+            } else {
+                withoutMatch++;
+                dropped += isDropped ? 1 : 0;
+            }
+        }
+        assertTrue(dropped + " of " + withoutMatch, dropped > withoutMatch * 0.9);
+    }
+
+    @Test
+    public void testFalsePositivesAreLetThrough() throws Exception {
+        // A Bloom filter with a high false positive rate
+        KeyBloomFilter.Builder builder = new KeyBloomFilter.Builder(ROW_COUNT, 0.3);
+        for (int i = 0; i < ROW_COUNT; i += 4) {
+            builder.add(getProjectedKey(i));
+        }
+        KeyBloomFilter bloomFilter = builder.build();
+        HashJoinBloomFilter filter = newFilter(bloomFilter);
+        int falsePositives = 0;
+        for (int i = 0; i < ROW_COUNT; i++) {
+            if (hasNullKey(i)) {
+                assertFalse(filter(filter, i));
+                continue;
+            }
+            // The key of the scanned row is the one probed with after projection, so a row
+            // is only dropped when the Bloom filter rules its key out
+            boolean mightContain = bloomFilter.mightContain(getProjectedKey(i));
+            assertEquals("Row " + i, !mightContain, filter(filter, i));
+            if (mightContain && i % 4 != 0) {
+                falsePositives++;
+            }
+        }
+        // Left to the hash join to discard
+        assertTrue(falsePositives > 0);
+    }
+
+    @Test
+    public void testEmptyRowIsNotFiltered() throws Exception {
+        HashJoinBloomFilter filter = newFilter(new KeyBloomFilter.Builder(10, 0.01).build());
+        List<Cell> cells = Collections.emptyList();
+        filter.filterRowCells(cells);
+        assertFalse(filter.filterRow());
+        assertTrue(filter(filter, 1));
+    }
+
+    @Test
+    public void testKeyOfBuildSideColumnIsNotRewritten() {
+        // A column merged into the row from a build side is not in the probe side projection
+        PColumn column = newColumn("C", PLong.INSTANCE, 2);
+        List<Expression> expressions = Collections.<Expression>singletonList(
+                new ProjectedColumnExpression(column, Arrays.asList(columns.get(0), columns.get(1), column), 2, "C"));
+        assertNull(HashJoinBloomFilter.getKeyExpressions(projector, expressions));
+    }
+}
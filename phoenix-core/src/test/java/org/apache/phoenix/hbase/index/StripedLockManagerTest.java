@@ -0,0 +1,107 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.phoenix.hbase.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.hadoop.hbase.exceptions.TimeoutIOException;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.phoenix.hbase.index.LockManager.RowLock;
+import org.apache.phoenix.hbase.index.util.ImmutableBytesPtr;
+import org.junit.After;
+import org.junit.Test;
+
+public class StripedLockManagerTest {
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    private boolean canLockFromOtherThread(final LockManager lockManager, final ImmutableBytesPtr rowKey)
+            throws Exception {
+        return executor.submit(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                try {
+                    lockManager.lockRow(rowKey, 10).release();
+                    return true;
+                } catch (TimeoutIOException e) {
+                    return false;
+                }
+            }
+        }).get();
+    }
+
+    @Test
+    public void testLockRow() throws Exception {
+        StripedLockManager lockManager = new StripedLockManager(16);
+        ImmutableBytesPtr rowKey = new ImmutableBytesPtr(Bytes.toBytes("a"));
+        RowLock rowLock = lockManager.lockRow(rowKey, 10);
+        assertEquals(rowKey, rowLock.getRowKey());
+        // reentrant for the thread holding the lock
+        lockManager.lockRow(rowKey, 10).release();
+        assertFalse(canLockFromOtherThread(lockManager, rowKey));
+        rowLock.release();
+        assertTrue(canLockFromOtherThread(lockManager, rowKey));
+    }
+
+    @Test
+    public void testLockRowsReleasesOnFailure() throws Exception {
+        final StripedLockManager lockManager = new StripedLockManager(1024);
+        final ImmutableBytesPtr rowKey1 = new ImmutableBytesPtr(Bytes.toBytes("row1"));
+        final ImmutableBytesPtr rowKey2 = new ImmutableBytesPtr(Bytes.toBytes("row2"));
+        final ImmutableBytesPtr rowKey3 = new ImmutableBytesPtr(Bytes.toBytes("row3"));
+        List<RowLock> rowLocks = lockManager.lockRows(Arrays.asList(rowKey3, rowKey1, rowKey2), 10);
+        assertEquals(3, rowLocks.size());
+        for (int i = 1; i < rowLocks.size(); i++) {
+            assertTrue(lockManager.getStripeIndex(rowLocks.get(i - 1).getRowKey())
+                    <= lockManager.getStripeIndex(rowLocks.get(i).getRowKey()));
+        }
+
+        // Another batch over one of the locked rows fails and leaves none of its rows locked
+        final ImmutableBytesPtr rowKey4 = new ImmutableBytesPtr(Bytes.toBytes("row4"));
+        executor.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                try {
+                    lockManager.lockRows(Arrays.asList(rowKey4, rowKey2), 10);
+                    fail();
+                } catch (TimeoutIOException e) {
+                    // expected
+                }
+                return null;
+            }
+        }).get();
+        for (RowLock rowLock : rowLocks) {
+            rowLock.release();
+        }
+        assertTrue(canLockFromOtherThread(lockManager, rowKey4));
+        assertTrue(canLockFromOtherThread(lockManager, rowKey2));
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.phoenix.hbase.index.write;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.apache.hadoop.hbase.client.Mutation;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.coprocessor.RegionCoprocessorEnvironment;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.phoenix.hbase.index.metrics.MetricsIndexerSource;
+import org.apache.phoenix.hbase.index.table.HTableInterfaceReference;
+import org.apache.phoenix.hbase.index.util.ImmutableBytesPtr;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mockito;
+
+import org.apache.phoenix.thirdparty.com.google.common.collect.ArrayListMultimap;
+import org.apache.phoenix.thirdparty.com.google.common.collect.Multimap;
+
+public class TestAsyncIndexCommitter {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private static final HTableInterfaceReference TABLE =
+      new HTableInterfaceReference(new ImmutableBytesPtr(Bytes.toBytes("index")));
+
+  /**
+   * Committer recording the written mutations, and blocking the writes until released
+   */
+  private static class RecordingCommitter implements IndexCommitter {
+    private final List<Multimap<HTableInterfaceReference, Mutation>> writes = new ArrayList<>();
+    private final CountDownLatch released;
+
+    RecordingCommitter(CountDownLatch released) {
+      this.released = released;
+    }
+
+    @Override
+    public void setup(IndexWriter parent, RegionCoprocessorEnvironment env, String name,
+        boolean disableIndexOnFailure) {
+    }
+
+    @Override
+    public void write(Multimap<HTableInterfaceReference, Mutation> toWrite, boolean allowLocalUpdates,
+        int clientVersion) throws IOException {
+      try {
+        released.await();
+      } catch (InterruptedException e) {
+        throw new IOException(e);
+      }
+      synchronized (writes) {
+        writes.add(toWrite);
+      }
+    }
+
+    int getWrittenMutationCount() {
+      synchronized (writes) {
+        int count = 0;
+        for (Multimap<HTableInterfaceReference, Mutation> write : writes) {
+          count += write.size();
+        }
+        return count;
+      }
+    }
+
+    @Override
+    public void stop(String why) {
+    }
+
+    @Override
+    public boolean isStopped() {
+      return false;
+    }
+  }
+
+  private static Multimap<HTableInterfaceReference, Mutation> newUpdates(int row) {
+    Multimap<HTableInterfaceReference, Mutation> updates = ArrayListMultimap.create();
+    updates.put(TABLE, new Put(Bytes.toBytes(row)).addColumn(Bytes.toBytes("0"), Bytes.toBytes("q"),
+        Bytes.toBytes(row)));
+    return updates;
+  }
+
+  @Test
+  public void testWritesInBatchesOnStop() throws Exception {
+    CountDownLatch released = new CountDownLatch(1);
+    RecordingCommitter delegate = new RecordingCommitter(released);
+    AsyncIndexCommitter committer = new AsyncIndexCommitter();
+    committer.setup(delegate, null, 100, 10, 1000, 10000,
+        Mockito.mock(MetricsIndexerSource.class), "T", "test");
+    for (int i = 0; i < 50; i++) {
+      committer.write(newUpdates(i), false, 1);
+    }
+    // nothing is written while the delegate is blocked
+    assertEquals(0, delegate.getWrittenMutationCount());
+    released.countDown();
+    committer.stop("test");
+    assertEquals(50, delegate.getWrittenMutationCount());
+    for (Multimap<HTableInterfaceReference, Mutation> write : delegate.writes) {
+      assertTrue(write.size() <= 10);
+    }
+  }
+
+  @Test
+  public void testBackPressure() throws Exception {
+    CountDownLatch released = new CountDownLatch(1);
+    RecordingCommitter delegate = new RecordingCommitter(released);
+    MetricsIndexerSource metricSource = Mockito.mock(MetricsIndexerSource.class);
+    AsyncIndexCommitter committer = new AsyncIndexCommitter();
+    committer.setup(delegate, null, 5, 5, 100, 10000, metricSource, "T", "test");
+    for (int i = 0; i < 5; i++) {
+      committer.write(newUpdates(i), false, 1);
+    }
+    try {
+      committer.write(newUpdates(5), false, 1);
+      fail();
+    } catch (IOException e) {
+      // expected, the queue is full
+    }
+    Mockito.verify(metricSource).updateAsyncIndexWriteBackPressureTime(Mockito.eq("T"), Mockito.anyLong());
+    released.countDown();
+    committer.write(newUpdates(5), false, 1);
+    committer.stop("test");
+    assertEquals(6, delegate.getWrittenMutationCount());
+  }
+
+  @Test
+  public void testWritesRecoveredUpdates() throws Exception {
+    File dir = new File(folder.getRoot(), "region");
+    CountDownLatch blocked = new CountDownLatch(1);
+    AsyncIndexCommitter committer = new AsyncIndexCommitter();
+    committer.setup(new RecordingCommitter(blocked), new IndexWriteLog(dir, 1024 * 1024), 100, 10, 1000, 10,
+        Mockito.mock(MetricsIndexerSource.class), "T", "test");
+    for (int i = 0; i < 20; i++) {
+      committer.write(newUpdates(i), false, 1);
+    }
+    // the delegate never completes, as if the server stopped before the updates were written
+    committer.stop("test");
+
+    RecordingCommitter delegate = new RecordingCommitter(new CountDownLatch(0));
+    committer = new AsyncIndexCommitter();
+    committer.setup(delegate, new IndexWriteLog(dir, 1024 * 1024), 100, 10, 1000, 10000,
+        Mockito.mock(MetricsIndexerSource.class), "T", "test");
+    committer.stop("test");
+    // the updates of the interrupted write are written again
+    assertEquals(20, delegate.getWrittenMutationCount());
+  }
+}
@@ -0,0 +1,227 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.phoenix.hbase.index.write;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.hadoop.hbase.client.Delete;
+import org.apache.hadoop.hbase.client.Mutation;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.phoenix.hbase.index.table.HTableInterfaceReference;
+import org.apache.phoenix.hbase.index.util.ImmutableBytesPtr;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import org.apache.phoenix.thirdparty.com.google.common.collect.ArrayListMultimap;
+import org.apache.phoenix.thirdparty.com.google.common.collect.Multimap;
+
+public class TestIndexWriteLog {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private static final HTableInterfaceReference TABLE =
+      new HTableInterfaceReference(new ImmutableBytesPtr(Bytes.toBytes("index")));
+  private static final byte[] FAMILY = Bytes.toBytes("0");
+
+  private static IndexWriteLog.Entry newEntry(int row) {
+    Multimap<HTableInterfaceReference, Mutation> updates = ArrayListMultimap.create();
+    Put put = new Put(Bytes.toBytes(row));
+    put.addColumn(FAMILY, Bytes.toBytes("q"), 1, Bytes.toBytes("v" + row));
+    updates.put(TABLE, put);
+    updates.put(TABLE, new Delete(Bytes.toBytes(-row), 1));
+    return new IndexWriteLog.Entry(updates, false, 1);
+  }
+
+  private static int getRow(IndexWriteLog.Entry entry) {
+    return Bytes.toInt(entry.updates.get(TABLE).iterator().next().getRow());
+  }
+
+  @Test
+  public void testRecoverAppendedEntries() throws Exception {
+    File dir = new File(folder.getRoot(), "region");
+    IndexWriteLog log = new IndexWriteLog(dir, 1024 * 1024);
+    assertTrue(log.open().isEmpty());
+    for (int i = 0; i < 10; i++) {
+      log.append(newEntry(i));
+    }
+    log.close();
+
+    log = new IndexWriteLog(dir, 1024 * 1024);
+    List<IndexWriteLog.Entry> entries = log.open();
+    assertEquals(10, entries.size());
+    for (int i = 0; i < 10; i++) {
+      IndexWriteLog.Entry entry = entries.get(i);
+      assertEquals(i, getRow(entry));
+      assertEquals(2, entry.updates.size());
+      assertEquals(1, entry.clientVersion);
+      assertFalse(entry.allowLocalUpdates);
+      Mutation delete = (Mutation)entry.updates.get(TABLE).toArray()[1];
+      assertTrue(delete instanceof Delete);
+      assertArrayEquals(Bytes.toBytes(-i), delete.getRow());
+    }
+    log.close();
+  }
+
+  @Test
+  public void testReleaseSegments() throws Exception {
+    File dir = new File(folder.getRoot(), "region");
+    // small segments, so that every entry rolls the segment
+    IndexWriteLog log = new IndexWriteLog(dir, 1);
+    log.open();
+    IndexWriteLog.Entry[] entries = new IndexWriteLog.Entry[5];
+    for (int i = 0; i < entries.length; i++) {
+      entries[i] = newEntry(i);
+      log.append(entries[i]);
+      assertEquals(i, entries[i].segmentId);
+    }
+    // the entries 0 to 2 are written
+    log.release(entries[2].segmentId, false);
+    log.close();
+    log = new IndexWriteLog(dir, 1);
+    List<IndexWriteLog.Entry> recovered = log.open();
+    // the segment of the last written entry is kept
+    assertEquals(3, recovered.size());
+    assertEquals(2, getRow(recovered.get(0)));
+
+    log.release(recovered.get(recovered.size() - 1).segmentId, true);
+    log.close();
+    log = new IndexWriteLog(dir, 1);
+    assertTrue(log.open().isEmpty());
+    log.close();
+  }
+
+  @Test
+  public void testRecoveryStopsAtIncompleteEntry() throws Exception {
+    File dir = new File(folder.getRoot(), "region");
+    IndexWriteLog log = new IndexWriteLog(dir, 1024 * 1024);
+    log.open();
+    log.append(newEntry(1));
+    log.append(newEntry(2));
+    log.close();
+    File segment = new File(dir, "0.log");
+    try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+      file.setLength(file.length() - 1);
+    }
+    log = new IndexWriteLog(dir, 1024 * 1024);
+    List<IndexWriteLog.Entry> entries = log.open();
+    assertEquals(1, entries.size());
+    assertEquals(1, getRow(entries.get(0)));
+    log.close();
+  }
+
+  @Test
+  public void testConcurrentAppendsAreSynced() throws Exception {
+    File dir = new File(folder.getRoot(), "region");
+    // small segments, so that segments are rolled between syncs
+    final IndexWriteLog log = new IndexWriteLog(dir, 512);
+    log.open();
+    final int threads = 8;
+    final int entriesPerThread = 50;
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<Void>> futures = new ArrayList<>();
+      for (int t = 0; t < threads; t++) {
+        final int thread = t;
+        futures.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws Exception {
+            for (int i = 0; i < entriesPerThread; i++) {
+              IndexWriteLog.Entry entry = newEntry(thread * entriesPerThread + i);
+              log.sync(log.append(entry, IndexWriteLog.toRecord(entry)));
+            }
+            return null;
+          }
+        }));
+      }
+      for (Future<Void> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+    log.close();
+
+    IndexWriteLog reopened = new IndexWriteLog(dir, 512);
+    List<IndexWriteLog.Entry> entries = reopened.open();
+    assertEquals(threads * entriesPerThread, entries.size());
+    boolean[] recovered = new boolean[threads * entriesPerThread];
+    for (IndexWriteLog.Entry entry : entries) {
+      recovered[getRow(entry)] = true;
+    }
+    for (int i = 0; i < recovered.length; i++) {
+      assertTrue("Entry " + i, recovered[i]);
+    }
+    reopened.close();
+  }
+
+  @Test
+  public void testFailedAppendIsTruncated() throws Exception {
+    File dir = new File(folder.getRoot(), "region");
+    final boolean[] fail = new boolean[1];
+    // writes only half of the record when failing
+    IndexWriteLog log = new IndexWriteLog(dir, 1024 * 1024) {
+      @Override
+      void write(FileChannel segment, ByteBuffer buffer) throws IOException {
+        if (fail[0]) {
+          buffer.limit(buffer.position() + buffer.remaining() / 2);
+          super.write(segment, buffer);
+          throw new IOException("Failed to append");
+        }
+        super.write(segment, buffer);
+      }
+    };
+    log.open();
+    log.append(newEntry(1));
+    fail[0] = true;
+    try {
+      log.append(newEntry(2));
+      fail();
+    } catch (IOException e) {
+    }
+    fail[0] = false;
+    log.append(newEntry(3));
+    log.close();
+
+    log = new IndexWriteLog(dir, 1024 * 1024);
+    List<IndexWriteLog.Entry> entries = log.open();
+    // the entry appended after the failed one is recovered
+    assertEquals(2, entries.size());
+    assertEquals(1, getRow(entries.get(0)));
+    assertEquals(3, getRow(entries.get(1)));
+    log.close();
+  }
+}
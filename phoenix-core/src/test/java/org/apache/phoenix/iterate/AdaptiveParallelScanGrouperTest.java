@@ -0,0 +1,55 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.phoenix.iterate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class AdaptiveParallelScanGrouperTest {
+
+    @Test
+    public void testMergeWithIdlePool() {
+        AdaptiveParallelScanGrouper grouper = new AdaptiveParallelScanGrouper(1000, 100000, 0.5);
+        assertTrue(grouper.shouldMergeWithNextChunk(null, 0));
+        assertTrue(grouper.shouldMergeWithNextChunk(null, 999));
+        assertFalse(grouper.shouldMergeWithNextChunk(null, 1000));
+    }
+
+    @Test
+    public void testMergeMoreWithBusyPool() {
+        AdaptiveParallelScanGrouper grouper = new AdaptiveParallelScanGrouper(1000, 100000, 4.0);
+        assertTrue(grouper.shouldMergeWithNextChunk(null, 3999));
+        assertFalse(grouper.shouldMergeWithNextChunk(null, 4000));
+    }
+
+    @Test
+    public void testSplitCount() {
+        AdaptiveParallelScanGrouper grouper = new AdaptiveParallelScanGrouper(1000, 100000, 0.5);
+        assertEquals(1, grouper.getChunkSplitCount(null, 100000));
+        assertEquals(2, grouper.getChunkSplitCount(null, 100001));
+        assertEquals(5, grouper.getChunkSplitCount(null, 500000));
+        assertEquals(16, grouper.getChunkSplitCount(null, Long.MAX_VALUE / 2));
+
+        // Hot chunks are not split while the pool is saturated
+        AdaptiveParallelScanGrouper busyGrouper = new AdaptiveParallelScanGrouper(1000, 100000, 1.0);
+        assertEquals(1, busyGrouper.getChunkSplitCount(null, 500000));
+    }
+}
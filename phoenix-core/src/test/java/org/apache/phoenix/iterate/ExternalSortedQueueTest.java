@@ -0,0 +1,173 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.phoenix.iterate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.phoenix.iterate.OrderedResultIterator.ResultEntry;
+import org.apache.phoenix.job.JobManager;
+import org.apache.phoenix.schema.tuple.SingleKeyValueTuple;
+import org.apache.phoenix.schema.tuple.Tuple;
+import org.junit.Test;
+
+public class ExternalSortedQueueTest {
+    private static final byte[] FAMILY = Bytes.toBytes("f");
+    private static final byte[] QUALIFIER = Bytes.toBytes("q");
+
+    private static final Comparator<ResultEntry> COMPARATOR = new Comparator<ResultEntry>() {
+        @Override
+        public int compare(ResultEntry e1, ResultEntry e2) {
+            ImmutableBytesWritable k1 = e1.getSortKey(0);
+            ImmutableBytesWritable k2 = e2.getSortKey(0);
+            return Bytes.compareTo(k1.get(), k1.getOffset(), k1.getLength(),
+                    k2.get(), k2.getOffset(), k2.getLength());
+        }
+    };
+
+    private static ResultEntry newEntry(int value) {
+        byte[] key = Bytes.toBytes(value);
+        Tuple tuple = new SingleKeyValueTuple(new KeyValue(key, FAMILY, QUALIFIER, new byte[1000]));
+        return new ResultEntry(new ImmutableBytesWritable[] { new ImmutableBytesWritable(key) }, tuple);
+    }
+
+    private static void assertSorted(ExternalSortedQueue queue, int count) {
+        assertSorted(queue, 0, count);
+    }
+
+    private static void assertSorted(ExternalSortedQueue queue, int from, int to) {
+        assertEquals(to - from, queue.size());
+        for (int i = from; i < to; i++) {
+            assertEquals(i, Bytes.toInt(queue.peek().getSortKey(0).copyBytes()));
+            ResultEntry entry = queue.poll();
+            assertEquals(i, Bytes.toInt(entry.getSortKey(0).copyBytes()));
+            assertEquals(i, Bytes.toInt(entry.getResult().getValue(0).getRowArray(),
+                    entry.getResult().getValue(0).getRowOffset()));
+        }
+        assertNull(queue.poll());
+    }
+
+    @Test
+    public void testExternalSortWithMerges() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            int count = 20000;
+            int[] values = new int[count];
+            for (int i = 0; i < count; i++) {
+                values[i] = i;
+            }
+            Random random = new Random(42);
+            for (int i = count - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                int tmp = values[i];
+                values[i] = values[j];
+                values[j] = tmp;
+            }
+            // Runs of about 1000 entries and a small merge factor, so that run files get merged
+            ExternalSortedQueue queue = new ExternalSortedQueue(COMPARATOR, 0, executor, 4, 4);
+            for (int value : values) {
+                queue.add(newEntry(value));
+            }
+            assertSorted(queue, count);
+            queue.close();
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static void assertIterates(ExternalSortedQueue queue, int from, int to) {
+        Iterator<ResultEntry> iterator = queue.iterator();
+        for (int i = from; i < to; i++) {
+            assertEquals(i, Bytes.toInt(iterator.next().getSortKey(0).copyBytes()));
+        }
+        assertFalse(iterator.hasNext());
+    }
+
+    @Test
+    public void testIterator() throws Exception {
+        int count = 5000;
+        // Runs of about 1000 entries, sorted and written on the calling thread
+        ExternalSortedQueue queue = new ExternalSortedQueue(COMPARATOR, 0, null, 1, 4);
+        for (int i = count - 1; i >= 0; i--) {
+            queue.add(newEntry(i));
+        }
+        // Before the runs are merged, without consuming any entry
+        assertIterates(queue, 0, count);
+        assertEquals(count, queue.size());
+        for (int i = 0; i < count / 2; i++) {
+            queue.poll();
+        }
+        // Over the merged runs, part way through the run files and the last run
+        assertIterates(queue, count / 2, count);
+        assertSorted(queue, count / 2, count);
+        assertIterates(queue, count, count);
+        queue.close();
+        assertIterates(queue, count, count);
+    }
+
+    @Test
+    public void testSaturatedExecutor() throws Exception {
+        // No queue, as for the sort executor of the query services, and its only thread is busy
+        ThreadPoolExecutor executor = JobManager.createThreadPoolExec(1000, 1, 0, false);
+        final CountDownLatch done = new CountDownLatch(1);
+        executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    done.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        try {
+            // The runs are sorted and written by the calling thread instead
+            ExternalSortedQueue queue = new ExternalSortedQueue(COMPARATOR, 0, executor, 1, 4);
+            for (int i = 4999; i >= 0; i--) {
+                queue.add(newEntry(i));
+            }
+            assertSorted(queue, 5000);
+            queue.close();
+        } finally {
+            done.countDown();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testInMemoryOnly() throws Exception {
+        ExternalSortedQueue queue = new ExternalSortedQueue(COMPARATOR, Long.MAX_VALUE, null, 1, 64);
+        for (int i = 99; i >= 0; i--) {
+            queue.add(newEntry(i));
+        }
+        assertSorted(queue, 100);
+        queue.close();
+    }
+}
@@ -20,7 +20,9 @@ package org.apache.phoenix.iterate;
 import static org.apache.phoenix.query.QueryConstants.SINGLE_COLUMN;
 import static org.apache.phoenix.query.QueryConstants.SINGLE_COLUMN_FAMILY;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 import org.apache.hadoop.hbase.KeyValue;
 import org.apache.hadoop.hbase.util.Bytes;
@@ -44,6 +46,10 @@ public class SpoolingResultIteratorTest {
     private final static byte[] B = Bytes.toBytes("b");
 
     private void testSpooling(int threshold, long maxSizeSpool) throws Throwable {
+        testSpooling(threshold, maxSizeSpool, false);
+    }
+
+    private void testSpooling(int threshold, long maxSizeSpool, boolean compress) throws Throwable {
         Tuple[] results = new Tuple[] {
                 new SingleKeyValueTuple(new KeyValue(A, SINGLE_COLUMN_FAMILY, SINGLE_COLUMN, Bytes.toBytes(1))),
                 new SingleKeyValueTuple(new KeyValue(B, SINGLE_COLUMN_FAMILY, SINGLE_COLUMN, Bytes.toBytes(1))),
@@ -59,10 +65,30 @@ public class SpoolingResultIteratorTest {
         ResultIterator scanner = new SpoolingResultIterator(
                 SpoolingMetricsHolder.NO_OP_INSTANCE,
                 new MemoryMetricsHolder(new ReadMetricQueue(false,LogLevel.OFF), ""), iterator, memoryManager, threshold,
-                maxSizeSpool, "/tmp");
+                maxSizeSpool, "/tmp", compress);
         AssertResults.assertResults(scanner, expectedResults);
     }
 
+    private void testSpoolingManyResults(int threshold, boolean compress) throws Throwable {
+        // Enough results of varying size for several blocks, including results bigger than a block
+        List<Tuple> results = new ArrayList<Tuple>();
+        List<Tuple> expectedResults = new ArrayList<Tuple>();
+        for (int i = 0; i < 5000; i++) {
+            byte[] row = Bytes.toBytes(String.format("%08d", i));
+            byte[] value = new byte[i % 100 == 0 ? 100 * 1024 : i % 300];
+            Arrays.fill(value, (byte)i);
+            results.add(new SingleKeyValueTuple(new KeyValue(row, SINGLE_COLUMN_FAMILY, SINGLE_COLUMN, value)));
+            expectedResults.add(new SingleKeyValueTuple(new KeyValue(row, SINGLE_COLUMN_FAMILY, SINGLE_COLUMN, value)));
+        }
+        MemoryManager memoryManager = new DelegatingMemoryManager(new GlobalMemoryManager(threshold));
+        ResultIterator scanner = new SpoolingResultIterator(
+                SpoolingMetricsHolder.NO_OP_INSTANCE,
+                new MemoryMetricsHolder(new ReadMetricQueue(false,LogLevel.OFF), ""),
+                new MaterializedResultIterator(results), memoryManager, threshold,
+                QueryServicesOptions.DEFAULT_MAX_SPOOL_TO_DISK_BYTES, "/tmp", compress);
+        AssertResults.assertResults(scanner, expectedResults.toArray(new Tuple[expectedResults.size()]));
+    }
+
     @Test
     public void testInMemorySpooling() throws Throwable {
         testSpooling(1024*1024, QueryServicesOptions.DEFAULT_MAX_SPOOL_TO_DISK_BYTES);
@@ -72,6 +98,24 @@ public class SpoolingResultIteratorTest {
         testSpooling(1, QueryServicesOptions.DEFAULT_MAX_SPOOL_TO_DISK_BYTES);
     }
 
+    @Test
+    public void testInMemorySpoolingCompressed() throws Throwable {
+        testSpooling(1024*1024, QueryServicesOptions.DEFAULT_MAX_SPOOL_TO_DISK_BYTES, true);
+    }
+
+    @Test
+    public void testOnDiskSpoolingCompressed() throws Throwable {
+        testSpooling(1, QueryServicesOptions.DEFAULT_MAX_SPOOL_TO_DISK_BYTES, true);
+    }
+
+    @Test
+    public void testSpoolingManyResults() throws Throwable {
+        testSpoolingManyResults(64*1024*1024, false);
+        testSpoolingManyResults(1, false);
+        testSpoolingManyResults(64*1024*1024, true);
+        testSpoolingManyResults(1, true);
+    }
+
     @Test(expected = SpoolTooBigToDiskException.class)
     public void testFailToSpool() throws Throwable{
     		testSpooling(1, 0L);
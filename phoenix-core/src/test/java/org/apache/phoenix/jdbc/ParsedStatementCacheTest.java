@@ -0,0 +1,129 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.phoenix.jdbc;
+
+import static org.apache.phoenix.util.TestUtil.ATABLE_NAME;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.util.Collections;
+import java.util.Map;
+
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.phoenix.compile.QueryPlan;
+import org.apache.phoenix.end2end.Shadower;
+import org.apache.phoenix.jdbc.PhoenixStatement.CompilableStatement;
+import org.apache.phoenix.query.BaseConnectionlessQueryTest;
+import org.apache.phoenix.query.QueryServices;
+import org.apache.phoenix.util.ReadOnlyProps;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import org.apache.phoenix.thirdparty.com.google.common.collect.Maps;
+
+public class ParsedStatementCacheTest extends BaseConnectionlessQueryTest {
+
+    @BeforeClass
+    @Shadower(classBeingShadowed = BaseConnectionlessQueryTest.class)
+    public static synchronized void doSetup() throws Exception {
+        Map<String, String> props = Maps.newHashMapWithExpectedSize(1);
+        // The cache is disabled by default
+        props.put(QueryServices.PARSED_STATEMENT_CACHE_SIZE_ATTRIB, Integer.toString(100));
+        initDriver(new ReadOnlyProps(props.entrySet().iterator()));
+        ensureTableCreated(getUrl(), ATABLE_NAME);
+    }
+
+    private static ParsedStatementCache getCache(Connection conn) throws Exception {
+        return conn.unwrap(PhoenixConnection.class).getQueryServices().getParsedStatementCache();
+    }
+
+    @Test
+    public void testQueryParsedOnce() throws Exception {
+        String query = "SELECT a_string FROM " + ATABLE_NAME + " WHERE organization_id = ? AND a_integer > ?";
+        Connection conn = DriverManager.getConnection(getUrl());
+        try {
+            ParsedStatementCache cache = getCache(conn);
+            PhoenixPreparedStatement stmt1 = conn.prepareStatement(query).unwrap(PhoenixPreparedStatement.class);
+            CompilableStatement parsed = cache.get(query);
+            assertNotNull(parsed);
+            PhoenixPreparedStatement stmt2 = conn.prepareStatement(query).unwrap(PhoenixPreparedStatement.class);
+            assertSame(parsed, cache.get(query));
+
+            // The shared statement compiles with the parameters bound to each prepared statement
+            stmt1.setString(1, "000000000000001");
+            stmt1.setInt(2, 1);
+            stmt2.setString(1, "000000000000002");
+            stmt2.setInt(2, 2);
+            QueryPlan plan1 = stmt1.compileQuery();
+            QueryPlan plan2 = stmt2.compileQuery();
+            assertTrue(Bytes.startsWith(plan1.getContext().getScan().getStartRow(), Bytes.toBytes("000000000000001")));
+            assertTrue(Bytes.startsWith(plan2.getContext().getScan().getStartRow(), Bytes.toBytes("000000000000002")));
+        } finally {
+            conn.close();
+        }
+    }
+
+    @Test
+    public void testDdlNotCached() throws Exception {
+        String ddl = "CREATE TABLE PARSED_STATEMENT_CACHE_T (K VARCHAR PRIMARY KEY, V BIGINT)";
+        Connection conn = DriverManager.getConnection(getUrl());
+        try {
+            conn.createStatement().execute(ddl);
+            assertNull(getCache(conn).get(ddl));
+            String upsert = "UPSERT INTO PARSED_STATEMENT_CACHE_T VALUES ('a', 1)";
+            conn.createStatement().execute(upsert);
+            assertNotNull(getCache(conn).get(upsert));
+        } finally {
+            conn.close();
+        }
+    }
+
+    @Test
+    public void testDisabledAndMaxSqlLength() throws Exception {
+        String query = "SELECT * FROM " + ATABLE_NAME;
+        Connection conn = DriverManager.getConnection(getUrl());
+        try {
+            CompilableStatement parsed = conn.prepareStatement(query).unwrap(PhoenixPreparedStatement.class)
+                    .parseStatement(query);
+
+            assertSame(ParsedStatementCache.NO_OP_INSTANCE,
+                    ParsedStatementCache.newInstance(ReadOnlyProps.EMPTY_PROPS));
+            ParsedStatementCache disabled = ParsedStatementCache.newInstance(new ReadOnlyProps(
+                    Collections.singletonMap(QueryServices.PARSED_STATEMENT_CACHE_SIZE_ATTRIB, "0")));
+            assertSame(ParsedStatementCache.NO_OP_INSTANCE, disabled);
+            disabled.put(query, parsed);
+            assertNull(disabled.get(query));
+
+            Map<String, String> props = Maps.newHashMapWithExpectedSize(2);
+            props.put(QueryServices.PARSED_STATEMENT_CACHE_SIZE_ATTRIB, Integer.toString(100));
+            props.put(QueryServices.PARSED_STATEMENT_CACHE_MAX_SQL_LENGTH_ATTRIB, Integer.toString(query.length() - 1));
+            ParsedStatementCache cache = ParsedStatementCache.newInstance(
+                    new ReadOnlyProps(props.entrySet().iterator()));
+            cache.put(query, parsed);
+            assertNull(cache.get(query));
+            assertEquals(0, cache.size());
+        } finally {
+            conn.close();
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.phoenix.job;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import org.junit.Test;
+
+public class JobManagerTest {
+
+    private static void assertRunsTasks(boolean useVirtualThreads) throws Exception {
+        ThreadPoolExecutor executor = JobManager.createThreadPoolExec(1000, 4, 100, true, useVirtualThreads);
+        try {
+            boolean virtual = useVirtualThreads && JobManager.isVirtualThreadsSupported();
+            List<Future<Thread>> futures = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                futures.add(executor.submit(new Callable<Thread>() {
+                    @Override
+                    public Thread call() {
+                        return Thread.currentThread();
+                    }
+                }));
+            }
+            for (Future<Thread> future : futures) {
+                Thread thread = future.get();
+                assertTrue(thread.isDaemon());
+                assertEquals(virtual, thread.getName().contains("-virtual-thread-"));
+                assertEquals(JobManager.class.getClassLoader(), thread.getContextClassLoader());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testPlatformThreads() throws Exception {
+        assertRunsTasks(false);
+    }
+
+    @Test
+    public void testVirtualThreads() throws Exception {
+        // falls back to platform threads on JVMs without virtual threads
+        assertRunsTasks(true);
+    }
+}
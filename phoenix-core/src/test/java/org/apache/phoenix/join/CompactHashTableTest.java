@@ -0,0 +1,73 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.phoenix.join;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.phoenix.util.ByteUtil;
+import org.junit.Test;
+
+public class CompactHashTableTest {
+
+    @Test
+    public void testAddAndFind() {
+        byte[] buffer = new byte[1000];
+        // Presize smaller than the number of rows so the table has to grow
+        CompactHashTable table = new CompactHashTable(buffer, 2);
+        for (int i = 0; i < 500; i++) {
+            table.add(new ImmutableBytesWritable(Bytes.toBytes("key" + (i % 100))), i * 2, 2);
+        }
+        assertEquals(100, table.getKeyCount());
+        assertEquals(500, table.getRowCount());
+
+        ImmutableBytesWritable ptr = new ImmutableBytesWritable();
+        for (int k = 0; k < 100; k++) {
+            int keyIndex = table.find(new ImmutableBytesWritable(Bytes.toBytes("key" + k)));
+            assertTrue(keyIndex != CompactHashTable.NOT_FOUND);
+            assertEquals(5, table.getRowCount(keyIndex));
+            int expectedOffset = k * 2;
+            for (int row = table.getFirstRow(keyIndex); row != CompactHashTable.NOT_FOUND; row = table.getNextRow(row)) {
+                table.getRow(row, ptr);
+                // Rows come back in insertion order and point into the original buffer
+                assertTrue(buffer == ptr.get());
+                assertEquals(expectedOffset, ptr.getOffset());
+                assertEquals(2, ptr.getLength());
+                expectedOffset += 200;
+            }
+            table.getKey(keyIndex, ptr);
+            assertEquals("key" + k, Bytes.toString(ptr.get(), ptr.getOffset(), ptr.getLength()));
+        }
+        assertEquals(CompactHashTable.NOT_FOUND, table.find(new ImmutableBytesWritable(Bytes.toBytes("key100"))));
+    }
+
+    @Test
+    public void testKeyWithinLargerArray() {
+        CompactHashTable table = new CompactHashTable(new byte[0], 4);
+        byte[] key = Bytes.toBytes("abc");
+        table.add(new ImmutableBytesWritable(key), 0, 0);
+        byte[] probe = Bytes.toBytes("xxabcxx");
+        assertTrue(table.find(probe, 2, 3) != CompactHashTable.NOT_FOUND);
+        assertEquals(CompactHashTable.NOT_FOUND, table.find(probe, 2, 4));
+        assertEquals(CompactHashTable.NOT_FOUND, table.find(ByteUtil.EMPTY_BYTE_ARRAY, 0, 0));
+        table.add(new ImmutableBytesWritable(ByteUtil.EMPTY_BYTE_ARRAY), 0, 0);
+        assertTrue(table.find(ByteUtil.EMPTY_BYTE_ARRAY, 0, 0) != CompactHashTable.NOT_FOUND);
+    }
+}
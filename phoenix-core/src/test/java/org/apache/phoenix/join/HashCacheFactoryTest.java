@@ -0,0 +1,165 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.phoenix.join;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.DataOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.phoenix.cache.HashCache;
+import org.apache.phoenix.coprocessor.MetaDataProtocol;
+import org.apache.phoenix.expression.Expression;
+import org.apache.phoenix.expression.ExpressionType;
+import org.apache.phoenix.expression.LiteralExpression;
+import org.apache.phoenix.expression.RowKeyColumnExpression;
+import org.apache.phoenix.hbase.index.util.ImmutableBytesPtr;
+import org.apache.phoenix.memory.GlobalMemoryManager;
+import org.apache.phoenix.memory.InsufficientMemoryException;
+import org.apache.phoenix.schema.RowKeyValueAccessor;
+import org.apache.phoenix.schema.tuple.ResultTuple;
+import org.apache.phoenix.schema.tuple.Tuple;
+import org.apache.phoenix.schema.types.PVarchar;
+import org.apache.phoenix.util.TrustedByteArrayOutputStream;
+import org.apache.phoenix.util.TupleUtil;
+import org.junit.Test;
+
+public class HashCacheFactoryTest {
+    private static final byte[] FAMILY = Bytes.toBytes("0");
+    private static final byte[] QUALIFIER = Bytes.toBytes("V");
+    private static final int N_KEYS = 97;
+    private static final int N_ROWS = 3000;
+
+    private static TrustedByteArrayOutputStream serialize() throws Exception {
+        LiteralExpression datum = LiteralExpression.newConstant(null, PVarchar.INSTANCE);
+        List<Expression> onExpressions = Collections.<Expression>singletonList(
+                new RowKeyColumnExpression(datum, new RowKeyValueAccessor(Arrays.asList(datum), 0)));
+        TrustedByteArrayOutputStream baOut = new TrustedByteArrayOutputStream(1024);
+        DataOutputStream out = new DataOutputStream(baOut);
+        out.writeInt(onExpressions.size());
+        for (Expression expression : onExpressions) {
+            WritableUtils.writeVInt(out, ExpressionType.valueOf(expression).ordinal());
+            expression.write(out);
+        }
+        out.writeInt(baOut.size() + Bytes.SIZEOF_INT);
+        out.writeInt(N_ROWS);
+        for (int i = 0; i < N_ROWS; i++) {
+            byte[] value = Bytes.toBytes(String.format("value %064d", i));
+            Cell cell = new KeyValue(Bytes.toBytes("key" + (i % N_KEYS)), FAMILY, QUALIFIER, value);
+            TupleUtil.write(new ResultTuple(Result.create(Collections.singletonList(cell))), out);
+        }
+        out.flush();
+        return baOut;
+    }
+
+    private static ImmutableBytesPtr compress(boolean inBlocks) throws Exception {
+        ImmutableBytesWritable ptr = new ImmutableBytesWritable();
+        HashCacheClient.compress(serialize(), inBlocks, ptr);
+        return new ImmutableBytesPtr(ptr.copyBytes());
+    }
+
+    private static List<String> getValues(HashCache cache, String key) throws Exception {
+        List<Tuple> tuples = cache.get(new ImmutableBytesPtr(Bytes.toBytes(key)));
+        if (tuples == null) {
+            return null;
+        }
+        List<String> values = new ArrayList<String>(tuples.size());
+        for (Tuple tuple : tuples) {
+            assertEquals(key, Bytes.toString(CellUtil.cloneRow(tuple.getValue(0))));
+            values.add(Bytes.toString(CellUtil.cloneValue(tuple.getValue(0))));
+        }
+        return values;
+    }
+
+    private static void assertSpilledMatchesInMemory(boolean inBlocks) throws Exception {
+        ImmutableBytesPtr cachePtr = compress(inBlocks);
+        HashCacheFactory factory = new HashCacheFactory();
+
+        GlobalMemoryManager inMemoryManager = new GlobalMemoryManager(100 * 1024 * 1024);
+        HashCache inMemory = factory.newHashCache(cachePtr, inMemoryManager.allocate(0),
+                MetaDataProtocol.PHOENIX_VERSION);
+        // Room for the keys and row positions and for only part of the rows
+        long indexSize = CompactHashTable.estimateByteSize(0, N_ROWS, 0);
+        GlobalMemoryManager spillManager = new GlobalMemoryManager(indexSize + 50 * 1024);
+        HashCache spilled = factory.newHashCache(cachePtr, spillManager.allocate(0),
+                MetaDataProtocol.PHOENIX_VERSION);
+        try {
+            assertFalse(inMemory.toString().contains("<spilled>"));
+            assertTrue(spilled.toString().contains("<spilled>"));
+            assertTrue(spillManager.getAvailableMemory() >= 0);
+            for (int k = 0; k < N_KEYS; k++) {
+                List<String> expected = getValues(inMemory, "key" + k);
+                assertNotNull(expected);
+                assertEquals((N_ROWS - k + N_KEYS - 1) / N_KEYS, expected.size());
+                assertEquals(expected, getValues(spilled, "key" + k));
+                // The tuples of a key are materialized once, whether iterated or accessed by index
+                List<Tuple> tuples = inMemory.get(new ImmutableBytesPtr(Bytes.toBytes("key" + k)));
+                int i = 0;
+                for (Tuple tuple : tuples) {
+                    assertSame(tuple, tuples.get(i++));
+                }
+            }
+            assertNull(getValues(inMemory, "key" + N_KEYS));
+            assertNull(getValues(spilled, "key" + N_KEYS));
+        } finally {
+            inMemory.close();
+            spilled.close();
+        }
+        assertEquals(inMemoryManager.getMaxMemory(), inMemoryManager.getAvailableMemory());
+        assertEquals(spillManager.getMaxMemory(), spillManager.getAvailableMemory());
+    }
+
+    @Test
+    public void testSpillBlockCompressedCache() throws Exception {
+        assertSpilledMatchesInMemory(true);
+    }
+
+    @Test
+    public void testSpillSingleBlockCache() throws Exception {
+        // As sent by older clients
+        assertSpilledMatchesInMemory(false);
+    }
+
+    @Test
+    public void testKeysThatDoNotFit() throws Exception {
+        ImmutableBytesPtr cachePtr = compress(true);
+        GlobalMemoryManager memoryManager = new GlobalMemoryManager(1024);
+        try {
+            new HashCacheFactory().newHashCache(cachePtr, memoryManager.allocate(0),
+                    MetaDataProtocol.PHOENIX_VERSION);
+            fail();
+        } catch (InsufficientMemoryException e) {
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.phoenix.join;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.phoenix.cache.HashCache;
+import org.apache.phoenix.coprocessor.MetaDataProtocol;
+import org.apache.phoenix.hbase.index.util.ImmutableBytesPtr;
+import org.apache.phoenix.memory.ChildMemoryManager;
+import org.apache.phoenix.memory.GlobalMemoryManager;
+import org.apache.phoenix.memory.MemoryManager.MemoryChunk;
+import org.apache.phoenix.schema.tuple.Tuple;
+import org.junit.Test;
+
+public class SharedHashCacheRegistryTest {
+
+    private static class CountingBuilder implements SharedHashCacheRegistry.Builder {
+        private final AtomicInteger builds = new AtomicInteger();
+
+        @Override
+        public HashCache build(final MemoryChunk chunk) throws SQLException {
+            builds.incrementAndGet();
+            chunk.resize(100);
+            return new HashCache() {
+                @Override
+                public int getClientVersion() {
+                    return MetaDataProtocol.PHOENIX_VERSION;
+                }
+
+                @Override
+                public List<Tuple> get(ImmutableBytesPtr hashKey) {
+                    return null;
+                }
+
+                @Override
+                public void close() {
+                    chunk.close();
+                }
+            };
+        }
+    }
+
+    @Test
+    public void testIdenticalContentIsBuiltOnce() throws Exception {
+        SharedHashCacheRegistry registry = new SharedHashCacheRegistry();
+        GlobalMemoryManager memoryManager = new GlobalMemoryManager(1000);
+        ImmutableBytesWritable cachePtr = new ImmutableBytesWritable(Bytes.toBytes("build side"));
+        ImmutableBytesPtr key = SharedHashCacheRegistry.getContentKey(cachePtr, MetaDataProtocol.PHOENIX_VERSION);
+        assertEquals(key, SharedHashCacheRegistry.getContentKey(
+                new ImmutableBytesWritable(Bytes.toBytes("build side")), MetaDataProtocol.PHOENIX_VERSION));
+        assertFalse(key.equals(SharedHashCacheRegistry.getContentKey(
+                new ImmutableBytesWritable(Bytes.toBytes("other side")), MetaDataProtocol.PHOENIX_VERSION)));
+
+        CountingBuilder builder = new CountingBuilder();
+        HashCache first = registry.acquire(key, memoryManager.allocate(10), builder);
+        HashCache second = registry.acquire(key, memoryManager.allocate(10), builder);
+        assertEquals(1, builder.builds.get());
+        assertEquals(1, registry.size());
+        // Only the builder's chunk holds memory
+        assertEquals(900, memoryManager.getAvailableMemory());
+
+        first.close();
+        first.close();
+        assertEquals(1, registry.size());
+        assertEquals(900, memoryManager.getAvailableMemory());
+        second.close();
+        assertEquals(0, registry.size());
+        assertEquals(1000, memoryManager.getAvailableMemory());
+
+        // Once released, the next acquire builds again
+        HashCache third = registry.acquire(key, memoryManager.allocate(10), builder);
+        assertEquals(2, builder.builds.get());
+        third.close();
+        assertEquals(1000, memoryManager.getAvailableMemory());
+    }
+
+    @Test
+    public void testMemoryMovesToOpenHandle() throws Exception {
+        SharedHashCacheRegistry registry = new SharedHashCacheRegistry();
+        GlobalMemoryManager memoryManager = new GlobalMemoryManager(1000);
+        ChildMemoryManager tenantA = new ChildMemoryManager(memoryManager, 50);
+        ChildMemoryManager tenantB = new ChildMemoryManager(memoryManager, 50);
+        // Without room for the cache
+        ChildMemoryManager tenantC = new ChildMemoryManager(memoryManager, 5);
+        ImmutableBytesPtr key = new ImmutableBytesPtr(Bytes.toBytes("key"));
+        CountingBuilder builder = new CountingBuilder();
+
+        HashCache first = registry.acquire(key, tenantA.allocate(10), builder);
+        HashCache second = registry.acquire(key, tenantC.allocate(10), builder);
+        HashCache third = registry.acquire(key, tenantB.allocate(10), builder);
+        assertEquals(400, tenantA.getAvailableMemory());
+        assertEquals(50, tenantC.getAvailableMemory());
+        assertEquals(500, tenantB.getAvailableMemory());
+
+        // Moved over to the tenant that has room for it
+        first.close();
+        assertEquals(500, tenantA.getAvailableMemory());
+        assertEquals(50, tenantC.getAvailableMemory());
+        assertEquals(400, tenantB.getAvailableMemory());
+        assertEquals(900, memoryManager.getAvailableMemory());
+
+        // Stays with the closed handle while no open one has room for it
+        third.close();
+        assertEquals(400, tenantB.getAvailableMemory());
+        assertEquals(50, tenantC.getAvailableMemory());
+        second.close();
+        assertEquals(500, tenantB.getAvailableMemory());
+        assertEquals(0, registry.size());
+        assertEquals(1000, memoryManager.getAvailableMemory());
+    }
+
+    @Test
+    public void testFailedBuildIsNotRegistered() throws Exception {
+        SharedHashCacheRegistry registry = new SharedHashCacheRegistry();
+        GlobalMemoryManager memoryManager = new GlobalMemoryManager(1000);
+        ImmutableBytesPtr key = new ImmutableBytesPtr(Bytes.toBytes("key"));
+        try {
+            registry.acquire(key, memoryManager.allocate(10), new SharedHashCacheRegistry.Builder() {
+                @Override
+                public HashCache build(MemoryChunk chunk) throws SQLException {
+                    throw new SQLException("build failed");
+                }
+            });
+            fail();
+        } catch (SQLException e) { // expected
+        }
+        assertEquals(0, registry.size());
+        CountingBuilder builder = new CountingBuilder();
+        registry.acquire(key, memoryManager.allocate(10), builder).close();
+        assertEquals(1, builder.builds.get());
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.phoenix.query;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Map;
+
+import org.apache.phoenix.job.JobManager;
+import org.apache.phoenix.thirdparty.com.google.common.collect.Maps;
+import org.apache.phoenix.util.ReadOnlyProps;
+import org.junit.Test;
+
+public class BaseQueryServicesImplTest {
+
+    private static QueryServices newQueryServices(boolean useVirtualThreads) {
+        Map<String, String> props = Maps.newHashMapWithExpectedSize(3);
+        props.put(QueryServices.THREAD_POOL_SIZE_ATTRIB, Integer.toString(7));
+        props.put(QueryServices.VIRTUAL_THREAD_POOL_SIZE_ATTRIB, Integer.toString(700));
+        props.put(QueryServices.VIRTUAL_THREADS_ENABLED_ATTRIB, Boolean.toString(useVirtualThreads));
+        return new QueryServicesTestImpl(ReadOnlyProps.EMPTY_PROPS, new ReadOnlyProps(props));
+    }
+
+    @Test
+    public void testPlatformThreadPoolSize() throws Exception {
+        QueryServices services = newQueryServices(false);
+        try {
+            assertEquals(7, services.getExecutor().getMaximumPoolSize());
+        } finally {
+            services.close();
+            services.getExecutor().shutdown();
+        }
+    }
+
+    @Test
+    public void testVirtualThreadPoolSize() throws Exception {
+        QueryServices services = newQueryServices(true);
+        try {
+            // Sized as a platform thread pool on JVMs without virtual threads
+            assertEquals(JobManager.isVirtualThreadsSupported() ? 700 : 7,
+                    services.getExecutor().getMaximumPoolSize());
+        } finally {
+            services.close();
+            services.getExecutor().shutdown();
+        }
+    }
+}
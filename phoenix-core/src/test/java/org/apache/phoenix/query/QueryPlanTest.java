@@ -18,6 +18,7 @@
 package org.apache.phoenix.query;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import java.sql.Connection;
 import java.sql.DriverManager;
@@ -307,4 +308,29 @@ public class QueryPlanTest extends BaseConnectionlessQueryTest {
     
     }
 
+    @Test
+    public void testParallelClientAggregateMerge() throws Exception {
+        Properties props = PropertiesUtil.deepCopy(new Properties());
+        props.setProperty(QueryServices.CLIENT_AGGREGATE_MERGE_THREADS_ATTRIB, Integer.toString(4));
+        Connection conn = DriverManager.getConnection(getUrl(), props);
+        try {
+            ResultSet rs = conn.createStatement().executeQuery("EXPLAIN SELECT count(1) FROM atable GROUP BY a_string");
+            assertEquals(
+                    "CLIENT PARALLEL 1-WAY FULL SCAN OVER ATABLE\n" +
+                    "    SERVER AGGREGATE INTO DISTINCT ROWS BY [A_STRING]\n" +
+                    "CLIENT PARALLEL MERGE INTO 4 PARTITIONS", QueryUtil.getExplainPlan(rs));
+            rs = conn.createStatement().executeQuery("EXPLAIN SELECT count(1) FROM atable GROUP BY a_string ORDER BY count(1)");
+            String queryPlan = QueryUtil.getExplainPlan(rs);
+            assertTrue(queryPlan, queryPlan.contains("CLIENT PARALLEL MERGE INTO 4 PARTITIONS\nCLIENT SORTED BY "));
+            // The groups must come back in group by order
+            rs = conn.createStatement().executeQuery("EXPLAIN SELECT count(1) FROM atable GROUP BY a_string ORDER BY a_string");
+            assertEquals(
+                    "CLIENT PARALLEL 1-WAY FULL SCAN OVER ATABLE\n" +
+                    "    SERVER AGGREGATE INTO DISTINCT ROWS BY [A_STRING]\n" +
+                    "CLIENT MERGE SORT", QueryUtil.getExplainPlan(rs));
+        } finally {
+            conn.close();
+        }
+    }
+
 }
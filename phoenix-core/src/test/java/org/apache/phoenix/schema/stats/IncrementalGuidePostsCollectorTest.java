@@ -0,0 +1,165 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.phoenix.schema.stats;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.KeyValueUtil;
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.phoenix.util.ByteUtil;
+import org.apache.phoenix.util.PrefixByteDecoder;
+import org.junit.Test;
+
+public class IncrementalGuidePostsCollectorTest {
+    private static final byte[] FAMILY = Bytes.toBytes("0");
+    private static final byte[] QUALIFIER = Bytes.toBytes("v");
+
+    private static List<Cell> row(String row, long ts) {
+        return Collections.<Cell>singletonList(
+                new KeyValue(Bytes.toBytes(row), FAMILY, QUALIFIER, ts, Bytes.toBytes("value")));
+    }
+
+    private static long cellSize() {
+        return KeyValueUtil.getSerializedSize(row("a", 1).get(0), true);
+    }
+
+    private static GuidePostsInfo existingGuidePosts() {
+        GuidePostsInfoBuilder builder = new GuidePostsInfoBuilder();
+        builder.trackGuidePost(new ImmutableBytesWritable(Bytes.toBytes("c")), 100, 10, 0);
+        builder.trackGuidePost(new ImmutableBytesWritable(Bytes.toBytes("f")), 200, 20, 0);
+        return builder.build();
+    }
+
+    private static List<String> getGuidePostKeys(GuidePostsInfo gps) throws Exception {
+        List<String> keys = new ArrayList<>();
+        ImmutableBytesWritable guidePosts = gps.getGuidePosts();
+        try (ByteArrayInputStream stream = new ByteArrayInputStream(guidePosts.get(), guidePosts.getOffset(),
+                guidePosts.getLength())) {
+            DataInput input = new DataInputStream(stream);
+            PrefixByteDecoder decoder = new PrefixByteDecoder(gps.getMaxLength());
+            while (true) {
+                keys.add(Bytes.toString(ByteUtil.copyKeyBytesIfNecessary(decoder.decode(input))));
+            }
+        } catch (EOFException e) {
+            // done
+        }
+        return keys;
+    }
+
+    /**
+     * Summarizes the rows as one chunk per row
+     */
+    private static FlushedRowsSummary summarize(List<List<Cell>> rows) {
+        FlushedRowsSummary summary = new FlushedRowsSummary(1, 1024);
+        for (List<Cell> row : rows) {
+            summary.collectStatistics(row);
+        }
+        return summary;
+    }
+
+    @Test
+    public void testFlushedRowsAreAddedToExistingGuidePosts() throws Exception {
+        IncrementalGuidePostsCollector collector =
+                new IncrementalGuidePostsCollector(existingGuidePosts(), 1000000);
+        // the row "g" is after the last guidepost of the region, not accounted for
+        FlushedRowsSummary summary = summarize(Arrays.asList(row("b", 5), row("d", 7), row("e", 6), row("g", 8)));
+        GuidePostsInfo gps = collector.merge(summary.getChunks());
+        assertEquals(8, summary.getMaxTimeStamp());
+        assertEquals(2, gps.getGuidePostsCount());
+        assertEquals("[c, f]", getGuidePostKeys(gps).toString());
+        assertArrayEquals(new long[] {100 + cellSize(), 200 + 2 * cellSize()}, gps.getByteCounts());
+        assertArrayEquals(new long[] {11, 22}, gps.getRowCounts());
+    }
+
+    @Test
+    public void testNewGuidePostsAreAddedAtDepth() throws Exception {
+        IncrementalGuidePostsCollector collector =
+                new IncrementalGuidePostsCollector(existingGuidePosts(), cellSize());
+        GuidePostsInfo gps = collector.merge(
+                summarize(Arrays.asList(row("a", 1), row("b", 1), row("c", 1), row("g", 1))).getChunks());
+        // the existing guidepost "f" is not changed by the flush
+        assertEquals(4, gps.getGuidePostsCount());
+        assertEquals("[a, b, c, g]", getGuidePostKeys(gps).toString());
+        assertArrayEquals(new long[] {cellSize(), cellSize(), 100 + cellSize(), cellSize()},
+                gps.getByteCounts());
+        assertArrayEquals(new long[] {1, 1, 11, 1}, gps.getRowCounts());
+    }
+
+    @Test
+    public void testRegionWithoutGuidePosts() throws Exception {
+        IncrementalGuidePostsCollector collector =
+                new IncrementalGuidePostsCollector(new GuidePostsInfoBuilder().build(), 1000000);
+        assertNull(collector.merge(summarize(Arrays.asList(row("a", 1))).getChunks()));
+    }
+
+    @Test
+    public void testChunksAreCombinedAtMaxChunks() throws Exception {
+        // two rows per chunk, at most four chunks
+        FlushedRowsSummary summary = new FlushedRowsSummary(2 * cellSize(), 4);
+        for (int i = 0; i < 20; i++) {
+            List<Cell> row = new ArrayList<>(row(String.format("r%02d", i), i));
+            // a second cell in the row, which does not count as another row
+            row.add(new KeyValue(Bytes.toBytes(String.format("r%02d", i)), FAMILY, Bytes.toBytes("w"), i,
+                    Bytes.toBytes("value")));
+            summary.collectStatistics(row);
+        }
+        List<FlushedRowsSummary.Chunk> chunks = summary.getChunks();
+        assertTrue(chunks.size() <= 4);
+        long byteCount = 0;
+        long rowCount = 0;
+        byte[] previousRow = null;
+        for (FlushedRowsSummary.Chunk chunk : chunks) {
+            byteCount += chunk.getByteCount();
+            rowCount += chunk.getRowCount();
+            assertTrue(previousRow == null || Bytes.compareTo(previousRow, chunk.getLastRow()) < 0);
+            previousRow = chunk.getLastRow();
+        }
+        assertEquals("r19", Bytes.toString(previousRow));
+        assertEquals(20, rowCount);
+        assertEquals(40 * cellSize(), byteCount);
+        assertEquals(19, summary.getMaxTimeStamp());
+    }
+
+    @Test
+    public void testChunkAccountedForAtItsLastRow() throws Exception {
+        // a single chunk spanning the guidepost "c"
+        FlushedRowsSummary summary = new FlushedRowsSummary(1000000, 1024);
+        summary.collectStatistics(row("b", 1));
+        summary.collectStatistics(row("d", 1));
+        GuidePostsInfo gps = new IncrementalGuidePostsCollector(existingGuidePosts(), 1000000)
+                .merge(summary.getChunks());
+        assertEquals("[f]", getGuidePostKeys(gps).toString());
+        assertArrayEquals(new long[] {200 + 2 * cellSize()}, gps.getByteCounts());
+        assertArrayEquals(new long[] {22}, gps.getRowCounts());
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.phoenix.util;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+
+import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Test;
+
+public class KeyBloomFilterTest {
+
+    @Test
+    public void testNoFalseNegatives() throws Exception {
+        KeyBloomFilter.Builder builder = new KeyBloomFilter.Builder(10000, 0.01);
+        for (int i = 0; i < 10000; i++) {
+            builder.add(new ImmutableBytesWritable(Bytes.toBytes(i)));
+        }
+        KeyBloomFilter filter = builder.build();
+
+        // Round trip through serialization as the filter is shipped to region servers
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        filter.write(new DataOutputStream(bytes));
+        KeyBloomFilter copy = new KeyBloomFilter();
+        copy.readFields(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        for (int i = 0; i < 10000; i++) {
+            assertTrue(copy.mightContain(new ImmutableBytesWritable(Bytes.toBytes(i))));
+        }
+        int falsePositives = 0;
+        for (int i = 10000; i < 20000; i++) {
+            if (copy.mightContain(new ImmutableBytesWritable(Bytes.toBytes(i)))) {
+                falsePositives++;
+            }
+        }
+        assertTrue("Too many false positives: " + falsePositives, falsePositives < 300);
+    }
+
+    @Test
+    public void testEmptyBuildSide() {
+        KeyBloomFilter filter = new KeyBloomFilter.Builder(10, 0.01).build();
+        assertFalse(filter.mightContain(new ImmutableBytesWritable(Bytes.toBytes("a"))));
+        assertFalse(filter.mightContain(ByteUtil.EMPTY_BYTE_ARRAY, 0, 0));
+    }
+
+    @Test
+    public void testOverflow() {
+        KeyBloomFilter.Builder builder = new KeyBloomFilter.Builder(2, 0.01);
+        builder.add(new ImmutableBytesWritable(Bytes.toBytes("a")));
+        builder.add(new ImmutableBytesWritable(Bytes.toBytes("b")));
+        assertFalse(builder.isOverflowed());
+        builder.add(new ImmutableBytesWritable(Bytes.toBytes("c")));
+        assertTrue(builder.isOverflowed());
+        assertNull(builder.build());
+    }
+}